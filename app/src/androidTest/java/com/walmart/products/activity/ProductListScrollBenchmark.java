@@ -0,0 +1,105 @@
+package com.walmart.products.activity;
+
+import android.app.Instrumentation;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.walmart.products.service.WalmartService;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scrolls the product list through 5,000 items and reports GC counts and allocation rate,
+ * along with the BitmapPool and thumbnail cache counters. Needs the network (or a warm DiskCache).
+ *
+ * Results are logged, i.e. adb logcat -s ProductListScrollBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductListScrollBenchmark {
+
+    private static final String TAG = "ProductListScrollBenchmark";
+
+    private static final int ITEMS = 5000;
+
+    // pixels per frame, about a row at a time
+    private static final int SCROLL_STEP = 150;
+
+    // waiting for a page to load is not part of the scroll
+    private static final long LOAD_TIMEOUT = 30 * 1000;
+
+    @Rule
+    public ActivityTestRule<ProductListActivity> mActivityRule = new ActivityTestRule<ProductListActivity>(
+            ProductListActivity.class);
+
+    @Test
+    public void benchmark_scroll() throws InterruptedException {
+        final ProductListActivity activity = mActivityRule.getActivity();
+        final RecyclerView recyclerView = (RecyclerView) activity.getMainView();
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        waitForItems(activity, 1);
+
+        long gcCount = runtimeStat("art.gc.gc-count");
+        long blockingGcCount = runtimeStat("art.gc.blocking-gc-count");
+        long gcTime = runtimeStat("art.gc.gc-time");
+        long bytesAllocated = runtimeStat("art.gc.bytes-allocated");
+        long start = SystemClock.elapsedRealtime();
+        long waited = 0;
+
+        final int[] lastVisible = new int[1];
+        while (lastVisible[0] < ITEMS) {
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.scrollBy(0, SCROLL_STEP);
+                    lastVisible[0] = ((LinearLayoutManager) recyclerView.getLayoutManager())
+                            .findLastVisibleItemPosition();
+                }
+            });
+            if (lastVisible[0] >= activity.getItemCount() - 1) {
+                long waitStart = SystemClock.elapsedRealtime();
+                waitForItems(activity, lastVisible[0] + 2);
+                waited += SystemClock.elapsedRealtime() - waitStart;
+            }
+        }
+
+        long seconds = Math.max(1, (SystemClock.elapsedRealtime() - start - waited) / 1000);
+        long allocated = runtimeStat("art.gc.bytes-allocated") - bytesAllocated;
+        StringBuffer sb = new StringBuffer("scrolled items: ").append(ITEMS);
+        sb.append(", gc count: ").append(runtimeStat("art.gc.gc-count") - gcCount);
+        sb.append(", blocking gc count: ").append(runtimeStat("art.gc.blocking-gc-count") - blockingGcCount);
+        sb.append(", gc ms: ").append(runtimeStat("art.gc.gc-time") - gcTime);
+        sb.append(", allocated bytes: ").append(allocated);
+        sb.append(", allocation rate (bytes/s): ").append(allocated / seconds);
+        sb.append(", ms waiting for pages: ").append(waited);
+        Log.i(TAG, sb.toString());
+
+        WalmartService service = activity.getService();
+        assertNotNull(service);
+        Log.i(TAG, "bitmap pool: " + service.getBitmapPoolStats());
+        Log.i(TAG, "thumbnail cache: " + service.getThumbnailCacheStats());
+    }
+
+    private void waitForItems(ProductListActivity activity, int count) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + LOAD_TIMEOUT;
+        while (activity.getItemCount() < count) {
+            assertTrue("timed out loading items: " + count, SystemClock.elapsedRealtime() < deadline);
+            Thread.sleep(50);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    private static long runtimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        return (value == null) ? 0 : Long.parseLong(value);
+    }
+}
@@ -0,0 +1,90 @@
+package com.walmart.products.service;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decode time and bytes per image of full resolution ARGB_8888 decoding vs BitmapDecoder,
+ * for the fixture product images at the thumbnail and detail view sizes of the device it runs on.
+ *
+ * Results are logged, i.e. adb logcat -s BitmapDecoderBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapDecoderBenchmark {
+
+    private static final String TAG = "BitmapDecoderBenchmark";
+
+    private static final String[] FIXTURES = {
+            "fixtures/product_100.jpg",
+            "fixtures/product_450.jpg",
+            "fixtures/product_1000.jpg" };
+
+    private static final int WARMUP = 5;
+
+    private static final int ITERATIONS = 30;
+
+    @Test
+    public void benchmark_decode() throws IOException {
+        Context context = InstrumentationRegistry.getContext();
+        DisplayMetrics metrics = InstrumentationRegistry.getTargetContext().getResources().getDisplayMetrics();
+        int thumbSize = Math.round(100 * metrics.density); // R.dimen.thumb_size
+        int detailSize = Math.round(300 * metrics.density); // R.dimen.detail_image_size
+        BitmapDecoder.Target[] targets = {
+                new BitmapDecoder.Target(thumbSize, thumbSize),
+                new BitmapDecoder.Target(detailSize, detailSize) };
+
+        for (String fixture : FIXTURES) {
+            byte[] data = read(context, fixture);
+            for (BitmapDecoder.Target target : targets) {
+                long fullNanos = 0, fullBytes = 0, sizedNanos = 0, sizedBytes = 0;
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    Bitmap full = BitmapFactory.decodeByteArray(data, 0, data.length);
+                    long mid = SystemClock.elapsedRealtimeNanos();
+                    Bitmap sized = BitmapDecoder.decode(data, target, null);
+                    long end = SystemClock.elapsedRealtimeNanos();
+                    assertNotNull(full);
+                    assertNotNull(sized);
+                    assertTrue(sized.getAllocationByteCount() <= full.getAllocationByteCount());
+                    if (i >= WARMUP) {
+                        fullNanos += mid - start;
+                        sizedNanos += end - mid;
+                        fullBytes = full.getAllocationByteCount();
+                        sizedBytes = sized.getAllocationByteCount();
+                    }
+                    full.recycle();
+                    sized.recycle();
+                }
+                StringBuffer sb = new StringBuffer(fixture);
+                sb.append(" -> ").append(target.width).append("x").append(target.height).append(" ").append(target.config);
+                sb.append(", full: ").append(fullNanos / ITERATIONS / 1000).append("us ").append(fullBytes).append(" bytes");
+                sb.append(", sized: ").append(sizedNanos / ITERATIONS / 1000).append("us ").append(sizedBytes).append(" bytes");
+                Log.i(TAG, sb.toString());
+            }
+        }
+    }
+
+    private byte[] read(Context context, String asset) throws IOException {
+        InputStream in = context.getAssets().open(asset);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -1,15 +1,37 @@
 package com.walmart.products;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
-import android.util.LruCache;
 
 import com.loopj.android.http.AsyncHttpClient;
+import com.walmart.products.http.HttpTransport;
+import com.walmart.products.http.LoopjTransport;
+import com.walmart.products.http.OkHttpTransport;
+import com.walmart.products.http.ParseExecutor;
+import com.walmart.products.service.BitmapCache;
+import com.walmart.products.service.BitmapDecoder;
+import com.walmart.products.service.BitmapPool;
+import com.walmart.products.service.ConcurrencyLimiter;
+import com.walmart.products.service.DiskCache;
+import com.walmart.products.service.CachePolicy;
+import com.walmart.products.service.ImageScheduler;
+import com.walmart.products.service.PageCache;
+import com.walmart.products.service.PageStateTable;
 import com.walmart.products.service.WalmartService;
 import com.walmart.products.service.WalmartServiceUtils;
+import com.walmart.products.util.EventBus;
+import com.walmart.products.util.EventEmitter;
+import com.walmart.products.util.Metrics;
+import com.walmart.products.util.MetricsReporter;
+import com.walmart.products.util.SingleFlight;
+import com.walmart.products.util.StringPool;
+import com.walmart.products.util.Tracer;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,12 +40,18 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import dagger.Provides;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 
 import static com.walmart.products.service.WalmartServiceConfig.*;
 
@@ -38,28 +66,90 @@ public class AppModule {
         this.mApplication = mApplication;
     }
 
+    private String getProperty(String name, String defaultValue) {
+        String value = Application.getProperty(name);
+        return (value == null || value.isEmpty()) ? defaultValue : value;
+    }
+
     @Provides @Singleton
-    AsyncHttpClient provideAsyncHttpClient() {
+    AsyncHttpClient provideAsyncHttpClient(Metrics metrics) {
         AsyncHttpClient httpClient = new AsyncHttpClient();
         httpClient.setLoggingLevel(Log.ERROR);
         httpClient.setConnectTimeout(HTTP_TIMEOUT);
         httpClient.setResponseTimeout(HTTP_TIMEOUT);
+        // a rejected request would never call back, so retry it once the queue had time to drain
+        final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor();
         RejectedExecutionHandler rejectHandler = new RejectedExecutionHandler() {
             @Override
-            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                Log.e(TAG + ".asyncHttpClient",
-                        "rejectedExecution - thread bounds and queue capacities are reached");
+            public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    Log.e(TAG + ".asyncHttpClient", "rejectedExecution - executor is shutdown");
+                    return;
+                }
+                Log.w(TAG + ".asyncHttpClient",
+                        "rejectedExecution - thread bounds and queue capacities are reached, retrying");
+                retryExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        executor.execute(r);
+                    }
+                }, REJECTED_RETRY_DELAY, TimeUnit.MILLISECONDS);
             }
         };
-        httpClient.setThreadPool(new ThreadPoolExecutor(
-                MIN_THREADS, MAX_THREADS,
+        // a ThreadPoolExecutor only starts threads past the core ones once its queue is full,
+        // so all of them are core threads and the ConcurrencyLimiters decide how many are busy
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+                MAX_THREADS, MAX_THREADS,
                 THREAD_TIMEOUT,
                 TimeUnit.SECONDS,
                 new LinkedBlockingQueue<Runnable>(PAGE_SIZE*MAX_PAGES),
-                rejectHandler));
+                rejectHandler);
+        threadPool.allowCoreThreadTimeOut(true);
+        httpClient.setThreadPool(threadPool);
+        registerGauges(metrics, "httpPool", threadPool);
         return httpClient;
     }
 
+    /**
+     * OkHttp unless the transport property of application.properties is loopj,
+     * only the client of the picked transport is created.
+     */
+    @Provides @Singleton
+    HttpTransport provideHttpTransport(Provider<OkHttpClient> okHttpClient, Provider<AsyncHttpClient> asyncHttpClient) {
+        if ("loopj".equals(getProperty("transport", "okhttp"))) {
+            Log.i(TAG, "provideHttpTransport - loopj");
+            return new LoopjTransport(asyncHttpClient.get());
+        }
+        return new OkHttpTransport(okHttpClient.get(), TimeUnit.SECONDS.toMillis(CONNECTION_KEEP_ALIVE));
+    }
+
+    @Provides @Singleton
+    OkHttpClient provideOkHttpClient(Metrics metrics) {
+        // the ConcurrencyLimiters decide how many requests are in flight, not the dispatcher
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_THREADS);
+        dispatcher.setMaxRequestsPerHost(MAX_THREADS);
+        // calls past the dispatcher limits wait in its own queue, not in the queue of its executor
+        metrics.gauge("okhttp.queued", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return dispatcher.queuedCallsCount();
+            }
+        });
+        metrics.gauge("okhttp.running", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return dispatcher.runningCallsCount();
+            }
+        });
+        return new OkHttpClient.Builder()
+                .connectTimeout(HTTP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(HTTP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .build();
+    }
+
     @Provides @Singleton
     WalmartServiceUtils provideWalmartServiceUtils() {
         WalmartServiceUtils utils = new WalmartServiceUtils();
@@ -72,21 +162,260 @@ public class AppModule {
      *
      * PAGE_URLS - all the page urls we have visited,
      *          if a page was purged from cache we can use the url from here to get it.
+     *          restored from the DiskCache, so deep-scrolled pages survive a process restart.
      *
-     * LRU_PAGE_CACHE - the page cache - includes a Bitmap cache for images.
+     * PAGE_CACHE - the page cache - bounded by PAGE_CACHE_BYTES, each entry is sized by CacheEntry.byteSize(),
+     *          evicted in the order of its CachePolicy (PAGE_CACHE_POLICY): LRU, W-TinyLFU or viewport (pins the screen).
+     *
+     * PAGE_STATES - ABSENT, LOADING, READY or FAILED per page, lock-free. evicting a page from the cache makes it ABSENT.
+     *
+     * PAGE_URL_EVENTS - the url of a page once the page before it is parsed, to the loads waiting for it.
+     *
+     * BITMAP_CACHE - thumbnails and medium images keyed by url, evicted independently of the pages.
+     *
+     * BITMAP_DECODER - decodes images downsampled to the size of the view they are shown in.
+     *
+     * BITMAP_POOL - thumbnails evicted from the BITMAP_CACHE, decoded into again by the BITMAP_DECODER.
+     *
+     * IMAGE_SCHEDULER - prioritizes image downloads, pending downloads of evicted pages are cancelled.
+     *
+     * PAGE_LIMITER, IMAGE_LIMITER - the page json and image requests in flight, adapted to the observed latency.
+     *
+     * DISK_CACHE - page json, image bytes and page urls persisted across process restarts.
+     *
+     * STRING_POOL - interns product strings so equal values across pages share one instance.
+     *
+     * HTTP_TRANSPORT - OkHttp with pooled (HTTP/2 multiplexed over https) connections, or loopj as a fallback.
+     *
+     * PARSE_EXECUTOR - parses page json on a few threads sized to the cores, instead of a thread per response.
+     *
+     * METRICS - hot path latency histograms, counters and gauges, dumped to METRICS_FILE by the METRICS_REPORTER.
+     *
+     * TRACER - the spans of the last page loads in a ring of TRACE_CAPACITY, exported as Chrome trace JSON.
      *
      */
 
+    /**
+     * The Walmart API the service talks to, WalmartServiceConfig.BASE_URL unless the baseUrl property
+     * of application.properties points somewhere else (i.e. the mockserver module).
+     */
+    @Provides @Singleton @Named("baseUrl")
+    String provideBaseUrl() {
+        return getProperty("baseUrl", BASE_URL);
+    }
+
+    @Provides @Singleton @Named("firstPageUrl")
+    String provideFirstPageUrl() {
+        return getProperty("firstPageUrl", FIRST_PAGE_URL);
+    }
+
     @Provides @Singleton
-    Map<Integer, String> providePageUrls() {
-        Map<Integer, String> pageUrls = new ConcurrentHashMap<>();
-        pageUrls.put(0, FIRST_PAGE_URL);
+    Map<Integer, String> providePageUrls(final DiskCache diskCache, @Named("firstPageUrl") String firstPageUrl) {
+        final ConcurrentHashMap<Integer, String> pageUrls = new ConcurrentHashMap<>();
+        pageUrls.put(0, firstPageUrl);
+        // restored on the disk thread, a page whose url is not known yet is looked up again behind it,
+        // see WalmartServiceUtils.loadPage. The urls learned meanwhile are newer and kept.
+        diskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<Integer, String> pageUrl : diskCache.pageUrls().entrySet()) {
+                    if (pageUrl.getKey() != 0) pageUrls.putIfAbsent(pageUrl.getKey(), pageUrl.getValue());
+                }
+            }
+        });
         return pageUrls;
     }
 
     @Provides @Singleton
-    LruCache<Integer, WalmartService.CacheEntry> providePageCache() {
-        // LruCache is already thread safe
-        return new LruCache<>(MAX_PAGES);
+    DiskCache provideDiskCache(@Named("baseUrl") String baseUrl) {
+        // pages and page urls of another API (i.e. the mockserver) must not mix with the real ones
+        String dir = BASE_URL.equals(baseUrl) ? DISK_CACHE_DIR : DISK_CACHE_DIR + "-" + baseUrl.replaceAll("\\W+", "_");
+        final DiskCache diskCache = new DiskCache(new File(mApplication.getCacheDir(), dir), DISK_CACHE_BYTES);
+        // the journal is replayed on the disk thread ahead of the first read, not on the main thread
+        diskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    diskCache.open();
+                } catch (IOException e) {
+                    // every read misses and every write fails, the app still works from the network
+                    Log.e(TAG, "provideDiskCache failed to open", e);
+                }
+            }
+        });
+        return diskCache;
+    }
+
+    @Provides @Singleton
+    PageCache providePageCache(final ImageScheduler imageScheduler,
+                               final PageStateTable pageStates,
+                               Metrics metrics) {
+        // PageCache is already thread safe
+        CachePolicy policy = PageCache.newPolicy(getProperty("pageCachePolicy", PAGE_CACHE_POLICY));
+        if (policy == null) {
+            Log.w(TAG, "unknown pageCachePolicy: " + getProperty("pageCachePolicy", PAGE_CACHE_POLICY));
+            policy = PageCache.newPolicy(PAGE_CACHE_POLICY);
+        }
+        final PageCache pageCache = new PageCache(PAGE_CACHE_BYTES, policy) {
+            @Override
+            protected void entryEvicted(int pageNum, WalmartService.CacheEntry cacheEntry) {
+                // nobody will see the images of an evicted page, stop downloading them
+                pageStates.evict(pageNum);
+                imageScheduler.cancelPage(pageNum);
+                Log.i(TAG, "page evicted: " + pageNum + ", images: " + imageScheduler.stats());
+            }
+        };
+        // the PageCache counts its hits, misses (every getPage miss) and evictions already, they are read as gauges
+        metrics.gauge("pageCache.hits", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return pageCache.hitCount();
+            }
+        });
+        metrics.gauge("pageCache.misses", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return pageCache.missCount();
+            }
+        });
+        metrics.gauge("pageCache.evictions", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return pageCache.evictionCount();
+            }
+        });
+        metrics.gauge("pageCache.bytes", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return pageCache.size();
+            }
+        });
+        return pageCache;
+    }
+
+    @Provides @Singleton
+    PageStateTable providePageStateTable() {
+        return new PageStateTable(MAX_PAGE_NUM);
+    }
+
+    @Provides @Singleton @Named("pageUrlEvents")
+    EventBus<String> providePageUrlEvents() {
+        return new EventBus<String>(MAX_PAGE_NUM);
+    }
+
+    @Provides @Singleton @Named("thumbnailEvents")
+    EventEmitter provideThumbnailEvents() {
+        return new EventEmitter();
+    }
+
+    @Provides @Singleton
+    ImageScheduler provideImageScheduler(@Named("imageLimiter") ConcurrencyLimiter imageLimiter) {
+        return new ImageScheduler(imageLimiter);
+    }
+
+    /**
+     * Page json and image requests are limited separately, a page is small and blocks the list
+     * while the images of a page are many and larger.
+     */
+    @Provides @Singleton @Named("pageLimiter")
+    ConcurrencyLimiter providePageLimiter() {
+        return new ConcurrencyLimiter(PAGE_REQUESTS, MIN_PAGE_REQUESTS, MAX_PAGE_REQUESTS);
+    }
+
+    @Provides @Singleton @Named("imageLimiter")
+    ConcurrencyLimiter provideImageLimiter() {
+        return new ConcurrencyLimiter(IMAGE_REQUESTS, MIN_IMAGE_REQUESTS, MAX_IMAGE_REQUESTS);
+    }
+
+    @Provides @Singleton
+    SingleFlight<String> provideBitmapLoads() {
+        return new SingleFlight<String>();
+    }
+
+    @Provides @Singleton
+    BitmapDecoder provideBitmapDecoder(BitmapPool bitmapPool) {
+        // decode for the views the images are shown in, see product_list_item and product_detail_item
+        Resources res = mApplication.getResources();
+        return new BitmapDecoder(
+                new BitmapDecoder.Target(
+                        res.getDimensionPixelSize(R.dimen.thumb_size),
+                        res.getDimensionPixelSize(R.dimen.thumb_size)),
+                new BitmapDecoder.Target(
+                        res.getDimensionPixelSize(R.dimen.detail_image_size),
+                        res.getDimensionPixelSize(R.dimen.detail_image_size)),
+                bitmapPool);
+    }
+
+    @Provides @Singleton
+    ParseExecutor provideParseExecutor(Metrics metrics) {
+        ParseExecutor parseExecutor = new ParseExecutor(PARSE_THREADS, PARSE_QUEUE_SIZE);
+        registerGauges(metrics, "parseExecutor", parseExecutor);
+        return parseExecutor;
+    }
+
+    @Provides @Singleton
+    BitmapPool provideBitmapPool() {
+        return new BitmapPool(BITMAP_POOL_BYTES);
+    }
+
+    @Provides @Singleton
+    BitmapCache provideBitmapCache(BitmapPool bitmapPool) {
+        return new BitmapCache(THUMBNAIL_CACHE_BYTES, MEDIUM_IMAGE_CACHE_BYTES, bitmapPool);
+    }
+
+    @Provides @Singleton
+    StringPool provideStringPool() {
+        return new StringPool(STRING_POOL_SIZE);
+    }
+
+    /**
+     * On unless the metrics property of application.properties is off, see WalmartService.getMetricsStats.
+     *
+     * loadPage, parsePage, loadThumbnails, loadBitmap - latency histograms, see WalmartServiceUtils
+     * pageCache.* - hits, misses, evictions and bytes of the PAGE_CACHE
+     * okhttp.*, httpPool.* - http calls queued and running, for the transport in use
+     * parseExecutor.* - parses queued and running on the PARSE_EXECUTOR
+     */
+    @Provides @Singleton
+    Metrics provideMetrics() {
+        return new Metrics(!"off".equals(getProperty("metrics", "on")));
+    }
+
+    @Provides @Singleton
+    MetricsReporter provideMetricsReporter(Metrics metrics) {
+        return new MetricsReporter(metrics, new File(mApplication.getFilesDir(), METRICS_FILE), METRICS_DUMP_INTERVAL);
+    }
+
+    /**
+     * On in debug builds, or if the tracing property of application.properties is on, see WalmartService.writeTrace.
+     * A span is taken on every stage of every page load, release builds do not pay for it unless asked to.
+     */
+    @Provides @Singleton
+    Tracer provideTracer() {
+        return new Tracer(TRACE_CAPACITY, "on".equals(getProperty("tracing", BuildConfig.DEBUG ? "on" : "off")));
+    }
+
+    /**
+     * The queue depth, busy threads and largest pool size of an executor, as gauges named prefix.*
+     */
+    private static void registerGauges(Metrics metrics, String prefix, final ThreadPoolExecutor executor) {
+        metrics.gauge(prefix + ".queued", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return executor.getQueue().size();
+            }
+        });
+        metrics.gauge(prefix + ".active", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return executor.getActiveCount();
+            }
+        });
+        metrics.gauge(prefix + ".largestPool", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return executor.getLargestPoolSize();
+            }
+        });
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.walmart.products;
 
 import android.content.Context;
+import android.os.SystemClock;
 
 import com.walmart.products.service.WalmartService;
 import com.walmart.products.service.WalmartServiceUtils;
@@ -27,6 +28,8 @@ public class Application extends android.app.Application {
 
     private static Properties mProperties;
 
+    private static long mStartTime;
+
     public static Application get(Context context) {
         return (Application) context.getApplicationContext();
     }
@@ -35,6 +38,13 @@ public class Application extends android.app.Application {
         return mProperties.getProperty(name);
     }
 
+    /**
+     * @return SystemClock.elapsedRealtime() when the application was created, used to measure cold start.
+     */
+    public static long getStartTime() {
+        return mStartTime;
+    }
+
     @Singleton
     @Component(modules = AppModule.class)
     public interface ApplicationComponent {
@@ -45,6 +55,7 @@ public class Application extends android.app.Application {
 
     @Override public void onCreate() {
         super.onCreate();
+        mStartTime = SystemClock.elapsedRealtime();
         mProperties = loadProperties("application.properties");
         mComponent = DaggerApplication_ApplicationComponent.builder()
                 .appModule(new AppModule(this))
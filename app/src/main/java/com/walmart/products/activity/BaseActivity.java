@@ -106,12 +106,14 @@ abstract class BaseActivity extends AppCompatActivity {
             onComplete.call(WALMART_SERVICE_NOT_BOUND);
             return;
         }
-        if (mService.isLoaded(fromIndex, toIndex) || mService.isLoading(fromIndex, toIndex)) {
+        // only the pages neither loaded nor loading, however many pages the range spans
+        int[] missingPages = mService.getMissingPages(fromIndex, toIndex);
+        if (missingPages.length == 0) {
             onComplete.call(null, null); //notify ScrollListener loading is complete
             return;
         }
         if (updateLoadingIndicator) showLoadingIndicator();
-        mService.loadProducts(fromIndex, toIndex, new Function() {
+        mService.loadPages(missingPages, new Function() {
             @Override
             public void call(Object... args) {
                 if (args[0] != null) {
@@ -126,6 +128,14 @@ abstract class BaseActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * A page was loaded ahead of a fling (see ScrollPrefetcher), the list grows to it so the fling can reach it.
+     * @param pageNum
+     */
+    public void notifyPagePrefetched(int pageNum) {
+        postNotifyDataSetChanged((pageNum + 1) * PAGE_SIZE - 1, false);
+    }
+
     public void loadMore(final Function onComplete) {
         loadMore(onComplete, true);
     }
@@ -31,6 +31,14 @@ public class ProductDetailActivity extends BaseActivity {
         Log.i(TAG, "start itemCount: " + getItemCount());
         mBinding = DataBindingUtil.setContentView(this, R.layout.product_detail);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true); //show back button
+        // the medium image of the product on screen is downloaded before its neighbours.
+        // added once here, the service is bound again on every onStart
+        mBinding.viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                if (getService() != null) mService.setVisibleRange(position, position);
+            }
+        });
     }
 
     @Override
@@ -58,6 +66,7 @@ public class ProductDetailActivity extends BaseActivity {
         // ProductDetailFragment: showProduct failed  - WalmartService is not bound
         mAdapter = new ProductDetailAdapter(getSupportFragmentManager(), this);
         mBinding.viewPager.setAdapter(mAdapter);
+        mService.setVisibleRange(mStartPosition, mStartPosition);
         //-------------------------------------------------------------------------------------
         if (getItemCount() == 0) {
             loadMore(new Function() {
@@ -6,12 +6,14 @@ import android.databinding.DataBindingUtil;
 import android.os.Bundle;
 import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.View;
 import android.widget.ProgressBar;
 
 import com.walmart.products.R;
 import com.walmart.products.databinding.ProductListBinding;
+import com.walmart.products.service.ScrollPrefetcher;
 import com.walmart.products.util.Function;
 import com.walmart.products.view.EndlessRecyclerOnScrollListener;
 
@@ -25,6 +27,34 @@ public class ProductListActivity extends BaseActivity {
 
     private LinearLayoutManager mLinearLayoutManager;
 
+    // loads the pages ahead of a fling, created once the service is bound
+    private ScrollPrefetcher mPrefetcher;
+
+    private final Function mOnPrefetched = new Function() {
+        @Override
+        public void call(Object... args) {
+            if (args[0] != null) {
+                Log.e(TAG, (String) args[0]);
+                return;
+            }
+            notifyPagePrefetched((Integer) args[1]);
+        }
+    };
+
+    // pages are shown before their thumbnails, rebind each row as its thumbnail arrives
+    private final Function mOnThumbnailLoaded = new Function() {
+        @Override
+        public void call(Object... args) {
+            final int index = (Integer) args[1];
+            getMainView().post(new Runnable() {
+                @Override
+                public void run() {
+                    mAdapter.notifyThumbnailLoaded(index);
+                }
+            });
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -57,8 +87,16 @@ public class ProductListActivity extends BaseActivity {
         return mBinding.recyclerView;
     }
 
+    @Override
+    protected void onStop() {
+        if (getService() != null) getService().removeOnThumbnailLoadedListener(mOnThumbnailLoaded);
+        super.onStop();
+    }
+
     @Override
     protected void onServiceBound() {
+        mService.addOnThumbnailLoadedListener(mOnThumbnailLoaded);
+        mPrefetcher = new ScrollPrefetcher(mService, mOnPrefetched);
         if (getItemCount() == 0) {
             loadMore(new Function() {
                 @Override
@@ -70,6 +108,7 @@ public class ProductListActivity extends BaseActivity {
             notifyDataSetChanged();
             addScrollListener();
             mLinearLayoutManager.scrollToPositionWithOffset(mStartPosition, 10);
+            mService.setVisibleRange(mStartPosition, mStartPosition);
         }
     }
 
@@ -85,6 +124,16 @@ public class ProductListActivity extends BaseActivity {
     private void addScrollListener() {
         mBinding.recyclerView.removeOnScrollListener(null); // null will clear all listeners.
         mBinding.recyclerView.addOnScrollListener(new EndlessRecyclerOnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+                updateVisibleRange(recyclerView, dy);
+            }
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                super.onScrollStateChanged(recyclerView, newState);
+                updateScrollState(newState);
+            }
             @Override
             public void onLoadMore(Function onComplete) {
                 loadMore(onComplete);
@@ -96,6 +145,29 @@ public class ProductListActivity extends BaseActivity {
         });
     }
 
+    // thumbnails of the rows on screen are downloaded first, the prefetcher measures the velocity in rows
+    private void updateVisibleRange(RecyclerView recyclerView, int dy) {
+        if (getService() == null) return;
+        int firstVisibleItem = mLinearLayoutManager.findFirstVisibleItemPosition();
+        int lastVisibleItem = mLinearLayoutManager.findLastVisibleItemPosition();
+        if (firstVisibleItem == RecyclerView.NO_POSITION) return;
+        mService.setVisibleRange(firstVisibleItem, lastVisibleItem);
+        View row = recyclerView.getChildAt(0);
+        if (mPrefetcher == null || row == null || row.getHeight() == 0) return;
+        mPrefetcher.onScrolled(firstVisibleItem, lastVisibleItem, dy / (double) row.getHeight(), System.nanoTime());
+    }
+
+    // only a fling (settling) is predicted, a drag follows the finger
+    private void updateScrollState(int newState) {
+        if (mPrefetcher == null) return;
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            mPrefetcher.onIdle(mLinearLayoutManager.findFirstVisibleItemPosition(),
+                    mLinearLayoutManager.findLastVisibleItemPosition());
+        } else {
+            mPrefetcher.setSettling(newState == RecyclerView.SCROLL_STATE_SETTLING);
+        }
+    }
+
     public void startProductDetailActivity(int position) {
         Intent intent = new Intent(this, ProductDetailActivity.class);
         intent.putExtra("position", position);
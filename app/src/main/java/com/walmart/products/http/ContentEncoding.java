@@ -0,0 +1,73 @@
+package com.walmart.products.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content codings of page responses.
+ *
+ * Pages are requested with {@link #ACCEPT_ENCODING} and kept compressed, as received, in memory and on disk.
+ * They are inflated while the parser reads them, so the decompressed json is never held as a whole.
+ */
+public class ContentEncoding {
+
+    // OkHttp only decompresses by itself when the caller did not ask for an encoding (loopj always inflates gzip)
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * @param body - the response bytes as received
+     * @param contentEncoding - the Content-Encoding header, null to tell gzip and zlib from their first bytes
+     *                        (i.e. a body read back from disk, a raw deflate body cannot be told from json)
+     * @return a stream of the decoded body, null if the body is not encoded
+     * @throws IOException - if the encoding is not supported
+     */
+    public static InputStream decode(byte[] body, String contentEncoding) throws IOException {
+        String encoding = (contentEncoding == null) ? sniff(body) : contentEncoding.trim().toLowerCase();
+        if (encoding.isEmpty() || encoding.equals("identity")) return null;
+        InputStream in = new ByteArrayInputStream(body);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        if (encoding.equals("deflate")) {
+            // deflate is meant to be zlib wrapped, some servers send it raw
+            final Inflater inflater = new Inflater(!isZlib(body));
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    // a stream only ends the inflaters it created itself
+                    inflater.end();
+                }
+            };
+        }
+        throw new IOException("decode failed - unsupported content encoding: " + contentEncoding);
+    }
+
+    /**
+     * @return gzip, deflate (zlib) or identity
+     */
+    static String sniff(byte[] body) {
+        if (body.length >= 2 && (body[0] & 0xff) == 0x1f && (body[1] & 0xff) == 0x8b) return "gzip";
+        if (isZlib(body)) return "deflate";
+        return "identity";
+    }
+
+    /**
+     * @return true if the body starts with a zlib header: the deflate method, a window of at most 32K and a check sum
+     */
+    static boolean isZlib(byte[] body) {
+        if (body.length < 2) return false;
+        int cmf = body[0] & 0xff;
+        int flg = body[1] & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+}
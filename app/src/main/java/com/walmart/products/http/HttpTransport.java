@@ -0,0 +1,134 @@
+package com.walmart.products.http;
+
+import android.content.Context;
+
+import com.walmart.products.util.Cancellable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The http stack the service fetches pages and images with.
+ *
+ * Callbacks are made on the thread that called {@link #get(Context, String, Callback)} if it has a looper,
+ * else on a thread of the transport. Every get is called back exactly once, unless it was cancelled.
+ * A request is cancelled alone with the Cancellable its get returns, or with the other requests of its context.
+ *
+ * See {@link OkHttpTransport} (HTTP/2, pooled connections) and {@link LoopjTransport} (the fallback).
+ */
+public interface HttpTransport {
+
+    interface Callback {
+        /**
+         * @param response - a failed request is a response too, see {@link Response#isSuccessful()}
+         */
+        void onResponse(Response response);
+    }
+
+    /**
+     * @param context - the requests of a context can be cancelled together
+     * @param url
+     * @param callback
+     * @return cancels this request, its callback is not made
+     */
+    Cancellable get(Context context, String url, Callback callback);
+
+    /**
+     * @param headers - request headers, i.e. If-None-Match to revalidate a cached response
+     */
+    Cancellable get(Context context, String url, Map<String, String> headers, Callback callback);
+
+    /**
+     * Cancel the requests of the context, their callbacks are not made.
+     * @param context
+     */
+    void cancel(Context context);
+
+    Stats stats();
+
+    /** A response, or the reason there is none **/
+    class Response {
+        // 0 if no response arrived (i.e. a timeout)
+        public final int status;
+        // header names are lower case, the values of a repeated header (i.e. Set-Cookie, Vary) in their order
+        public final Map<String, List<String>> headers;
+        // null if no response arrived
+        public final byte[] body;
+        // null if a response arrived
+        public final Throwable error;
+        // the System.nanoTime() the response headers arrived at, 0 if the transport does not tell
+        public final long firstByteNanos;
+
+        public Response(int status, Map<String, List<String>> headers, byte[] body, Throwable error) {
+            this(status, headers, body, error, 0);
+        }
+
+        public Response(int status, Map<String, List<String>> headers, byte[] body, Throwable error,
+                        long firstByteNanos) {
+            this.status = status;
+            this.headers = (headers == null) ? Collections.<String, List<String>>emptyMap() : headers;
+            this.body = body;
+            this.error = error;
+            this.firstByteNanos = firstByteNanos;
+        }
+
+        /**
+         * @param name - case insensitive
+         * @return the first value of the header or null
+         */
+        public String header(String name) {
+            List<String> values = headers.get(name.toLowerCase());
+            return (values == null || values.isEmpty()) ? null : values.get(0);
+        }
+
+        /**
+         * @param name - case insensitive
+         * @return every value of the header, empty if there is none
+         */
+        public List<String> headers(String name) {
+            List<String> values = headers.get(name.toLowerCase());
+            return (values == null) ? Collections.<String>emptyList() : values;
+        }
+
+        public boolean isSuccessful() {
+            return error == null && status >= 200 && status < 300;
+        }
+
+        /**
+         * @return true if a conditional request found the cached response still valid, the body is empty
+         */
+        public boolean isNotModified() {
+            return status == 304;
+        }
+    }
+
+    /** Snapshot of the transport counters, -1 where the transport does not measure it **/
+    class Stats {
+        public final long requests;
+        public final long failures;
+        public final long connections;
+        public final long handshakes;
+        public final double avgHandshakeMillis;
+        public final long http2Requests;
+        public Stats(long requests, long failures, long connections, long handshakes,
+                     double avgHandshakeMillis, long http2Requests) {
+            this.requests = requests;
+            this.failures = failures;
+            this.connections = connections;
+            this.handshakes = handshakes;
+            this.avgHandshakeMillis = avgHandshakeMillis;
+            this.http2Requests = http2Requests;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("requests: ").append(requests);
+            sb.append(", failures: ").append(failures);
+            sb.append(", connections: ").append(connections);
+            sb.append(", handshakes: ").append(handshakes);
+            sb.append(", avgHandshakeMillis: ").append(avgHandshakeMillis);
+            sb.append(", http2Requests: ").append(http2Requests);
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.walmart.products.http;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.AsyncHttpResponseHandler;
+import com.loopj.android.http.RequestHandle;
+import com.walmart.products.util.Cancellable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.message.BasicHeader;
+
+/**
+ * HttpTransport on loopj AsyncHttpClient, HTTP/1.1 on the apache stack of the client.
+ *
+ * The fallback to {@link OkHttpTransport}, picked with transport=loopj in application.properties.
+ * Connections and handshakes are not measured. Gzip responses are always inflated by loopj, before the
+ * parser sees them.
+ */
+public class LoopjTransport implements HttpTransport {
+
+    private final AsyncHttpClient mHttpClient;
+
+    private final AtomicLong mRequests = new AtomicLong();
+
+    private final AtomicLong mFailures = new AtomicLong();
+
+    public LoopjTransport(AsyncHttpClient httpClient) {
+        this.mHttpClient = httpClient;
+    }
+
+    public AsyncHttpClient client() {
+        return mHttpClient;
+    }
+
+    @Override
+    public Cancellable get(Context context, String url, Callback callback) {
+        return get(context, url, null, callback);
+    }
+
+    @Override
+    public Cancellable get(Context context, String url, Map<String, String> headers, final Callback callback) {
+        mRequests.incrementAndGet();
+        Header[] requestHeaders = null;
+        if (headers != null && !headers.isEmpty()) {
+            requestHeaders = new Header[headers.size()];
+            int i = 0;
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                requestHeaders[i++] = new BasicHeader(header.getKey(), header.getValue());
+            }
+        }
+        // without a looper to post to, loopj must call back on its own thread (it would refuse the handler)
+        boolean usePoolThread = (Looper.myLooper() == null);
+        final RequestHandle handle = mHttpClient.get(context, url, requestHeaders, null, new AsyncHttpResponseHandler(usePoolThread) {
+            @Override
+            public void onSuccess(int statusCode, Header[] headers, byte[] responseBody) {
+                callback.onResponse(new Response(statusCode, decodedHeaders(headers),
+                        (responseBody == null) ? new byte[0] : responseBody, null));
+            }
+            @Override
+            public void onFailure(int statusCode, Header[] headers, byte[] responseBody, Throwable error) {
+                // loopj fails anything from 300 up, a 304 is the answer a conditional request asked for
+                if (statusCode == 304) {
+                    callback.onResponse(new Response(statusCode, headers(headers), new byte[0], null));
+                    return;
+                }
+                mFailures.incrementAndGet();
+                callback.onResponse(new Response(statusCode, decodedHeaders(headers), responseBody, error));
+            }
+        });
+        return new Cancellable() {
+            @Override
+            public void cancel() {
+                // like cancelRequests, a cancelled request is not called back
+                handle.cancel(true);
+            }
+        };
+    }
+
+    @Override
+    public void cancel(Context context) {
+        mHttpClient.cancelRequests(context, true);
+    }
+
+    @Override
+    public Stats stats() {
+        return new Stats(mRequests.get(), mFailures.get(), -1, -1, -1, 0);
+    }
+
+    /**
+     * loopj inflates gzip bodies itself but leaves their Content-Encoding, drop it so the header describes the body
+     */
+    private static Map<String, List<String>> decodedHeaders(Header[] headers) {
+        Map<String, List<String>> map = headers(headers);
+        List<String> contentEncoding = map.get("content-encoding");
+        if (contentEncoding != null && contentEncoding.size() == 1
+                && contentEncoding.get(0).trim().equalsIgnoreCase("gzip")) map.remove("content-encoding");
+        return map;
+    }
+
+    private static Map<String, List<String>> headers(Header[] headers) {
+        Map<String, List<String>> map = new HashMap<String, List<String>>();
+        if (headers == null) return map;
+        for (Header header : headers) {
+            String name = header.getName().toLowerCase();
+            List<String> values = map.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                map.put(name, values);
+            }
+            values.add(header.getValue());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,354 @@
+package com.walmart.products.http;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.walmart.products.util.Cancellable;
+import com.walmart.products.util.Handlers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * HttpTransport on OkHttp, HTTP/2 where the server negotiates it (https only) else HTTP/1.1 with keep-alive.
+ *
+ * Connections are pooled by the client, so the thumbnails of a page share one connection to the image host
+ * (multiplexed with HTTP/2) instead of paying a TCP and TLS handshake each.
+ *
+ * Calls that start together to a host with no connection yet would each open a connection, and with HTTP/2 all
+ * but one are thrown away after their handshake. So the first call to a host goes alone, the others to that host
+ * wait until it has its connection (or failed). A host counts as connected while a call uses its connection, and
+ * after that for the keep-alive of the pool as long as the pool still holds a connection; once its connection
+ * is gone the next call connects alone again.
+ *
+ * The connections opened and the time spent in TLS handshakes are counted with an EventListener.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+    // the OkHttp default, idle connections are evicted after it
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+
+    private final OkHttpClient mClient;
+
+    private final long mKeepAliveNanos;
+
+    // hosts a connection was made to, and the calls waiting for the first connection to a host
+    private final Map<String, HostConnection> mConnected = new HashMap<String, HostConnection>();
+
+    private final Map<String, List<Runnable>> mConnecting = new HashMap<String, List<Runnable>>();
+
+    private final AtomicLong mRequests = new AtomicLong();
+
+    private final AtomicLong mFailures = new AtomicLong();
+
+    private final AtomicLong mConnections = new AtomicLong();
+
+    private final AtomicLong mHandshakes = new AtomicLong();
+
+    private final AtomicLong mHandshakeNanos = new AtomicLong();
+
+    private final AtomicLong mHttp2Requests = new AtomicLong();
+
+    /**
+     * @param client - its connection pool and dispatcher are shared, the event listener is replaced
+     */
+    public OkHttpTransport(OkHttpClient client) {
+        this(client, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * @param client - its connection pool and dispatcher are shared, the event listener is replaced
+     * @param keepAliveMillis - the keep-alive of the connection pool of the client
+     */
+    public OkHttpTransport(OkHttpClient client, long keepAliveMillis) {
+        this.mKeepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMillis);
+        this.mClient = client.newBuilder()
+                .eventListenerFactory(new EventListener.Factory() {
+                    @Override
+                    public EventListener create(Call call) {
+                        return new Counters();
+                    }
+                })
+                .build();
+    }
+
+    public OkHttpClient client() {
+        return mClient;
+    }
+
+    // the handle of a request that failed before it was sent
+    private static final Cancellable NOT_SENT = new Cancellable() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    /** A request that may still be waiting for the first connection to its host, it is not sent once cancelled **/
+    private static final class PendingCall implements Cancellable {
+        private boolean mCancelled;
+        private Call mCall;
+        /**
+         * @return false if the request was cancelled before it was sent
+         */
+        synchronized boolean send(Call call) {
+            if (mCancelled) return false;
+            mCall = call;
+            return true;
+        }
+        @Override
+        public void cancel() {
+            Call call;
+            synchronized (this) {
+                mCancelled = true;
+                call = mCall;
+            }
+            if (call != null) call.cancel();
+        }
+    }
+
+    @Override
+    public Cancellable get(Context context, String url, Callback callback) {
+        return get(context, url, null, callback);
+    }
+
+    @Override
+    public Cancellable get(Context context, String url, Map<String, String> headers, final Callback callback) {
+        mRequests.incrementAndGet();
+        final Looper looper = Looper.myLooper();
+        final Request request;
+        try {
+            Request.Builder builder = new Request.Builder().url(url).tag(context);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    builder.header(header.getKey(), header.getValue());
+                }
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            // not an http url, fails like a request that got no response
+            mFailures.incrementAndGet();
+            deliver(looper, callback, new Response(0, null, null, e));
+            return NOT_SENT;
+        }
+        final PendingCall pendingCall = new PendingCall();
+        Runnable send = new Runnable() {
+            @Override
+            public void run() {
+                enqueue(request, pendingCall, looper, callback);
+            }
+        };
+        String host = host(request.url());
+        synchronized (mConnecting) {
+            if (!isHostConnected(host)) {
+                List<Runnable> waiting = mConnecting.get(host);
+                if (waiting != null) {
+                    waiting.add(send);
+                    return pendingCall;
+                }
+                // this call connects, the next ones wait for it
+                mConnecting.put(host, new ArrayList<Runnable>());
+            }
+        }
+        send.run();
+        return pendingCall;
+    }
+
+    private void enqueue(Request request, PendingCall pendingCall, final Looper looper, final Callback callback) {
+        Call call = mClient.newCall(request);
+        // cancelled while it waited for the connection to its host, the connecting call is never cancelled here
+        if (!pendingCall.send(call)) return;
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                // called once the headers arrived, the body is still to be read
+                long firstByteNanos = System.nanoTime();
+                // read the body here, on the dispatcher thread, the callback may be on the main thread
+                Response result;
+                ResponseBody body = response.body();
+                try {
+                    byte[] bytes = (body == null) ? new byte[0] : body.bytes();
+                    boolean answered = response.isSuccessful() || response.code() == 304;
+                    result = new Response(response.code(), headers(response.headers()), bytes,
+                            answered ? null : new IOException("http status: " + response.code()), firstByteNanos);
+                } catch (IOException e) {
+                    result = new Response(response.code(), headers(response.headers()), null, e, firstByteNanos);
+                } finally {
+                    response.close();
+                }
+                if (!result.isSuccessful() && !result.isNotModified()) mFailures.incrementAndGet();
+                deliver(looper, callback, result);
+            }
+            @Override
+            public void onFailure(Call call, IOException e) {
+                // like loopj, a cancelled request is not called back
+                if (call.isCanceled()) return;
+                mFailures.incrementAndGet();
+                deliver(looper, callback, new Response(0, null, null, e));
+            }
+        });
+    }
+
+    /** The calls of a host on its connections, and when the last one let go **/
+    private static final class HostConnection {
+        int mInUse;
+        long mReleasedNanos;
+    }
+
+    // under mConnecting
+    private boolean isHostConnected(String host) {
+        HostConnection connection = mConnected.get(host);
+        if (connection == null) return false;
+        if (connection.mInUse > 0) return true;
+        // idle, it may have been evicted since (the pool does not say which host its connections are to)
+        if (System.nanoTime() - connection.mReleasedNanos < mKeepAliveNanos
+                && mClient.connectionPool().connectionCount() > 0) return true;
+        mConnected.remove(host);
+        return false;
+    }
+
+    /**
+     * @return true if the next call to the url goes right away, the host has a connection
+     */
+    boolean isConnected(String url) {
+        synchronized (mConnecting) {
+            return isHostConnected(host(HttpUrl.get(url)));
+        }
+    }
+
+    /**
+     * Send the calls waiting for the first connection to the host.
+     * @param connected - false if the connecting call failed, the next call to the host connects again
+     */
+    private void onConnected(String host, boolean connected) {
+        List<Runnable> waiting;
+        synchronized (mConnecting) {
+            if (connected) {
+                HostConnection connection = mConnected.get(host);
+                if (connection == null) {
+                    connection = new HostConnection();
+                    mConnected.put(host, connection);
+                }
+                connection.mInUse++;
+            }
+            waiting = mConnecting.remove(host);
+        }
+        if (waiting == null) return;
+        for (Runnable send : waiting) {
+            send.run();
+        }
+    }
+
+    private void onReleased(String host) {
+        synchronized (mConnecting) {
+            HostConnection connection = mConnected.get(host);
+            if (connection == null) return;
+            connection.mInUse--;
+            connection.mReleasedNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void cancel(Context context) {
+        for (Call call : mClient.dispatcher().queuedCalls()) {
+            if (call.request().tag() == context) call.cancel();
+        }
+        for (Call call : mClient.dispatcher().runningCalls()) {
+            if (call.request().tag() == context) call.cancel();
+        }
+    }
+
+    @Override
+    public Stats stats() {
+        long handshakes = mHandshakes.get();
+        return new Stats(mRequests.get(), mFailures.get(), mConnections.get(), handshakes,
+                (handshakes == 0) ? 0 : mHandshakeNanos.get() / 1e6 / handshakes, mHttp2Requests.get());
+    }
+
+    private static String host(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+
+    private static void deliver(Looper looper, final Callback callback, final Response response) {
+        if (looper == null) {
+            callback.onResponse(response);
+            return;
+        }
+        Handlers.of(looper).post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResponse(response);
+            }
+        });
+    }
+
+    private static Map<String, List<String>> headers(Headers headers) {
+        Map<String, List<String>> map = new HashMap<String, List<String>>();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i).toLowerCase();
+            List<String> values = map.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                map.put(name, values);
+            }
+            values.add(headers.value(i));
+        }
+        return map;
+    }
+
+    /** One per call, a call opens at most one connection at a time **/
+    private class Counters extends EventListener {
+
+        private long mSecureConnectStart;
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            mConnections.incrementAndGet();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            mSecureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            mHandshakes.incrementAndGet();
+            mHandshakeNanos.addAndGet(System.nanoTime() - mSecureConnectStart);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            Protocol protocol = connection.protocol();
+            if (protocol == Protocol.HTTP_2 || protocol == Protocol.H2_PRIOR_KNOWLEDGE) mHttp2Requests.incrementAndGet();
+            onConnected(host(call.request().url()), true);
+        }
+
+        @Override
+        public void connectionReleased(Call call, Connection connection) {
+            onReleased(host(call.request().url()));
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            onConnected(host(call.request().url()), false);
+        }
+    }
+}
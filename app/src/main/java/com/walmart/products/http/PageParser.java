@@ -0,0 +1,127 @@
+package com.walmart.products.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for product pages.
+ *
+ * A JsonNode tree has a node for every field of every product, most of which the app never reads.
+ * This parser pulls tokens straight from the response bytes and keeps only the fields the service uses:
+ * nextPage, and for each item: name, shortDescription, thumbnailImage and mediumImage.
+ *
+ * A gzip or deflate page is inflated while it is parsed, see {@link ContentEncoding}.
+ * The service parses pages on its {@link ParseExecutor}.
+ */
+public final class PageParser {
+
+    // JsonFactory is thread safe and reuses its buffers and symbol tables, so share it
+    private static final JsonFactory mFactory = new JsonFactory();
+
+    private static final ProductRecord[] NO_ITEMS = new ProductRecord[0];
+
+    private static final int INITIAL_ITEMS_CAPACITY = 32;
+
+    private PageParser() {
+    }
+
+    /**
+     * @param responseBody - json, or gzip / zlib compressed json
+     */
+    public static PageRecord parsePage(byte[] responseBody) throws IOException {
+        return parsePage(responseBody, null);
+    }
+
+    /**
+     * @param contentEncoding - of the response, null to tell from the bytes
+     */
+    public static PageRecord parsePage(byte[] responseBody, String contentEncoding) throws IOException {
+        InputStream decoded = ContentEncoding.decode(responseBody, contentEncoding);
+        if (decoded == null) return parseAndClose(mFactory.createParser(responseBody));
+        JsonParser parser;
+        try {
+            // the parser reads the first bytes to detect the charset, a corrupt stream fails here
+            parser = mFactory.createParser(decoded);
+        } catch (IOException e) {
+            decoded.close();
+            throw e;
+        }
+        // closing the parser closes the stream and ends its inflater
+        return parseAndClose(parser);
+    }
+
+    private static PageRecord parseAndClose(JsonParser parser) throws IOException {
+        try {
+            return parsePage(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    public static PageRecord parsePage(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("parsePage failed - page is not a json object",
+                    parser.getCurrentLocation());
+        }
+        String nextPage = null;
+        ProductRecord[] items = NO_ITEMS;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("nextPage".equals(field)) {
+                nextPage = (value == JsonToken.VALUE_STRING) ? parser.getText() : null;
+            } else if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                items = parseItems(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new PageRecord(nextPage, items);
+    }
+
+    private static ProductRecord[] parseItems(JsonParser parser) throws IOException {
+        ProductRecord[] items = new ProductRecord[INITIAL_ITEMS_CAPACITY];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException("parseItems failed - unexpected end of input",
+                        parser.getCurrentLocation());
+            }
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren(); // not a product, ignore it
+                continue;
+            }
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = parseItem(parser);
+        }
+        return Arrays.copyOf(items, size);
+    }
+
+    private static ProductRecord parseItem(JsonParser parser) throws IOException {
+        ProductRecord item = new ProductRecord();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value != JsonToken.VALUE_STRING) {
+                parser.skipChildren();
+            } else if ("name".equals(field)) {
+                item.name = parser.getText();
+            } else if ("shortDescription".equals(field)) {
+                item.shortDescription = parser.getText();
+            } else if ("thumbnailImage".equals(field)) {
+                item.thumbnailImage = parser.getText();
+            } else if ("mediumImage".equals(field)) {
+                item.mediumImage = parser.getText();
+            }
+        }
+        return item;
+    }
+
+}
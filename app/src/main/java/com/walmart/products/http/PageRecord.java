@@ -0,0 +1,31 @@
+package com.walmart.products.http;
+
+/**
+ * Compact result of streaming a product page, see {@link PageParser}.
+ */
+public class PageRecord {
+
+    private final String mNextPage;
+
+    private final ProductRecord[] mItems;
+
+    public PageRecord(String nextPage, ProductRecord[] items) {
+        this.mNextPage = nextPage;
+        this.mItems = items;
+    }
+
+    /**
+     * @return the cursor url of the next page, or null if there is none.
+     */
+    public String nextPage() {
+        return mNextPage;
+    }
+
+    public ProductRecord[] items() {
+        return mItems;
+    }
+
+    public int size() {
+        return mItems.length;
+    }
+}
@@ -0,0 +1,201 @@
+package com.walmart.products.http;
+
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The threads page responses are parsed on, see {@link PageParser}.
+ *
+ * A fixed number of threads (idle ones time out) and a bounded queue. When the queue is full the parse
+ * goes to a single overflow thread with a bounded queue of its own: the thread delivering the response may be
+ * the main thread, it must not parse. When that queue is full too, the caller parses if it is not the main thread,
+ * which slows down whoever delivers the responses. The main thread gets a RejectedExecutionException instead,
+ * like it does once the executor is shut down, so the caller can fail the response instead of waiting for a parse
+ * that never runs.
+ *
+ * Counts the threads it created (the overflow thread too), the queue depth, the overflows, the parses run by
+ * their caller and how long parses waited and ran, see {@link #stats()}.
+ */
+public class ParseExecutor extends ThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final AtomicInteger mThreadsCreated = new AtomicInteger();
+
+    private final AtomicInteger mMaxQueued = new AtomicInteger();
+
+    private final AtomicLong mCompleted = new AtomicLong();
+
+    private final AtomicLong mOverflowRuns = new AtomicLong();
+
+    private final AtomicLong mCallerRuns = new AtomicLong();
+
+    private final AtomicLong mWaitNanos = new AtomicLong();
+
+    private final AtomicLong mParseNanos = new AtomicLong();
+
+    private final AtomicLong mMaxParseNanos = new AtomicLong();
+
+    // parses the pool had no room for, on one thread that times out when idle
+    private final ThreadPoolExecutor mOverflow;
+
+    /**
+     * @param threads - parse threads, i.e. WalmartServiceConfig.PARSE_THREADS
+     * @param queueSize - parses waiting for a thread before they overflow, i.e. PARSE_QUEUE_SIZE.
+     *                  The overflow thread queues as many.
+     */
+    public ParseExecutor(int threads, int queueSize) {
+        super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+        allowCoreThreadTimeOut(true);
+        setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return parseThread(r, "parse-" + mThreadsCreated.incrementAndGet());
+            }
+        });
+        mOverflow = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+        mOverflow.allowCoreThreadTimeOut(true);
+        mOverflow.setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return parseThread(r, "parse-overflow-" + mThreadsCreated.incrementAndGet());
+            }
+        });
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("parse executor is shut down");
+                }
+                try {
+                    mOverflow.execute(r);
+                    mOverflowRuns.incrementAndGet();
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // the overflow queue is full too
+                }
+                if (isMainThread()) {
+                    throw new RejectedExecutionException("parse queues are full");
+                }
+                mCallerRuns.incrementAndGet();
+                r.run();
+            }
+        });
+    }
+
+    private static boolean isMainThread() {
+        Looper looper = Looper.myLooper();
+        return looper != null && looper == Looper.getMainLooper();
+    }
+
+    @Override
+    public void execute(final Runnable parser) {
+        final long queuedAt = System.nanoTime();
+        super.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                mWaitNanos.addAndGet(start - queuedAt);
+                try {
+                    parser.run();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    mParseNanos.addAndGet(elapsed);
+                    updateMax(mMaxParseNanos, elapsed);
+                    mCompleted.incrementAndGet();
+                }
+            }
+        });
+        updateMax(mMaxQueued, getQueue().size());
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        mOverflow.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> never = new ArrayList<Runnable>(super.shutdownNow());
+        never.addAll(mOverflow.shutdownNow());
+        return never;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return super.awaitTermination(timeout, unit)
+                && mOverflow.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private static Thread parseThread(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        // below the main thread, parsing must not steal frames
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    }
+
+    public Stats stats() {
+        return new Stats(this);
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {}
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {}
+    }
+
+    /** Snapshot of the executor counters **/
+    public static class Stats {
+        public final int threadsCreated;
+        public final int queued;
+        public final int maxQueued;
+        public final long completed;
+        public final long overflowRuns;
+        public final long callerRuns;
+        public final double avgWaitMillis;
+        public final double avgParseMillis;
+        public final double maxParseMillis;
+        Stats(ParseExecutor executor) {
+            threadsCreated = executor.mThreadsCreated.get();
+            queued = executor.getQueue().size();
+            maxQueued = executor.mMaxQueued.get();
+            completed = executor.mCompleted.get();
+            overflowRuns = executor.mOverflowRuns.get();
+            callerRuns = executor.mCallerRuns.get();
+            avgWaitMillis = (completed == 0) ? 0 : executor.mWaitNanos.get() / 1e6 / completed;
+            avgParseMillis = (completed == 0) ? 0 : executor.mParseNanos.get() / 1e6 / completed;
+            maxParseMillis = executor.mMaxParseNanos.get() / 1e6;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("threadsCreated: ").append(threadsCreated);
+            sb.append(", queued: ").append(queued);
+            sb.append(", maxQueued: ").append(maxQueued);
+            sb.append(", completed: ").append(completed);
+            sb.append(", overflowRuns: ").append(overflowRuns);
+            sb.append(", callerRuns: ").append(callerRuns);
+            sb.append(", avgWaitMillis: ").append(avgWaitMillis);
+            sb.append(", avgParseMillis: ").append(avgParseMillis);
+            sb.append(", maxParseMillis: ").append(maxParseMillis);
+            return sb.toString();
+        }
+    }
+}
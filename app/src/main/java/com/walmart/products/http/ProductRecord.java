@@ -0,0 +1,16 @@
+package com.walmart.products.http;
+
+/**
+ * The fields of a single product that the app actually uses, everything else is skipped by the parser.
+ */
+public class ProductRecord {
+
+    public String name;
+
+    public String shortDescription;
+
+    public String thumbnailImage;
+
+    public String mediumImage;
+
+}
@@ -0,0 +1,152 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Two tier Bitmap cache keyed by image url, thumbnails and medium images each have their own byte budget.
+ *
+ * Bitmaps are evicted independently of the page cache, so a page that is evicted and reloaded
+ * reuses the thumbnails that are still cached instead of downloading all of them again.
+ *
+ * Thumbnails evicted from the cache are given back to the BitmapPool to be decoded into again,
+ * rows showing a thumbnail must get it with acquireThumbnail and give it back with releaseThumbnail.
+ *
+ * Both tiers are LruCaches and therefore thread safe. The urls of the cached thumbnails are also kept aside,
+ * so a check for a thumbnail neither counts as a hit or miss nor makes it the most recently used.
+ */
+public class BitmapCache {
+
+    private final Tier mThumbnails;
+
+    private final Tier mMediumImages;
+
+    private final BitmapPool mPool;
+
+    public BitmapCache(int thumbnailBytes, int mediumImageBytes, final BitmapPool pool) {
+        mPool = pool;
+        mThumbnails = new Tier(thumbnailBytes) {
+            @Override
+            protected void entryRemoved(boolean evicted, String url, Bitmap oldValue, Bitmap newValue) {
+                super.entryRemoved(evicted, url, oldValue, newValue);
+                if (oldValue != newValue) pool.put(oldValue);
+            }
+        };
+        mMediumImages = new Tier(mediumImageBytes);
+    }
+
+    public Bitmap getThumbnail(String url) {
+        return mThumbnails.get(url);
+    }
+
+    /**
+     * A thumbnail put or evicted at the same time may be reported missing, it is then loaded again.
+     * @param url
+     * @return true if the thumbnail is cached, the hit and miss counts and the LRU order are left alone
+     */
+    public boolean containsThumbnail(String url) {
+        return mThumbnails.contains(url);
+    }
+
+    /**
+     * Get a thumbnail to show, it will not be reused by the BitmapPool until it is released.
+     * @param url
+     * @return thumbnail or null if not in cache
+     */
+    public Bitmap acquireThumbnail(String url) {
+        // holding the pool lock, an eviction between the get and the acquire waits in pool.put until it is acquired
+        synchronized (mPool) {
+            Bitmap bmp = mThumbnails.get(url);
+            if (bmp != null) mPool.acquire(bmp);
+            return bmp;
+        }
+    }
+
+    public void releaseThumbnail(Bitmap bmp) {
+        mPool.release(bmp);
+    }
+
+    public void putThumbnail(String url, Bitmap bmp) {
+        mThumbnails.putUrl(url, bmp);
+    }
+
+    public Bitmap getMediumImage(String url) {
+        return mMediumImages.get(url);
+    }
+
+    public void putMediumImage(String url, Bitmap bmp) {
+        mMediumImages.putUrl(url, bmp);
+    }
+
+    public Stats thumbnailStats() {
+        return new Stats(mThumbnails);
+    }
+
+    public Stats mediumImageStats() {
+        return new Stats(mMediumImages);
+    }
+
+    public BitmapPool.Stats poolStats() {
+        return mPool.stats();
+    }
+
+    public void evictAll() {
+        mThumbnails.evictAll();
+        mMediumImages.evictAll();
+        mPool.clear();
+    }
+
+    private static class Tier extends LruCache<String, Bitmap> {
+        // the keys, LruCache has no lookup that leaves its counters and order alone
+        private final Set<String> mUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        Tier(int maxBytes) {
+            super(maxBytes);
+        }
+        // put is final, the url is added first so an eviction of the new entry removes it again
+        void putUrl(String url, Bitmap bmp) {
+            mUrls.add(url);
+            put(url, bmp);
+        }
+        boolean contains(String url) {
+            return mUrls.contains(url);
+        }
+        @Override
+        protected void entryRemoved(boolean evicted, String url, Bitmap oldValue, Bitmap newValue) {
+            // a replaced url is still cached
+            if (newValue == null) mUrls.remove(url);
+        }
+        @Override
+        protected int sizeOf(String url, Bitmap bmp) {
+            return bmp.getAllocationByteCount();
+        }
+    }
+
+    /** Snapshot of the counters of one tier **/
+    public static class Stats {
+        public final int hits;
+        public final int misses;
+        public final int evictions;
+        public final int bytes;
+        public final int maxBytes;
+        Stats(LruCache<?, ?> cache) {
+            // LruCache methods are synchronized individually, so the snapshot is not atomic
+            hits = cache.hitCount();
+            misses = cache.missCount();
+            evictions = cache.evictionCount();
+            bytes = cache.size();
+            maxBytes = cache.maxSize();
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("hits: ").append(hits);
+            sb.append(", misses: ").append(misses);
+            sb.append(", evictions: ").append(evictions);
+            sb.append(", bytes: ").append(bytes).append('/').append(maxBytes);
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.walmart.products.util.Function;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.walmart.products.service.WalmartServiceConfig.DECODE_THREADS;
+import static com.walmart.products.service.WalmartServiceConfig.RGB_565_MAX_PIXELS;
+
+/**
+ * Decodes image bytes into a bitmap no larger than the view it is shown in.
+ *
+ * The bounds are read first, then the image is decoded with the largest power of two
+ * inSampleSize that keeps it at least as big as the target, so a 450x450 product image
+ * shown in a 100dp thumbnail costs a fraction of its full resolution.
+ * Small targets are decoded as RGB_565 (product images have no alpha, and banding does not show at that size).
+ * Thumbnails are decoded into bitmaps from the BitmapPool when one fits, see BitmapCache.
+ *
+ * Decoding runs on a bounded pool, never on the http callback or main thread.
+ */
+public class BitmapDecoder {
+
+    /** The size (in pixels) and pixel format to decode an image for **/
+    public static class Target {
+        public final int width;
+        public final int height;
+        public final Bitmap.Config config;
+
+        public Target(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.config = configFor(width, height);
+        }
+    }
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+
+    private final Target mThumbnail;
+
+    private final Target mMediumImage;
+
+    private final BitmapPool mPool;
+
+    /**
+     * @param thumbnail - the size of the R.id.thumb view
+     * @param mediumImage - the size of the R.id.detail_image view
+     * @param pool - thumbnails are decoded into bitmaps from this pool
+     */
+    public BitmapDecoder(Target thumbnail, Target mediumImage, BitmapPool pool) {
+        this.mThumbnail = thumbnail;
+        this.mMediumImage = mediumImage;
+        this.mPool = pool;
+    }
+
+    public Target thumbnail() {
+        return mThumbnail;
+    }
+
+    public Target mediumImage() {
+        return mMediumImage;
+    }
+
+    /**
+     * Decode on the decode pool.
+     * @param data
+     * @param target
+     * @param onComplete - called on a decode thread, args[0] is the bitmap or null if data is not an image
+     */
+    public void decode(final byte[] data, final Target target, final Function onComplete) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onComplete.call(decode(data, target, (target == mThumbnail) ? mPool : null));
+            }
+        });
+    }
+
+    /**
+     * Decode on the calling thread.
+     * @param pool - if not null the image is decoded into a pooled bitmap when one fits, the result is mutable.
+     * @return the bitmap or null if data is not an image
+     */
+    public static Bitmap decode(byte[] data, Target target, BitmapPool pool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, target.width, target.height);
+        options.inPreferredConfig = target.config;
+        if (pool == null) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        // only mutable bitmaps can be decoded into later
+        options.inMutable = true;
+        options.inBitmap = pool.get(byteCount(options.outWidth, options.outHeight, options.inSampleSize, target.config));
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap could not be reused after all (i.e. the decoder rounds the size up), allocate.
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * @return the bytes a bitmap needs to decode an image of width x height at inSampleSize
+     */
+    public static int byteCount(int width, int height, int inSampleSize, Bitmap.Config config) {
+        int sampledWidth = (width + inSampleSize - 1) / inSampleSize;
+        int sampledHeight = (height + inSampleSize - 1) / inSampleSize;
+        return sampledWidth * sampledHeight * bytesPerPixel(config);
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) return 1;
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) return 2;
+        return 4;
+    }
+
+    /**
+     * @return the largest power of two that keeps both dimensions at least as big as the requested ones
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) return inSampleSize;
+        while ((width / (inSampleSize * 2)) >= reqWidth && (height / (inSampleSize * 2)) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    public static Bitmap.Config configFor(int reqWidth, int reqHeight) {
+        return ((long) reqWidth * reqHeight <= RGB_565_MAX_PIXELS) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+}
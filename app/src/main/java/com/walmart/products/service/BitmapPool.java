@@ -0,0 +1,167 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Thumbnails evicted from the BitmapCache, kept to be decoded into again (BitmapFactory.Options.inBitmap)
+ * instead of allocating a new bitmap for every thumbnail of every page that is loaded.
+ *
+ * A bitmap that is still shown by a row must never be reused, rows acquire the bitmap they show and release it
+ * when they are rebound or recycled. A bitmap evicted while acquired only enters the pool once it is released.
+ * Bound bitmaps are weakly referenced, so a row that is never released (i.e. the activity is destroyed) does not leak.
+ *
+ * This class is thread-safe.
+ */
+public class BitmapPool {
+
+    private final int mMaxBytes;
+
+    private int mBytes;
+
+    // oldest first, small (a few hundred bitmaps at most), so a linear scan for the best fit is fine
+    private final List<Bitmap> mFree = new ArrayList<Bitmap>();
+
+    // acquire count of bitmaps shown by rows, Bitmap does not override equals so this is by identity
+    private final Map<Bitmap, Integer> mBound = new WeakHashMap<Bitmap, Integer>();
+
+    private final Set<Bitmap> mEvictedWhileBound = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+
+    private int mHits;
+
+    private int mMisses;
+
+    private int mDeferred;
+
+    private int mDropped;
+
+    public BitmapPool(int maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Take a bitmap to decode into, it is removed from the pool.
+     * @param byteCount - the bytes the decoded image needs
+     * @return the smallest pooled bitmap of at least byteCount or null if none
+     */
+    public synchronized Bitmap get(int byteCount) {
+        int best = -1;
+        for (int i = 0; i < mFree.size(); i++) {
+            int size = mFree.get(i).getAllocationByteCount();
+            if (size >= byteCount && (best < 0 || size < mFree.get(best).getAllocationByteCount())) {
+                best = i;
+                if (size == byteCount) break;
+            }
+        }
+        if (best < 0) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        Bitmap bmp = mFree.remove(best);
+        mBytes -= bmp.getAllocationByteCount();
+        return bmp;
+    }
+
+    /**
+     * Give back a bitmap that is no longer cached, it is pooled as soon as no row shows it.
+     * Only mutable bitmaps can be decoded into, others are left for the GC.
+     * @param bmp
+     */
+    public synchronized void put(Bitmap bmp) {
+        if (bmp == null || bmp.isRecycled() || !bmp.isMutable()) return;
+        if (mBound.containsKey(bmp)) {
+            mDeferred++;
+            mEvictedWhileBound.add(bmp);
+            return;
+        }
+        addFree(bmp);
+    }
+
+    /**
+     * Mark a bitmap as shown, it will not be reused until released.
+     * @param bmp
+     */
+    public synchronized void acquire(Bitmap bmp) {
+        Integer count = mBound.get(bmp);
+        mBound.put(bmp, (count == null) ? 1 : count + 1);
+    }
+
+    /**
+     * The bitmap is no longer shown by the row that acquired it.
+     * @param bmp
+     */
+    public synchronized void release(Bitmap bmp) {
+        Integer count = mBound.get(bmp);
+        if (count == null) return;
+        if (count > 1) {
+            mBound.put(bmp, count - 1);
+            return;
+        }
+        mBound.remove(bmp);
+        if (mEvictedWhileBound.remove(bmp)) addFree(bmp);
+    }
+
+    public synchronized boolean isAcquired(Bitmap bmp) {
+        return mBound.containsKey(bmp);
+    }
+
+    public synchronized void clear() {
+        mFree.clear();
+        mBytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(this);
+    }
+
+    private void addFree(Bitmap bmp) {
+        int size = bmp.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            mDropped++;
+            return;
+        }
+        while (mBytes + size > mMaxBytes) {
+            mBytes -= mFree.remove(0).getAllocationByteCount();
+            mDropped++;
+        }
+        mFree.add(bmp);
+        mBytes += size;
+    }
+
+    /** Snapshot of the pool counters **/
+    public static class Stats {
+        public final int hits;
+        public final int misses;
+        public final int deferred;
+        public final int dropped;
+        public final int bitmaps;
+        public final int bytes;
+        public final int maxBytes;
+        Stats(BitmapPool pool) {
+            hits = pool.mHits;
+            misses = pool.mMisses;
+            deferred = pool.mDeferred;
+            dropped = pool.mDropped;
+            bitmaps = pool.mFree.size();
+            bytes = pool.mBytes;
+            maxBytes = pool.mMaxBytes;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("hits: ").append(hits);
+            sb.append(", misses: ").append(misses);
+            sb.append(", deferred: ").append(deferred);
+            sb.append(", dropped: ").append(dropped);
+            sb.append(", bitmaps: ").append(bitmaps);
+            sb.append(", bytes: ").append(bytes).append('/').append(maxBytes);
+            return sb.toString();
+        }
+    }
+}
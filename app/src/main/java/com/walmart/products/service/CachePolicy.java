@@ -0,0 +1,39 @@
+package com.walmart.products.service;
+
+/**
+ * Decides which page the {@link PageCache} evicts, see LruPolicy, TinyLfuPolicy and ViewportPolicy.
+ *
+ * The cache tells the policy about every get, put and removal and asks it for a victim while it is over its budget.
+ * A policy only orders page numbers, the cache keeps the pages and their sizes.
+ *
+ * Policies are not thread-safe, the PageCache calls them under its lock.
+ */
+public interface CachePolicy {
+
+    /**
+     * A get of the page.
+     * @param hit - true if the page is in the cache
+     */
+    void onAccess(int pageNum, boolean hit);
+
+    /**
+     * The page was added to the cache.
+     */
+    void onInsert(int pageNum);
+
+    /**
+     * The page left the cache, evicted or removed.
+     */
+    void onRemove(int pageNum);
+
+    /**
+     * Called while the cache is over its budget, the page returned is removed right after.
+     * @return the page to evict, -1 if no page may be evicted (the cache stays over its budget for now)
+     */
+    int victim();
+
+    /**
+     * The pages on screen, first to last, i.e. to keep them. Called as the user scrolls.
+     */
+    void onVisibleRange(int firstPage, int lastPage);
+}
@@ -0,0 +1,212 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Limits the number of requests in flight to what the network keeps up with, learned from their latency.
+ *
+ * Vegas-style: the lowest latency seen is the latency of an idle network, the latency above it is time spent
+ * queued somewhere (the radio, the server, the parse and decode threads). The queued requests are estimated
+ * as limit * (1 - minRtt / rtt), when fewer than ALPHA are queued and the limit is used the limit grows by one,
+ * when more than BETA are queued it shrinks by one. A failed request halves it (AIMD).
+ * The lowest latency is forgotten every RTT_WINDOW samples, so a network that became slower is noticed.
+ *
+ * Requests either go through {@link #execute(Request)} (first in first out), or a scheduler of its own
+ * calls {@link #tryAcquire()} and {@link #release()}. Either way the latencies are reported with {@link #onSample(long, boolean)}.
+ *
+ * This class is thread-safe.
+ */
+public class ConcurrencyLimiter {
+
+    /** A request started once a slot is free, see {@link #execute(Request)} **/
+    public static abstract class Request {
+        /**
+         * Start the request, onDone must be called exactly once when it finished (either way).
+         * @param onDone
+         */
+        protected abstract void start(Function onDone);
+    }
+
+    // queued requests below which the limit grows, and above which it shrinks
+    static final double ALPHA = 1;
+    static final double BETA = 3;
+
+    // samples after which the lowest latency is learned again
+    static final int RTT_WINDOW = 100;
+
+    private final int mMinLimit;
+
+    private final int mMaxLimit;
+
+    private final Queue<Request> mQueue = new ArrayDeque<Request>();
+
+    private int mLimit;
+
+    private int mInFlight;
+
+    private long mMinRtt;
+
+    private long mWindowMinRtt;
+
+    private long mLastRtt;
+
+    private int mWindowSamples;
+
+    private long mSamples;
+
+    private long mFailures;
+
+    private long mIncreases;
+
+    private long mDecreases;
+
+    /**
+     * @param initialLimit - the limit until samples come in
+     * @param minLimit - at least 1
+     * @param maxLimit
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("invalid limits - min: " + minLimit + ", max: " + maxLimit);
+        }
+        this.mMinLimit = minLimit;
+        this.mMaxLimit = maxLimit;
+        this.mLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * @return a limiter that never changes its limit
+     */
+    public static ConcurrencyLimiter fixed(int limit) {
+        return new ConcurrencyLimiter(limit, limit, limit);
+    }
+
+    /**
+     * Start the request once the number in flight is below the limit, in the order they were executed.
+     * @param request
+     */
+    public void execute(Request request) {
+        synchronized (this) {
+            mQueue.add(request);
+        }
+        dispatch();
+    }
+
+    /**
+     * @return true if a slot was taken, it must be given back with {@link #release()}
+     */
+    public synchronized boolean tryAcquire() {
+        if (mInFlight >= mLimit) return false;
+        mInFlight++;
+        return true;
+    }
+
+    public void release() {
+        synchronized (this) {
+            mInFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * @param rttNanos - from sending the request to having its response
+     * @param failed - the request failed (i.e. timed out), sampled before it is released
+     */
+    public synchronized void onSample(long rttNanos, boolean failed) {
+        mSamples++;
+        if (failed) {
+            mFailures++;
+            setLimit(mLimit / 2);
+            return;
+        }
+        if (rttNanos <= 0) return;
+        mLastRtt = rttNanos;
+        if (mWindowMinRtt == 0 || rttNanos < mWindowMinRtt) mWindowMinRtt = rttNanos;
+        if (mMinRtt == 0 || rttNanos < mMinRtt) mMinRtt = rttNanos;
+        if (++mWindowSamples >= RTT_WINDOW) {
+            mMinRtt = mWindowMinRtt;
+            mWindowMinRtt = 0;
+            mWindowSamples = 0;
+        }
+        double queued = mLimit * (1 - (double) mMinRtt / rttNanos);
+        if (queued < ALPHA) {
+            // only grow a limit that is used, an idle network says nothing about more load
+            if (mInFlight >= mLimit) setLimit(mLimit + 1);
+        } else if (queued > BETA) {
+            setLimit(mLimit - 1);
+        }
+    }
+
+    public synchronized int limit() {
+        return mLimit;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(this);
+    }
+
+    private void setLimit(int limit) {
+        limit = Math.max(mMinLimit, Math.min(limit, mMaxLimit));
+        if (limit > mLimit) mIncreases++;
+        if (limit < mLimit) mDecreases++;
+        mLimit = limit;
+    }
+
+    private void dispatch() {
+        while (true) {
+            final Request request;
+            synchronized (this) {
+                if (mQueue.isEmpty() || mInFlight >= mLimit) return;
+                request = mQueue.remove();
+                mInFlight++;
+            }
+            // outside the lock, start() calls into the http client
+            request.start(new Function() {
+                @Override
+                public void call(Object... args) {
+                    release();
+                }
+            });
+        }
+    }
+
+    /** Snapshot of the limiter counters **/
+    public static class Stats {
+        public final int limit;
+        public final int inFlight;
+        public final int queued;
+        public final double minRttMillis;
+        public final double lastRttMillis;
+        public final long samples;
+        public final long failures;
+        public final long increases;
+        public final long decreases;
+        Stats(ConcurrencyLimiter limiter) {
+            limit = limiter.mLimit;
+            inFlight = limiter.mInFlight;
+            queued = limiter.mQueue.size();
+            minRttMillis = limiter.mMinRtt / 1e6;
+            lastRttMillis = limiter.mLastRtt / 1e6;
+            samples = limiter.mSamples;
+            failures = limiter.mFailures;
+            increases = limiter.mIncreases;
+            decreases = limiter.mDecreases;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("limit: ").append(limit);
+            sb.append(", inFlight: ").append(inFlight);
+            sb.append(", queued: ").append(queued);
+            sb.append(", minRttMillis: ").append(minRttMillis);
+            sb.append(", lastRttMillis: ").append(lastRttMillis);
+            sb.append(", samples: ").append(samples);
+            sb.append(", failures: ").append(failures);
+            sb.append(", increases: ").append(increases);
+            sb.append(", decreases: ").append(decreases);
+            return sb.toString();
+        }
+    }
+}
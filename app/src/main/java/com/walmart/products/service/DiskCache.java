@@ -0,0 +1,430 @@
+package com.walmart.products.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Disk backed LRU cache of raw response bytes (page json and image source bytes),
+ * plus the pageNum -> cursor url map so deep-scrolled pages can be reloaded after the process dies.
+ *
+ * Every change is appended to a journal which is replayed on open:
+ *
+ *  PUT key length timestamp [etag\tlastModified] - entry file written, with the validators of the response
+ *  GET key                  - entry read, moves it to the end of the LRU order
+ *  DEL key                  - entry evicted
+ *  URL pageNum url          - cursor url of a page
+ *
+ * Entries older than the maxAge of a get are not returned, but keep their bytes and validators
+ * (see {@link #validators(String)}) so a conditional request can revalidate them, see {@link #touch(String, Validators)}.
+ *
+ * Once the total size exceeds maxBytes the least recently used entries are deleted.
+ * The journal is rewritten from the live entries when it grows too much.
+ *
+ * The journal is replayed by {@link #open()}, or else by the first method that needs the entries, so the cache
+ * can be created on the main thread and opened on {@link #executor()}.
+ *
+ * Methods are synchronized and do disk I/O, call them from {@link #executor()} or another background thread.
+ */
+public class DiskCache {
+
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+
+    private static final String PUT = "PUT";
+    private static final String GET = "GET";
+    private static final String DEL = "DEL";
+    private static final String URL = "URL";
+
+    // rewrite the journal once it has this many redundant lines
+    private static final int COMPACT_THRESHOLD = 2000;
+
+    private final File mDirectory;
+
+    private final long mMaxBytes;
+
+    // key -> entry, in access order, eldest first
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+
+    private final Map<Integer, String> mPageUrls = new HashMap<Integer, String>();
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private long mSize;
+
+    private int mRedundantLines;
+
+    private Writer mJournal;
+
+    public DiskCache(File directory, long maxBytes) {
+        this.mDirectory = directory;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Single background thread for disk I/O.
+     * @return
+     */
+    public ExecutorService executor() {
+        return mExecutor;
+    }
+
+    /**
+     * Replay the journal, the other methods open the cache if it is not open yet. Does nothing once open.
+     * @throws IOException
+     */
+    public synchronized void open() throws IOException {
+        if (mJournal != null) return;
+        // a cache closed and opened again replays the journal from scratch
+        mEntries.clear();
+        mPageUrls.clear();
+        mSize = 0;
+        mRedundantLines = 0;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("open failed - could not create: " + mDirectory);
+        }
+        File journal = new File(mDirectory, JOURNAL);
+        if (journal.exists()) {
+            readJournal(journal);
+        }
+        mJournal = new FileWriter(journal, true);
+        trimToSize();
+    }
+
+    public synchronized void close() throws IOException {
+        if (mJournal != null) {
+            mJournal.close();
+            mJournal = null;
+        }
+    }
+
+    /**
+     * @param key
+     * @param maxAgeMillis - entries written (or touched) longer ago than this are treated as missing
+     * @return the cached bytes or null
+     * @throws IOException
+     */
+    public synchronized byte[] get(String key, long maxAgeMillis) throws IOException {
+        open();
+        String hash = hash(key);
+        Entry entry = mEntries.get(hash);
+        if (entry == null) return null;
+        if (now() - entry.timestamp > maxAgeMillis) return null;
+        File file = new File(mDirectory, hash);
+        if (!file.exists()) {
+            remove(hash);
+            return null;
+        }
+        byte[] data = readFully(file, entry.length);
+        // only the order matters, a compacted journal keeps it without the line
+        appendJournal(GET, hash);
+        mRedundantLines++;
+        compactIfNeeded();
+        return data;
+    }
+
+    public synchronized void put(String key, byte[] data) throws IOException {
+        put(key, data, Validators.NONE);
+    }
+
+    /**
+     * @param validators - of the response the data came from, sent when the entry is revalidated
+     */
+    public synchronized void put(String key, byte[] data, Validators validators) throws IOException {
+        open();
+        String hash = hash(key);
+        File file = new File(mDirectory, hash);
+        File tmp = new File(mDirectory, hash + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("put failed - could not rename: " + tmp);
+        }
+        Entry entry = new Entry(data.length, now(), validators);
+        Entry old = mEntries.put(hash, entry);
+        if (old != null) {
+            mSize -= old.length;
+            mRedundantLines++;
+        }
+        mSize += data.length;
+        appendJournal(PUT, hash + " " + entry);
+        trimToSize();
+    }
+
+    /**
+     * @return the validators of the entry whatever its age, Validators.NONE if there is no entry or it has none
+     */
+    public synchronized Validators validators(String key) {
+        openQuietly();
+        Entry entry = mEntries.get(hash(key));
+        return (entry == null) ? Validators.NONE : entry.validators;
+    }
+
+    /**
+     * The server said the entry did not change (a 304), it is fresh again.
+     * @param validators - of the 304, Validators.NONE keeps the ones of the entry
+     * @return false if the entry is gone (i.e. evicted while revalidating), its bytes must be fetched again
+     */
+    public synchronized boolean touch(String key, Validators validators) throws IOException {
+        open();
+        String hash = hash(key);
+        Entry old = mEntries.get(hash);
+        if (old == null || !new File(mDirectory, hash).exists()) return false;
+        Entry entry = new Entry(old.length, now(), validators.isEmpty() ? old.validators : validators);
+        mEntries.put(hash, entry);
+        mRedundantLines++;
+        appendJournal(PUT, hash + " " + entry);
+        compactIfNeeded();
+        return true;
+    }
+
+    public synchronized void putPageUrl(int pageNum, String url) throws IOException {
+        open();
+        String old = mPageUrls.put(pageNum, url);
+        if (url.equals(old)) return;
+        if (old != null) mRedundantLines++;
+        appendJournal(URL, pageNum + " " + url);
+        compactIfNeeded();
+    }
+
+    /**
+     * @return a copy of the pageNum -> cursor url map as of the last open or put.
+     */
+    public synchronized Map<Integer, String> pageUrls() {
+        openQuietly();
+        return new HashMap<Integer, String>(mPageUrls);
+    }
+
+    public synchronized long size() {
+        openQuietly();
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @return the time entries are stamped with and aged against
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * For the methods that do not throw, a cache that does not open is empty.
+     */
+    private void openQuietly() {
+        try {
+            open();
+        } catch (IOException e) {
+            // the next method tries again, the ones that throw report it
+        }
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(journal));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 3);
+                try {
+                    if (PUT.equals(parts[0]) && parts.length == 3) {
+                        String[] values = parts[2].split(" ", 3);
+                        Entry old = mEntries.put(parts[1], new Entry(Integer.parseInt(values[0]), Long.parseLong(values[1]),
+                                (values.length == 3) ? Validators.parse(values[2]) : Validators.NONE));
+                        if (old != null) mSize -= old.length;
+                        mSize += Integer.parseInt(values[0]);
+                    } else if (GET.equals(parts[0]) && parts.length == 2) {
+                        mEntries.get(parts[1]);
+                    } else if (DEL.equals(parts[0]) && parts.length == 2) {
+                        Entry old = mEntries.remove(parts[1]);
+                        if (old != null) mSize -= old.length;
+                    } else if (URL.equals(parts[0]) && parts.length == 3) {
+                        mPageUrls.put(Integer.parseInt(parts[1]), parts[2]);
+                    }
+                } catch (RuntimeException e) {
+                    // a torn line from a crash mid-append, skip it
+                }
+                mRedundantLines++;
+            }
+        } finally {
+            reader.close();
+        }
+        mRedundantLines -= mEntries.size() + mPageUrls.size();
+        // drop entries whose file went missing (e.g. the system cleared the cache dir)
+        Iterator<Map.Entry<String, Entry>> iter = mEntries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Entry> entry = iter.next();
+            if (!new File(mDirectory, entry.getKey()).exists()) {
+                mSize -= entry.getValue().length;
+                iter.remove();
+            }
+        }
+    }
+
+    private void trimToSize() throws IOException {
+        Iterator<Map.Entry<String, Entry>> iter = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && iter.hasNext()) {
+            Map.Entry<String, Entry> eldest = iter.next();
+            iter.remove();
+            mSize -= eldest.getValue().length;
+            new File(mDirectory, eldest.getKey()).delete();
+            appendJournal(DEL, eldest.getKey());
+            mRedundantLines += 2;
+        }
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (mRedundantLines > COMPACT_THRESHOLD) {
+            rewriteJournal();
+        }
+    }
+
+    private void remove(String hash) throws IOException {
+        Entry old = mEntries.remove(hash);
+        if (old != null) {
+            mSize -= old.length;
+            new File(mDirectory, hash).delete();
+            appendJournal(DEL, hash);
+            mRedundantLines += 2;
+        }
+    }
+
+    private void appendJournal(String op, String args) throws IOException {
+        if (mJournal == null) throw new IOException("DiskCache is not open");
+        mJournal.write(op);
+        mJournal.write(' ');
+        mJournal.write(args);
+        mJournal.write('\n');
+        mJournal.flush();
+    }
+
+    private void rewriteJournal() throws IOException {
+        if (mJournal != null) mJournal.close();
+        File tmp = new File(mDirectory, JOURNAL_TMP);
+        Writer writer = new FileWriter(tmp, false);
+        try {
+            for (Map.Entry<Integer, String> url : mPageUrls.entrySet()) {
+                writer.write(URL + " " + url.getKey() + " " + url.getValue() + "\n");
+            }
+            // eldest first, so the replay rebuilds the same LRU order
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        File journal = new File(mDirectory, JOURNAL);
+        if (!tmp.renameTo(journal)) {
+            throw new IOException("rewriteJournal failed - could not rename: " + tmp);
+        }
+        mJournal = new FileWriter(journal, true);
+        mRedundantLines = 0;
+    }
+
+    private static byte[] readFully(File file, int length) throws IOException {
+        byte[] data = new byte[length];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(data, offset, length - offset);
+                if (read < 0) throw new IOException("readFully failed - truncated: " + file);
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** The ETag and Last-Modified of a response, either may be null **/
+    public static class Validators {
+
+        public static final Validators NONE = new Validators(null, null);
+
+        public final String etag;
+        public final String lastModified;
+
+        public Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public boolean isEmpty() {
+            return etag == null && lastModified == null;
+        }
+
+        static Validators parse(String journal) {
+            String[] values = journal.split("\t", -1);
+            String etag = values[0].isEmpty() ? null : values[0];
+            String lastModified = (values.length < 2 || values[1].isEmpty()) ? null : values[1];
+            return (etag == null && lastModified == null) ? NONE : new Validators(etag, lastModified);
+        }
+
+        /**
+         * @return as written to the journal, a header value has no tabs or line breaks
+         */
+        @Override
+        public String toString() {
+            return (etag == null ? "" : etag) + "\t" + (lastModified == null ? "" : lastModified);
+        }
+    }
+
+    private static class Entry {
+        final int length;
+        final long timestamp;
+        final Validators validators;
+        Entry(int length, long timestamp, Validators validators) {
+            this.length = length;
+            this.timestamp = timestamp;
+            this.validators = validators;
+        }
+        /**
+         * @return the PUT line after the key
+         */
+        @Override
+        public String toString() {
+            String line = length + " " + timestamp;
+            return validators.isEmpty() ? line : line + " " + validators;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static com.walmart.products.service.WalmartServiceConfig.PAGE_SIZE;
+
+/**
+ * Limits the number of image downloads in flight and starts the most useful one first.
+ * The limit is the one of a {@link ConcurrencyLimiter}, so it follows the network.
+ *
+ * Requests for products inside the visible range go first, then the ones inside the predicted range (where a fling
+ * will land, see ScrollPrefetcher), the rest by their distance to the visible range,
+ * so when the user flings past a page its thumbnails are demoted rather than hogging the http threads.
+ * When a page is evicted its pending requests are cancelled.
+ *
+ * This class is thread-safe.
+ */
+public class ImageScheduler {
+
+    /** A single image download, started at most once, see {@link #schedule(int, Request)} **/
+    public static abstract class Request {
+        private int mIndex;
+        private boolean mWasted;
+        /**
+         * Start the download, onDone must be called exactly once when it finished (either way).
+         * @param onDone
+         */
+        protected abstract void start(Function onDone);
+        /**
+         * Called instead of start if the request is cancelled before it started.
+         * A request still wanted by the products of another page may schedule itself again.
+         */
+        protected abstract void cancel();
+        /**
+         * @return the product index the request was scheduled for
+         */
+        protected final int index() {
+            return mIndex;
+        }
+    }
+
+    private final ConcurrencyLimiter mLimiter;
+
+    // small (a few pages of thumbnails at most), so a linear scan for the best request is fine
+    // and unlike a heap it stays correct when the visible range moves.
+    private final List<Request> mPending = new ArrayList<Request>();
+
+    private final Set<Request> mInFlight = new HashSet<Request>();
+
+    private int mVisibleFrom = 0;
+
+    private int mVisibleTo = 0;
+
+    // none while mPredictedFrom is -1
+    private int mPredictedFrom = -1;
+
+    private int mPredictedTo = -1;
+
+    private int mStarted;
+
+    private int mCancelled;
+
+    private int mWasted;
+
+    public ImageScheduler(int maxInFlight) {
+        this(ConcurrencyLimiter.fixed(maxInFlight));
+    }
+
+    /**
+     * @param limiter - the slots of the requests in flight are taken from it
+     */
+    public ImageScheduler(ConcurrencyLimiter limiter) {
+        this.mLimiter = limiter;
+    }
+
+    /**
+     * @param index - the product index the image belongs to, used for priority and cancellation
+     * @param request
+     */
+    public void schedule(int index, Request request) {
+        request.mIndex = index;
+        synchronized (this) {
+            mPending.add(request);
+        }
+        dispatch();
+    }
+
+    /**
+     * The product indexes currently on screen, pending requests closest to these go first.
+     */
+    public synchronized void setVisibleRange(int fromIndex, int toIndex) {
+        mVisibleFrom = Math.min(fromIndex, toIndex);
+        mVisibleTo = Math.max(fromIndex, toIndex);
+    }
+
+    /**
+     * The product indexes a fling is predicted to land on, pending requests inside go right after the visible ones.
+     * @param fromIndex - -1 for none, i.e. once the fling is over
+     * @param toIndex
+     */
+    public synchronized void setPredictedRange(int fromIndex, int toIndex) {
+        mPredictedFrom = (fromIndex < 0) ? -1 : Math.min(fromIndex, toIndex);
+        mPredictedTo = (fromIndex < 0) ? -1 : Math.max(fromIndex, toIndex);
+    }
+
+    /**
+     * Cancel the pending requests of a page, i.e. because the page was evicted.
+     * Requests already in flight finish, but are counted as wasted.
+     * @param pageNum
+     */
+    public void cancelPage(int pageNum) {
+        List<Request> cancelled = new ArrayList<Request>();
+        synchronized (this) {
+            Iterator<Request> iter = mPending.iterator();
+            while (iter.hasNext()) {
+                Request request = iter.next();
+                if (request.mIndex / PAGE_SIZE == pageNum) {
+                    iter.remove();
+                    cancelled.add(request);
+                }
+            }
+            for (Request request : mInFlight) {
+                if (request.mIndex / PAGE_SIZE == pageNum) request.mWasted = true;
+            }
+            mCancelled += cancelled.size();
+        }
+        // outside the lock, cancel() calls back into the service
+        for (Request request : cancelled) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Drop a pending request, i.e. everyone who wanted the image gave up. Its cancel() is not called.
+     * @param request
+     * @return false if the request already started (or was never scheduled)
+     */
+    public synchronized boolean remove(Request request) {
+        if (!mPending.remove(request)) return false;
+        mCancelled++;
+        return true;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(mPending.size(), mInFlight.size(), mStarted, mCancelled, mWasted);
+    }
+
+    private void dispatch() {
+        while (true) {
+            final Request request;
+            synchronized (this) {
+                if (mPending.isEmpty() || !mLimiter.tryAcquire()) return;
+                request = mPending.remove(nextIndex());
+                mInFlight.add(request);
+                mStarted++;
+            }
+            request.start(new Function() {
+                @Override
+                public void call(Object... args) {
+                    synchronized (ImageScheduler.this) {
+                        mInFlight.remove(request);
+                        if (request.mWasted) mWasted++;
+                    }
+                    mLimiter.release();
+                    dispatch();
+                }
+            });
+        }
+    }
+
+    private int nextIndex() {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < mPending.size(); i++) {
+            int distance = distance(mPending.get(i).mIndex);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+                if (distance == 0) break;
+            }
+        }
+        return best;
+    }
+
+    private int distance(int index) {
+        if (index < mVisibleFrom) return isPredicted(index) ? 1 : mVisibleFrom - index;
+        if (index > mVisibleTo) return isPredicted(index) ? 1 : index - mVisibleTo;
+        return 0;
+    }
+
+    private boolean isPredicted(int index) {
+        return mPredictedFrom >= 0 && index >= mPredictedFrom && index <= mPredictedTo;
+    }
+
+    /** Snapshot of the scheduler counters **/
+    public static class Stats {
+        public final int pending;
+        public final int inFlight;
+        public final int started;
+        public final int cancelled;
+        public final int wasted;
+        Stats(int pending, int inFlight, int started, int cancelled, int wasted) {
+            this.pending = pending;
+            this.inFlight = inFlight;
+            this.started = started;
+            this.cancelled = cancelled;
+            this.wasted = wasted;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("pending: ").append(pending);
+            sb.append(", inFlight: ").append(inFlight);
+            sb.append(", started: ").append(started);
+            sb.append(", cancelled: ").append(cancelled);
+            sb.append(", wasted: ").append(wasted);
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.walmart.products.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts the page read least recently, like the LruCache the page cache used to be.
+ *
+ * The visible range is ignored: a fast scroll up then down can evict the page under the user.
+ */
+public class LruPolicy implements CachePolicy {
+
+    // least recently used first
+    protected final LinkedHashSet<Integer> mOrder = new LinkedHashSet<Integer>();
+
+    @Override
+    public void onAccess(int pageNum, boolean hit) {
+        if (hit && mOrder.remove(pageNum)) mOrder.add(pageNum);
+    }
+
+    @Override
+    public void onInsert(int pageNum) {
+        mOrder.remove(pageNum);
+        mOrder.add(pageNum);
+    }
+
+    @Override
+    public void onRemove(int pageNum) {
+        mOrder.remove(pageNum);
+    }
+
+    @Override
+    public int victim() {
+        Iterator<Integer> it = mOrder.iterator();
+        return it.hasNext() ? it.next() : -1;
+    }
+
+    @Override
+    public void onVisibleRange(int firstPage, int lastPage) {}
+}
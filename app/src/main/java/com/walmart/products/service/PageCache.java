@@ -0,0 +1,180 @@
+package com.walmart.products.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.walmart.products.service.WalmartService.CacheEntry;
+
+/**
+ * The loaded pages, within a byte budget, evicted in the order of a {@link CachePolicy}.
+ * Like the LruCache it replaces: sizeOf gives the size of a page, entryEvicted is called outside the lock
+ * for every page evicted, and hits, misses and evictions are counted.
+ *
+ * The policy is told the visible range (see {@link #setVisibleRange(int, int)}), a ViewportPolicy never evicts
+ * a page on screen, so the cache can stay over its budget by the pages of one screen until the user scrolls.
+ *
+ * This class is thread-safe.
+ */
+public class PageCache {
+
+    // the names of the policies, see newPolicy
+    public static final String LRU = "lru";
+    public static final String TINY_LFU = "tinylfu";
+    public static final String VIEWPORT = "viewport";
+
+    private final Map<Integer, CacheEntry> mEntries = new HashMap<Integer, CacheEntry>();
+
+    private final CachePolicy mPolicy;
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+    /**
+     * @param maxSize - the byte budget, see sizeOf
+     * @param policy - used by this cache only, it is called under its lock
+     */
+    public PageCache(int maxSize, CachePolicy policy) {
+        if (maxSize <= 0) throw new IllegalArgumentException("invalid maxSize: " + maxSize);
+        this.mMaxSize = maxSize;
+        this.mPolicy = policy;
+    }
+
+    /**
+     * @param name - LRU, TINY_LFU or VIEWPORT
+     * @return a new policy, null if the name is unknown
+     */
+    public static CachePolicy newPolicy(String name) {
+        if (LRU.equals(name)) return new LruPolicy();
+        if (TINY_LFU.equals(name)) return new TinyLfuPolicy();
+        if (VIEWPORT.equals(name)) return new ViewportPolicy();
+        return null;
+    }
+
+    /**
+     * @return the page, null if not in the cache (a miss)
+     */
+    public synchronized CacheEntry get(int pageNum) {
+        CacheEntry entry = mEntries.get(pageNum);
+        if (entry != null) mHitCount++;
+        else mMissCount++;
+        mPolicy.onAccess(pageNum, entry != null);
+        return entry;
+    }
+
+    /**
+     * Add the page, pages are evicted until the cache is within its budget (as far as the policy allows).
+     * @return the page it replaced, null if none
+     */
+    public CacheEntry put(int pageNum, CacheEntry entry) {
+        CacheEntry previous;
+        List<Integer> evictedPages = new ArrayList<Integer>(1);
+        List<CacheEntry> evicted = new ArrayList<CacheEntry>(1);
+        synchronized (this) {
+            previous = mEntries.put(pageNum, entry);
+            mSize += sizeOf(pageNum, entry);
+            if (previous != null) {
+                mSize -= sizeOf(pageNum, previous);
+                mPolicy.onAccess(pageNum, true);
+            } else {
+                mPolicy.onInsert(pageNum);
+            }
+            trim(evictedPages, evicted);
+        }
+        notifyEvicted(evictedPages, evicted);
+        return previous;
+    }
+
+    /**
+     * @return the page removed, null if not in the cache. Not an eviction, entryEvicted is not called.
+     */
+    public synchronized CacheEntry remove(int pageNum) {
+        CacheEntry entry = mEntries.remove(pageNum);
+        if (entry != null) {
+            mSize -= sizeOf(pageNum, entry);
+            mPolicy.onRemove(pageNum);
+        }
+        return entry;
+    }
+
+    /**
+     * The pages on screen, first to last. Pages the policy kept over the budget may be evicted now.
+     */
+    public void setVisibleRange(int firstPage, int lastPage) {
+        List<Integer> evictedPages = new ArrayList<Integer>(0);
+        List<CacheEntry> evicted = new ArrayList<CacheEntry>(0);
+        synchronized (this) {
+            mPolicy.onVisibleRange(firstPage, lastPage);
+            trim(evictedPages, evicted);
+        }
+        notifyEvicted(evictedPages, evicted);
+    }
+
+    // guarded by this
+    private void trim(List<Integer> evictedPages, List<CacheEntry> evicted) {
+        while (mSize > mMaxSize) {
+            int victim = mPolicy.victim();
+            CacheEntry entry = (victim < 0) ? null : mEntries.remove(victim);
+            if (entry == null) break;
+            mSize -= sizeOf(victim, entry);
+            mEvictionCount++;
+            mPolicy.onRemove(victim);
+            evictedPages.add(victim);
+            evicted.add(entry);
+        }
+    }
+
+    private void notifyEvicted(List<Integer> evictedPages, List<CacheEntry> evicted) {
+        for (int i = 0; i < evictedPages.size(); i++) {
+            entryEvicted(evictedPages.get(i), evicted.get(i));
+        }
+    }
+
+    /**
+     * @return the size of the page in the units of maxSize, its bytes by default
+     */
+    protected int sizeOf(int pageNum, CacheEntry entry) {
+        return entry.byteSize();
+    }
+
+    /**
+     * Called outside the lock for every page evicted to stay within the budget.
+     */
+    protected void entryEvicted(int pageNum, CacheEntry entry) {}
+
+    public synchronized boolean contains(int pageNum) {
+        return mEntries.containsKey(pageNum);
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int count() {
+        return mEntries.size();
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+}
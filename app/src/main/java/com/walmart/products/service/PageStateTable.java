@@ -0,0 +1,380 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The load state of every page: ABSENT -> LOADING -> READY or FAILED.
+ * A READY page goes back to ABSENT when the page cache evicts it, a FAILED page is loaded again by the next caller.
+ *
+ * The states are kept in an atomic reference table (segments of SEGMENT_SIZE pages, created on first use),
+ * so checking the state of a page takes no lock and allocates nothing.
+ * A LOADING page holds the completion future of its load: the callbacks of everyone who joined the load,
+ * on a lock-free stack, all called by {@link #complete(int, Object...)}.
+ *
+ * The residency of the pages is also kept in bitsets, a word per segment for each of READY, LOADING, FAILED
+ * and evicted (READY until the page cache dropped it), so the pages missing from a range are found a word at a time,
+ * see {@link #missingPages(int, int)}, and nobody has to ask the page cache (a get would bump the page in the LRU).
+ * The slots are the truth, the bits follow them: a bit a transition sets is set before the slot write that
+ * publishes it, a bit it clears is cleared after. A page may look missing a moment too long, never present
+ * when it is not, and loading a page that turns out READY or LOADING just joins it.
+ *
+ * This class is thread-safe.
+ */
+public class PageStateTable {
+
+    public static final int ABSENT = 0;
+    public static final int LOADING = 1;
+    public static final int READY = 2;
+    public static final int FAILED = 3;
+
+    // pages per segment, a segment is one word of each bitset
+    static final int SEGMENT_BITS = 6;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // the slot of a READY or FAILED page, an ABSENT page has a null slot and a LOADING page its Loading
+    private static final Object READY_STATE = "READY";
+    private static final Object FAILED_STATE = "FAILED";
+
+    /** A callback waiting for a load, the stack of a Loading **/
+    private static final class Waiter {
+        final Function mOnComplete;
+        Waiter mNext;
+        Waiter(Function onComplete, Waiter next) {
+            this.mOnComplete = onComplete;
+            this.mNext = next;
+        }
+    }
+
+    // the top of the stack of a completed load, callbacks can no longer be added
+    private static final Waiter COMPLETED = new Waiter(null, null);
+
+    /** The completion future of a load in flight, the top of its stack of waiters **/
+    private static final class Loading extends AtomicReference<Waiter> {
+        // Serializable through AtomicReference, never serialized
+        private static final long serialVersionUID = 1L;
+        // the page cache evicted the page between the put of the loaded page and the completion of the load
+        volatile boolean mEvicted;
+        // the loader and completeLoading may both complete the load, only the first one does
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        Loading(Function onComplete) {
+            super(new Waiter(onComplete, null));
+        }
+        /**
+         * @return true for the first caller, it completes the load
+         */
+        boolean claim() {
+            return mClaimed.compareAndSet(false, true);
+        }
+        /**
+         * @return false if the load already completed
+         */
+        boolean add(Function onComplete) {
+            Waiter waiter = null;
+            while (true) {
+                Waiter top = get();
+                if (top == COMPLETED) return false;
+                if (waiter == null) waiter = new Waiter(onComplete, top);
+                else waiter.mNext = top;
+                if (compareAndSet(top, waiter)) return true;
+            }
+        }
+        /**
+         * @return the waiters in the order they joined
+         */
+        Waiter complete() {
+            Waiter waiter = getAndSet(COMPLETED);
+            Waiter reversed = null;
+            while (waiter != null) {
+                Waiter next = waiter.mNext;
+                waiter.mNext = reversed;
+                reversed = waiter;
+                waiter = next;
+            }
+            return reversed;
+        }
+    }
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Object>> mSegments;
+
+    private final AtomicInteger mLoading = new AtomicInteger();
+
+    // the residency bitsets, bit pageNum & SEGMENT_MASK of word pageNum >> SEGMENT_BITS
+    private final AtomicLongArray mReadyBits;
+    private final AtomicLongArray mLoadingBits;
+    private final AtomicLongArray mFailedBits;
+    private final AtomicLongArray mEvictedBits;
+
+    /**
+     * @param capacity - pages 0 to capacity - 1 can be loaded
+     */
+    public PageStateTable(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("invalid capacity: " + capacity);
+        int segments = (capacity + SEGMENT_MASK) >> SEGMENT_BITS;
+        this.mSegments = new AtomicReferenceArray<AtomicReferenceArray<Object>>(segments);
+        this.mReadyBits = new AtomicLongArray(segments);
+        this.mLoadingBits = new AtomicLongArray(segments);
+        this.mFailedBits = new AtomicLongArray(segments);
+        this.mEvictedBits = new AtomicLongArray(segments);
+    }
+
+    /**
+     * @return the number of pages that can be loaded, capacity rounded up to whole segments
+     */
+    public int capacity() {
+        return mSegments.length() << SEGMENT_BITS;
+    }
+
+    /**
+     * @return ABSENT, LOADING, READY or FAILED, pages beyond the capacity are ABSENT
+     */
+    public int state(int pageNum) {
+        Object state = slot(pageNum);
+        if (state == null) return ABSENT;
+        if (state == READY_STATE) return READY;
+        if (state == FAILED_STATE) return FAILED;
+        return LOADING;
+    }
+
+    public boolean isReady(int pageNum) {
+        return slot(pageNum) == READY_STATE;
+    }
+
+    public boolean isLoading(int pageNum) {
+        return slot(pageNum) instanceof Loading;
+    }
+
+    /**
+     * @return true if the page was READY and the page cache evicted it, until it is loaded again
+     */
+    public boolean isEvicted(int pageNum) {
+        if (pageNum < 0 || pageNum >= capacity()) return false;
+        return (mEvictedBits.get(pageNum >> SEGMENT_BITS) & bit(pageNum)) != 0;
+    }
+
+    /**
+     * The pages of a range that are neither READY nor LOADING (ABSENT, FAILED or evicted), the ones to load.
+     * Read from the bitsets, nothing else is touched.
+     * @param fromPage
+     * @param toPage - inclusive, pages beyond the capacity are missing
+     * @return the missing page numbers in order, empty if none
+     */
+    public int[] missingPages(int fromPage, int toPage) {
+        fromPage = Math.max(fromPage, 0);
+        if (toPage < fromPage) return new int[0];
+        int[] missing = new int[toPage - fromPage + 1];
+        int count = 0;
+        int lastPage = Math.min(toPage, capacity() - 1);
+        for (int word = fromPage >> SEGMENT_BITS; word <= (lastPage >> SEGMENT_BITS) && fromPage <= lastPage; word++) {
+            long bits = ~(mReadyBits.get(word) | mLoadingBits.get(word)) & rangeMask(word, fromPage, lastPage);
+            while (bits != 0) {
+                missing[count++] = (word << SEGMENT_BITS) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        for (int pageNum = Math.max(fromPage, lastPage + 1); pageNum <= toPage; pageNum++) {
+            missing[count++] = pageNum;
+        }
+        if (count == missing.length) return missing;
+        int[] trimmed = new int[count];
+        System.arraycopy(missing, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * @return true if every page of the range is READY
+     */
+    public boolean isReady(int fromPage, int toPage) {
+        return countPages(mReadyBits, fromPage, toPage) == toPage - fromPage + 1;
+    }
+
+    /**
+     * @return true if no page of the range is missing and at least one is LOADING
+     */
+    public boolean isLoading(int fromPage, int toPage) {
+        return missingPages(fromPage, toPage).length == 0 && countPages(mLoadingBits, fromPage, toPage) > 0;
+    }
+
+    /**
+     * @return the number of pages loading
+     */
+    public int loadingCount() {
+        return mLoading.get();
+    }
+
+    /**
+     * Join the load of a page, or start it.
+     * @param pageNum - 0 to capacity - 1
+     * @param onComplete - called with the args passed to {@link #complete(int, Object...)}, not if READY is returned
+     * @return ABSENT if the caller moved the page to LOADING, it must load the page and call complete.
+     *          LOADING if it joined the load in flight, READY if the page is already loaded.
+     */
+    public int join(int pageNum, Function onComplete) {
+        AtomicReferenceArray<Object> segment = segment(pageNum);
+        int slot = pageNum & SEGMENT_MASK;
+        Loading loading = null;
+        while (true) {
+            Object state = segment.get(slot);
+            if (state == READY_STATE) return READY;
+            if (state instanceof Loading) {
+                if (((Loading) state).add(onComplete)) return LOADING;
+                // completed meanwhile, read the state it completed with
+                continue;
+            }
+            if (loading == null) loading = new Loading(onComplete);
+            if (segment.compareAndSet(slot, state, loading)) {
+                mLoading.incrementAndGet();
+                setBit(mLoadingBits, pageNum);
+                clearBit(mFailedBits, pageNum);
+                clearBit(mEvictedBits, pageNum);
+                return ABSENT;
+            }
+        }
+    }
+
+    /**
+     * Complete the load of a page, called once by the caller that started it (a late complete is ignored).
+     * Everyone who joined the load is called with args, in the order they joined.
+     * @param pageNum
+     * @param args - args[0] is the error if the load failed (the page is FAILED), else the page is READY
+     */
+    public void complete(int pageNum, Object... args) {
+        tryComplete(pageNum, args);
+    }
+
+    /**
+     * @return false if the page was not LOADING, or its load was completed by someone else
+     */
+    private boolean tryComplete(int pageNum, Object... args) {
+        AtomicReferenceArray<Object> segment = segment(pageNum);
+        int slot = pageNum & SEGMENT_MASK;
+        Object state = segment.get(slot);
+        if (!(state instanceof Loading)) return false;
+        Loading loading = (Loading) state;
+        if (!loading.claim()) return false;
+        boolean failed = args.length > 0 && args[0] != null;
+        setBit(failed ? mFailedBits : mReadyBits, pageNum);
+        // only the claimer moves a page out of LOADING, nobody else writes the slot meanwhile
+        segment.set(slot, failed ? FAILED_STATE : READY_STATE);
+        clearBit(mLoadingBits, pageNum);
+        // evict set the flag before it read the slot, so one of the two sees the other
+        if (!failed && loading.mEvicted && segment.compareAndSet(slot, READY_STATE, null)) evicted(pageNum);
+        mLoading.decrementAndGet();
+        for (Waiter waiter = loading.complete(); waiter != null; waiter = waiter.mNext) {
+            waiter.mOnComplete.call(args);
+        }
+        return true;
+    }
+
+    /**
+     * Complete every page still LOADING, i.e. with an error once their loads were cancelled and will never complete.
+     * A load that completes later anyway is ignored like any late complete, unless its page was joined again
+     * meanwhile: then it completes the new load, its waiters get that page (or error) instead of waiting for theirs.
+     * @param args - see {@link #complete(int, Object...)}
+     * @return the number of pages completed
+     */
+    public int completeLoading(Object... args) {
+        int count = 0;
+        for (int word = 0; word < mSegments.length() && mLoading.get() > 0; word++) {
+            long bits = mLoadingBits.get(word);
+            while (bits != 0) {
+                int pageNum = (word << SEGMENT_BITS) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (tryComplete(pageNum, args)) count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The page cache evicted the page, it is ABSENT again.
+     */
+    public void evict(int pageNum) {
+        if (pageNum < 0 || pageNum >= capacity()) return;
+        AtomicReferenceArray<Object> segment = segment(pageNum);
+        int slot = pageNum & SEGMENT_MASK;
+        Object state = segment.get(slot);
+        if (state instanceof Loading) {
+            // the loaded page was put in the cache and evicted before its load completed
+            ((Loading) state).mEvicted = true;
+            state = segment.get(slot);
+        }
+        if (state == READY_STATE && segment.compareAndSet(slot, READY_STATE, null)) evicted(pageNum);
+    }
+
+    private void evicted(int pageNum) {
+        setBit(mEvictedBits, pageNum);
+        clearBit(mReadyBits, pageNum);
+    }
+
+    private static long bit(int pageNum) {
+        return 1L << (pageNum & SEGMENT_MASK);
+    }
+
+    private static void setBit(AtomicLongArray bits, int pageNum) {
+        int word = pageNum >> SEGMENT_BITS;
+        long old;
+        do {
+            old = bits.get(word);
+        } while (!bits.compareAndSet(word, old, old | bit(pageNum)));
+    }
+
+    private static void clearBit(AtomicLongArray bits, int pageNum) {
+        int word = pageNum >> SEGMENT_BITS;
+        long old;
+        do {
+            old = bits.get(word);
+        } while (!bits.compareAndSet(word, old, old & ~bit(pageNum)));
+    }
+
+    /**
+     * @return the bits of word that are pages fromPage to toPage
+     */
+    private static long rangeMask(int word, int fromPage, int toPage) {
+        int first = word << SEGMENT_BITS;
+        long mask = -1L;
+        if (fromPage > first) mask &= -1L << (fromPage - first);
+        if (toPage < first + SEGMENT_MASK) mask &= -1L >>> (SEGMENT_MASK - (toPage - first));
+        return mask;
+    }
+
+    /**
+     * @return the number of pages of the range whose bit is set, pages beyond the capacity have none
+     */
+    private int countPages(AtomicLongArray bits, int fromPage, int toPage) {
+        fromPage = Math.max(fromPage, 0);
+        toPage = Math.min(toPage, capacity() - 1);
+        int count = 0;
+        for (int word = fromPage >> SEGMENT_BITS; fromPage <= toPage && word <= (toPage >> SEGMENT_BITS); word++) {
+            count += Long.bitCount(bits.get(word) & rangeMask(word, fromPage, toPage));
+        }
+        return count;
+    }
+
+    /**
+     * @return the slot of the page, null if ABSENT, without creating its segment
+     */
+    private Object slot(int pageNum) {
+        if (pageNum < 0 || pageNum >= capacity()) return null;
+        AtomicReferenceArray<Object> segment = mSegments.get(pageNum >> SEGMENT_BITS);
+        return (segment == null) ? null : segment.get(pageNum & SEGMENT_MASK);
+    }
+
+    private AtomicReferenceArray<Object> segment(int pageNum) {
+        if (pageNum < 0 || pageNum >= capacity()) {
+            throw new IndexOutOfBoundsException("page: " + pageNum + ", capacity: " + capacity());
+        }
+        int index = pageNum >> SEGMENT_BITS;
+        AtomicReferenceArray<Object> segment = mSegments.get(index);
+        if (segment != null) return segment;
+        // two threads may create the segment, the first one in is used
+        mSegments.compareAndSet(index, null, new AtomicReferenceArray<Object>(SEGMENT_SIZE));
+        return mSegments.get(index);
+    }
+}
@@ -0,0 +1,152 @@
+package com.walmart.products.service;
+
+import com.walmart.products.http.PageRecord;
+import com.walmart.products.http.ProductRecord;
+import com.walmart.products.util.StringPool;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * One page of products stored column by column.
+ *
+ * Each field is a parallel String array indexed by the item index within the page,
+ * this is a handful of arrays per page instead of a JsonNode tree with an ObjectNode,
+ * a LinkedHashMap and a TextNode per field of every product.
+ */
+public class ProductPage {
+
+    // rough ART object layout, used to estimate the retained size of a page
+    private static final int OBJECT_HEADER_BYTES = 8;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int ARRAY_HEADER_BYTES = 12;
+    private static final int STRING_HEADER_BYTES = 16;
+
+    private final String mNextPage;
+
+    private final String[] mNames;
+
+    private final String[] mDescriptions;
+
+    private final String[] mThumbnailUrls;
+
+    private final String[] mMediumImageUrls;
+
+    private final int mByteSize;
+
+    public ProductPage(String nextPage,
+                       String[] names,
+                       String[] descriptions,
+                       String[] thumbnailUrls,
+                       String[] mediumImageUrls) {
+        this.mNextPage = nextPage;
+        this.mNames = names;
+        this.mDescriptions = descriptions;
+        this.mThumbnailUrls = thumbnailUrls;
+        this.mMediumImageUrls = mediumImageUrls;
+        this.mByteSize = estimateByteSize();
+    }
+
+    /**
+     * Build the columns from a parsed page, all values go through the string pool.
+     * @param record
+     * @param pool
+     * @return
+     */
+    public static ProductPage from(PageRecord record, StringPool pool) {
+        int size = record.size();
+        String[] names = new String[size];
+        String[] descriptions = new String[size];
+        String[] thumbnailUrls = new String[size];
+        String[] mediumImageUrls = new String[size];
+        ProductRecord[] items = record.items();
+        for (int i = 0; i < size; i++) {
+            ProductRecord item = items[i];
+            names[i] = pool.intern(item.name);
+            descriptions[i] = pool.intern(item.shortDescription);
+            thumbnailUrls[i] = pool.intern(item.thumbnailImage);
+            mediumImageUrls[i] = pool.intern(item.mediumImage);
+        }
+        return new ProductPage(record.nextPage(), names, descriptions, thumbnailUrls, mediumImageUrls);
+    }
+
+    /**
+     * @return the cursor url of the next page, or null if this is the last page.
+     */
+    public String nextPage() {
+        return mNextPage;
+    }
+
+    public int size() {
+        return mNames.length;
+    }
+
+    public String getName(int itemIndex) {
+        return get(mNames, itemIndex);
+    }
+
+    public String getDescription(int itemIndex) {
+        return get(mDescriptions, itemIndex);
+    }
+
+    public String getThumbnailUrl(int itemIndex) {
+        return get(mThumbnailUrls, itemIndex);
+    }
+
+    public String getMediumImageUrl(int itemIndex) {
+        return get(mMediumImageUrls, itemIndex);
+    }
+
+    /**
+     * Estimated number of heap bytes retained by this page, pooled strings are counted in full.
+     * @return
+     */
+    public int byteSize() {
+        return mByteSize;
+    }
+
+    /**
+     * Estimated number of heap bytes retained by the pages together, a String shared by them
+     * (i.e. interned by the StringPool) is counted once, unlike the sum of their byteSize.
+     */
+    static int retainedBytes(ProductPage... pages) {
+        Set<String> counted = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        int bytes = 0;
+        for (ProductPage page : pages) {
+            bytes += page.mByteSize;
+            for (String[] column : new String[][]{
+                    page.mNames, page.mDescriptions, page.mThumbnailUrls, page.mMediumImageUrls}) {
+                for (String value : column) {
+                    if (value != null && !counted.add(value)) bytes -= stringBytes(value);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static String get(String[] column, int itemIndex) {
+        return (itemIndex >= 0 && itemIndex < column.length) ? column[itemIndex] : null;
+    }
+
+    private int estimateByteSize() {
+        int bytes = OBJECT_HEADER_BYTES + 6 * REFERENCE_BYTES + stringBytes(mNextPage);
+        bytes += columnBytes(mNames);
+        bytes += columnBytes(mDescriptions);
+        bytes += columnBytes(mThumbnailUrls);
+        bytes += columnBytes(mMediumImageUrls);
+        return bytes;
+    }
+
+    private static int columnBytes(String[] column) {
+        int bytes = ARRAY_HEADER_BYTES + column.length * REFERENCE_BYTES;
+        for (String value : column) {
+            bytes += stringBytes(value);
+        }
+        return bytes;
+    }
+
+    private static int stringBytes(String value) {
+        return (value == null) ? 0 : STRING_HEADER_BYTES + 2 * value.length();
+    }
+}
@@ -0,0 +1,259 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static com.walmart.products.service.WalmartServiceConfig.*;
+
+/**
+ * Predicts where a fling lands from the scroll velocity and loads the pages there before the list gets there,
+ * so a fast fling does not outrun loading (the scroll listener only loads when the list is idle or near its end)
+ * and show blank rows.
+ *
+ * The velocity (rows per second, positive scrolling down) is smoothed from the onScrolled deltas, the deceleration
+ * is learnt from how fast the velocity drops while the list settles. A fling at v rows/s decelerating at a rows/s^2
+ * lands v^2/2a rows away.
+ *
+ * The url of a page is only known once the page before it is parsed, so the missing pages on the way to the landing
+ * are picked nearest first and loaded in one loadPages call in page order: a page whose url is not known yet waits
+ * there for the page before it. Loading a page schedules its thumbnails, the landing rows are the predicted range of
+ * the ImageScheduler so theirs go right after the rows on screen.
+ *
+ * A page loaded for a landing that does not come true is wasted bandwidth, so prefetched pages are taken from
+ * a budget of PREFETCH_PAGES, see WalmartServiceConfig.
+ *
+ * This class is not thread-safe, it is called on the main thread like the scroll listener.
+ */
+public class ScrollPrefetcher {
+
+    // velocity samples are averaged over about this long
+    static final long VELOCITY_WINDOW_NANOS = 50 * 1000000L;
+
+    // the weight of a deceleration sample, and the least deceleration believed (a fling always stops)
+    static final double DECELERATION_WEIGHT = 0.2;
+    static final double MIN_DECELERATION = 5;
+
+    private final WalmartService mService;
+
+    private final Function mOnPrefetched;
+
+    // true while the list scrolls on its own (a fling), the velocity only drops by its friction then
+    private boolean mSettling;
+
+    private double mVelocity;
+
+    private double mDeceleration = PREFETCH_DECELERATION;
+
+    private long mLastNanos;
+
+    private int mTokens = PREFETCH_PAGES;
+
+    private long mRefillNanos;
+
+    // prefetched pages not on screen yet
+    private final Set<Integer> mPrefetched = new HashSet<Integer>();
+
+    // the predicted range given to the service, -1 for none
+    private int mLandingFrom = -1;
+
+    private int mLandingTo = -1;
+
+    private int mPrefetchCount;
+
+    private int mUsed;
+
+    private int mWasted;
+
+    private int mSkipped;
+
+    private int mSkippedPage = -1;
+
+    /**
+     * @param service
+     * @param onPrefetched - called with (error, pageNum) once the pages prefetched together are loaded, pageNum is
+     *                     the last of them, i.e. to grow the list
+     */
+    public ScrollPrefetcher(WalmartService service, Function onPrefetched) {
+        this.mService = service;
+        this.mOnPrefetched = onPrefetched;
+    }
+
+    /**
+     * @param settling - true once the finger left the screen and the list flings, false while dragged
+     */
+    public void setSettling(boolean settling) {
+        mSettling = settling;
+    }
+
+    /**
+     * Called for every onScrolled.
+     * @param firstVisible - the rows on screen
+     * @param lastVisible
+     * @param rows - how far the list scrolled, in rows (its dy over the height of a row), negative scrolling up
+     * @param nanos - the time of the scroll, System.nanoTime
+     */
+    public void onScrolled(int firstVisible, int lastVisible, double rows, long nanos) {
+        refill(nanos);
+        markUsed(firstVisible, lastVisible);
+        if (mLastNanos != 0 && nanos > mLastNanos) {
+            double seconds = (nanos - mLastNanos) / 1e9;
+            double previous = mVelocity;
+            double alpha = 1 - Math.exp(-(double) (nanos - mLastNanos) / VELOCITY_WINDOW_NANOS);
+            mVelocity += alpha * (rows / seconds - mVelocity);
+            if (mSettling && previous * mVelocity > 0 && Math.abs(mVelocity) < Math.abs(previous)) {
+                double deceleration = (Math.abs(previous) - Math.abs(mVelocity)) / seconds;
+                mDeceleration += DECELERATION_WEIGHT * (deceleration - mDeceleration);
+                mDeceleration = Math.max(mDeceleration, MIN_DECELERATION);
+            }
+        }
+        mLastNanos = nanos;
+        if (mSettling) prefetch(firstVisible, lastVisible);
+    }
+
+    /**
+     * Called when the list stops. The prefetched pages that left the page cache (or failed) without getting
+     * on screen are counted as wasted, the others may still be scrolled to.
+     */
+    public void onIdle(int firstVisible, int lastVisible) {
+        markUsed(firstVisible, lastVisible);
+        Iterator<Integer> it = mPrefetched.iterator();
+        while (it.hasNext()) {
+            int pageNum = it.next();
+            if (mService.getMissingPages(pageNum * PAGE_SIZE, pageNum * PAGE_SIZE).length > 0) {
+                it.remove();
+                mWasted++;
+            }
+        }
+        mSettling = false;
+        mVelocity = 0;
+        mLastNanos = 0;
+        setLanding(-1, -1);
+    }
+
+    /**
+     * @return the first row on screen when the current fling stops
+     */
+    int landing(int firstVisible) {
+        double rows = mVelocity * mVelocity / (2 * mDeceleration);
+        return Math.max(0, firstVisible + (int) Math.signum(mVelocity) * (int) rows);
+    }
+
+    double velocity() {
+        return mVelocity;
+    }
+
+    double deceleration() {
+        return mDeceleration;
+    }
+
+    private void prefetch(int firstVisible, int lastVisible) {
+        if (Math.abs(mVelocity) < PREFETCH_MIN_VELOCITY) return;
+        int landingFrom = landing(firstVisible);
+        int landingTo = landingFrom + (lastVisible - firstVisible);
+        setLanding(landingFrom, landingTo);
+        boolean down = mVelocity > 0;
+        // the pages from the screen to the landing, a page can only load once the one before it is parsed
+        int[] missing = down ? mService.getMissingPages(firstVisible, landingTo)
+                : mService.getMissingPages(landingFrom, lastVisible);
+        int[] pageNums = new int[missing.length];
+        int count = 0;
+        for (int i = 0; i < missing.length; i++) {
+            int pageNum = missing[down ? i : missing.length - 1 - i];
+            if (mPrefetched.contains(pageNum)) continue;
+            if (mTokens == 0) {
+                // counted once per page, prefetch runs on every scroll of the fling
+                if (pageNum != mSkippedPage) mSkipped++;
+                mSkippedPage = pageNum;
+                break;
+            }
+            mTokens--;
+            pageNums[count++] = pageNum;
+        }
+        if (count > 0) load(Arrays.copyOf(pageNums, count));
+    }
+
+    /**
+     * @param pageNums - one call in page order, see loadPagesAsync: the pages whose urls are not known yet
+     *                 wait for the page before them instead of failing
+     */
+    private void load(int[] pageNums) {
+        Arrays.sort(pageNums);
+        for (int pageNum : pageNums) {
+            mPrefetched.add(pageNum);
+        }
+        mPrefetchCount += pageNums.length;
+        final int lastPage = pageNums[pageNums.length - 1];
+        mService.loadPages(pageNums, new Function() {
+            @Override
+            public void call(Object... args) {
+                if (mOnPrefetched != null) mOnPrefetched.call(args[0], lastPage);
+            }
+        });
+    }
+
+    private void setLanding(int fromIndex, int toIndex) {
+        if (fromIndex == mLandingFrom && toIndex == mLandingTo) return;
+        mLandingFrom = fromIndex;
+        mLandingTo = toIndex;
+        mService.setPredictedRange(fromIndex, toIndex);
+    }
+
+    // a prefetched page on screen was worth its bandwidth, its token comes back
+    private void markUsed(int firstVisible, int lastVisible) {
+        if (mPrefetched.isEmpty()) return;
+        for (int pageNum = firstVisible / PAGE_SIZE; pageNum <= lastVisible / PAGE_SIZE; pageNum++) {
+            if (mPrefetched.remove(pageNum)) {
+                mUsed++;
+                mTokens = Math.min(mTokens + 1, PREFETCH_PAGES);
+            }
+        }
+    }
+
+    private void refill(long nanos) {
+        if (mTokens == PREFETCH_PAGES || mRefillNanos == 0) {
+            mRefillNanos = nanos;
+            return;
+        }
+        long refill = PREFETCH_REFILL_MILLIS * 1000000L;
+        while (mTokens < PREFETCH_PAGES && nanos - mRefillNanos >= refill) {
+            mTokens++;
+            mRefillNanos += refill;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(mPrefetchCount, mUsed, mWasted, mPrefetched.size(), mSkipped, mTokens);
+    }
+
+    /** Snapshot of the prefetcher counters **/
+    public static class Stats {
+        public final int prefetched;
+        public final int used; // got on screen
+        public final int wasted; // left the cache before getting on screen
+        public final int pending; // not on screen yet
+        public final int skipped; // pages the budget had no token left for
+        public final int tokens;
+        Stats(int prefetched, int used, int wasted, int pending, int skipped, int tokens) {
+            this.prefetched = prefetched;
+            this.used = used;
+            this.wasted = wasted;
+            this.pending = pending;
+            this.skipped = skipped;
+            this.tokens = tokens;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("prefetched: ").append(prefetched);
+            sb.append(", used: ").append(used);
+            sb.append(", wasted: ").append(wasted);
+            sb.append(", pending: ").append(pending);
+            sb.append(", skipped: ").append(skipped);
+            sb.append(", tokens: ").append(tokens);
+            return sb.toString();
+        }
+    }
+}
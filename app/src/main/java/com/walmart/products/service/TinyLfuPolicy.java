@@ -0,0 +1,142 @@
+package com.walmart.products.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * W-TinyLFU: new pages enter a small LRU window, a page leaving the window goes to probation but only stays
+ * if it was read more often than the page it would replace (its frequency is estimated by a count-min sketch
+ * of every get, hits and misses). The main cache is a segmented LRU: a page read again moves from probation
+ * to protected (80% of it), the victims come from probation.
+ *
+ * So a scroll through many pages seen once (a fling) does not flush the pages that are read over and over.
+ * The segments are sized from the number of pages in the cache, the PageCache budget is in bytes.
+ */
+public class TinyLfuPolicy implements CachePolicy {
+
+    // the share of the pages in the window and of the main pages in protected, in percent
+    static final int WINDOW_PERCENT = 1;
+    static final int PROTECTED_PERCENT = 80;
+
+    // the window holds the page on screen and the page loading ahead of it, else a page just scrolled to
+    // competes (and mostly loses) against pages read on every screen before it
+    static final int WINDOW_MIN = 2;
+
+    // least recently used first
+    private final LinkedHashSet<Integer> mWindow = new LinkedHashSet<Integer>();
+    private final LinkedHashSet<Integer> mProbation = new LinkedHashSet<Integer>();
+    private final LinkedHashSet<Integer> mProtected = new LinkedHashSet<Integer>();
+
+    private final FrequencySketch mSketch = new FrequencySketch();
+
+    // the last page moved out of the window, -1 once admitted or removed
+    private int mCandidate = -1;
+
+    /**
+     * The estimated gets of a page: the least of its DEPTH counters, each shared with the pages hashing alike.
+     * Counters stop at 15 and are all halved every SAMPLE_SIZE gets, so old popularity fades.
+     */
+    static final class FrequencySketch {
+        static final int DEPTH = 4;
+        static final int WIDTH = 256;
+        static final int SAMPLE_SIZE = 10 * WIDTH;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[] mCounters = new byte[DEPTH * WIDTH];
+        private int mSamples;
+
+        void increment(int pageNum) {
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(row, pageNum);
+                if (mCounters[index] < MAX_COUNT) mCounters[index]++;
+            }
+            if (++mSamples == SAMPLE_SIZE) {
+                for (int i = 0; i < mCounters.length; i++) {
+                    mCounters[i] >>= 1;
+                }
+                mSamples /= 2;
+            }
+        }
+
+        int frequency(int pageNum) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, mCounters[index(row, pageNum)]);
+            }
+            return frequency;
+        }
+
+        private static int index(int row, int pageNum) {
+            int hash = (pageNum + 1) * SEEDS[row];
+            hash ^= hash >>> 16;
+            return row * WIDTH + (hash & (WIDTH - 1));
+        }
+    }
+
+    @Override
+    public void onAccess(int pageNum, boolean hit) {
+        mSketch.increment(pageNum);
+        if (!hit) return;
+        if (mWindow.remove(pageNum)) {
+            mWindow.add(pageNum);
+        } else if (mProbation.remove(pageNum)) {
+            if (pageNum == mCandidate) mCandidate = -1;
+            mProtected.add(pageNum);
+            // protected is full, its least recently used page goes back to probation
+            int protectedMax = Math.max(1, (mProbation.size() + mProtected.size()) * PROTECTED_PERCENT / 100);
+            while (mProtected.size() > protectedMax) {
+                int demoted = first(mProtected);
+                mProtected.remove(demoted);
+                mProbation.add(demoted);
+            }
+        } else if (mProtected.remove(pageNum)) {
+            mProtected.add(pageNum);
+        }
+    }
+
+    @Override
+    public void onInsert(int pageNum) {
+        onRemove(pageNum);
+        mWindow.add(pageNum);
+        // the window is over its share, its least recently used page goes to probation as the candidate
+        int pages = mWindow.size() + mProbation.size() + mProtected.size();
+        int windowMax = Math.max(WINDOW_MIN, pages * WINDOW_PERCENT / 100);
+        while (mWindow.size() > windowMax) {
+            mCandidate = first(mWindow);
+            mWindow.remove(mCandidate);
+            mProbation.add(mCandidate);
+        }
+    }
+
+    @Override
+    public void onRemove(int pageNum) {
+        if (pageNum == mCandidate) mCandidate = -1;
+        if (!mWindow.remove(pageNum) && !mProbation.remove(pageNum)) mProtected.remove(pageNum);
+    }
+
+    @Override
+    public int victim() {
+        int mainVictim = first(mProbation);
+        if (mainVictim < 0) mainVictim = first(mProtected);
+        if (mainVictim < 0) return first(mWindow);
+        // the last page out of the window is only admitted if it is read more often than the page it replaces
+        if (mCandidate >= 0 && mCandidate != mainVictim && mProbation.contains(mCandidate)
+                && mSketch.frequency(mCandidate) <= mSketch.frequency(mainVictim)) {
+            return mCandidate;
+        }
+        return mainVictim;
+    }
+
+    @Override
+    public void onVisibleRange(int firstPage, int lastPage) {}
+
+    int frequency(int pageNum) {
+        return mSketch.frequency(pageNum);
+    }
+
+    private static int first(LinkedHashSet<Integer> pages) {
+        Iterator<Integer> it = pages.iterator();
+        return it.hasNext() ? it.next() : -1;
+    }
+}
@@ -0,0 +1,56 @@
+package com.walmart.products.service;
+
+/**
+ * Never evicts a page on screen, and evicts the page the scroll is least likely to come back to:
+ * the one farthest from the visible range, pages behind the scroll direction counting as twice as far
+ * as pages ahead of it (the list is mostly scrolled one way, with short flings back).
+ * Equally far pages go least recently used first.
+ *
+ * Before the first visible range (i.e. a service with no list bound) it is an LruPolicy.
+ * With every resident page on screen nothing is evicted, the cache stays over its budget by at most
+ * the pages of one screen until the user scrolls.
+ */
+public class ViewportPolicy extends LruPolicy {
+
+    // no visible range yet
+    private int mFirstPage = -1;
+    private int mLastPage = -1;
+
+    // true while the user scrolls down (towards higher pages)
+    private boolean mDown = true;
+
+    @Override
+    public int victim() {
+        if (mFirstPage < 0) return super.victim();
+        int victim = -1;
+        long farthest = -1;
+        // least recently used first, so a tie keeps the first one found
+        for (int pageNum : mOrder) {
+            long distance = distance(pageNum);
+            if (distance > farthest) {
+                farthest = distance;
+                victim = pageNum;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * @return how far the page is from the visible range, weighted by the scroll direction, -1 if on screen
+     */
+    long distance(int pageNum) {
+        if (pageNum >= mFirstPage && pageNum <= mLastPage) return -1;
+        boolean above = pageNum < mFirstPage;
+        long distance = above ? mFirstPage - pageNum : pageNum - mLastPage;
+        // behind the scroll: above when scrolling down, below when scrolling up
+        return (above == mDown) ? 2 * distance : distance;
+    }
+
+    @Override
+    public void onVisibleRange(int firstPage, int lastPage) {
+        if (mFirstPage >= 0 && firstPage != mFirstPage) mDown = firstPage > mFirstPage;
+        else if (mLastPage >= 0 && lastPage != mLastPage) mDown = lastPage > mLastPage;
+        mFirstPage = firstPage;
+        mLastPage = lastPage;
+    }
+}
@@ -8,25 +8,37 @@ import android.os.Binder;
 import android.os.IBinder;
 import android.util.Log;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.walmart.products.Application;
+import com.walmart.products.http.HttpTransport;
+import com.walmart.products.http.ParseExecutor;
+import com.walmart.products.util.Cancellable;
+import com.walmart.products.util.EventBus;
 import com.walmart.products.util.EventEmitter;
 import com.walmart.products.util.Function;
+import com.walmart.products.util.Metrics;
+import com.walmart.products.util.MetricsReporter;
+import com.walmart.products.util.Tracer;
+import com.walmart.products.util.ServiceFuture;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import static com.walmart.products.service.WalmartServiceConfig.*;
 
 /**
  * Serviced used to load Walmart products into memory and provide access on demand.
  *
- * No more than (PAGE_SIZE * MAX_PAGES) items (plus thumbnail bits) are in memory at a given time.
+ * Pages are kept in memory up to PAGE_CACHE_BYTES, their images up to the budgets of the BitmapCache.
+ *
+ * The async calls return a typed ServiceFuture, which can be cancelled and given a deadline.
+ * The Function callback versions are adapters over them, args[0] is the error if not null.
  */
 public class WalmartService extends Service {
 
@@ -35,29 +47,62 @@ public class WalmartService extends Service {
     @Inject
     WalmartServiceUtils mUtils;
 
-    // keep track of current loading pages to avoid loading the same page concurrently
-    private Map<Integer, Boolean> mPagesLoading;
+    @Inject
+    BitmapCache mBitmapCache;
+
+    @Inject
+    ImageScheduler mImageScheduler;
+
+    // the same cache as mUtils.mPageCache, it is told the visible range
+    @Inject
+    PageCache mPageCache;
+
+    // the load state of every page, so the same page is not loaded twice at once
+    @Inject
+    PageStateTable mPageStates;
+
+    // pages beyond the known urls wait here for theirs, see loadPageWhenUrlKnown
+    @Inject @Named("pageUrlEvents")
+    EventBus<String> mPageUrlEvents;
+
+    // the latencies and counters of the hot paths, see getMetricsStats
+    @Inject
+    Metrics mMetrics;
+
+    // writes mMetrics to a file while the service runs
+    @Inject
+    MetricsReporter mMetricsReporter;
+
+    // a loadProducts call is the root of a trace, its pages are children, see writeTrace
+    @Inject
+    Tracer mTracer;
 
-    private EventEmitter mEmitter;
+    // the thumbnails mUtils loads are announced here
+    @Inject @Named("thumbnailEvents")
+    EventEmitter mThumbnailEvents;
 
     private final IBinder mBinder;
 
     public WalmartService() {
-        mPagesLoading = Collections.synchronizedMap(new HashMap<Integer, Boolean>());
         mBinder = new WalmartServiceBinder();
-        mEmitter = new EventEmitter();
     }
 
     @Override
     public void onCreate() {
         Log.i(TAG, "onCreate");
         Application.get(this).component().inject(this);
+        mMetricsReporter.start();
     }
 
     @Override
     public void onDestroy () {
         Log.i(TAG, "onDestroy");
-        mUtils.mHttpClient.cancelRequests(this, true);
+        // the requests are called back cancelled, their limiter slots and single-flight loads are given back
+        mUtils.cancel(this);
+        // the page states outlive the service, its loads between requests (on disk, queued) are failed right away
+        int cancelled = mPageStates.completeLoading("loadPage cancelled - service destroyed");
+        if (cancelled > 0) Log.i(TAG, "onDestroy - pages cancelled: " + cancelled);
+        mMetricsReporter.stop();
     }
 
     public class WalmartServiceBinder extends Binder {
@@ -76,37 +121,104 @@ public class WalmartService extends Service {
      * @return
      */
     public boolean isLoading() {
-        return mPagesLoading.size() > 0;
+        return mPageStates.loadingCount() > 0;
     }
 
     /**
-     * Get a product at a given index from the cache.
+     * Check if the product at a given index is in the cache.
      * @param index
-     * @return productNode or null is not in cache.
+     * @return true if the product's page is loaded.
      */
-    public JsonNode getProduct(int index) {
+    public boolean hasProduct(int index) {
+        ProductPage page = getProductPage(index);
+        return page != null && (index % PAGE_SIZE) < page.size();
+    }
+
+    /**
+     * Get the name of the product at a given index from the cache.
+     * @param index
+     * @return name or null if not in cache.
+     */
+    public String getName(int index) {
+        ProductPage page = getProductPage(index);
+        return (page == null) ? null : page.getName(index % PAGE_SIZE);
+    }
+
+    /**
+     * Get the short description of the product at a given index from the cache.
+     * @param index
+     * @return description or null if not in cache.
+     */
+    public String getDescription(int index) {
+        ProductPage page = getProductPage(index);
+        return (page == null) ? null : page.getDescription(index % PAGE_SIZE);
+    }
+
+    /**
+     * Get the thumbnail url of the product at a given index from the cache.
+     * @param index
+     * @return url or null if not in cache.
+     */
+    public String getThumbnailUrl(int index) {
+        ProductPage page = getProductPage(index);
+        return (page == null) ? null : page.getThumbnailUrl(index % PAGE_SIZE);
+    }
+
+    /**
+     * Get the medium image url of the product at a given index from the cache.
+     * @param index
+     * @return url or null if not in cache.
+     */
+    public String getMediumImageUrl(int index) {
+        ProductPage page = getProductPage(index);
+        return (page == null) ? null : page.getMediumImageUrl(index % PAGE_SIZE);
+    }
+
+    private ProductPage getProductPage(int index) {
         CacheEntry cacheEntry = mUtils.getPage(index);
-        if (cacheEntry != null) {
-            JsonNode pageNode = cacheEntry.page();
-            ArrayNode itemsNode = mUtils.getItemsNode(pageNode);
-            return (itemsNode == null) ? null : itemsNode.get(index % PAGE_SIZE);
-        }
-        return null;
+        return (cacheEntry == null) ? null : cacheEntry.page();
+    }
+
+    /**
+     * Listen for thumbnails arriving after their page was published.
+     * @param listener - args[1] is the index of the product whose thumbnail is now in the cache
+     */
+    public void addOnThumbnailLoadedListener(Function listener) {
+        mThumbnailEvents.on(WalmartServiceUtils.THUMBNAIL_LOADED_EVENT, listener);
+    }
+
+    public void removeOnThumbnailLoadedListener(Function listener) {
+        mThumbnailEvents.off(WalmartServiceUtils.THUMBNAIL_LOADED_EVENT, listener);
     }
 
     /**
      * Get a Thumbnail at a given index from the cache.
-     * Thumbnails are preloaded with each page, so if its not there- then the page is not loaded.
+     * Thumbnails are preloaded with each page, they may arrive after the page itself,
+     * see addOnThumbnailLoadedListener.
      * @param index
      * @return thumbnail or null is not in cache.
      */
     public Bitmap getThumbnail(int index) {
-        CacheEntry cacheEntry = mUtils.getPage(index);
-        if (cacheEntry != null) {
-            String key = (index % PAGE_SIZE) + ".thumb";
-            return cacheEntry.bitmaps().get(key);
-        }
-        return null;
+        String url = getThumbnailUrl(index);
+        return (url == null) ? null : mBitmapCache.getThumbnail(url);
+    }
+
+    /**
+     * Get the thumbnail to show in a row, it is not reused for another thumbnail until released.
+     * Each acquired thumbnail must be released once the row no longer shows it.
+     * @param index
+     * @return thumbnail or null is not in cache.
+     */
+    public Bitmap acquireThumbnail(int index) {
+        String url = getThumbnailUrl(index);
+        return (url == null) ? null : mBitmapCache.acquireThumbnail(url);
+    }
+
+    /**
+     * @param bmp - a thumbnail returned by acquireThumbnail
+     */
+    public void releaseThumbnail(Bitmap bmp) {
+        mBitmapCache.releaseThumbnail(bmp);
     }
 
     /**
@@ -115,127 +227,362 @@ public class WalmartService extends Service {
      * @param index
      * @param onComplete - args[0] is error if not null, else args[1] is the bitmap
      */
-    public void getMediumImage(int index, final Function onComplete) {
-        final CacheEntry cacheEntry = mUtils.getPage(index);
-        if (cacheEntry != null) {
-            int itemIndex = (index % PAGE_SIZE);
-            String key =  itemIndex + ".medium";
-            Bitmap bmp = cacheEntry.bitmaps().get(key);
-            if (bmp == null) {
-                JsonNode pageNode = cacheEntry.page();
-                ArrayNode itemsNode = mUtils.getItemsNode(pageNode);
-                if (itemsNode == null) {
-                    onComplete.call("getMediumImage failed - itemsNode is null");
-                    return;
-                }
-                JsonNode itemNode = itemsNode.get(itemIndex);
-                if (itemNode == null) {
-                    onComplete.call("getMediumImage failed - item not found");
-                    return;
-                }
-                if (itemNode.get("mediumImage") == null) {
-                    onComplete.call("getMediumImage failed - mediumImage url is empty");
-                    return;
+    public void getMediumImage(int index, Function onComplete) {
+        getMediumImageAsync(index, ServiceFuture.NO_DEADLINE).addCallback(ServiceFuture.<Bitmap>callback(onComplete));
+    }
+
+    /**
+     * Medium images are loaded on demand, from the cache if they are in it.
+     * Cancelling the future (i.e. the detail view is gone) cancels the download, unless another caller shares it.
+     * @param index
+     * @param timeoutMillis - the future fails with a TimeoutException past it, ServiceFuture.NO_DEADLINE for none
+     * @return the bitmap
+     */
+    public ServiceFuture<Bitmap> getMediumImageAsync(int index, long timeoutMillis) {
+        final ServiceFuture<Bitmap> future = new ServiceFuture<Bitmap>();
+        ProductPage page = getProductPage(index);
+        if (page == null) {
+            future.fail("getMediumImage failed - page not loaded");
+            return future;
+        }
+        int itemIndex = (index % PAGE_SIZE);
+        if (itemIndex >= page.size()) {
+            future.fail("getMediumImage failed - item not found");
+            return future;
+        }
+        String url = page.getMediumImageUrl(itemIndex);
+        if (url == null) {
+            future.fail("getMediumImage failed - mediumImage url is empty");
+            return future;
+        }
+        Bitmap bmp = mBitmapCache.getMediumImage(url);
+        if (bmp != null) {
+            future.set(bmp);
+            return future;
+        }
+        future.withDeadline(timeoutMillis);
+        future.setOnCancel(mUtils.loadMediumImage(this, index, url, new Function() {
+            @Override
+            public void call(Object... args) {
+                if (args[0] == null) {
+                    String url = (String) args[1];
+                    Bitmap bmp = (Bitmap) args[2];
+                    mBitmapCache.putMediumImage(url, bmp);
+                    future.set(bmp);
+                } else {
+                    future.fail(args[0]);
                 }
-                mUtils.loadBitmap(this, itemNode.get("mediumImage").textValue(), key, new Function() {
-                    @Override
-                    public void call(Object... args) {
-                        if (args[0] == null) {
-                            String key = (String) args[1];
-                            Bitmap bmp = (Bitmap) args[2];
-                            cacheEntry.bitmaps().put(key, bmp);
-                            onComplete.call(null, bmp);
-                        } else {
-                            onComplete.call(args[0]);
-                        }
-                    }
-                });
-            } else {
-                onComplete.call(null, bmp);
             }
-        } else {
-            onComplete.call("getMediumImage failed - page not loaded");
+        }));
+        return future;
+    }
+
+    /**
+     * Tell the service which products are on screen, their images are downloaded first
+     * and, with the viewport page cache policy, their pages are not evicted.
+     * @param fromIndex
+     * @param toIndex
+     */
+    public void setVisibleRange(int fromIndex, int toIndex) {
+        mImageScheduler.setVisibleRange(fromIndex, toIndex);
+        mPageCache.setVisibleRange(fromIndex / PAGE_SIZE, toIndex / PAGE_SIZE);
+    }
+
+    /**
+     * Tell the service where a fling is predicted to land, the images there are downloaded
+     * right after the ones on screen. See ScrollPrefetcher.
+     * @param fromIndex - -1 for none
+     * @param toIndex
+     */
+    public void setPredictedRange(int fromIndex, int toIndex) {
+        mImageScheduler.setPredictedRange(fromIndex, toIndex);
+    }
+
+    /**
+     * @return pending, started, cancelled and wasted image download counters
+     */
+    public ImageScheduler.Stats getImageSchedulerStats() {
+        return mImageScheduler.stats();
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the thumbnail cache
+     */
+    public BitmapCache.Stats getThumbnailCacheStats() {
+        return mBitmapCache.thumbnailStats();
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the medium image cache
+     */
+    public BitmapCache.Stats getMediumImageCacheStats() {
+        return mBitmapCache.mediumImageStats();
+    }
+
+    /**
+     * @return reuse counters of the thumbnail BitmapPool
+     */
+    public BitmapPool.Stats getBitmapPoolStats() {
+        return mBitmapCache.poolStats();
+    }
+
+    /**
+     * @return threads, queue depth and latency counters of the page json parsing
+     */
+    public ParseExecutor.Stats getParseExecutorStats() {
+        return mUtils.mParseExecutor.stats();
+    }
+
+    /**
+     * @return requests, connections opened and TLS handshake time of the http transport
+     */
+    public HttpTransport.Stats getTransportStats() {
+        return mUtils.mTransport.stats();
+    }
+
+    /**
+     * @return the current limit, latency and in flight counters of the page json requests
+     */
+    public ConcurrencyLimiter.Stats getPageLimiterStats() {
+        return mUtils.mPageLimiter.stats();
+    }
+
+    /**
+     * @return the current limit, latency and in flight counters of the image downloads
+     */
+    public ConcurrencyLimiter.Stats getImageLimiterStats() {
+        return mUtils.mImageLimiter.stats();
+    }
+
+    /**
+     * @return the loadPage, parse and image latencies, page cache and http queue counters, see WalmartServiceUtils
+     */
+    public Metrics.Stats getMetricsStats() {
+        return mMetrics.stats();
+    }
+
+    /**
+     * Write the spans of the last page loads as Chrome trace-event JSON, open it in chrome://tracing
+     * or ui.perfetto.dev to see where a load waited: request and first byte, parse, thumbnails, cache insert, notify.
+     * @return false if tracing is off or the file could not be written
+     */
+    public boolean writeTrace(File file) {
+        if (!mTracer.isEnabled()) return false;
+        try {
+            mTracer.writeChromeTrace(file);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "writeTrace failed - file: " + file, e);
+            return false;
         }
     }
 
     /**
-     * Check if the cache is loaded for the given index range.
+     * Check if the cache is loaded for the given index range, every page of it.
      * @param fromIndex
      * @param toIndex
      * @return true if loaded else false
      */
     public boolean isLoaded(int fromIndex, int toIndex) {
-        int beginPage = fromIndex / PAGE_SIZE;
-        int endPage = toIndex / PAGE_SIZE;
-        if (beginPage != endPage) {
-            return mUtils.isPageLoaded(beginPage) && mUtils.isPageLoaded(endPage);
-        }
-        return mUtils.isPageLoaded(beginPage);
+        return mPageStates.isReady(fromIndex / PAGE_SIZE, toIndex / PAGE_SIZE);
     }
 
     /**
-     * Check if the cache is being loaded for the given index range.
+     * Check if the cache is being loaded for the given index range: no page of it is missing, some still loading.
      * @param fromIndex
      * @param toIndex
      * @return
      */
     public boolean isLoading(int fromIndex, int toIndex) {
+        return mPageStates.isLoading(fromIndex / PAGE_SIZE, toIndex / PAGE_SIZE);
+    }
+
+    /**
+     * The pages of an index range that are neither loaded nor loading (never loaded, failed or evicted),
+     * read from the PageStateTable without touching the page cache (or its LRU order).
+     * @param fromIndex
+     * @param toIndex
+     * @return the missing page numbers in order, for loadPages
+     */
+    public int[] getMissingPages(int fromIndex, int toIndex) {
+        return mPageStates.missingPages(fromIndex / PAGE_SIZE, toIndex / PAGE_SIZE);
+    }
+
+    /**
+     * Load products for a given index range, any number of pages.
+     *
+     * Pages are pipelined: a page starts loading as soon as its url is known, which is right after
+     * the previous page is parsed. So the json of page N+1 is fetched while the thumbnails of page N
+     * are still downloading.
+     *
+     * @param fromIndex
+     * @param toIndex
+     * @param onComplete - called once, with the first error or once every page is loaded
+     */
+    public void loadProducts(int fromIndex, int toIndex, Function onComplete) {
+        loadProductsAsync(fromIndex, toIndex, ServiceFuture.NO_DEADLINE).addCallback(ServiceFuture.<Void>callback(onComplete));
+    }
+
+    /**
+     * Load products for a given index range, see loadProducts.
+     *
+     * Cancelling the future (or its deadline passing) stops the pages still waiting for their url.
+     * Pages already requested finish loading into the page cache, other callers may be waiting on them too.
+     *
+     * @param fromIndex
+     * @param toIndex
+     * @param timeoutMillis - the future fails with a TimeoutException past it, ServiceFuture.NO_DEADLINE for none
+     * @return completes with the first error or once every page is loaded
+     */
+    public ServiceFuture<Void> loadProductsAsync(int fromIndex, int toIndex, long timeoutMillis) {
         int beginPage = fromIndex / PAGE_SIZE;
         int endPage = toIndex / PAGE_SIZE;
-        if (beginPage != endPage) {
-            return mPagesLoading.get(beginPage) != null && mPagesLoading.get(endPage) != null;
+        if (endPage < beginPage) {
+            ServiceFuture<Void> future = new ServiceFuture<Void>();
+            future.fail("invalid fromIndex and toIndex, fromIndex is after toIndex");
+            return future;
         }
-        return mPagesLoading.get(beginPage) != null;
+        int[] pageNums = new int[endPage - beginPage + 1];
+        for (int i = 0; i < pageNums.length; i++) {
+            pageNums[i] = beginPage + i;
+        }
+        return loadPagesAsync(pageNums, timeoutMillis);
     }
 
     /**
-     * Load products for a given index range.
-     * @param fromIndex
-     * @param toIndex
-     * @param onComplete
+     * Load the given pages, i.e. the ones getMissingPages returned, see loadProducts.
+     * @param pageNums - in order, pages already loaded or loading are joined
+     * @param onComplete - called once, with the first error or once every page is loaded
      */
-    public void loadProducts(int fromIndex, int toIndex, final Function onComplete) {
-        final int beginPage = fromIndex / PAGE_SIZE;
-        final int endPage = toIndex / PAGE_SIZE;
-        final Context context = this;
-        Function _onComplete;
-        // we might need to load two pages, the from & to index could span two pages (AT MOST)
-        if (beginPage != endPage) {
-            if (endPage-beginPage > 1) {
-                onComplete.call("invalid fromIndex and toIndex, range too big");
-                return;
-            }
-            _onComplete = new Function() {
-                @Override
-                public void call(Object... args) {
-                    if (args[0] != null) {
+    public void loadPages(int[] pageNums, Function onComplete) {
+        loadPagesAsync(pageNums, ServiceFuture.NO_DEADLINE).addCallback(ServiceFuture.<Void>callback(onComplete));
+    }
+
+    /**
+     * Load the given pages, see loadProductsAsync.
+     * @param pageNums - in order, pages already loaded or loading are joined
+     * @param timeoutMillis - the future fails with a TimeoutException past it, ServiceFuture.NO_DEADLINE for none
+     * @return completes with the first error or once every page is loaded
+     */
+    public ServiceFuture<Void> loadPagesAsync(final int[] pageNums, long timeoutMillis) {
+        final ServiceFuture<Void> future = new ServiceFuture<Void>();
+        if (pageNums.length == 0) {
+            future.set(null);
+            return future;
+        }
+        future.withDeadline(timeoutMillis);
+        final long startTime = System.nanoTime();
+        final Tracer.Span span = mTracer.start("loadProducts").arg("pages", pageNums.length);
+        final AtomicInteger remaining = new AtomicInteger(pageNums.length);
+        // the first of failing, completing and cancelling ends the span, the others find it done
+        final AtomicBoolean done = new AtomicBoolean(false);
+        Function onPageComplete = new Function() {
+            @Override
+            public void call(Object... args) {
+                if (args[0] != null) {
+                    if (done.compareAndSet(false, true)) {
+                        span.end();
                         Log.e(TAG, args[0].toString());
-                        onComplete.call(args[0]);
-                    }
-                    else {
-                        mUtils.loadPage(mEmitter, context, mPagesLoading, endPage, onComplete);
+                        future.fail(args[0]);
                     }
+                } else if (remaining.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                    span.end();
+                    long elapsed = System.nanoTime() - startTime;
+                    StringBuffer sb = new StringBuffer("loadProducts complete - pages: ");
+                    sb.append(pageNums.length);
+                    sb.append(", pages/sec: ").append(pageNums.length * 1e9 / Math.max(elapsed, 1));
+                    Log.i(TAG, sb.toString());
+                    future.set(null);
                 }
-            };
-        } else {
-            _onComplete = onComplete;
+            }
+        };
+        // a page with no known url waits for the page before it: loaded by this call, or already loading.
+        // the first page is loaded right away otherwise, its url may still be restored from disk
+        final List<Cancellable> waiting = new ArrayList<Cancellable>();
+        // the pages started from here are children of the span, see WalmartServiceUtils.loadPage
+        Tracer.Span previous = span.enter();
+        try {
+            for (int i = 0; i < pageNums.length; i++) {
+                int pageNum = pageNums[i];
+                // a page beyond the capacity fails in loadPage
+                if (pageNum >= mPageUrlEvents.capacity() || mUtils.hasPageUrl(pageNum)
+                        || (i == 0 && !isPreviousLoading(pageNum))) {
+                    mUtils.loadPage(this, mPageStates, pageNum, onPageComplete);
+                } else {
+                    waiting.add(loadPageWhenUrlKnown(pageNum, i == 0, span, onPageComplete));
+                }
+            }
+        } finally {
+            mTracer.exit(previous);
         }
-        mUtils.loadPage(mEmitter, context, mPagesLoading, beginPage, _onComplete);
+        future.setOnCancel(new Cancellable() {
+            @Override
+            public void cancel() {
+                if (done.compareAndSet(false, true)) span.end();
+                for (Cancellable page : waiting) {
+                    page.cancel();
+                }
+            }
+        });
+        return future;
+    }
+
+    private boolean isPreviousLoading(int pageNum) {
+        return pageNum > 0 && mPageStates.isLoading(pageNum - 1);
+    }
+
+    /**
+     * @param behindLoad - nothing in this call loads the page before, a load in flight does. Once it is no longer
+     *                   in flight the page is loaded right away, its url is as known as it gets
+     * @param span - the loadProducts call, the page is its child whichever thread learns the url
+     * @return stops waiting for the url, the page is not loaded
+     */
+    private Cancellable loadPageWhenUrlKnown(int pageNum, boolean behindLoad, final Tracer.Span span,
+                                             final Function onComplete) {
+        final Context context = this;
+        final AtomicBoolean started = new AtomicBoolean(false);
+        final EventBus.Registration<String> registration = mPageUrlEvents.once(pageNum, new EventBus.Listener<String>() {
+            @Override
+            public void onEvent(int pageNum, String pageUrl) {
+                if (!started.compareAndSet(false, true)) return;
+                if (pageUrl == null) {
+                    onComplete.call("loadPage failed - no url for page after: " + (pageNum - 1));
+                    return;
+                }
+                Tracer.Span previous = span.enter();
+                try {
+                    mUtils.loadPage(context, mPageStates, pageNum, onComplete);
+                } finally {
+                    mTracer.exit(previous);
+                }
+            }
+        });
+        // the url could have been learned (or the load before could have failed) between the check
+        // in loadProducts and registering the listener
+        boolean known = mUtils.hasPageUrl(pageNum) || (behindLoad && !isPreviousLoading(pageNum));
+        if (known && started.compareAndSet(false, true)) {
+            registration.remove();
+            mUtils.loadPage(context, mPageStates, pageNum, onComplete);
+        }
+        return new Cancellable() {
+            @Override
+            public void cancel() {
+                if (started.compareAndSet(false, true)) registration.remove();
+            }
+        };
     }
 
-    /** Needed for efficient Bitmap Caching **/
+    /** A loaded page, bitmaps live in the BitmapCache **/
     public static class CacheEntry {
-        private final JsonNode mPage;
-        private final Map<String, Bitmap> mBitmaps;
-        public CacheEntry(JsonNode page) {
+        private final ProductPage mPage;
+        public CacheEntry(ProductPage page) {
             this.mPage = page;
-            mBitmaps = new ConcurrentHashMap<>();
         }
-        public JsonNode page() {
+        public ProductPage page() {
             return mPage;
         }
-        public Map<String, Bitmap> bitmaps() {
-            return mBitmaps;
+        public int byteSize() {
+            return mPage.byteSize();
         }
     }
 
@@ -16,20 +16,110 @@ public class WalmartServiceConfig {
 
     public static final int PAGE_SIZE = 100;
 
+    // pages expected to be in flight at once, sizes the http request queue
     public static final int MAX_PAGES = 3;
 
-    public static final int MIN_THREADS = 2;
+    // pages whose load state is tracked (PageStateTable), 6.5M products
+    public static final int MAX_PAGE_NUM = 1 << 16;
 
-    public static final int MAX_THREADS = 8;
+    // byte budget of the page cache, a page costs its product columns (~100KB), see ProductPage.
+    public static final int PAGE_CACHE_BYTES = 512 * 1024;
 
-    // when the number of threads is greater than the core,
-    // this is the maximum time that excess idle threads will wait for new tasks
+    // the order pages leave the page cache in: lru, tinylfu or viewport (see CachePolicy), application.properties
+    // can pick another. viewport keeps the pages on screen and evicts the pages farthest behind the scroll.
+    public static final String PAGE_CACHE_POLICY = PageCache.VIEWPORT;
+
+    // flings slower than this (rows per second) are left to the scroll listener, see ScrollPrefetcher
+    public static final int PREFETCH_MIN_VELOCITY = 20;
+
+    // the deceleration of a fling (rows per second per second) until the ScrollPrefetcher has measured one
+    public static final int PREFETCH_DECELERATION = 50;
+
+    // pages a fling may load ahead of the screen, one comes back when a prefetched page gets on screen
+    // and one every PREFETCH_REFILL_MILLIS, so flings that keep missing their landing stop prefetching.
+    public static final int PREFETCH_PAGES = 2;
+    public static final int PREFETCH_REFILL_MILLIS = 5000;
+
+    // byte budget of the thumbnail cache, ~2MB of 100x100 RGB_565 thumbnails per page (at mdpi, more on denser screens).
+    // keep room for at least as many pages as the page cache holds, pages are
+    // only reloaded (along with their missing thumbnails) after the page is evicted.
+    public static final int THUMBNAIL_CACHE_BYTES = 20 * 1024 * 1024;
+
+    // byte budget of the pool of evicted thumbnails kept to be decoded into, about a page of thumbnails.
+    public static final int BITMAP_POOL_BYTES = 4 * 1024 * 1024;
+
+    // byte budget of the medium image cache, medium images are loaded on demand by the detail view.
+    public static final int MEDIUM_IMAGE_CACHE_BYTES = 4 * 1024 * 1024;
+
+    // number of distinct product strings to intern, see ProductPage. the working set: the four string columns
+    // of the pages the page cache holds (~5) and of the MAX_PAGES in flight, least recently used ones are dropped.
+    public static final int STRING_POOL_SIZE = PAGE_SIZE * 4 * 8;
+
+    // http threads, the ConcurrencyLimiters decide how many of them are used, idle ones time out
+    public static final int MAX_THREADS = 12;
+
+    // page json requests in flight, starts at PAGE_REQUESTS and adapts to the observed latency, see ConcurrencyLimiter
+    public static final int PAGE_REQUESTS = 2;
+    public static final int MIN_PAGE_REQUESTS = 1;
+    public static final int MAX_PAGE_REQUESTS = MAX_PAGES;
+
+    // image downloads in flight, adapts like the page requests. the most leaves http threads free for page json
+    public static final int IMAGE_REQUESTS = 6;
+    public static final int MIN_IMAGE_REQUESTS = 2;
+    public static final int MAX_IMAGE_REQUESTS = MAX_THREADS - MAX_PAGE_REQUESTS;
+
+    // when the http queue is full a request is retried after this delay instead of being dropped
+    public static final int REJECTED_RETRY_DELAY = 250; //milliseconds
+
+    // threads decoding image bytes into bitmaps, see BitmapDecoder
+    public static final int DECODE_THREADS = 2;
+
+    // threads parsing page json, sized to the cores like AsyncTask leaving one for the main thread, see ParseExecutor
+    public static final int PARSE_THREADS = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+
+    // pages waiting for a parse thread, past it a page waits for the overflow thread (which queues as many)
+    public static final int PARSE_QUEUE_SIZE = MAX_PAGES * 8;
+
+    // targets up to this many pixels (i.e. the 100dp thumbnail at xxhdpi) are decoded as RGB_565
+    public static final int RGB_565_MAX_PIXELS = 400 * 400;
+
+    // the maximum time that idle http threads will wait for new tasks
     public static final int THREAD_TIMEOUT = 10; //seconds
 
+    // defaults, the baseUrl and firstPageUrl properties of application.properties override them, see AppModule
     public static final String BASE_URL = "http://api.walmartlabs.com";
 
     public static final String FIRST_PAGE_URL = "/v1/paginated/items?format=json&apiKey=vns2unqneevgc3vweue9eqnt";
 
     public static final int HTTP_TIMEOUT = 20 * 1000;
 
+    // the detail view gives up on a medium image past this, queued behind thumbnails or not
+    public static final long MEDIUM_IMAGE_TIMEOUT = 15 * 1000; //milliseconds
+
+    // idle connections kept open by OkHttpTransport, the api and the image host, and for how long
+    public static final int MAX_IDLE_CONNECTIONS = 4;
+    public static final int CONNECTION_KEEP_ALIVE = 5 * 60; //seconds
+
+    // publish a page as soon as its json is parsed instead of once all of its thumbnails are loaded
+    public static final boolean PUBLISH_BEFORE_THUMBNAILS = true;
+
+    // directory under the app cache dir holding the DiskCache
+    public static final String DISK_CACHE_DIR = "walmart";
+
+    // byte budget of the DiskCache, page json and image source bytes
+    public static final long DISK_CACHE_BYTES = 32 * 1024 * 1024;
+
+    // pages older than this are fetched again, they are still used if the fetch fails
+    public static final long DISK_PAGE_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+    // product images do not change for a given url
+    public static final long DISK_IMAGE_MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    // file under the app files dir the metrics are written to, every METRICS_DUMP_INTERVAL, see MetricsReporter
+    public static final String METRICS_FILE = "metrics.json";
+    public static final long METRICS_DUMP_INTERVAL = 60 * 1000L; //milliseconds
+
+    // spans kept by the Tracer, a page load is ~10 spans plus one per thumbnail
+    public static final int TRACE_CAPACITY = 4096;
+
 }
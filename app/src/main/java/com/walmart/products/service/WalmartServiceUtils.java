@@ -2,46 +2,61 @@ package com.walmart.products.service;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import android.util.LruCache;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.loopj.android.http.AsyncHttpClient;
-import com.loopj.android.http.BinaryHttpResponseHandler;
-import com.walmart.products.http.JsonHttpResponseHandler;
+import com.walmart.products.http.ContentEncoding;
+import com.walmart.products.http.HttpTransport;
+import com.walmart.products.http.PageParser;
+import com.walmart.products.http.ParseExecutor;
+import com.walmart.products.http.PageRecord;
+import com.walmart.products.util.Cancellable;
+import com.walmart.products.util.EventBus;
 import com.walmart.products.util.EventEmitter;
 import com.walmart.products.util.Function;
+import com.walmart.products.util.Handlers;
+import com.walmart.products.util.Metrics;
+import com.walmart.products.util.SingleFlight;
+import com.walmart.products.util.StringPool;
+import com.walmart.products.util.Tracer;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
-import cz.msebera.android.httpclient.Header;
-
 import static com.walmart.products.service.WalmartServiceConfig.*;
 import static com.walmart.products.service.WalmartService.CacheEntry;
 
 /**
  * WalmartService Auxiliary methods.
  *
- * This is not an object, but a singleton container of functions.
+ * A singleton. Its state is the singletons AppModule injects (the caches, the transport, the limiters,
+ * the executors, the metrics and tracer), each set once and shared with the service, plus mRequests,
+ * the http requests in flight by context so cancel(Context) can call them back.
  *
  * Only singletons should be injected, if you are not injecting a singleton
  * then you MUST pass the dependency as a parameter to the function.
- *
- * Also this class should have ZERO member variables.
+ * Per call state lives in the callbacks, not in member variables.
  *
  *
  *  INFO: About the service callbacks and threads
  *
- *  - HttpCalls are executed within a worker thread from a threadpool inside AsyncHttpClient
- *  - When an http call is complete, a new thread is created for parsing JSON
+ *  - Pages and images are looked up in the DiskCache on its background thread first
+ *  - Expired ones are revalidated with their ETag / Last-Modified, a 304 keeps the bytes on disk
+ *  - Images go through the ImageScheduler, which limits downloads in flight and prefers visible products
+ *  - HttpCalls are made by the HttpTransport, which calls back on the callers thread
+ *  - When a page arrives, its JSON is streamed into a ProductPage on the ParseExecutor
  *  - After parsing, the onComplete callback is called on the original callers thread.
  *  - If your app called from the UI thread, it will get called back on the UI thread.
  *
@@ -49,14 +64,69 @@ import static com.walmart.products.service.WalmartService.CacheEntry;
 @Singleton
 public class WalmartServiceUtils {
 
+    // BASE_URL, or the API application.properties points to
+    @Inject @Named("baseUrl")
+    String mBaseUrl;
+
     @Inject
     Map<Integer, String> mPageUrls;
 
+    // keyed by page number, the url of a page once it is known (null if it never will be)
+    @Inject @Named("pageUrlEvents")
+    EventBus<String> mPageUrlEvents;
+
+    // evicts in the order of the CachePolicy picked by application.properties, see AppModule
+    @Inject
+    PageCache mPageCache;
+
+    // OkHttp (HTTP/2, pooled connections) unless application.properties picks loopj, see AppModule
+    @Inject
+    HttpTransport mTransport;
+
+    @Inject
+    StringPool mStringPool;
+
+    @Inject
+    BitmapCache mBitmapCache;
+
+    @Inject
+    DiskCache mDiskCache;
+
+    @Inject
+    ImageScheduler mImageScheduler;
+
+    // image downloads in flight by url and decode target, see bitmapKey
+    @Inject
+    SingleFlight<String> mBitmapLoads;
+
+    @Inject
+    BitmapDecoder mBitmapDecoder;
+
+    // page json is parsed here, not on a new thread per response
+    @Inject
+    ParseExecutor mParseExecutor;
+
+    // page json requests in flight, image requests are limited by the ImageScheduler with mImageLimiter
+    @Inject @Named("pageLimiter")
+    ConcurrencyLimiter mPageLimiter;
+
+    @Inject @Named("imageLimiter")
+    ConcurrencyLimiter mImageLimiter;
+
+    // hot path latencies and counters, see the metric names below
     @Inject
-    LruCache<Integer, CacheEntry> mPageCache;
+    Metrics mMetrics;
 
+    // spans of every page load, from loadPage to the UI being notified, see Tracer
     @Inject
-    AsyncHttpClient mHttpClient;
+    Tracer mTracer;
+
+    // THUMBNAIL_LOADED_EVENT is emitted here, the service adds its listeners
+    @Inject @Named("thumbnailEvents")
+    EventEmitter mThumbnailEvents;
+
+    // the requests of mTransport not called back yet by their context, see cancel(Context)
+    private final Map<Context, Set<HttpRequest>> mRequests = new HashMap<Context, Set<HttpRequest>>();
 
     protected final String TAG = getClass().getCanonicalName();
 
@@ -71,160 +141,1020 @@ public class WalmartServiceUtils {
         return cacheEntry;
     }
 
-    protected boolean isPageLoaded(int index) {
-        return mPageCache.get(index) != null;
+    /**
+     * Emitted on every thumbnail that arrives, args[1] is the product index.
+     */
+    protected static final String THUMBNAIL_LOADED_EVENT = "THUMBNAIL_LOADED";
+
+    /**
+     * Metrics of the service, see mMetrics. Latencies are histograms, the rest counters.
+     */
+    // from loadPage to the page being READY, from disk or the network
+    static final String LOAD_PAGE = "loadPage";
+    // pages that failed with no stale copy on disk to fall back to
+    static final String LOAD_PAGE_FAILED = "loadPage.failed";
+    // loadPage calls that joined a load already in flight
+    static final String LOAD_PAGE_JOINED = "loadPage.joined";
+    // parsing the page json, from the network or from disk
+    static final String PARSE_PAGE = "parsePage";
+    // from loadThumbnails to the last thumbnail of the page arriving (or failing)
+    static final String LOAD_THUMBNAILS = "loadThumbnails";
+    // from loadBitmap to the decoded bitmap (or the error), once the ImageScheduler started it
+    static final String LOAD_BITMAP = "loadBitmap";
+    static final String LOAD_BITMAP_FAILED = "loadBitmap.failed";
+
+    protected boolean hasPageUrl(int pageNum) {
+        return mPageUrls.containsKey(pageNum);
     }
 
-    protected void loadPage(final EventEmitter emitter,
-                            final Context context,
-                            final Map<Integer, Boolean> pagesLoading,
+    /**
+     * Tell whoever waits on the url of the page after pageNum (see mPageUrlEvents), that it is known
+     * or will never be (i.e. the page failed or was the last one), then the url is null.
+     */
+    private void notifyNextPageUrl(int pageNum) {
+        if (!mPageUrlEvents.hasListeners(pageNum+1)) return;
+        mPageUrlEvents.emit(pageNum+1, mPageUrls.get(pageNum+1));
+    }
+
+    protected void loadPage(final Context context,
+                            final PageStateTable pageStates,
                             final int pageNum, final Function onComplete) {
+        // a child of the loadProducts call the thread is in, carried through every stage of the load
+        final Tracer.Span span = mTracer.start("loadPage").arg("page", pageNum);
+        if (pageNum < 0 || pageNum >= pageStates.capacity()) {
+            span.end();
+            onComplete.call("loadPage failed - page out of range: " + pageNum);
+            return;
+        }
         // page already loaded
-        if (isPageLoaded(pageNum)) {
+        if (pageStates.isReady(pageNum)) {
+            span.end();
             onComplete.call(null, null);
+            notifyNextPageUrl(pageNum);
             return;
         }
         // page url not found
         final String pageUrl = mPageUrls.get(pageNum);
         if (pageUrl == null) {
-            onComplete.call("loadPage failed - next page not found in mPageUrls");
+            span.end();
+            loadPageWhenUrlsRestored(context, pageStates, pageNum, onComplete);
             return;
         }
-        final String PAGE_LOADED_EVENT = "PAGE_" + pageNum + "_LOADED";
-        synchronized (this) {
-            // page already being loaded, lets not waste time and resources loading it again...
-            if (pagesLoading.containsKey(pageNum)) {
-                StringBuffer sb = new StringBuffer();
-                sb.append("loadPage failed - page already being loaded: ").append(pageNum);
-                sb.append(", onComplete will be called once it is loaded");
-                Log.i(TAG, sb.toString());
-                // EventEmitter is needed in the situation that client A is in the process of loading page X,
-                // And client B comes in and asks for page X, we need to now make two callbacks for when page X
-                // has completed loading, one to A and one to B. An EventEmitter simplifies this task.
-                final Handler handler = new Handler(Looper.myLooper());
-                // make sure to make the callback on the callers thread.
-                // the original caller thread that asked to to load page X,
-                // will call this Function which will post callback to original callers thread...
-                emitter.once(PAGE_LOADED_EVENT, new Function() {
+        // page already being loaded, lets not waste time and resources loading it again...
+        // joining is needed in the situation that client A is in the process of loading page X,
+        // And client B comes in and asks for page X, we need to now make two callbacks for when page X
+        // has completed loading, one to A and one to B.
+        int state = pageStates.join(pageNum, onCallerThread(onComplete));
+        if (state == PageStateTable.READY) {
+            // loaded between the check above and the join
+            span.end();
+            onComplete.call(null, null);
+            notifyNextPageUrl(pageNum);
+            return;
+        }
+        if (state == PageStateTable.LOADING) {
+            // the spans of the load in flight are in the trace of whoever started it
+            span.end();
+            mMetrics.counter(LOAD_PAGE_JOINED).inc();
+            StringBuffer sb = new StringBuffer();
+            sb.append("loadPage - page already being loaded: ").append(pageNum);
+            sb.append(", onComplete will be called once it is loaded");
+            Log.i(TAG, sb.toString());
+            return;
+        }
+        // try the disk first, a warm start renders from disk before the network responds
+        final long startTime = System.nanoTime();
+        final Looper looper = Looper.myLooper();
+        final Tracer.Span diskSpan = span.child("readDisk");
+        mDiskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final PageRecord pageRecord = readPageFromDisk(pageUrl, DISK_PAGE_MAX_AGE);
+                // an expired page is revalidated instead of downloaded again
+                final DiskCache.Validators validators = (pageRecord == null)
+                        ? mDiskCache.validators(pageUrl) : DiskCache.Validators.NONE;
+                diskSpan.end();
+                postToLooper(looper, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (pageRecord != null) {
+                            Log.i(TAG, "loadPage - page: " + pageNum + " loaded from disk");
+                            onPageLoaded(context, pageStates, pageNum, pageRecord, startTime, span);
+                        } else {
+                            fetchPage(context, pageStates, pageNum, pageUrl, validators, startTime, span);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * The urls saved on disk are restored on the disk thread (see AppModule.providePageUrls), a url still missing
+     * behind it is not known, else the page is loaded.
+     */
+    private void loadPageWhenUrlsRestored(final Context context,
+                                          final PageStateTable pageStates,
+                                          final int pageNum, final Function onComplete) {
+        final Looper looper = Looper.myLooper();
+        mDiskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                postToLooper(looper, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (hasPageUrl(pageNum)) {
+                            loadPage(context, pageStates, pageNum, onComplete);
+                            return;
+                        }
+                        onComplete.call("loadPage failed - next page not found in mPageUrls");
+                        notifyNextPageUrl(pageNum);
+                    }
+                });
+            }
+        });
+    }
+
+    private void fetchPage(final Context context,
+                           final PageStateTable pageStates,
+                           final int pageNum,
+                           final String pageUrl,
+                           final DiskCache.Validators validators,
+                           final long startTime,
+                           final Tracer.Span span) {
+        // at most as many pages in flight as the network keeps up with, the rest wait their turn
+        final Tracer.Span queuedSpan = span.child("pageLimiter");
+        mPageLimiter.execute(new ConcurrencyLimiter.Request() {
+            @Override
+            protected void start(final Function onDone) {
+                queuedSpan.end();
+                final long sentTime = System.nanoTime();
+                final Tracer.Span requestSpan = span.child("request");
+                get(context, mBaseUrl + pageUrl, pageHeaders(validators), new HttpTransport.Callback() {
                     @Override
-                    public void call(final Object... args) {
-                        handler.post(new Runnable() {
+                    public void onResponse(final HttpTransport.Response response) {
+                        if (response.firstByteNanos != 0) requestSpan.mark("firstByte", response.firstByteNanos);
+                        requestSpan.end();
+                        // a 304 without having asked for one would fetch the page again and again
+                        if (response.isNotModified() && !validators.isEmpty()) {
+                            mPageLimiter.onSample(System.nanoTime() - sentTime, false);
+                            onDone.call();
+                            onPageNotModified(context, pageStates, pageNum, pageUrl, validators(response),
+                                    startTime, span);
+                            return;
+                        }
+                        if (!response.isSuccessful()) {
+                            // a cancelled request says nothing about the network
+                            if (!isCancelled(response)) {
+                                mPageLimiter.onSample(System.nanoTime() - sentTime, isOverload(response.status));
+                            }
+                            onDone.call();
+                            onPageFailed(context, pageStates, pageNum, pageUrl, startTime,
+                                    response.status, response.error, span);
+                            return;
+                        }
+                        String contentEncoding = response.header("Content-Encoding");
+                        parsePage(response.body, contentEncoding, pageUrl, validators(response), span, new Function() {
                             @Override
-                            public void run() {
-                                onComplete.call(args);
+                            public void call(Object... args) {
+                                // the latency includes the parse, a parse backlog is a reason to send less too
+                                mPageLimiter.onSample(System.nanoTime() - sentTime, false);
+                                onDone.call();
+                                if (args[0] == null) {
+                                    onPageLoaded(context, pageStates, pageNum, (PageRecord) args[1],
+                                            startTime, span);
+                                } else {
+                                    onPageFailed(context, pageStates, pageNum, pageUrl, startTime,
+                                            response.status, (Throwable) args[0], span);
+                                }
                             }
                         });
                     }
                 });
-                return;
             }
-            pagesLoading.put(pageNum, true);
-        }
-        // ok lets load the page
-        mHttpClient.get(context, BASE_URL + pageUrl, new JsonHttpResponseHandler() {
+        });
+    }
+
+    /**
+     * The page on disk is still what the server has, it is used as if it had just been downloaded.
+     * If it was evicted from the disk meanwhile, it is fetched again without validators.
+     */
+    private void onPageNotModified(final Context context,
+                                   final PageStateTable pageStates,
+                                   final int pageNum,
+                                   final String pageUrl,
+                                   final DiskCache.Validators validators,
+                                   final long startTime,
+                                   final Tracer.Span span) {
+        final Looper looper = Looper.myLooper();
+        final Tracer.Span diskSpan = span.child("readDisk");
+        mDiskCache.executor().execute(new Runnable() {
             @Override
-            public void onSuccess(int statusCode, Header[] headers, JsonNode pageNode) {
-                mPageUrls.put(pageNum+1, pageNode.get("nextPage").textValue());
-                final CacheEntry cacheEntry = new CacheEntry(pageNode);
-                loadThumbnails(context, cacheEntry, pageNum, new Function() {
+            public void run() {
+                final PageRecord pageRecord = touchDisk(pageUrl, validators)
+                        ? readPageFromDisk(pageUrl, Long.MAX_VALUE) : null;
+                diskSpan.end();
+                postToLooper(looper, new Runnable() {
                     @Override
-                    public void call(Object... args) {
-                        pagesLoading.remove(pageNum); // no longer loading page, remove
-                        mPageCache.put(pageNum, cacheEntry);
-                        Log.i(TAG, "loadPage complete - page: " + pageNum);
-                        onComplete.call(null, null);
-                        if (emitter.hasListeners(PAGE_LOADED_EVENT)) emitter.emit(PAGE_LOADED_EVENT);
+                    public void run() {
+                        if (pageRecord != null) {
+                            Log.i(TAG, "loadPage - page: " + pageNum + " not modified, loaded from disk");
+                            onPageLoaded(context, pageStates, pageNum, pageRecord, startTime, span);
+                        } else {
+                            fetchPage(context, pageStates, pageNum, pageUrl, DiskCache.Validators.NONE,
+                                    startTime, span);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
+    /**
+     * Parse the page json on the ParseExecutor, pages that parse are written to disk.
+     * @param span - the load of the page, the parse and the wait for the callers thread are its children
+     * @param onComplete - called on the callers thread, args[0] is the parse error if not null, else args[1] is the PageRecord
+     */
+    private void parsePage(final byte[] responseBody, final String contentEncoding, final String pageUrl,
+                           final DiskCache.Validators validators, final Tracer.Span span, final Function onComplete) {
+        final Looper looper = Looper.myLooper();
+        final Tracer.Span queuedSpan = span.child("parseExecutor");
+        Runnable parser = new Runnable() {
+            @Override
+            public void run() {
+                queuedSpan.end();
+                PageRecord pageRecord = null;
+                IOException error = null;
+                try {
+                    long parseStartTime = System.nanoTime();
+                    Tracer.Span parseSpan = span.child("parse");
+                    pageRecord = PageParser.parsePage(responseBody, contentEncoding);
+                    parseSpan.end();
+                    mMetrics.histogram(PARSE_PAGE).recordSince(parseStartTime);
+                    // only keep pages that parsed, compressed as they arrived (they are told apart on read)
+                    Tracer.Span writeSpan = span.child("writeDisk");
+                    writeToDisk(pageUrl, responseBody, validators);
+                    writeSpan.end();
+                } catch (IOException e) {
+                    error = e;
+                }
+                final PageRecord parsed = pageRecord;
+                final IOException parseError = error;
+                // a busy callers thread (i.e. the main thread) shows here
+                final Tracer.Span handlerSpan = span.child("handler");
+                postToLooper(looper, new Runnable() {
+                    @Override
+                    public void run() {
+                        handlerSpan.end();
+                        onComplete.call(parseError, parsed);
                     }
                 });
             }
+        };
+        try {
+            mParseExecutor.execute(parser);
+        } catch (RejectedExecutionException e) {
+            // shut down (or every parse queue is full), the page fails instead of waiting for a parse that never runs
+            queuedSpan.end();
+            onComplete.call(new IOException("parsePage failed - " + e.getMessage(), e), null);
+        }
+    }
+
+    private void onPageFailed(final Context context,
+                              final PageStateTable pageStates,
+                              final int pageNum,
+                              final String pageUrl,
+                              final long startTime,
+                              final int status,
+                              final Throwable error,
+                              final Tracer.Span span) {
+        // offline or server error, a stale page from disk is better than nothing
+        final Looper looper = Looper.myLooper();
+        mDiskCache.executor().execute(new Runnable() {
             @Override
-            public void onFailure(int status, Header[] headers, Throwable error, JsonNode errorResponse) {
-                pagesLoading.remove(pageNum); // no longer loading page, remove
-                onComplete.call(logAndGetHttpError("loadPage", pageUrl, status, error));
-                if (emitter.hasListeners(PAGE_LOADED_EVENT)) emitter.emit(PAGE_LOADED_EVENT);
+            public void run() {
+                final PageRecord staleRecord = readPageFromDisk(pageUrl, Long.MAX_VALUE);
+                postToLooper(looper, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (staleRecord != null) {
+                            Log.w(TAG, "loadPage - page: " + pageNum + " failed, using stale page from disk");
+                            onPageLoaded(context, pageStates, pageNum, staleRecord, startTime, span);
+                            return;
+                        }
+                        // no longer loading page, every caller gets the error
+                        mMetrics.counter(LOAD_PAGE_FAILED).inc();
+                        Tracer.Span notifySpan = span.child("notify");
+                        pageStates.complete(pageNum, logAndGetHttpError("loadPage", pageUrl, status, error));
+                        notifyNextPageUrl(pageNum);
+                        notifySpan.end();
+                        span.end();
+                    }
+                });
             }
         });
     }
 
+    private void onPageLoaded(final Context context,
+                              final PageStateTable pageStates,
+                              final int pageNum,
+                              final PageRecord pageRecord,
+                              final long startTime,
+                              final Tracer.Span span) {
+        ProductPage page = ProductPage.from(pageRecord, mStringPool);
+        if (page.nextPage() != null) {
+            mPageUrls.put(pageNum+1, page.nextPage());
+            savePageUrl(pageNum+1, page.nextPage());
+        }
+        // the next page can start loading now, it does not have to wait for these thumbnails
+        Tracer.Span nextPageSpan = span.child("notifyNextPage");
+        notifyNextPageUrl(pageNum);
+        nextPageSpan.end();
+        final CacheEntry cacheEntry = new CacheEntry(page);
+        // the thumbnails of the page are a child of its load
+        Tracer.Span previous = span.enter();
+        try {
+            if (PUBLISH_BEFORE_THUMBNAILS) {
+                // progressive: names and descriptions show right away, rows are rebound as thumbnails arrive
+                publishPage(pageStates, pageNum, cacheEntry, startTime, span);
+                loadThumbnails(context, cacheEntry, pageNum, startTime, new Function() {
+                    @Override
+                    public void call(Object... args) {}
+                });
+            } else {
+                loadThumbnails(context, cacheEntry, pageNum, startTime, new Function() {
+                    @Override
+                    public void call(Object... args) {
+                        publishPage(pageStates, pageNum, cacheEntry, startTime, span);
+                    }
+                });
+            }
+        } finally {
+            mTracer.exit(previous);
+        }
+    }
+
+    private void publishPage(PageStateTable pageStates,
+                             int pageNum,
+                             CacheEntry cacheEntry,
+                             long startTime,
+                             Tracer.Span span) {
+        Tracer.Span insertSpan = span.child("cacheInsert");
+        mPageCache.put(pageNum, cacheEntry);
+        insertSpan.end();
+        mMetrics.histogram(LOAD_PAGE).recordSince(startTime);
+        StringBuffer sb = new StringBuffer("loadPage complete - page: ");
+        sb.append(pageNum).append(", bytes: ").append(cacheEntry.byteSize());
+        sb.append(", ms: ").append((System.nanoTime() - startTime) / 1000000);
+        Log.i(TAG, sb.toString());
+        Tracer.Span notifySpan = span.child("notify");
+        pageStates.complete(pageNum, null, null); // page is READY, calls every caller back
+        notifySpan.end();
+        span.end();
+    }
+
     /**
      * Thumbnails are the only pre-loaded image, all other images will be loaded on demand
+     * Thumbnails still in the BitmapCache (i.e. from before the page was evicted) are not loaded again.
+     *
+     * THUMBNAIL_LOADED_EVENT is emitted with the product index of each thumbnail that arrives.
+     * The fan-out is a span of the current trace, the loadBitmap span of each thumbnail is its child.
      */
-    protected void loadThumbnails(Context context, final CacheEntry cacheEntry, final int pageNum, final Function onComplete) {
+    protected void loadThumbnails(Context context,
+                                  final CacheEntry cacheEntry,
+                                  final int pageNum,
+                                  final long startTime,
+                                  final Function onComplete) {
 
-        ArrayNode itemsNode = getItemsNode(cacheEntry.page());
-        if (itemsNode == null) {
-            // if gets here there is error somewhere else.
-            Log.i(TAG, "loadThumbnails failed - itemsNode is null");
-            onComplete.call("itemsNode is null");
+        final ProductPage page = cacheEntry.page();
+        final boolean[] missing = new boolean[page.size()];
+        int missingCount = 0;
+        for (int itemIndex = 0; itemIndex < page.size(); itemIndex++) {
+            String url = page.getThumbnailUrl(itemIndex);
+            if (url == null || !mBitmapCache.containsThumbnail(url)) {
+                missing[itemIndex] = true;
+                missingCount++;
+            }
+        }
+        if (missingCount == 0) {
+            onComplete.call(null, null);
             return;
-        };
+        }
 
         // simple but effective strategy to concurrently download all the thumbnails
-        final int size = itemsNode.size();
-        Function _onComplete = new Function() {
-            int _size = size;
-            @Override
-            public void call(Object... args) {
-                _size--;
-                if (args[0] == null) {
-                    String key = (String) args[1];
-                    Bitmap bmp = (Bitmap) args[2];
-                    cacheEntry.bitmaps().put(key, bmp);
-                    //Log.i(TAG, "Successfully loaded thumbnail, _size: " + _size);
-                }
-                if (_size == 0) {
-                    Log.i(TAG, "loadThumbnails complete - for page: " + pageNum);
-                    onComplete.call(null, null);
-                }
-            }
-        };
-
-        int itemIndex = 0;
-        Iterator<JsonNode> iter = itemsNode.iterator();
-        while (iter.hasNext()) {
-            String key = itemIndex + ".thumb";
-            if (!cacheEntry.bitmaps().containsKey(key)) {
-                loadThumbnail(context, iter.next(), key, _onComplete);
+        final long thumbnailsStartTime = System.nanoTime();
+        final Tracer.Span span = mTracer.start("thumbnails").arg("count", missingCount);
+        Tracer.Span previous = span.enter();
+        final AtomicInteger remaining = new AtomicInteger(missingCount);
+        try {
+            for (int itemIndex = 0; itemIndex < page.size(); itemIndex++) {
+                if (!missing[itemIndex]) continue;
+                final int index = pageNum * PAGE_SIZE + itemIndex;
+                String url = page.getThumbnailUrl(itemIndex);
+                loadThumbnail(context, index, url, new Function() {
+                    @Override
+                    public void call(Object... args) {
+                        if (args[0] == null) {
+                            String url = (String) args[1];
+                            Bitmap bmp = (Bitmap) args[2];
+                            mBitmapCache.putThumbnail(url, bmp);
+                            if (mThumbnailEvents.hasListeners(THUMBNAIL_LOADED_EVENT)) {
+                                Tracer.Span notifySpan = span.child("notify");
+                                mThumbnailEvents.emit(THUMBNAIL_LOADED_EVENT, null, index);
+                                notifySpan.end();
+                            }
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            span.end();
+                            mMetrics.histogram(LOAD_THUMBNAILS).recordSince(thumbnailsStartTime);
+                            StringBuffer sb = new StringBuffer("loadThumbnails complete - for page: ");
+                            sb.append(pageNum).append(", ms: ").append((System.nanoTime() - startTime) / 1000000);
+                            sb.append(", cache: ").append(mBitmapCache.thumbnailStats());
+                            Log.i(TAG, sb.toString());
+                            onComplete.call(null, null);
+                        }
+                    }
+                });
             }
-            itemIndex++;
+        } finally {
+            mTracer.exit(previous);
         }
     }
 
-    protected void loadThumbnail(Context context, final JsonNode itemNode, final String key, final Function onComplete) {
-        if (itemNode.get("thumbnailImage") == null) {
+    protected void loadThumbnail(Context context, int index, final String url, final Function onComplete) {
+        if (url == null) {
             Log.e(TAG, "loadThumbnail failed - thumbnailImage url is empty");
             onComplete.call("thumbnailImage url is empty");
             return;
         }
-        loadBitmap(context, itemNode.get("thumbnailImage").textValue(), key, onComplete);
+        scheduleBitmap(context, index, url, mBitmapDecoder.thumbnail(), onComplete);
     }
 
-    protected void loadBitmap(Context context, final String url, final String key, final Function onComplete) {
-        mHttpClient.get(context, url, new BinaryHttpResponseHandler(new String[]{".*"}) { //allow all content-types
+    /**
+     * Medium images are loaded on demand, sized for the detail view.
+     * @param onComplete - args[0] is error if not null, else args[1] is the url and args[2] the bitmap
+     * @return cancels the load for this caller, see scheduleBitmap
+     */
+    protected Cancellable loadMediumImage(Context context, int index, final String url, final Function onComplete) {
+        return scheduleBitmap(context, index, url, mBitmapDecoder.mediumImage(), onComplete);
+    }
+
+    /**
+     * Load a bitmap through the ImageScheduler, images of visible products are loaded first.
+     * If the page of the product is evicted before the download starts, onComplete is called with an error.
+     * The download goes on for the callers of the products of other pages that share it.
+     * Only callers that want the same url decoded for the same target share a load.
+     * @param context
+     * @param index - the index of the product the image belongs to
+     * @param url
+     * @param onComplete - args[0] is error if not null, else args[1] is the url and args[2] the bitmap
+     * @return cancels the load for this caller, onComplete is not called. The download itself is cancelled
+     *          once every caller that shares it cancelled.
+     */
+    protected Cancellable scheduleBitmap(Context context, int index, final String url,
+                                         BitmapDecoder.Target target, Function onComplete) {
+        final Function callback = new BitmapCaller(index, onCallerThread(onComplete));
+        final String key = bitmapKey(url, target);
+        final BitmapLoad load = new BitmapLoad(context, url, key, target);
+        Cancellable leave = new Cancellable() {
             @Override
-            public void onSuccess(int statusCode, Header[] headers, byte[] binaryData) {
-                Bitmap bmp = BitmapFactory.decodeByteArray(binaryData, 0, binaryData.length);
-                onComplete.call(null, key, bmp);
+            public void cancel() {
+                mBitmapLoads.leave(key, callback);
             }
+        };
+        // callers asking for a url that is already being loaded for their target share that download and its decode
+        boolean first = mBitmapLoads.join(key, callback, new Cancellable() {
             @Override
-            public void onFailure(int status, Header[] headers, byte[] binaryData, Throwable error) {
-                onComplete.call(logAndGetHttpError("loadBitmap", url, status, error));
+            public void cancel() {
+                load.abandon();
             }
         });
+        if (first) mImageScheduler.schedule(index, load);
+        return leave;
+    }
+
+    /**
+     * @return the key of the load of url decoded for target, a thumbnail and a medium image of the same url
+     *          are decoded at different sizes
+     */
+    static String bitmapKey(String url, BitmapDecoder.Target target) {
+        return url + " " + target.width + "x" + target.height;
+    }
+
+    /** A caller of scheduleBitmap, the page of its product tells whether an eviction cancels it **/
+    private static final class BitmapCaller implements Function {
+        private final int mIndex;
+        private final Function mCallback;
+
+        BitmapCaller(int index, Function callback) {
+            this.mIndex = index;
+            this.mCallback = callback;
+        }
+
+        @Override
+        public void call(Object... args) {
+            mCallback.call(args);
+        }
     }
 
-    protected ArrayNode getItemsNode(JsonNode pageNode) {
-        if (pageNode.get("items") instanceof ArrayNode) {
-            return (ArrayNode) pageNode.get("items");
-        } else {
-            StringBuffer err = new StringBuffer("getItemsNode failed");
-            err.append(" - JsonNode.items is not an arrayNode");
-            Log.e(TAG,  err.toString());
+    /**
+     * The download of a bitmap, shared by everyone who asked for its url and target (see scheduleBitmap).
+     * Once all of them cancelled, it is dropped from the ImageScheduler if it did not start yet,
+     * else its http request is cancelled and its ImageScheduler slot given back.
+     * When the page it was scheduled for is evicted only the callers of that page fail, the load is scheduled
+     * again for the product of one of the others.
+     */
+    class BitmapLoad extends ImageScheduler.Request {
+        private final Context mContext;
+        private final String mUrl;
+        // the key of the load in mBitmapLoads
+        private final String mKey;
+        private final BitmapDecoder.Target mTarget;
+        // the span of whoever scheduled the load (i.e. the thumbnails of a page), it runs on a scheduler thread
+        private final Tracer.Span mParent;
+        // guarded by this, the onDone of the scheduler is taken by whoever finishes the load: its callback or abandon
+        private Function mOnDone;
+        private Cancellable mRequest;
+        private boolean mAbandoned;
+
+        BitmapLoad(Context context, String url, String key, BitmapDecoder.Target target) {
+            this.mContext = context;
+            this.mUrl = url;
+            this.mKey = key;
+            this.mTarget = target;
+            this.mParent = mTracer.current();
+        }
+
+        @Override
+        protected void start(Function onDone) {
+            boolean abandoned;
+            synchronized (this) {
+                abandoned = mAbandoned;
+                if (!abandoned) mOnDone = onDone;
+            }
+            if (abandoned) {
+                // abandoned between leaving the queue and starting
+                onDone.call();
+                return;
+            }
+            Tracer.Span previous = mParent.enter();
+            try {
+                loadBitmap(mContext, mUrl, mUrl, mTarget, this, new Function() {
+                    @Override
+                    public void call(Object... args) {
+                        Function onDone = takeOnDone();
+                        if (onDone != null) onDone.call();
+                        mBitmapLoads.complete(mKey, args);
+                    }
+                });
+            } finally {
+                mTracer.exit(previous);
+            }
+        }
+
+        @Override
+        protected void cancel() {
+            int pageNum = index() / PAGE_SIZE;
+            String error = "loadBitmap cancelled - page evicted, url: " + mUrl;
+            boolean left = false;
+            for (Function caller : mBitmapLoads.callers(mKey)) {
+                if (((BitmapCaller) caller).mIndex / PAGE_SIZE != pageNum) continue;
+                // the last caller to leave abandons the load
+                if (mBitmapLoads.leave(mKey, caller)) left = true;
+                caller.call(error);
+            }
+            if (left) return;
+            synchronized (this) {
+                if (mAbandoned) return;
+            }
+            List<Function> others = mBitmapLoads.callers(mKey);
+            if (others.isEmpty()) return;
+            mImageScheduler.schedule(((BitmapCaller) others.get(0)).mIndex, this);
+        }
+
+        /**
+         * Everyone who asked for the bitmap cancelled, nobody is called back.
+         */
+        void abandon() {
+            if (mImageScheduler.remove(this)) return;
+            Function onDone;
+            Cancellable request;
+            synchronized (this) {
+                mAbandoned = true;
+                onDone = mOnDone;
+                mOnDone = null;
+                request = mRequest;
+                mRequest = null;
+            }
+            // a cancelled request is not called back, so the slot is given back here
+            if (request != null) request.cancel();
+            if (onDone != null) onDone.call();
+        }
+
+        /**
+         * @param request - the http request the load waits for, cancelled right away if the load was abandoned
+         */
+        void setRequest(Cancellable request) {
+            synchronized (this) {
+                if (!mAbandoned) {
+                    mRequest = request;
+                    return;
+                }
+            }
+            request.cancel();
+        }
+
+        private synchronized Function takeOnDone() {
+            Function onDone = mOnDone;
+            mOnDone = null;
+            mRequest = null;
+            return onDone;
+        }
+    }
+
+    /**
+     * The image bytes are read from disk (or downloaded) and decoded for target on the BitmapDecoder pool,
+     * onComplete is called on the callers thread.
+     * @param load - the http requests of the load are handed to it, so it can cancel them
+     */
+    protected void loadBitmap(final Context context, final String url, final String key,
+                              final BitmapDecoder.Target target, final BitmapLoad load, final Function onComplete) {
+        final long startTime = System.nanoTime();
+        final Tracer.Span span = mTracer.start("loadBitmap");
+        final Function onLoaded = new Function() {
+            @Override
+            public void call(Object... args) {
+                span.end();
+                mMetrics.histogram(LOAD_BITMAP).recordSince(startTime);
+                if (args[0] != null) mMetrics.counter(LOAD_BITMAP_FAILED).inc();
+                onComplete.call(args);
+            }
+        };
+        final Looper looper = Looper.myLooper();
+        mDiskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] binaryData = readFromDisk(url, DISK_IMAGE_MAX_AGE);
+                if (binaryData == null) {
+                    // an expired image is revalidated instead of downloaded again
+                    final DiskCache.Validators validators = mDiskCache.validators(url);
+                    postToLooper(looper, new Runnable() {
+                        @Override
+                        public void run() {
+                            fetchBitmap(context, url, key, target, validators, load, onLoaded);
+                        }
+                    });
+                    return;
+                }
+                mBitmapDecoder.decode(binaryData, target, new Function() {
+                    @Override
+                    public void call(Object... args) {
+                        final Bitmap bmp = (Bitmap) args[0];
+                        postToLooper(looper, new Runnable() {
+                            @Override
+                            public void run() {
+                                if (bmp != null) {
+                                    onLoaded.call(null, key, bmp);
+                                } else {
+                                    fetchBitmap(context, url, key, target, DiskCache.Validators.NONE, load, onLoaded);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    private void fetchBitmap(final Context context, final String url, final String key,
+                             final BitmapDecoder.Target target, final DiskCache.Validators validators,
+                             final BitmapLoad load, final Function onComplete) {
+        final Looper looper = Looper.myLooper();
+        // thumbnails are about the same size, the latency of the larger medium images would read as a slower network
+        final boolean sample = (target == mBitmapDecoder.thumbnail());
+        final long sentTime = System.nanoTime();
+        load.setRequest(get(context, url, conditionalHeaders(validators), new HttpTransport.Callback() {
+            @Override
+            public void onResponse(HttpTransport.Response response) {
+                if (response.isNotModified() && !validators.isEmpty()) {
+                    if (sample) mImageLimiter.onSample(System.nanoTime() - sentTime, false);
+                    onBitmapNotModified(context, url, key, target, validators(response), load, onComplete);
+                    return;
+                }
+                if (!response.isSuccessful()) {
+                    if (sample && !isCancelled(response)) {
+                        mImageLimiter.onSample(System.nanoTime() - sentTime, isOverload(response.status));
+                    }
+                    onComplete.call(logAndGetHttpError("loadBitmap", url, response.status, response.error));
+                    return;
+                }
+                if (sample) mImageLimiter.onSample(System.nanoTime() - sentTime, false);
+                final byte[] binaryData = response.body;
+                final DiskCache.Validators responseValidators = validators(response);
+                // decode off the callback thread
+                mBitmapDecoder.decode(binaryData, target, new Function() {
+                    @Override
+                    public void call(Object... args) {
+                        final Bitmap bmp = (Bitmap) args[0];
+                        if (bmp != null) {
+                            mDiskCache.executor().execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    writeToDisk(url, binaryData, responseValidators);
+                                }
+                            });
+                        }
+                        postToLooper(looper, new Runnable() {
+                            @Override
+                            public void run() {
+                                onComplete.call(null, key, bmp);
+                            }
+                        });
+                    }
+                });
+            }
+        }));
+    }
+
+    /**
+     * The image on disk is still what the server has, decode it from there.
+     * If it was evicted from the disk meanwhile (or does not decode), it is fetched again without validators.
+     */
+    private void onBitmapNotModified(final Context context, final String url, final String key,
+                                     final BitmapDecoder.Target target, final DiskCache.Validators validators,
+                                     final BitmapLoad load, final Function onComplete) {
+        final Looper looper = Looper.myLooper();
+        mDiskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] binaryData = touchDisk(url, validators) ? readFromDisk(url, Long.MAX_VALUE) : null;
+                if (binaryData == null) {
+                    postToLooper(looper, new Runnable() {
+                        @Override
+                        public void run() {
+                            fetchBitmap(context, url, key, target, DiskCache.Validators.NONE, load, onComplete);
+                        }
+                    });
+                    return;
+                }
+                mBitmapDecoder.decode(binaryData, target, new Function() {
+                    @Override
+                    public void call(Object... args) {
+                        final Bitmap bmp = (Bitmap) args[0];
+                        postToLooper(looper, new Runnable() {
+                            @Override
+                            public void run() {
+                                if (bmp != null) {
+                                    onComplete.call(null, key, bmp);
+                                } else {
+                                    fetchBitmap(context, url, key, target, DiskCache.Validators.NONE, load, onComplete);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel the requests made for the context. Unlike mTransport.cancel, each of them is called back with a
+     * cancelled response (see isCancelled): the page and image loads waiting for them give back their limiter
+     * slots and fail their callers (pages and single-flight bitmap loads), else they would wait forever.
+     */
+    public void cancel(Context context) {
+        Set<HttpRequest> requests;
+        synchronized (mRequests) {
+            requests = mRequests.remove(context);
+        }
+        mTransport.cancel(context);
+        if (requests == null) return;
+        List<HttpRequest> cancelled = new ArrayList<HttpRequest>(requests);
+        Log.i(TAG, "cancel - requests: " + cancelled.size());
+        HttpTransport.Response response = new HttpTransport.Response(0, null, null,
+                new CancellationException("request cancelled"));
+        for (HttpRequest request : cancelled) {
+            request.mCallback.onResponse(response);
+        }
+    }
+
+    /**
+     * @return true if the request was cancelled with its context, see cancel(Context)
+     */
+    static boolean isCancelled(HttpTransport.Response response) {
+        return response.error instanceof CancellationException;
+    }
+
+    /**
+     * mTransport.get, the request is kept by its context until it is called back so cancel(Context) can call it back.
+     * @return cancels the request alone, its callback is not made (like mTransport)
+     */
+    private Cancellable get(Context context, String url, Map<String, String> headers, HttpTransport.Callback callback) {
+        HttpRequest request = new HttpRequest(context, callback);
+        synchronized (mRequests) {
+            Set<HttpRequest> requests = mRequests.get(context);
+            if (requests == null) {
+                requests = new HashSet<HttpRequest>();
+                mRequests.put(context, requests);
+            }
+            requests.add(request);
+        }
+        request.setRequest(mTransport.get(context, url, headers, request));
+        return request;
+    }
+
+    /** A request of mTransport, called back once: by its response or by cancel(Context) **/
+    private class HttpRequest implements HttpTransport.Callback, Cancellable {
+        private final Context mContext;
+        private final HttpTransport.Callback mCallback;
+        // guarded by this, null until mTransport.get returned
+        private Cancellable mRequest;
+        private boolean mCancelled;
+
+        HttpRequest(Context context, HttpTransport.Callback callback) {
+            this.mContext = context;
+            this.mCallback = callback;
+        }
+
+        @Override
+        public void onResponse(HttpTransport.Response response) {
+            // a response racing cancel(Context) is dropped, the request was called back there
+            if (remove()) mCallback.onResponse(response);
+        }
+
+        @Override
+        public void cancel() {
+            if (!remove()) return;
+            Cancellable request;
+            synchronized (this) {
+                mCancelled = true;
+                request = mRequest;
+            }
+            if (request != null) request.cancel();
+        }
+
+        void setRequest(Cancellable request) {
+            synchronized (this) {
+                if (!mCancelled) {
+                    mRequest = request;
+                    return;
+                }
+            }
+            request.cancel();
+        }
+
+        /**
+         * @return false if the request was already called back or cancelled
+         */
+        private boolean remove() {
+            synchronized (mRequests) {
+                Set<HttpRequest> requests = mRequests.get(mContext);
+                if (requests == null || !requests.remove(this)) return false;
+                if (requests.isEmpty()) mRequests.remove(mContext);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the compressions pages are accepted in, and the conditional headers of the validators
+     */
+    static Map<String, String> pageHeaders(DiskCache.Validators validators) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+        Map<String, String> conditional = conditionalHeaders(validators);
+        if (conditional != null) headers.putAll(conditional);
+        return headers;
+    }
+
+    /**
+     * @return If-None-Match and If-Modified-Since from the validators of a cached response, null if it has none
+     */
+    static Map<String, String> conditionalHeaders(DiskCache.Validators validators) {
+        if (validators.isEmpty()) return null;
+        Map<String, String> headers = new HashMap<String, String>();
+        if (validators.etag != null) headers.put("If-None-Match", validators.etag);
+        if (validators.lastModified != null) headers.put("If-Modified-Since", validators.lastModified);
+        return headers;
+    }
+
+    /**
+     * @return the ETag and Last-Modified of the response, kept with its bytes on disk
+     */
+    static DiskCache.Validators validators(HttpTransport.Response response) {
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        return (etag == null && lastModified == null)
+                ? DiskCache.Validators.NONE : new DiskCache.Validators(etag, lastModified);
+    }
+
+    /**
+     * Must not be called on the main thread.
+     * @return the parsed page, or null if not on disk (or older than maxAge)
+     */
+    private PageRecord readPageFromDisk(String pageUrl, long maxAge) {
+        byte[] responseBody = readFromDisk(pageUrl, maxAge);
+        if (responseBody == null) return null;
+        try {
+            long parseStartTime = System.nanoTime();
+            PageRecord pageRecord = PageParser.parsePage(responseBody);
+            mMetrics.histogram(PARSE_PAGE).recordSince(parseStartTime);
+            return pageRecord;
+        } catch (IOException e) {
+            Log.e(TAG, "readPageFromDisk failed - url: " + pageUrl, e);
             return null;
         }
     }
 
+    /**
+     * Must not be called on the main thread.
+     */
+    private byte[] readFromDisk(String url, long maxAge) {
+        try {
+            return mDiskCache.get(url, maxAge);
+        } catch (IOException e) {
+            Log.e(TAG, "readFromDisk failed - url: " + url, e);
+            return null;
+        }
+    }
+
+    /**
+     * Must not be called on the main thread.
+     */
+    private void writeToDisk(String url, byte[] data, DiskCache.Validators validators) {
+        try {
+            mDiskCache.put(url, data, validators);
+        } catch (IOException e) {
+            Log.e(TAG, "writeToDisk failed - url: " + url, e);
+        }
+    }
+
+    /**
+     * Must not be called on the main thread.
+     * @return false if the entry is no longer on disk
+     */
+    private boolean touchDisk(String url, DiskCache.Validators validators) {
+        try {
+            return mDiskCache.touch(url, validators);
+        } catch (IOException e) {
+            Log.e(TAG, "touchDisk failed - url: " + url, e);
+            return false;
+        }
+    }
+
+    private void savePageUrl(final int pageNum, final String pageUrl) {
+        mDiskCache.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDiskCache.putPageUrl(pageNum, pageUrl);
+                } catch (IOException e) {
+                    Log.e(TAG, "savePageUrl failed - page: " + pageNum, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wrap a callback so it is made on the thread that is calling this method (if it has a looper),
+     * no matter which thread completes the work. It is made in the span the caller is in, see Tracer#wrap.
+     */
+    private Function onCallerThread(Function callback) {
+        final Function onComplete = mTracer.wrap(callback);
+        final Looper looper = Looper.myLooper();
+        return new Function() {
+            @Override
+            public void call(final Object... args) {
+                if (looper == null || looper == Looper.myLooper()) {
+                    onComplete.call(args);
+                    return;
+                }
+                Handlers.of(looper).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onComplete.call(args);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Callbacks are made on the callers thread, if the caller has no looper (i.e. a pool thread)
+     * the runnable is run on the current thread.
+     */
+    private void postToLooper(Looper looper, Runnable runnable) {
+        Handlers.post(looper, runnable);
+    }
+
+    /**
+     * @return true if the failure says the network or server is overloaded (no response or a 5xx),
+     *          a 404 is no reason to send less
+     */
+    static boolean isOverload(int status) {
+        return status == 0 || status >= 500;
+    }
+
     protected String logAndGetHttpError(String methodName, String url, int status, Throwable error) {
         StringBuffer err = new StringBuffer(methodName + " - ");
         err.append("status: ").append(status).append(", ").append("url: ").append(url);
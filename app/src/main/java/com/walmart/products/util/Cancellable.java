@@ -0,0 +1,10 @@
+package com.walmart.products.util;
+
+/**
+ * Work that can be cancelled, i.e. an http request or a download shared by several callers.
+ * Cancelling work that already finished (or was already cancelled) does nothing.
+ */
+public interface Cancellable {
+
+    void cancel();
+}
@@ -0,0 +1,199 @@
+package com.walmart.products.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A typed event bus keyed by int (i.e. a page number), for hot events the EventEmitter is too costly for.
+ *
+ * EventEmitter looks listeners up by String, boxes and wraps its args in a varargs array on every emit,
+ * and removes a once listener by scanning the listeners of its event. Here the listeners of a key are
+ * a copy-on-write array in a table (segments of SEGMENT_SIZE keys, created on first use), so emitting
+ * reads one array and allocates nothing. Every listener has a {@link Registration}, removing it is O(1):
+ * it is marked removed and dropped from the array the next time the key emits or gets a listener.
+ *
+ * Listeners are called on the emitting thread, in the order they were added. This class is thread-safe.
+ *
+ * @param <T> the event value, i.e. the url of a page
+ */
+public class EventBus<T> {
+
+    public interface Listener<T> {
+        /**
+         * @param key - the key the event was emitted on
+         * @param value
+         */
+        void onEvent(int key, T value);
+    }
+
+    /** A listener of a key, see {@link #remove()} **/
+    public static final class Registration<T> {
+        private final Listener<T> mListener;
+        private final boolean mOnce;
+        private volatile boolean mRemoved;
+
+        private Registration(Listener<T> listener, boolean once) {
+            this.mListener = listener;
+            this.mOnce = once;
+        }
+
+        /**
+         * The listener is not called again, O(1). Removing it again (or after a once listener fired) does nothing.
+         */
+        public void remove() {
+            mRemoved = true;
+        }
+
+        public boolean isRemoved() {
+            return mRemoved;
+        }
+
+        /**
+         * @return true if this call removed the registration, once listeners are removed by the one emit that calls them
+         */
+        private boolean claim() {
+            if (mRemoved) return false;
+            synchronized (this) {
+                if (mRemoved) return false;
+                mRemoved = true;
+                return true;
+            }
+        }
+    }
+
+    // keys per segment
+    static final int SEGMENT_BITS = 6;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final Registration<?>[] NONE = new Registration<?>[0];
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Registration<?>[]>> mSegments;
+
+    /**
+     * @param capacity - keys 0 to capacity - 1 can be listened to
+     */
+    public EventBus(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("invalid capacity: " + capacity);
+        this.mSegments = new AtomicReferenceArray<AtomicReferenceArray<Registration<?>[]>>(
+                (capacity + SEGMENT_MASK) >> SEGMENT_BITS);
+    }
+
+    /**
+     * @return the number of keys, capacity rounded up to whole segments
+     */
+    public int capacity() {
+        return mSegments.length() << SEGMENT_BITS;
+    }
+
+    /**
+     * Listen on the key until the registration is removed.
+     * @param key - 0 to capacity - 1
+     */
+    public Registration<T> on(int key, Listener<T> listener) {
+        return add(key, new Registration<T>(listener, false));
+    }
+
+    /**
+     * Listen on the key for one event.
+     * @param key - 0 to capacity - 1
+     */
+    public Registration<T> once(int key, Listener<T> listener) {
+        return add(key, new Registration<T>(listener, true));
+    }
+
+    /**
+     * Call the listeners of the key with value, allocates nothing unless once listeners fired
+     * (their slots are dropped from the array of the key).
+     */
+    @SuppressWarnings("unchecked")
+    public void emit(int key, T value) {
+        Registration<?>[] registrations = listeners(key);
+        if (registrations == NONE) return;
+        boolean removed = false;
+        for (Registration<?> registration : registrations) {
+            if (registration.mOnce) {
+                if (!registration.claim()) continue;
+                removed = true;
+            } else if (registration.mRemoved) {
+                removed = true;
+                continue;
+            }
+            ((Registration<T>) registration).mListener.onEvent(key, value);
+        }
+        if (removed) purge(key);
+    }
+
+    /**
+     * @return true if a listener was added to the key and not removed, false for keys beyond the capacity
+     */
+    public boolean hasListeners(int key) {
+        for (Registration<?> registration : listeners(key)) {
+            if (!registration.mRemoved) return true;
+        }
+        return false;
+    }
+
+    private Registration<T> add(int key, Registration<T> registration) {
+        AtomicReferenceArray<Registration<?>[]> segment = segment(key);
+        int slot = key & SEGMENT_MASK;
+        while (true) {
+            Registration<?>[] registrations = segment.get(slot);
+            Registration<?>[] added = copyLive(registrations, 1);
+            added[added.length - 1] = registration;
+            if (segment.compareAndSet(slot, registrations, added)) return registration;
+        }
+    }
+
+    /**
+     * Drop the removed registrations of the key from its array.
+     */
+    private void purge(int key) {
+        AtomicReferenceArray<Registration<?>[]> segment = segment(key);
+        int slot = key & SEGMENT_MASK;
+        while (true) {
+            Registration<?>[] registrations = segment.get(slot);
+            Registration<?>[] live = copyLive(registrations, 0);
+            if (segment.compareAndSet(slot, registrations, (live.length == 0) ? null : live)) return;
+        }
+    }
+
+    /**
+     * @return the registrations that are not removed, with room for extra more at the end
+     */
+    private static Registration<?>[] copyLive(Registration<?>[] registrations, int extra) {
+        if (registrations == null) return new Registration<?>[extra];
+        int live = 0;
+        for (Registration<?> registration : registrations) {
+            if (!registration.mRemoved) live++;
+        }
+        Registration<?>[] copy = new Registration<?>[live + extra];
+        int i = 0;
+        for (Registration<?> registration : registrations) {
+            if (!registration.mRemoved) copy[i++] = registration;
+        }
+        return copy;
+    }
+
+    /**
+     * @return the registrations of the key, without creating its segment
+     */
+    private Registration<?>[] listeners(int key) {
+        if (key < 0 || key >= capacity()) return NONE;
+        AtomicReferenceArray<Registration<?>[]> segment = mSegments.get(key >> SEGMENT_BITS);
+        if (segment == null) return NONE;
+        Registration<?>[] registrations = segment.get(key & SEGMENT_MASK);
+        return (registrations == null) ? NONE : registrations;
+    }
+
+    private AtomicReferenceArray<Registration<?>[]> segment(int key) {
+        if (key < 0 || key >= capacity()) {
+            throw new IndexOutOfBoundsException("key: " + key + ", capacity: " + capacity());
+        }
+        int index = key >> SEGMENT_BITS;
+        AtomicReferenceArray<Registration<?>[]> segment = mSegments.get(index);
+        if (segment != null) return segment;
+        // two threads may create the segment, the first one in is used
+        mSegments.compareAndSet(index, null, new AtomicReferenceArray<Registration<?>[]>(SEGMENT_SIZE));
+        return mSegments.get(index);
+    }
+}
@@ -0,0 +1,44 @@
+package com.walmart.products.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One Handler per Looper, so posting a callback back to its thread does not create a Handler each time.
+ * This class is thread-safe.
+ *
+ * The app has few loopers (the main thread and a handful of HandlerThreads), they are kept for the app's lifetime.
+ */
+public class Handlers {
+
+    private static final ConcurrentMap<Looper, Handler> sHandlers = new ConcurrentHashMap<Looper, Handler>();
+
+    private Handlers() {
+    }
+
+    /**
+     * @param looper - not null
+     * @return the shared Handler of the looper
+     */
+    public static Handler of(Looper looper) {
+        Handler handler = sHandlers.get(looper);
+        if (handler != null) return handler;
+        handler = new Handler(looper);
+        Handler existing = sHandlers.putIfAbsent(looper, handler);
+        return (existing == null) ? handler : existing;
+    }
+
+    /**
+     * Post the runnable to the looper, or run it right away on this thread if there is no looper.
+     */
+    public static void post(Looper looper, Runnable runnable) {
+        if (looper == null) {
+            runnable.run();
+        } else {
+            of(looper).post(runnable);
+        }
+    }
+}
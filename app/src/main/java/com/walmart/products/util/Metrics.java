@@ -0,0 +1,265 @@
+package com.walmart.products.util;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, gauges and latency histograms of the service hot paths, by name.
+ *
+ * Recording is a few atomic increments, no locks and no allocation, so it can stay on in production.
+ * Instruments are created on first use and kept, looking one up is a ConcurrentHashMap read.
+ * A disabled registry hands out shared instruments that record nothing, see {@link #Metrics(boolean)}.
+ *
+ * Gauges are read only when a snapshot is taken (i.e. the size of a queue), they cost nothing in between.
+ *
+ * This class is thread-safe.
+ */
+public class Metrics {
+
+    /** A value read when a snapshot is taken **/
+    public interface Gauge {
+        long value();
+    }
+
+    /** A count that only goes up **/
+    public static final class Counter {
+        private final boolean mEnabled;
+        private final AtomicLong mCount = new AtomicLong();
+
+        private Counter(boolean enabled) {
+            this.mEnabled = enabled;
+        }
+
+        public void inc() {
+            if (mEnabled) mCount.incrementAndGet();
+        }
+
+        public void add(long n) {
+            if (mEnabled) mCount.addAndGet(n);
+        }
+
+        public long count() {
+            return mCount.get();
+        }
+    }
+
+    /**
+     * Latencies in log-linear buckets, like an HdrHistogram with one significant digit: every power of two
+     * is split into SUB_BUCKETS buckets, so a percentile is within 1/SUB_BUCKETS of the recorded value.
+     * Values are kept in microseconds from 0 to MAX_MICROS (larger ones are counted as MAX_MICROS),
+     * the buckets take a fixed ~4KB.
+     */
+    public static final class Histogram {
+
+        static final int SUB_BITS = 4;
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int SUB_MASK = SUB_BUCKETS - 1;
+
+        // ~71 minutes
+        static final long MAX_MICROS = (1L << 32) - 1;
+
+        private final boolean mEnabled;
+        private final AtomicLongArray mBuckets;
+        private final AtomicLong mSumMicros = new AtomicLong();
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        private Histogram(boolean enabled) {
+            this.mEnabled = enabled;
+            this.mBuckets = new AtomicLongArray(enabled ? bucketIndex(MAX_MICROS) + 1 : 0);
+        }
+
+        /**
+         * @param startNanos - a System.nanoTime() taken when the work started
+         */
+        public void recordSince(long startNanos) {
+            if (mEnabled) recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public void recordNanos(long nanos) {
+            if (!mEnabled) return;
+            long micros = Math.min(Math.max(nanos / 1000, 0), MAX_MICROS);
+            // the count is the sum of the buckets, one less contended increment
+            mBuckets.incrementAndGet(bucketIndex(micros));
+            mSumMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = mMaxMicros.get()) && !mMaxMicros.compareAndSet(max, micros)) {}
+        }
+
+        public Stats stats() {
+            return new Stats(this);
+        }
+
+        /**
+         * Values below SUB_BUCKETS have a bucket each, above it a bucket spans 2^shift values.
+         */
+        static int bucketIndex(long micros) {
+            if (micros < SUB_BUCKETS) return (int) micros;
+            int shift = (63 - Long.numberOfLeadingZeros(micros)) - SUB_BITS;
+            return ((shift + 1) << SUB_BITS) + (int) ((micros >>> shift) - SUB_BUCKETS);
+        }
+
+        /**
+         * @return the largest value counted in the bucket
+         */
+        static long bucketHighMicros(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int shift = (index >> SUB_BITS) - 1;
+            long low = (long) (SUB_BUCKETS + (index & SUB_MASK)) << shift;
+            return low + (1L << shift) - 1;
+        }
+
+        /**
+         * Snapshot of the histogram, the buckets are read one by one while values may still be recorded,
+         * so the percentiles can be off by the values recorded meanwhile.
+         */
+        public static class Stats {
+            public final long count;
+            public final double meanMillis;
+            public final double p50Millis;
+            public final double p90Millis;
+            public final double p99Millis;
+            public final double maxMillis;
+            Stats(Histogram histogram) {
+                long[] buckets = new long[histogram.mBuckets.length()];
+                long total = 0;
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] = histogram.mBuckets.get(i);
+                    total += buckets[i];
+                }
+                count = total;
+                meanMillis = (total == 0) ? 0 : histogram.mSumMicros.get() / 1e3 / total;
+                p50Millis = percentile(buckets, total, 0.50);
+                p90Millis = percentile(buckets, total, 0.90);
+                p99Millis = percentile(buckets, total, 0.99);
+                maxMillis = histogram.mMaxMicros.get() / 1e3;
+            }
+            private static double percentile(long[] buckets, long total, double p) {
+                if (total == 0) return 0;
+                long rank = (long) Math.ceil(p * total);
+                long seen = 0;
+                for (int i = 0; i < buckets.length; i++) {
+                    seen += buckets[i];
+                    if (seen >= rank) return bucketHighMicros(i) / 1e3;
+                }
+                return MAX_MICROS / 1e3;
+            }
+            @Override
+            public String toString() {
+                StringBuffer sb = new StringBuffer("count: ").append(count);
+                sb.append(", meanMillis: ").append(meanMillis);
+                sb.append(", p50Millis: ").append(p50Millis);
+                sb.append(", p90Millis: ").append(p90Millis);
+                sb.append(", p99Millis: ").append(p99Millis);
+                sb.append(", maxMillis: ").append(maxMillis);
+                return sb.toString();
+            }
+        }
+    }
+
+    // handed out by a disabled registry
+    private static final Counter NO_COUNTER = new Counter(false);
+    private static final Histogram NO_HISTOGRAM = new Histogram(false);
+
+    private final boolean mEnabled;
+
+    private final ConcurrentMap<String, Counter> mCounters = new ConcurrentHashMap<String, Counter>();
+
+    private final ConcurrentMap<String, Histogram> mHistograms = new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, Gauge> mGauges = new ConcurrentHashMap<String, Gauge>();
+
+    /**
+     * @param enabled - false records nothing, the instruments it hands out do nothing (i.e. to measure their cost)
+     */
+    public Metrics(boolean enabled) {
+        this.mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public Counter counter(String name) {
+        if (!mEnabled) return NO_COUNTER;
+        Counter counter = mCounters.get(name);
+        if (counter != null) return counter;
+        mCounters.putIfAbsent(name, new Counter(true));
+        return mCounters.get(name);
+    }
+
+    public Histogram histogram(String name) {
+        if (!mEnabled) return NO_HISTOGRAM;
+        Histogram histogram = mHistograms.get(name);
+        if (histogram != null) return histogram;
+        mHistograms.putIfAbsent(name, new Histogram(true));
+        return mHistograms.get(name);
+    }
+
+    /**
+     * @param gauge - replaces the gauge registered with the same name, if any
+     */
+    public void gauge(String name, Gauge gauge) {
+        if (mEnabled) mGauges.put(name, gauge);
+    }
+
+    public Stats stats() {
+        return new Stats(this);
+    }
+
+    /** Snapshot of every instrument, sorted by name **/
+    public static class Stats {
+        public final Map<String, Long> counters = new TreeMap<String, Long>();
+        public final Map<String, Long> gauges = new TreeMap<String, Long>();
+        public final Map<String, Histogram.Stats> histograms = new TreeMap<String, Histogram.Stats>();
+        public final long timeMillis = System.currentTimeMillis();
+        Stats(Metrics metrics) {
+            for (Map.Entry<String, Counter> counter : metrics.mCounters.entrySet()) {
+                counters.put(counter.getKey(), counter.getValue().count());
+            }
+            for (Map.Entry<String, Gauge> gauge : metrics.mGauges.entrySet()) {
+                gauges.put(gauge.getKey(), gauge.getValue().value());
+            }
+            for (Map.Entry<String, Histogram> histogram : metrics.mHistograms.entrySet()) {
+                histograms.put(histogram.getKey(), histogram.getValue().stats());
+            }
+        }
+        public ObjectNode toJson() {
+            ObjectNode json = new ObjectNode(JsonNodeFactory.instance);
+            json.put("timeMillis", timeMillis);
+            ObjectNode countersJson = json.putObject("counters");
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                countersJson.put(counter.getKey(), counter.getValue());
+            }
+            ObjectNode gaugesJson = json.putObject("gauges");
+            for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+                gaugesJson.put(gauge.getKey(), gauge.getValue());
+            }
+            ObjectNode histogramsJson = json.putObject("histograms");
+            for (Map.Entry<String, Histogram.Stats> histogram : histograms.entrySet()) {
+                Histogram.Stats stats = histogram.getValue();
+                ObjectNode statsJson = histogramsJson.putObject(histogram.getKey());
+                statsJson.put("count", stats.count);
+                statsJson.put("meanMillis", stats.meanMillis);
+                statsJson.put("p50Millis", stats.p50Millis);
+                statsJson.put("p90Millis", stats.p90Millis);
+                statsJson.put("p99Millis", stats.p99Millis);
+                statsJson.put("maxMillis", stats.maxMillis);
+            }
+            return json;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("counters: ").append(counters);
+            sb.append(", gauges: ").append(gauges);
+            sb.append(", histograms: ").append(histograms);
+            return sb.toString();
+        }
+    }
+}
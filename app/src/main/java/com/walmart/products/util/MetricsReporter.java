@@ -0,0 +1,96 @@
+package com.walmart.products.util;
+
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a snapshot of the {@link Metrics} to a local file every interval, as JSON (see Metrics.Stats#toJson),
+ * so it can be pulled from a device (adb pull) without attaching a debugger.
+ *
+ * The file is written next to itself and renamed over it, a reader never sees half a snapshot.
+ * Nothing is written if the metrics are disabled.
+ */
+public class MetricsReporter {
+
+    protected final String TAG = getClass().getCanonicalName();
+
+    private static final ObjectMapper mMapper = new ObjectMapper();
+
+    private final Metrics mMetrics;
+
+    private final File mFile;
+
+    private final long mIntervalMillis;
+
+    private ScheduledThreadPoolExecutor mExecutor;
+
+    /**
+     * @param file - overwritten with every snapshot
+     * @param intervalMillis - time between two snapshots, i.e. WalmartServiceConfig.METRICS_DUMP_INTERVAL
+     */
+    public MetricsReporter(Metrics metrics, File file, long intervalMillis) {
+        this.mMetrics = metrics;
+        this.mFile = file;
+        this.mIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Start writing snapshots, once every interval. Starting it again does nothing.
+     */
+    public synchronized void start() {
+        if (mExecutor != null || !mMetrics.isEnabled()) return;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics-reporter");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                dump();
+            }
+        }, mIntervalMillis, mIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop writing snapshots, the last one is written before it returns.
+     */
+    public void stop() {
+        ScheduledThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = mExecutor;
+            mExecutor = null;
+        }
+        if (executor == null) return;
+        executor.shutdownNow();
+        dump();
+    }
+
+    /**
+     * Write a snapshot now.
+     * @return false if it could not be written
+     */
+    public boolean dump() {
+        if (!mMetrics.isEnabled()) return false;
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try {
+            mMapper.writeValue(tmp, mMetrics.stats().toJson());
+            if (!tmp.renameTo(mFile)) throw new IOException("rename failed - to: " + mFile);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "dump failed - file: " + mFile, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.walmart.products.util;
+
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The typed result of an async service call, the Function callbacks of the service are adapters over it.
+ *
+ * Callbacks are made on the thread that added them if it has a looper (right away if the future completes
+ * on that thread), else on the thread that completes the future. A future is completed once: set, failed,
+ * cancelled or timed out, whatever comes first wins.
+ *
+ * Cancelling the future cancels its work (see {@link #setOnCancel(Cancellable)}) and, like a cancelled
+ * http request, makes no callbacks. Past its deadline the future fails with a TimeoutException and its
+ * work is cancelled too.
+ *
+ * CompletableFuture needs java 8 (API 24), this is the part of it the service needs.
+ * get() blocks, it must not be called on a thread the result is posted to (i.e. the main thread).
+ *
+ * This class is thread-safe.
+ *
+ * @param <T> the result type, Void if there is none
+ */
+public class ServiceFuture<T> implements Future<T> {
+
+    // no deadline, see withDeadline
+    public static final long NO_DEADLINE = 0;
+
+    public interface Callback<T> {
+
+        void onSuccess(T result);
+
+        /**
+         * @param error - a {@link Failure} if the service reported an error message,
+         *                a TimeoutException if the deadline passed
+         */
+        void onFailure(Throwable error);
+    }
+
+    /** An error the service reported as a message, as the Function callbacks do in args[0] **/
+    public static class Failure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public Failure(String message) {
+            super(message);
+        }
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    // one timer thread for the deadlines of every future, it only fails futures (callbacks are posted or run inline)
+    private static final ScheduledThreadPoolExecutor sDeadlines = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "service-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        // most futures complete before their deadline, do not keep their timers around
+        sDeadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    private int mState = PENDING;
+
+    private T mResult;
+
+    private Throwable mError;
+
+    private List<Delivery> mDeliveries = new ArrayList<Delivery>(1);
+
+    private Cancellable mOnCancel;
+
+    private ScheduledFuture<?> mDeadline;
+
+    /** A callback and the looper it is made on **/
+    private final class Delivery implements Runnable {
+        final Callback<T> mCallback;
+        final Looper mLooper;
+        Delivery(Callback<T> callback, Looper looper) {
+            this.mCallback = callback;
+            this.mLooper = looper;
+        }
+        void deliver() {
+            if (mLooper == null || mLooper == Looper.myLooper()) {
+                run();
+            } else {
+                Handlers.of(mLooper).post(this);
+            }
+        }
+        @Override
+        public void run() {
+            if (mState == SUCCEEDED) {
+                mCallback.onSuccess(mResult);
+            } else {
+                mCallback.onFailure(mError);
+            }
+        }
+    }
+
+    /**
+     * @param onComplete - a Function callback, args[0] is the error if not null, else args[1] is the result
+     * @return a callback that calls onComplete the way the service always has
+     */
+    public static <T> Callback<T> callback(final Function onComplete) {
+        return new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                onComplete.call(null, result);
+            }
+            @Override
+            public void onFailure(Throwable error) {
+                onComplete.call((error instanceof Failure) ? error.getMessage() : error);
+            }
+        };
+    }
+
+    /**
+     * Complete the future with its result.
+     * @return false if it was already complete
+     */
+    public boolean set(T result) {
+        return complete(SUCCEEDED, result, null, false);
+    }
+
+    /**
+     * Complete the future with an error.
+     * @param error - a Throwable, or the error of a Function callback (args[0], usually a message)
+     * @return false if it was already complete
+     */
+    public boolean fail(Object error) {
+        Throwable throwable = (error instanceof Throwable) ? (Throwable) error : new Failure(String.valueOf(error));
+        return complete(FAILED, null, throwable, false);
+    }
+
+    /**
+     * @param callback - called once the future is set or failed, not if it is cancelled
+     * @return this future
+     */
+    public ServiceFuture<T> addCallback(Callback<T> callback) {
+        Delivery delivery = new Delivery(callback, Looper.myLooper());
+        synchronized (this) {
+            if (mState == PENDING) {
+                mDeliveries.add(delivery);
+                return this;
+            }
+            if (mState == CANCELLED) return this;
+        }
+        delivery.deliver();
+        return this;
+    }
+
+    /**
+     * @param onCancel - cancels the work of the future when it is cancelled or times out, null if it has none.
+     *                 called right away if the future was already cancelled
+     */
+    public void setOnCancel(Cancellable onCancel) {
+        if (onCancel == null) return;
+        synchronized (this) {
+            if (mState == PENDING) {
+                mOnCancel = onCancel;
+                return;
+            }
+            if (mState != CANCELLED && !(mError instanceof TimeoutException)) return;
+        }
+        onCancel.cancel();
+    }
+
+    /**
+     * Fail the future with a TimeoutException if it is not complete within timeoutMillis, its work is cancelled.
+     * @param timeoutMillis - NO_DEADLINE (or less) for none
+     * @return this future
+     */
+    public ServiceFuture<T> withDeadline(final long timeoutMillis) {
+        if (timeoutMillis <= NO_DEADLINE) return this;
+        synchronized (this) {
+            if (mState != PENDING) return this;
+            if (mDeadline != null) mDeadline.cancel(false);
+            mDeadline = sDeadlines.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    complete(FAILED, null, new TimeoutException("deadline passed - timeoutMillis: " + timeoutMillis), true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Cancel the future and its work, no callbacks are made.
+     * @param mayInterruptIfRunning - ignored, the work is never run on the callers thread
+     * @return false if it was already complete
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Cancellable onCancel;
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = CANCELLED;
+            onCancel = mOnCancel;
+            clear();
+            notifyAll();
+        }
+        if (onCancel != null) onCancel.cancel();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new TimeoutException("get timed out");
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private T result() throws ExecutionException {
+        if (mState == CANCELLED) throw new CancellationException();
+        if (mState == FAILED) throw new ExecutionException(mError);
+        return mResult;
+    }
+
+    /**
+     * @param cancelWork - true if the work must be cancelled (the deadline passed), before the callbacks are made
+     */
+    private boolean complete(int state, T result, Throwable error, boolean cancelWork) {
+        List<Delivery> deliveries;
+        Cancellable onCancel;
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = state;
+            mResult = result;
+            mError = error;
+            deliveries = mDeliveries;
+            onCancel = cancelWork ? mOnCancel : null;
+            clear();
+            notifyAll();
+        }
+        // outside the lock, a callback may start another call (i.e. retry, once the timed out one let go)
+        if (onCancel != null) onCancel.cancel();
+        for (Delivery delivery : deliveries) {
+            delivery.deliver();
+        }
+        return true;
+    }
+
+    /**
+     * A complete future no longer needs its callbacks, work and timer.
+     */
+    private void clear() {
+        mDeliveries = null;
+        mOnCancel = null;
+        if (mDeadline != null) mDeadline.cancel(false);
+        mDeadline = null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.walmart.products.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent calls for the same key into a single call. This class is thread-safe.
+ *
+ * The first caller to join a key does the work, everyone who joins while it is in flight
+ * is called back with the same result once the work completes.
+ * A caller that gives up leaves the call, the work is cancelled once every caller left.
+ *
+ * @param <K> the key type, i.e. a url or a page number
+ */
+public class SingleFlight<K> {
+
+    private final Map<K, List<Function>> mCalls = new HashMap<K, List<Function>>();
+
+    // the work of the calls that can be cancelled
+    private final Map<K, Cancellable> mWork = new HashMap<K, Cancellable>();
+
+    /**
+     * @param key
+     * @param onComplete - called with the args passed to {@link #complete(Object, Object...)}
+     * @return true if the caller must do the work and call complete, false if it joined a call in flight.
+     */
+    public boolean join(K key, Function onComplete) {
+        return join(key, onComplete, null);
+    }
+
+    /**
+     * @param work - cancelled once every caller left the call, see {@link #leave(Object, Function)}.
+     *             only kept if the caller must do the work, null if it cannot be cancelled
+     */
+    public synchronized boolean join(K key, Function onComplete, Cancellable work) {
+        List<Function> callbacks = mCalls.get(key);
+        if (callbacks != null) {
+            callbacks.add(onComplete);
+            return false;
+        }
+        callbacks = new ArrayList<Function>(1);
+        callbacks.add(onComplete);
+        mCalls.put(key, callbacks);
+        if (work != null) mWork.put(key, work);
+        return true;
+    }
+
+    /**
+     * The caller gives up, onComplete is not called. The last caller to leave cancels the work
+     * and the key is free again, a late complete is ignored.
+     * @param key
+     * @param onComplete - as it was passed to join
+     * @return true if the call was left by everyone
+     */
+    public boolean leave(K key, Function onComplete) {
+        Cancellable work;
+        synchronized (this) {
+            List<Function> callbacks = mCalls.get(key);
+            if (callbacks == null || !callbacks.remove(onComplete) || !callbacks.isEmpty()) return false;
+            mCalls.remove(key);
+            work = mWork.remove(key);
+        }
+        // outside the lock, like the callbacks of complete
+        if (work != null) work.cancel();
+        return true;
+    }
+
+    /**
+     * Complete the call in flight for key, every caller that joined is called with args.
+     * @param key
+     * @param args
+     */
+    public void complete(K key, Object... args) {
+        List<Function> callbacks;
+        synchronized (this) {
+            callbacks = mCalls.remove(key);
+            mWork.remove(key);
+        }
+        if (callbacks == null) return;
+        // outside the lock, a callback may join the same key again
+        for (Function fn : callbacks) {
+            fn.call(args);
+        }
+    }
+
+    /**
+     * @return the callers of the call in flight for key in their join order, empty if there is none
+     */
+    public synchronized List<Function> callers(K key) {
+        List<Function> callbacks = mCalls.get(key);
+        return (callbacks == null) ? new ArrayList<Function>(0) : new ArrayList<Function>(callbacks);
+    }
+
+    public synchronized boolean isInFlight(K key) {
+        return mCalls.containsKey(key);
+    }
+
+    /**
+     * @return the number of calls in flight
+     */
+    public synchronized int size() {
+        return mCalls.size();
+    }
+}
@@ -0,0 +1,64 @@
+package com.walmart.products.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded String interning pool. This class is thread-safe.
+ *
+ * Products repeat a lot of values (image urls of placeholder images, descriptions of variants),
+ * interning them means equal values across pages share one String instance.
+ *
+ * Unlike String.intern() the pool is bounded: once full, the least recently interned value is dropped,
+ * so the values of the pages still in use stay pooled while the pages scrolled past age out.
+ * Size it for the distinct values of the pages kept in memory, see WalmartServiceConfig.STRING_POOL_SIZE.
+ */
+public class StringPool {
+
+    // in access order, eldest first. interning is a lookup per field of a page, a lock is cheap next to the parse
+    private final LinkedHashMap<String, String> mPool;
+
+    private final int mCapacity;
+
+    public StringPool(final int capacity) {
+        this.mCapacity = capacity;
+        this.mPool = new LinkedHashMap<String, String>(Math.min(capacity, 1024), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /**
+     * @param value
+     * @return the pooled instance equal to value, or null if value is null.
+     */
+    public String intern(String value) {
+        if (value == null) return null;
+        synchronized (mPool) {
+            String pooled = mPool.get(value);
+            if (pooled != null) return pooled;
+            mPool.put(value, value);
+            return value;
+        }
+    }
+
+    public int size() {
+        synchronized (mPool) {
+            return mPool.size();
+        }
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    public void clear() {
+        synchronized (mPool) {
+            mPool.clear();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.walmart.products.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Spans of the page load pipeline (request, parse, thumbnails, cache insert, notify...), kept in a ring buffer
+ * of the last spans that ended and exported as Chrome trace-event JSON, see {@link #toChromeTrace()}.
+ *
+ * A span knows its trace (the loadProducts call or page load it is part of) and its parent. The context is
+ * carried explicitly (span.child(...) in a closure) or through the thread: {@link #start(String)} makes a child
+ * of the span the thread is in, see {@link Span#enter()}, and {@link #wrap(Runnable)} / {@link #wrap(Function)}
+ * carry the span of the caller into a callback that runs on another thread (i.e. the parse thread or a Handler).
+ *
+ * Only ended spans are recorded, a span is one allocation and two atomic increments, no lock.
+ * A disabled tracer hands out a span that records nothing.
+ *
+ * This class is thread-safe.
+ */
+public class Tracer {
+
+    /** A stage of a trace, from start to end. Ending it again does nothing. **/
+    public static class Span {
+        private final Tracer mTracer;
+        private final String mName;
+        private final long mTraceId;
+        private final long mId;
+        private final long mParentId;
+        private final long mStartNanos;
+        private final Thread mThread;
+        private boolean mMark;
+        private volatile long mEndNanos;
+        private volatile boolean mEnded;
+        private String mArgName;
+        private long mArgValue;
+
+        private Span(Tracer tracer, String name, long traceId, long id, long parentId, long startNanos) {
+            this.mTracer = tracer;
+            this.mName = name;
+            this.mTraceId = traceId;
+            this.mId = id;
+            this.mParentId = parentId;
+            this.mStartNanos = startNanos;
+            this.mThread = Thread.currentThread();
+        }
+
+        /**
+         * @return a span of the same trace that starts now
+         */
+        public Span child(String name) {
+            if (mTracer == null) return this;
+            return new Span(mTracer, name, mTraceId, mTracer.mNextId.incrementAndGet(), mId, System.nanoTime());
+        }
+
+        /**
+         * Record an instant of the trace at nanos (a System.nanoTime()), i.e. the first byte of a response.
+         */
+        public void mark(String name, long nanos) {
+            if (mTracer == null) return;
+            Span mark = new Span(mTracer, name, mTraceId, mTracer.mNextId.incrementAndGet(), mId, nanos);
+            mark.mMark = true;
+            mark.end(nanos);
+        }
+
+        /**
+         * @param name - shown with the span in the timeline, i.e. "page"
+         * @return this span
+         */
+        public Span arg(String name, long value) {
+            mArgName = name;
+            mArgValue = value;
+            return this;
+        }
+
+        public void end() {
+            end(System.nanoTime());
+        }
+
+        private void end(long nanos) {
+            if (mTracer == null) return;
+            // ended once, even by two threads at once
+            synchronized (this) {
+                if (mEnded) return;
+                mEndNanos = nanos;
+                mEnded = true;
+            }
+            mTracer.record(this);
+        }
+
+        public boolean isEnded() {
+            return mEnded;
+        }
+
+        /**
+         * Make this the span of the current thread, spans started by the thread are its children.
+         * @return the span the thread was in, give it to {@link Tracer#exit(Span)} once done
+         *         (null if this span records nothing, the thread stays in its span)
+         */
+        public Span enter() {
+            if (mTracer == null) return null;
+            Span previous = mTracer.mCurrent.get();
+            mTracer.mCurrent.set(this);
+            return previous;
+        }
+
+        public String name() {
+            return mName;
+        }
+
+        public long traceId() {
+            return mTraceId;
+        }
+
+        public long parentId() {
+            return mParentId;
+        }
+
+        public long id() {
+            return mId;
+        }
+
+        public double millis() {
+            return (mEndNanos - mStartNanos) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer(mName).append(" - trace: ").append(mTraceId);
+            sb.append(", id: ").append(mId).append(", parent: ").append(mParentId);
+            if (mArgName != null) sb.append(", ").append(mArgName).append(": ").append(mArgValue);
+            if (mEnded) sb.append(", millis: ").append(millis());
+            return sb.toString();
+        }
+    }
+
+    // the span of a disabled tracer, and the parent of the spans started outside of any span
+    private static final Span NO_SPAN = new Span(null, "none", 0, 0, 0, 0);
+
+    private static final ObjectMapper mMapper = new ObjectMapper();
+
+    private final boolean mEnabled;
+
+    private final AtomicReferenceArray<Span> mRing;
+
+    private final int mMask;
+
+    private final AtomicLong mNextSlot = new AtomicLong();
+
+    private final AtomicLong mNextId = new AtomicLong();
+
+    private final ThreadLocal<Span> mCurrent = new ThreadLocal<Span>() {
+        @Override
+        protected Span initialValue() {
+            return NO_SPAN;
+        }
+    };
+
+    /**
+     * @param capacity - the last capacity spans that ended are kept, rounded up to a power of two
+     * @param enabled - false records nothing
+     */
+    public Tracer(int capacity, boolean enabled) {
+        if (capacity < 1) throw new IllegalArgumentException("invalid capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.mEnabled = enabled;
+        this.mRing = new AtomicReferenceArray<Span>(enabled ? size : 0);
+        this.mMask = size - 1;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return a span that starts now, a child of the span of the current thread or else the root of a new trace
+     */
+    public Span start(String name) {
+        if (!mEnabled) return NO_SPAN;
+        Span parent = mCurrent.get();
+        if (parent != NO_SPAN) return parent.child(name);
+        long id = mNextId.incrementAndGet();
+        return new Span(this, name, id, id, 0, System.nanoTime());
+    }
+
+    /**
+     * @return the span of the current thread, a span that records nothing if there is none
+     */
+    public Span current() {
+        return mEnabled ? mCurrent.get() : NO_SPAN;
+    }
+
+    /**
+     * @param previous - what {@link Span#enter()} returned
+     */
+    public void exit(Span previous) {
+        if (mEnabled && previous != null) mCurrent.set(previous);
+    }
+
+    /**
+     * @return runs runnable in the span of the thread calling wrap, whichever thread runs it
+     */
+    public Runnable wrap(final Runnable runnable) {
+        final Span span = current();
+        if (span == NO_SPAN) return runnable;
+        return new Runnable() {
+            @Override
+            public void run() {
+                Span previous = span.enter();
+                try {
+                    runnable.run();
+                } finally {
+                    exit(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return calls function in the span of the thread calling wrap, whichever thread calls it
+     */
+    public Function wrap(final Function function) {
+        final Span span = current();
+        if (span == NO_SPAN) return function;
+        return new Function() {
+            @Override
+            public void call(Object... args) {
+                Span previous = span.enter();
+                try {
+                    function.call(args);
+                } finally {
+                    exit(previous);
+                }
+            }
+        };
+    }
+
+    private void record(Span span) {
+        mRing.set((int) (mNextSlot.getAndIncrement() & mMask), span);
+    }
+
+    /**
+     * @return the spans in the ring buffer, oldest start first
+     */
+    public List<Span> spans() {
+        List<Span> spans = new ArrayList<Span>(mRing.length());
+        for (int i = 0; i < mRing.length(); i++) {
+            Span span = mRing.get(i);
+            if (span != null) spans.add(span);
+        }
+        Collections.sort(spans, new Comparator<Span>() {
+            @Override
+            public int compare(Span a, Span b) {
+                return (a.mStartNanos < b.mStartNanos) ? -1 : ((a.mStartNanos == b.mStartNanos) ? 0 : 1);
+            }
+        });
+        return spans;
+    }
+
+    /**
+     * The spans in the ring buffer as Chrome trace-event JSON (load it in chrome://tracing or ui.perfetto.dev).
+     *
+     * Every trace is an async track (its spans nest by time under the trace id), a span that started on one thread
+     * and ended on another (i.e. request) stays in one piece. Marks are instant events of their trace.
+     */
+    public ObjectNode toChromeTrace() {
+        ObjectNode json = new ObjectNode(JsonNodeFactory.instance);
+        ArrayNode events = json.putArray("traceEvents");
+        Map<Long, String> threads = new HashMap<Long, String>();
+        for (Span span : spans()) {
+            long tid = span.mThread.getId();
+            threads.put(tid, span.mThread.getName());
+            ObjectNode begin = event(events, span, span.mMark ? "n" : "b", span.mStartNanos, tid);
+            if (span.mArgName != null) begin.putObject("args").put(span.mArgName, span.mArgValue);
+            if (!span.mMark) event(events, span, "e", span.mEndNanos, tid);
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            ObjectNode name = events.addObject();
+            name.put("name", "thread_name");
+            name.put("ph", "M");
+            name.put("pid", 1);
+            name.put("tid", thread.getKey());
+            name.putObject("args").put("name", thread.getValue());
+        }
+        json.put("displayTimeUnit", "ms");
+        return json;
+    }
+
+    private static ObjectNode event(ArrayNode events, Span span, String phase, long nanos, long tid) {
+        ObjectNode event = events.addObject();
+        event.put("name", span.mName);
+        event.put("cat", "trace");
+        event.put("ph", phase);
+        event.put("id", span.mTraceId);
+        event.put("ts", nanos / 1000);
+        event.put("pid", 1);
+        event.put("tid", tid);
+        return event;
+    }
+
+    /**
+     * Write {@link #toChromeTrace()} to file.
+     */
+    public void writeChromeTrace(File file) throws IOException {
+        mMapper.writeValue(file, toChromeTrace());
+    }
+}
@@ -11,16 +11,17 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.walmart.products.activity.ProductDetailActivity;
 import com.walmart.products.R;
 
 import com.walmart.products.service.WalmartService;
 import com.walmart.products.util.Function;
+import com.walmart.products.util.ServiceFuture;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import static com.walmart.products.service.WalmartServiceConfig.MEDIUM_IMAGE_TIMEOUT;
 import static com.walmart.products.service.WalmartServiceConfig.PAGE_SIZE;
 
 public class ProductDetailFragment extends Fragment {
@@ -44,6 +45,9 @@ public class ProductDetailFragment extends Fragment {
     private TextView mName;
     private TextView mDesc;
 
+    // the medium image being loaded, cancelled once the view pager destroys this view
+    private ServiceFuture<Bitmap> mMediumImage;
+
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         Bundle bundle = this.getArguments();
@@ -76,6 +80,14 @@ public class ProductDetailFragment extends Fragment {
         });
     }
 
+    @Override
+    public void onDestroyView() {
+        // swiping past a product cancels the download of its image, unless another view shares it
+        if (mMediumImage != null && mMediumImage.cancel(false)) hideLoadingIndicator();
+        mMediumImage = null;
+        super.onDestroyView();
+    }
+
     private void loadProducts(Function onComplete) {
         showLoadingIndicator();
         // if we are near the end, load more
@@ -99,11 +111,10 @@ public class ProductDetailFragment extends Fragment {
     private void showProduct(final int index) {
         final WalmartService service = mActivity.getService();
         if (service != null) {
-            JsonNode productNode = service.getProduct(index);
-            if (productNode != null) {
-                showProduct(service, productNode);
+            if (service.hasProduct(index)) {
+                showProduct(service, index);
             } else {
-                Log.e(TAG, "showProduct failed  - productNode is null, retrying at position: " + mPosition);
+                Log.e(TAG, "showProduct failed  - product not loaded, retrying at position: " + mPosition);
                 // sometimes if the user is being very busy with the device, it can get here.
                 // - explanation:
                 // if the user scrolls fast enuff (up then down) and clicks on an item, it can get here
@@ -114,17 +125,16 @@ public class ProductDetailFragment extends Fragment {
                 // - fix:
                 // not an easy bug to reproduce, fix verified from the log:
                 // Log: WalmartServiceUtils: getPage failed - at: 13, reason: page not loaded into cache
-                // Log: ProductDetailFragment: showProduct failed  - productNode is null, retrying at position: 1389
+                // Log: ProductDetailFragment: showProduct failed  - product not loaded, retrying at position: 1389
                 // prdouct shows up corretly after retry... before it was blank.
                 loadProducts(new Function() {
                     @Override
                     public void call(Object... args) {
-                        JsonNode _productNode = service.getProduct(index);
-                        if (_productNode == null) {
-                            Log.e(TAG, "showProduct retry failed  - productNode is null, position: " + mPosition);
+                        if (!service.hasProduct(index)) {
+                            Log.e(TAG, "showProduct retry failed  - product not loaded, position: " + mPosition);
                             hideLoadingIndicator();
                         } else {
-                            showProduct(service, _productNode);
+                            showProduct(service, index);
                         }
                     }
                 });
@@ -135,25 +145,23 @@ public class ProductDetailFragment extends Fragment {
         }
     }
 
-    private void showProduct(WalmartService service, JsonNode productNode) {
-        if (productNode.get("name") != null) {
-            mName.setText(productNode.get("name").textValue());
-        }
-        if (productNode.get("shortDescription") != null) {
-            mDesc.setText(productNode.get("shortDescription").textValue());
-        }
-        Function onComplete = new Function() {
+    private void showProduct(WalmartService service, int index) {
+        mName.setText(service.getName(index));
+        mDesc.setText(service.getDescription(index));
+        if (mMediumImage != null) mMediumImage.cancel(false);
+        mMediumImage = service.getMediumImageAsync(mPosition, MEDIUM_IMAGE_TIMEOUT);
+        mMediumImage.addCallback(new ServiceFuture.Callback<Bitmap>() {
             @Override
-            public void call(Object... args) {
-                if (args[0] != null) {
-                    Log.e(TAG, args[0].toString());
-                } else {
-                    mImage.setImageBitmap((Bitmap) args[1]);
-                }
+            public void onSuccess(Bitmap bmp) {
+                mImage.setImageBitmap(bmp);
                 hideLoadingIndicator();
             }
-        };
-        service.getMediumImage(mPosition, onComplete);
+            @Override
+            public void onFailure(Throwable error) {
+                Log.e(TAG, error.toString());
+                hideLoadingIndicator();
+            }
+        });
     }
 
     private void showLoadingIndicator() {
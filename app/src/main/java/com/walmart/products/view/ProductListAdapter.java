@@ -1,7 +1,9 @@
 package com.walmart.products.view;
 
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -9,7 +11,7 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.walmart.products.Application;
 import com.walmart.products.activity.ProductListActivity;
 import com.walmart.products.R;
 import com.walmart.products.service.WalmartService;
@@ -20,6 +22,8 @@ public class ProductListAdapter extends RecyclerView.Adapter<ProductListAdapter.
 
     private ProductListActivity mActivity;
 
+    private static boolean mFirstRowBound = false;
+
     public ProductListAdapter(ProductListActivity mActivity) {
         this.mActivity = mActivity;
     }
@@ -35,15 +39,16 @@ public class ProductListAdapter extends RecyclerView.Adapter<ProductListAdapter.
     public void onBindViewHolder(ViewHolder holder, final int position) {
         WalmartService service = mActivity.getService();
         if (service != null) {
-            JsonNode productNode = service.getProduct(position);
-            if (productNode != null) {
-                if (productNode.get("name") != null) {
-                    holder.textView.setText(productNode.get("name").textValue());
-                }
-                Bitmap bmp = service.getThumbnail(position);
-                if (bmp != null) {
-                    holder.imageView.setImageBitmap(bmp);
+            if (service.hasProduct(position)) {
+                if (!mFirstRowBound) {
+                    // cold start metric, time from process start to the first row showing a product
+                    mFirstRowBound = true;
+                    long elapsed = SystemClock.elapsedRealtime() - Application.getStartTime();
+                    Log.i(TAG, "first row bound - ms since application start: " + elapsed);
                 }
+                holder.textView.setText(service.getName(position));
+                // the thumbnail is acquired, so the BitmapPool does not decode another one into it while shown
+                showThumbnail(service, holder, service.acquireThumbnail(position));
                 holder.itemView.setOnClickListener(new View.OnClickListener() {
                     @Override
                     public void onClick(View v) {
@@ -52,20 +57,44 @@ public class ProductListAdapter extends RecyclerView.Adapter<ProductListAdapter.
                 });
             } else {
                 holder.textView.setText(null);
-                holder.imageView.setImageBitmap(null);
+                showThumbnail(service, holder, null);
                 holder.itemView.setOnClickListener(null);
             }
         }
     }
 
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        WalmartService service = mActivity.getService();
+        if (service != null) showThumbnail(service, holder, null);
+    }
+
+    /**
+     * Show bmp (or nothing) and release the thumbnail the row showed before.
+     */
+    private void showThumbnail(WalmartService service, ViewHolder holder, Bitmap bmp) {
+        holder.imageView.setImageBitmap(bmp);
+        if (holder.thumbnail != null) service.releaseThumbnail(holder.thumbnail);
+        holder.thumbnail = bmp;
+    }
+
     @Override
     public int getItemCount() {
         return mActivity.getItemCount();
     }
 
+    /**
+     * Rebind only the row whose thumbnail arrived, must be called on the main thread.
+     * @param index
+     */
+    public void notifyThumbnailLoaded(int index) {
+        if (index < getItemCount()) notifyItemChanged(index);
+    }
+
     static class ViewHolder extends RecyclerView.ViewHolder {
         TextView textView;
         ImageView imageView;
+        Bitmap thumbnail; // acquired from the service, released when the row is rebound or recycled
 
         ViewHolder(View itemView) {
             super(itemView);
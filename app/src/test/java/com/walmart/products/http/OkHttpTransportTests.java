@@ -0,0 +1,237 @@
+package com.walmart.products.http;
+
+import com.walmart.products.util.Cancellable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class OkHttpTransportTests {
+
+    MockWebServer mServer;
+
+    @Before
+    public void setup() {
+        mServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /** waits for the callbacks, without a looper they are made on the OkHttp threads **/
+    class Responses implements HttpTransport.Callback {
+        final HttpTransport.Response[] responses;
+        final CountDownLatch done;
+        int count;
+        Responses(int expected) {
+            responses = new HttpTransport.Response[expected];
+            done = new CountDownLatch(expected);
+        }
+        @Override
+        public synchronized void onResponse(HttpTransport.Response response) {
+            responses[count++] = response;
+            done.countDown();
+        }
+        HttpTransport.Response[] await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return responses;
+        }
+    }
+
+    @Test
+    public void test_responseAndConnectionReuse() throws Exception {
+        mServer.enqueue(new MockResponse().setHeader("ETag", "\"1\"").setBody("one")
+                .addHeader("Set-Cookie", "a=1").addHeader("Set-Cookie", "b=2"));
+        mServer.enqueue(new MockResponse().setResponseCode(404).setBody("none"));
+        mServer.start();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient());
+
+        Responses first = new Responses(1);
+        transport.get(null, mServer.url("/one").toString(), first);
+        HttpTransport.Response response = first.await()[0];
+        assertTrue(response.isSuccessful());
+        assertEquals(200, response.status);
+        assertEquals("one", new String(response.body, "UTF-8"));
+        assertEquals("\"1\"", response.header("ETag"));
+        assertEquals(Collections.singletonList("\"1\""), response.headers.get("etag"));
+        // a repeated header keeps every value
+        assertEquals(Arrays.asList("a=1", "b=2"), response.headers("set-cookie"));
+        assertEquals("a=1", response.header("Set-Cookie"));
+        assertTrue(response.headers("Vary").isEmpty());
+
+        Responses second = new Responses(1);
+        transport.get(null, mServer.url("/two").toString(), second);
+        response = second.await()[0];
+        assertFalse(response.isSuccessful());
+        assertEquals(404, response.status);
+        assertEquals("none", new String(response.body, "UTF-8"));
+
+        // the second request went over the connection of the first
+        assertEquals(0, mServer.takeRequest().getSequenceNumber());
+        assertEquals(1, mServer.takeRequest().getSequenceNumber());
+        HttpTransport.Stats stats = transport.stats();
+        assertEquals(2, stats.requests);
+        assertEquals(1, stats.failures);
+        assertEquals(1, stats.connections);
+    }
+
+    @Test
+    public void test_noResponse() throws Exception {
+        mServer.start();
+        String url = mServer.url("/").toString();
+        mServer.shutdown();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient());
+
+        Responses responses = new Responses(2);
+        transport.get(null, url, responses);
+        transport.get(null, "not a url", responses);
+        for (HttpTransport.Response response : responses.await()) {
+            assertFalse(response.isSuccessful());
+            assertEquals(0, response.status);
+            assertNull(response.body);
+            assertNotNull(response.error);
+        }
+    }
+
+    @Test
+    public void test_concurrentCallsShareTheFirstConnection() throws Exception {
+        // HTTP/2 without TLS, a connection per call would be thrown away once the first one is up
+        List<Protocol> h2 = Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+        mServer.setProtocols(h2);
+        final int calls = 10;
+        for (int i = 0; i < calls; i++) {
+            mServer.enqueue(new MockResponse().setBody("image " + i).setHeadersDelay(50, TimeUnit.MILLISECONDS));
+        }
+        mServer.start();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient.Builder().protocols(h2).build());
+
+        Responses responses = new Responses(calls);
+        for (int i = 0; i < calls; i++) {
+            transport.get(null, mServer.url("/images/" + i).toString(), responses);
+        }
+        for (HttpTransport.Response response : responses.await()) {
+            assertTrue(response.isSuccessful());
+        }
+        HttpTransport.Stats stats = transport.stats();
+        assertEquals(1, stats.connections);
+        assertEquals(calls, stats.http2Requests);
+    }
+
+    @Test
+    public void test_conditionalRequest() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"2\""));
+        mServer.start();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient());
+
+        Responses responses = new Responses(1);
+        transport.get(null, mServer.url("/page").toString(),
+                Collections.singletonMap("If-None-Match", "\"1\""), responses);
+        HttpTransport.Response response = responses.await()[0];
+        assertEquals("\"1\"", mServer.takeRequest().getHeader("If-None-Match"));
+        // not a failure, the cached response can be used
+        assertTrue(response.isNotModified());
+        assertNull(response.error);
+        assertEquals("\"2\"", response.header("etag"));
+        assertEquals(0, transport.stats().failures);
+    }
+
+    @Test
+    public void test_cancelOneRequest() throws Exception {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().equals("/slow")) {
+                    return new MockResponse().setBody("slow").setHeadersDelay(300, TimeUnit.MILLISECONDS);
+                }
+                return new MockResponse().setBody("fast");
+            }
+        });
+        mServer.start();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient());
+        Responses connect = new Responses(1);
+        transport.get(null, mServer.url("/fast").toString(), connect);
+        connect.await();
+
+        // only the cancelled request of the context is cancelled, and it is not called back
+        Responses cancelled = new Responses(1);
+        Responses others = new Responses(1);
+        Cancellable slow = transport.get(null, mServer.url("/slow").toString(), cancelled);
+        transport.get(null, mServer.url("/fast").toString(), others);
+        slow.cancel();
+        assertTrue(others.await()[0].isSuccessful());
+        assertFalse(cancelled.done.await(600, TimeUnit.MILLISECONDS));
+        assertEquals(0, transport.stats().failures);
+        slow.cancel(); // cancelling again does nothing
+    }
+
+    @Test
+    public void test_cancelBeforeConnected() throws Exception {
+        List<Protocol> h2 = Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+        mServer.setProtocols(h2);
+        mServer.enqueue(new MockResponse().setBody("first").setHeadersDelay(100, TimeUnit.MILLISECONDS));
+        mServer.enqueue(new MockResponse().setBody("third"));
+        mServer.start();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient.Builder().protocols(h2).build());
+
+        // the second call waits for the connection of the first, it is never sent
+        Responses responses = new Responses(2);
+        Responses cancelled = new Responses(1);
+        transport.get(null, mServer.url("/first").toString(), responses);
+        transport.get(null, mServer.url("/second").toString(), cancelled).cancel();
+        transport.get(null, mServer.url("/third").toString(), responses);
+        responses.await();
+        // the streams of one connection are recorded in any order
+        Set<String> paths = new HashSet<String>();
+        paths.add(mServer.takeRequest().getPath());
+        paths.add(mServer.takeRequest().getPath());
+        assertEquals(new HashSet<String>(Arrays.asList("/first", "/third")), paths);
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(1, cancelled.done.getCount());
+    }
+
+    @Test
+    public void test_connectedUntilTheConnectionIsGone() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("one"));
+        mServer.enqueue(new MockResponse().setBody("two"));
+        mServer.start();
+        String url = mServer.url("/").toString();
+        OkHttpTransport transport = new OkHttpTransport(new OkHttpClient());
+        assertFalse(transport.isConnected(url));
+
+        Responses responses = new Responses(1);
+        transport.get(null, url, responses);
+        responses.await();
+        // idle in the pool
+        assertTrue(transport.isConnected(url));
+        // evicted, the next call connects alone again
+        transport.client().connectionPool().evictAll();
+        assertFalse(transport.isConnected(url));
+
+        // the idle connection outlived the keep-alive
+        transport = new OkHttpTransport(new OkHttpClient(), 0);
+        responses = new Responses(1);
+        transport.get(null, url, responses);
+        assertTrue(responses.await()[0].isSuccessful());
+        assertFalse(transport.isConnected(url));
+    }
+}
@@ -0,0 +1,110 @@
+package com.walmart.products.http;
+
+import com.fasterxml.jackson.core.JsonParseException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class PageParserTests {
+
+    private byte[] loadFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("fixtures/" + name);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private byte[] compress(byte[] data, String encoding) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out;
+        if (encoding.equals("gzip")) out = new GZIPOutputStream(bytes);
+        else if (encoding.equals("deflate")) out = new DeflaterOutputStream(bytes);
+        else out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, true)); // raw deflate
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void test_parsePage() throws IOException {
+        PageRecord page = PageParser.parsePage(loadFixture("page.json"));
+
+        assertEquals("/v1/paginated/items?format=json&category=3944&maxId=8501&apiKey=test", page.nextPage());
+        assertEquals(3, page.size());
+
+        // nested objects and arrays are skipped, they must not leak into the item fields
+        ProductRecord item = page.items()[0];
+        assertEquals("Rose Cottage Girls' Hunter Green  Jacket Dress", item.name);
+        assertEquals("A dress for special occasions.", item.shortDescription);
+        assertEquals("https://i5.walmartimages.com/asr/0.jpeg?odnHeight=100&odnWidth=100", item.thumbnailImage);
+        assertEquals("https://i5.walmartimages.com/asr/0.jpeg?odnHeight=180&odnWidth=180", item.mediumImage);
+
+        // json null is read as a missing field
+        assertNull(page.items()[1].shortDescription);
+
+        // missing fields stay null
+        item = page.items()[2];
+        assertEquals("Hanes - Men's Ankle Crew Socks, 6 Pairs", item.name);
+        assertNull(item.thumbnailImage);
+        assertNull(item.mediumImage);
+    }
+
+    @Test
+    public void test_parsePage_noItems() throws IOException {
+        PageRecord page = PageParser.parsePage("{\"nextPage\":null}".getBytes("UTF-8"));
+        assertNull(page.nextPage());
+        assertEquals(0, page.size());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void test_parsePage_notAnObject() throws IOException {
+        PageParser.parsePage("[1,2,3]".getBytes("UTF-8"));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void test_parsePage_truncated() throws IOException {
+        PageParser.parsePage("{\"items\":[{\"name\":\"a\"},".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void test_parsePage_compressed() throws IOException {
+        byte[] json = loadFixture("page.json");
+        byte[] gzip = compress(json, "gzip");
+        byte[] zlib = compress(json, "deflate");
+        String nextPage = PageParser.parsePage(json).nextPage();
+
+        assertEquals(nextPage, PageParser.parsePage(gzip, "gzip").nextPage());
+        assertEquals(nextPage, PageParser.parsePage(zlib, "deflate").nextPage());
+        assertEquals(nextPage, PageParser.parsePage(compress(json, "raw"), "deflate").nextPage());
+        assertEquals(nextPage, PageParser.parsePage(json, "identity").nextPage());
+        // pages read back from disk have no Content-Encoding, gzip and zlib are told from their first bytes
+        assertEquals(3, PageParser.parsePage(gzip).size());
+        assertEquals(3, PageParser.parsePage(zlib).size());
+        assertEquals("identity", ContentEncoding.sniff(json));
+        assertEquals("identity", ContentEncoding.sniff(new byte[0]));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_parsePage_unsupportedEncoding() throws IOException {
+        PageParser.parsePage(loadFixture("page.json"), "br");
+    }
+
+    @Test(expected = IOException.class)
+    public void test_parsePage_corruptGzip() throws IOException {
+        byte[] gzip = compress(loadFixture("page.json"), "gzip");
+        PageParser.parsePage(Arrays.copyOf(gzip, gzip.length / 2), "gzip");
+    }
+}
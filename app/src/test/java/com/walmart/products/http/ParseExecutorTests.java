@@ -0,0 +1,84 @@
+package com.walmart.products.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParseExecutorTests {
+
+    @Test
+    public void test_burstIsBoundedAndOverflowsWhenFull() throws InterruptedException {
+        final int threads = 2;
+        final int queueSize = 4;
+        final int burst = 20;
+        ParseExecutor executor = new ParseExecutor(threads, queueSize);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(burst);
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger callerRuns = new AtomicInteger();
+        try {
+            for (int i = 0; i < burst; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the caller is not the main thread, once every queue is full it parses itself
+                        if (Thread.currentThread() == caller) {
+                            callerRuns.incrementAndGet();
+                            done.countDown();
+                            return;
+                        }
+                        // parse threads hold on until the whole burst was submitted
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+            ParseExecutor.Stats stats = executor.stats();
+            // the pool and a single overflow thread, whatever the burst
+            assertEquals(threads + 1, stats.threadsCreated);
+            assertEquals(queueSize, stats.maxQueued);
+            // the overflow thread runs one and queues as many as the pool
+            assertEquals(1 + queueSize, stats.overflowRuns);
+            int overflowed = threads + queueSize + 1 + queueSize;
+            assertEquals(burst - overflowed, stats.callerRuns);
+            assertEquals(burst - overflowed, callerRuns.get());
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            stats = executor.stats();
+            assertEquals(burst, stats.completed);
+            assertEquals(0, stats.queued);
+            assertEquals(threads + 1, stats.threadsCreated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_rejectedOnceShutdown() {
+        ParseExecutor executor = new ParseExecutor(1, 1);
+        executor.shutdown();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fail("ran after shutdown");
+                }
+            });
+            fail("not rejected");
+        } catch (RejectedExecutionException e) {
+            // the caller fails the response
+        }
+    }
+}
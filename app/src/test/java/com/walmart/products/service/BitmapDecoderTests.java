@@ -0,0 +1,32 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static com.walmart.products.service.BitmapDecoder.calculateInSampleSize;
+import static com.walmart.products.service.BitmapDecoder.configFor;
+import static org.junit.Assert.*;
+
+public class BitmapDecoderTests {
+
+    @Test
+    public void test_calculateInSampleSize() {
+        // never smaller than the target
+        assertEquals(1, calculateInSampleSize(450, 450, 300, 300));
+        assertEquals(2, calculateInSampleSize(450, 450, 200, 200));
+        assertEquals(4, calculateInSampleSize(450, 450, 100, 100));
+        assertEquals(16, calculateInSampleSize(1500, 1500, 75, 75));
+        // the smaller dimension decides
+        assertEquals(2, calculateInSampleSize(1000, 450, 100, 200));
+        // smaller than the target, or no target
+        assertEquals(1, calculateInSampleSize(60, 60, 100, 100));
+        assertEquals(1, calculateInSampleSize(450, 450, 0, 0));
+    }
+
+    @Test
+    public void test_configFor() {
+        assertEquals(Bitmap.Config.RGB_565, configFor(300, 300)); // 100dp thumbnail at xxhdpi
+        assertEquals(Bitmap.Config.ARGB_8888, configFor(900, 900)); // 300dp detail image at xxhdpi
+    }
+}
@@ -0,0 +1,84 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class BitmapPoolTests {
+
+    Bitmap bitmap(int bytes, boolean mutable) {
+        Bitmap bmp = mock(Bitmap.class);
+        when(bmp.getAllocationByteCount()).thenReturn(bytes);
+        when(bmp.isMutable()).thenReturn(mutable);
+        return bmp;
+    }
+
+    @Test
+    public void test_getBestFit() {
+        BitmapPool pool = new BitmapPool(1000);
+        Bitmap large = bitmap(400, true);
+        Bitmap small = bitmap(200, true);
+        pool.put(large);
+        pool.put(small);
+        pool.put(bitmap(100, false)); // immutable, can not be decoded into
+
+        assertNull(pool.get(500));
+        assertSame(small, pool.get(150));
+        assertSame(large, pool.get(150));
+        assertNull(pool.get(150));
+
+        BitmapPool.Stats stats = pool.stats();
+        assertEquals(2, stats.hits);
+        assertEquals(2, stats.misses);
+        assertEquals(0, stats.bytes);
+    }
+
+    @Test
+    public void test_acquiredIsNotReused() {
+        BitmapPool pool = new BitmapPool(1000);
+        Bitmap shown = bitmap(200, true);
+        pool.acquire(shown);
+        pool.acquire(shown); // i.e. the same thumbnail in two rows
+
+        // evicted from the cache while shown
+        pool.put(shown);
+        assertNull(pool.get(200));
+        assertEquals(1, pool.stats().deferred);
+
+        pool.release(shown);
+        assertNull(pool.get(200));
+        pool.release(shown);
+        assertFalse(pool.isAcquired(shown));
+        assertSame(shown, pool.get(200));
+    }
+
+    @Test
+    public void test_releasedNotEvictedIsNotPooled() {
+        BitmapPool pool = new BitmapPool(1000);
+        Bitmap cached = bitmap(200, true);
+        pool.acquire(cached);
+        pool.release(cached);
+        assertNull(pool.get(200));
+    }
+
+    @Test
+    public void test_maxBytes() {
+        BitmapPool pool = new BitmapPool(500);
+        Bitmap oldest = bitmap(200, true);
+        Bitmap newest = bitmap(200, true);
+        pool.put(oldest);
+        pool.put(bitmap(200, true));
+        pool.put(newest); // the oldest is dropped
+        pool.put(bitmap(600, true)); // larger than the pool
+
+        BitmapPool.Stats stats = pool.stats();
+        assertEquals(2, stats.dropped);
+        assertEquals(2, stats.bitmaps);
+        assertEquals(400, stats.bytes);
+        assertNotSame(oldest, pool.get(200));
+        assertSame(newest, pool.get(200));
+    }
+}
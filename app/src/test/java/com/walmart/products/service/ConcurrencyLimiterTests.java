@@ -0,0 +1,102 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTests {
+
+    private static final long MS = 1000 * 1000;
+
+    /** records the onDone of every started request **/
+    class Recorder extends ConcurrencyLimiter.Request {
+        final List<Function> started;
+        Recorder(List<Function> started) {
+            this.started = started;
+        }
+        @Override
+        protected void start(Function onDone) {
+            started.add(onDone);
+        }
+    }
+
+    @Test
+    public void test_executeWaitsForASlot() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(2);
+        List<Function> started = new ArrayList<Function>();
+        for (int i = 0; i < 3; i++) {
+            limiter.execute(new Recorder(started));
+        }
+        assertEquals(2, started.size());
+        assertEquals(1, limiter.stats().queued);
+
+        started.get(0).call();
+        assertEquals(3, started.size());
+        assertEquals(0, limiter.stats().queued);
+        assertEquals(2, limiter.stats().inFlight);
+    }
+
+    @Test
+    public void test_growsWhileLatencyHoldsAndUsed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 8);
+        for (int i = 0; i < 10; i++) {
+            // the limit is used, every slot is taken when the sample arrives
+            while (limiter.tryAcquire()) {}
+            limiter.onSample(100 * MS, false);
+            limiter.release();
+        }
+        assertEquals(8, limiter.limit());
+
+        // not used, no reason to grow
+        ConcurrencyLimiter idle = new ConcurrencyLimiter(2, 1, 8);
+        for (int i = 0; i < 10; i++) {
+            idle.onSample(100 * MS, false);
+        }
+        assertEquals(2, idle.limit());
+    }
+
+    @Test
+    public void test_shrinksWhenLatencyQueues() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 8);
+        limiter.onSample(100 * MS, false);
+        // 4x the idle latency with 8 in flight, about 6 of them are queued
+        limiter.onSample(400 * MS, false);
+        assertEquals(7, limiter.limit());
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(400 * MS, false);
+        }
+        // settles where fewer than BETA are queued
+        int limit = limiter.limit();
+        assertTrue(limit * (1 - 100.0 / 400) <= ConcurrencyLimiter.BETA);
+        assertTrue(limit >= 1);
+    }
+
+    @Test
+    public void test_failureHalvesWithinBounds() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 2, 8);
+        limiter.onSample(0, true);
+        assertEquals(4, limiter.limit());
+        limiter.onSample(0, true);
+        limiter.onSample(0, true);
+        assertEquals(2, limiter.limit());
+        ConcurrencyLimiter.Stats stats = limiter.stats();
+        assertEquals(3, stats.failures);
+        assertEquals(2, stats.decreases);
+    }
+
+    @Test
+    public void test_minRttIsLearnedAgain() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8);
+        limiter.onSample(50 * MS, false);
+        // the network became slower for good
+        for (int i = 0; i < ConcurrencyLimiter.RTT_WINDOW * 2; i++) {
+            limiter.onSample(300 * MS, false);
+        }
+        assertEquals(300.0, limiter.stats().minRttMillis, 0.001);
+    }
+}
@@ -0,0 +1,186 @@
+package com.walmart.products.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DiskCacheTests {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    DiskCache open(File dir, long maxBytes) throws IOException {
+        DiskCache diskCache = new DiskCache(dir, maxBytes);
+        diskCache.open();
+        return diskCache;
+    }
+
+    @Test
+    public void test_putAndGet() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 1024);
+        assertNull(diskCache.get("a", Long.MAX_VALUE));
+        diskCache.put("a", new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, diskCache.get("a", Long.MAX_VALUE));
+        assertEquals(3, diskCache.size());
+
+        // replacing an entry replaces its size
+        diskCache.put("a", new byte[]{4});
+        assertArrayEquals(new byte[]{4}, diskCache.get("a", Long.MAX_VALUE));
+        assertEquals(1, diskCache.size());
+
+        // an expired entry is a miss
+        assertNull(diskCache.get("a", -1));
+    }
+
+    @Test
+    public void test_trimToSize() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 10);
+        diskCache.put("a", new byte[4]);
+        diskCache.put("b", new byte[4]);
+        diskCache.get("a", Long.MAX_VALUE); // b is now least recently used
+        diskCache.put("c", new byte[4]);
+        assertNotNull(diskCache.get("a", Long.MAX_VALUE));
+        assertNull(diskCache.get("b", Long.MAX_VALUE));
+        assertNotNull(diskCache.get("c", Long.MAX_VALUE));
+        assertEquals(8, diskCache.size());
+    }
+
+    @Test
+    public void test_reopen() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 10);
+        diskCache.put("a", new byte[4]);
+        diskCache.put("b", new byte[4]);
+        diskCache.get("a", Long.MAX_VALUE);
+        diskCache.putPageUrl(1, "/page1");
+        diskCache.putPageUrl(2, "/page2?x=1 2");
+        diskCache.close();
+
+        // the journal restores the entries, their LRU order and the page urls
+        diskCache = open(mFolder.getRoot(), 10);
+        assertEquals(8, diskCache.size());
+        Map<Integer, String> pageUrls = diskCache.pageUrls();
+        assertEquals("/page1", pageUrls.get(1));
+        assertEquals("/page2?x=1 2", pageUrls.get(2));
+        diskCache.put("c", new byte[4]);
+        assertNull(diskCache.get("b", Long.MAX_VALUE));
+        assertNotNull(diskCache.get("a", Long.MAX_VALUE));
+    }
+
+    @Test
+    public void test_openedByFirstUse() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 10);
+        diskCache.put("a", new byte[4]);
+        diskCache.putPageUrl(1, "/page1");
+        diskCache.close();
+
+        // not opened, the first method replays the journal
+        diskCache = new DiskCache(mFolder.getRoot(), 10);
+        assertEquals("/page1", diskCache.pageUrls().get(1));
+        assertEquals(4, diskCache.size());
+        diskCache.open(); // already open, nothing is replayed twice
+        assertEquals(4, diskCache.size());
+        diskCache.close();
+        assertArrayEquals(new byte[4], diskCache.get("a", Long.MAX_VALUE));
+        assertEquals(4, diskCache.size());
+    }
+
+    @Test
+    public void test_compactJournal() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 1024);
+        for (int i = 0; i < 3000; i++) {
+            diskCache.put("a", new byte[]{(byte) i});
+        }
+        diskCache.putPageUrl(5, "/page5");
+        diskCache.close();
+        File journal = new File(mFolder.getRoot(), "journal");
+        BufferedReader reader = new BufferedReader(new FileReader(journal));
+        int lines = 0;
+        while (reader.readLine() != null) lines++;
+        reader.close();
+        assertTrue("journal was not compacted, lines: " + lines, lines < 3000);
+
+        diskCache = open(mFolder.getRoot(), 1024);
+        assertArrayEquals(new byte[]{(byte) 2999}, diskCache.get("a", Long.MAX_VALUE));
+        assertEquals("/page5", diskCache.pageUrls().get(5));
+    }
+
+    @Test
+    public void test_compactJournalOfReads() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 1024);
+        diskCache.put("a", new byte[]{1});
+        diskCache.put("b", new byte[]{2});
+        // a scroll reads the same entries over and over, every read is a journal line
+        for (int i = 0; i < 3000; i++) {
+            diskCache.get((i % 2 == 0) ? "b" : "a", Long.MAX_VALUE);
+        }
+        diskCache.close();
+        File journal = new File(mFolder.getRoot(), "journal");
+        BufferedReader reader = new BufferedReader(new FileReader(journal));
+        int lines = 0;
+        while (reader.readLine() != null) lines++;
+        reader.close();
+        assertTrue("journal was not compacted, lines: " + lines, lines < 3000);
+
+        // the compacted journal keeps the LRU order, b is the least recently used
+        diskCache = open(mFolder.getRoot(), 2);
+        diskCache.put("c", new byte[]{3});
+        assertNull(diskCache.get("b", Long.MAX_VALUE));
+        assertArrayEquals(new byte[]{1}, diskCache.get("a", Long.MAX_VALUE));
+    }
+
+    @Test
+    public void test_missingFile() throws IOException {
+        DiskCache diskCache = open(mFolder.getRoot(), 1024);
+        diskCache.put("a", new byte[4]);
+        diskCache.close();
+        // the system may clear the cache dir behind our back
+        for (File file : mFolder.getRoot().listFiles()) {
+            if (!file.getName().equals("journal")) assertTrue(file.delete());
+        }
+        diskCache = open(mFolder.getRoot(), 1024);
+        assertEquals(0, diskCache.size());
+        assertNull(diskCache.get("a", Long.MAX_VALUE));
+    }
+
+    @Test
+    public void test_validatorsAndTouch() throws IOException {
+        final long[] now = {1000};
+        DiskCache diskCache = new DiskCache(mFolder.getRoot(), 1024) {
+            @Override
+            protected long now() {
+                return now[0];
+            }
+        };
+        diskCache.open();
+        assertTrue(diskCache.validators("a").isEmpty());
+        DiskCache.Validators validators = new DiskCache.Validators("W/\"1\"", "Wed, 21 Oct 2015 07:28:00 GMT");
+        diskCache.put("a", new byte[]{1, 2}, validators);
+        diskCache.put("b", new byte[]{3});
+
+        // expired, but the validators are kept to revalidate it
+        now[0] += 100;
+        assertNull(diskCache.get("a", 50));
+        assertEquals("W/\"1\"", diskCache.validators("a").etag);
+
+        // a 304 makes it fresh again
+        assertTrue(diskCache.touch("a", DiskCache.Validators.NONE));
+        assertArrayEquals(new byte[]{1, 2}, diskCache.get("a", 50));
+        assertFalse(diskCache.touch("missing", DiskCache.Validators.NONE));
+        diskCache.close();
+
+        // the journal restores the validators, with the spaces of Last-Modified
+        diskCache = open(mFolder.getRoot(), 1024);
+        assertEquals("W/\"1\"", diskCache.validators("a").etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", diskCache.validators("a").lastModified);
+        assertTrue(diskCache.validators("b").isEmpty());
+        assertArrayEquals(new byte[]{3}, diskCache.get("b", Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,136 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.walmart.products.service.WalmartServiceConfig.PAGE_SIZE;
+import static org.junit.Assert.*;
+
+public class ImageSchedulerTests {
+
+    /** records the order requests start in, and holds on to them until finish() **/
+    class TestRequest extends ImageScheduler.Request {
+        final int index;
+        final List<TestRequest> started;
+        Function onDone;
+        boolean cancelled;
+        TestRequest(int index, List<TestRequest> started) {
+            this.index = index;
+            this.started = started;
+        }
+        @Override
+        protected void start(Function onDone) {
+            this.onDone = onDone;
+            started.add(this);
+        }
+        @Override
+        protected void cancel() {
+            cancelled = true;
+        }
+        void finish() {
+            onDone.call(null, null);
+        }
+    }
+
+    @Test
+    public void test_visibleFirst() {
+        List<TestRequest> started = new ArrayList<TestRequest>();
+        ImageScheduler scheduler = new ImageScheduler(1);
+        scheduler.setVisibleRange(50, 60);
+
+        TestRequest first = new TestRequest(0, started);
+        scheduler.schedule(0, first); // nothing in flight, starts right away
+        TestRequest far = new TestRequest(10, started);
+        TestRequest near = new TestRequest(45, started);
+        TestRequest visible = new TestRequest(55, started);
+        scheduler.schedule(10, far);
+        scheduler.schedule(45, near);
+        scheduler.schedule(55, visible);
+        assertEquals(1, started.size());
+        assertEquals(3, scheduler.stats().pending);
+
+        first.finish();
+        assertSame(visible, started.get(1));
+        visible.finish();
+        assertSame(near, started.get(2));
+
+        // the user scrolled back up, the far request is now visible
+        scheduler.schedule(70, new TestRequest(70, started));
+        scheduler.setVisibleRange(0, 15);
+        near.finish();
+        assertSame(far, started.get(3));
+    }
+
+    @Test
+    public void test_predictedRange() {
+        List<TestRequest> started = new ArrayList<TestRequest>();
+        ImageScheduler scheduler = new ImageScheduler(1);
+        scheduler.setVisibleRange(50, 60);
+        // a fling down is predicted to land on 300
+        scheduler.setPredictedRange(300, 310);
+
+        TestRequest first = new TestRequest(0, started);
+        scheduler.schedule(0, first);
+        TestRequest passed = new TestRequest(70, started);
+        TestRequest landing = new TestRequest(305, started);
+        TestRequest visible = new TestRequest(55, started);
+        scheduler.schedule(70, passed);
+        scheduler.schedule(305, landing);
+        scheduler.schedule(55, visible);
+
+        first.finish();
+        assertSame(visible, started.get(1));
+        visible.finish();
+        assertSame(landing, started.get(2)); // before the rows the fling flies past
+
+        // the fling is over, back to the distance to the visible range
+        scheduler.schedule(306, new TestRequest(306, started));
+        scheduler.setPredictedRange(-1, -1);
+        landing.finish();
+        assertSame(passed, started.get(3));
+    }
+
+    @Test
+    public void test_maxInFlight() {
+        List<TestRequest> started = new ArrayList<TestRequest>();
+        ImageScheduler scheduler = new ImageScheduler(2);
+        for (int i = 0; i < 5; i++) {
+            scheduler.schedule(i, new TestRequest(i, started));
+        }
+        assertEquals(2, started.size());
+        assertEquals(2, scheduler.stats().inFlight);
+        started.get(0).finish();
+        assertEquals(3, started.size());
+        assertEquals(2, scheduler.stats().inFlight);
+        assertEquals(2, scheduler.stats().pending);
+    }
+
+    @Test
+    public void test_cancelPage() {
+        List<TestRequest> started = new ArrayList<TestRequest>();
+        ImageScheduler scheduler = new ImageScheduler(1);
+        TestRequest inFlight = new TestRequest(1, started);
+        TestRequest pending = new TestRequest(2, started);
+        TestRequest otherPage = new TestRequest(PAGE_SIZE + 2, started);
+        scheduler.schedule(1, inFlight);
+        scheduler.schedule(2, pending);
+        scheduler.schedule(PAGE_SIZE + 2, otherPage);
+
+        scheduler.cancelPage(0);
+        assertTrue(pending.cancelled);
+        assertFalse(inFlight.cancelled);
+        assertFalse(otherPage.cancelled);
+
+        // the in flight download of the evicted page finishes, but it was wasted
+        inFlight.finish();
+        assertSame(otherPage, started.get(1));
+        ImageScheduler.Stats stats = scheduler.stats();
+        assertEquals(1, stats.cancelled);
+        assertEquals(1, stats.wasted);
+        assertEquals(2, stats.started);
+    }
+}
@@ -0,0 +1,148 @@
+package com.walmart.products.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import static com.walmart.products.service.WalmartService.CacheEntry;
+
+public class PageCacheTests {
+
+    final CacheEntry entry = new CacheEntry(null);
+
+    /** counts every page as one and records the pages evicted **/
+    class CountingCache extends PageCache {
+        final List<Integer> evicted = new ArrayList<Integer>();
+        CountingCache(int pages, String policy) {
+            super(pages, PageCache.newPolicy(policy));
+        }
+        @Override
+        protected int sizeOf(int pageNum, CacheEntry entry) {
+            return 1;
+        }
+        @Override
+        protected void entryEvicted(int pageNum, CacheEntry entry) {
+            evicted.add(pageNum);
+        }
+        /** a read, a missing page is loaded **/
+        void read(int... pageNums) {
+            for (int pageNum : pageNums) {
+                if (get(pageNum) == null) put(pageNum, entry);
+            }
+        }
+    }
+
+    @Test
+    public void test_newPolicy() {
+        assertTrue(PageCache.newPolicy(PageCache.LRU) instanceof LruPolicy);
+        assertTrue(PageCache.newPolicy(PageCache.TINY_LFU) instanceof TinyLfuPolicy);
+        assertTrue(PageCache.newPolicy(PageCache.VIEWPORT) instanceof ViewportPolicy);
+        assertNull(PageCache.newPolicy("arc"));
+    }
+
+    @Test
+    public void test_lru() {
+        CountingCache cache = new CountingCache(3, PageCache.LRU);
+        cache.read(0, 1, 2, 0, 3);
+        // 1 was read least recently
+        assertEquals(Arrays.asList(1), cache.evicted);
+        assertTrue(cache.contains(0));
+        assertEquals(3, cache.count());
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.hitCount());
+        assertEquals(4, cache.missCount());
+        assertEquals(1, cache.evictionCount());
+
+        // a page removed is not evicted
+        assertEquals(entry, cache.remove(0));
+        assertNull(cache.remove(0));
+        assertEquals(2, cache.size());
+        cache.read(4);
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void test_viewport() {
+        CountingCache cache = new CountingCache(3, PageCache.VIEWPORT);
+        // no visible range yet: least recently used first
+        cache.read(0, 1, 2, 3);
+        assertEquals(Arrays.asList(0), cache.evicted);
+
+        // scrolling down, the page farthest behind goes first
+        cache.setVisibleRange(3, 3);
+        cache.read(4);
+        assertEquals(Arrays.asList(0, 1), cache.evicted);
+
+        // scrolling up, the pages below are behind
+        cache.setVisibleRange(2, 2);
+        cache.read(1);
+        assertEquals(Arrays.asList(0, 1, 4), cache.evicted);
+
+        // the pages on screen are never evicted, the cache stays over its budget until the user scrolls
+        cache.setVisibleRange(1, 4);
+        cache.read(4);
+        assertEquals(4, cache.size());
+        assertEquals(Arrays.asList(0, 1, 4), cache.evicted);
+        cache.setVisibleRange(2, 4);
+        assertEquals(3, cache.size());
+        assertEquals(Arrays.asList(0, 1, 4, 1), cache.evicted);
+    }
+
+    @Test
+    public void test_viewport_distance() {
+        ViewportPolicy policy = new ViewportPolicy();
+        policy.onVisibleRange(4, 5);
+        policy.onVisibleRange(5, 6); // scrolling down
+        assertEquals(-1, policy.distance(5));
+        assertEquals(-1, policy.distance(6));
+        assertEquals(2, policy.distance(8));
+        assertEquals(4, policy.distance(3)); // behind, twice as far
+    }
+
+    @Test
+    public void test_tinyLfu() {
+        CountingCache cache = new CountingCache(4, PageCache.TINY_LFU);
+        // the first pages are read over and over
+        for (int i = 0; i < 4; i++) {
+            cache.read(0, 1);
+        }
+        // a fling through pages seen once does not flush them
+        for (int pageNum = 2; pageNum < 20; pageNum++) {
+            cache.read(pageNum);
+        }
+        assertTrue(cache.contains(0));
+        assertTrue(cache.contains(1));
+        assertEquals(4, cache.count());
+
+        // the same reads through an lru cache
+        CountingCache lru = new CountingCache(4, PageCache.LRU);
+        for (int i = 0; i < 4; i++) {
+            lru.read(0, 1);
+        }
+        for (int pageNum = 2; pageNum < 20; pageNum++) {
+            lru.read(pageNum);
+        }
+        assertFalse(lru.contains(0));
+        assertFalse(lru.contains(1));
+    }
+
+    @Test
+    public void test_frequencySketch() {
+        TinyLfuPolicy.FrequencySketch sketch = new TinyLfuPolicy.FrequencySketch();
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(7);
+        }
+        // counters stop at 15
+        assertEquals(15, sketch.frequency(7));
+        assertEquals(0, sketch.frequency(8));
+        // halved every SAMPLE_SIZE increments
+        for (int i = 20; i < TinyLfuPolicy.FrequencySketch.SAMPLE_SIZE; i++) {
+            sketch.increment(1000 + i);
+        }
+        assertTrue(sketch.frequency(7) <= 8);
+    }
+}
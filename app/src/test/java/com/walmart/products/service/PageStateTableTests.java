@@ -0,0 +1,279 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+import static com.walmart.products.service.PageStateTable.*;
+
+public class PageStateTableTests {
+
+    /** records the args of every call **/
+    class Recorder implements Function {
+        final List<Object[]> calls = new ArrayList<Object[]>();
+        @Override
+        public void call(Object... args) {
+            calls.add(args);
+        }
+    }
+
+    @Test
+    public void test_stateMachine() {
+        PageStateTable pages = new PageStateTable(100);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        assertEquals(2 * SEGMENT_SIZE, pages.capacity());
+        assertEquals(ABSENT, pages.state(7));
+
+        assertEquals(ABSENT, pages.join(7, first)); // the first caller loads the page
+        assertEquals(LOADING, pages.join(7, second)); // joins the load in flight
+        assertTrue(pages.isLoading(7));
+        assertEquals(1, pages.loadingCount());
+
+        pages.complete(7, "error");
+        assertEquals(FAILED, pages.state(7));
+        assertEquals(0, pages.loadingCount());
+        assertEquals("error", first.calls.get(0)[0]);
+        assertEquals("error", second.calls.get(0)[0]);
+
+        // a failed page is loaded again
+        assertEquals(ABSENT, pages.join(7, first));
+        pages.complete(7, null, null);
+        assertTrue(pages.isReady(7));
+        assertEquals(2, first.calls.size());
+        assertNull(first.calls.get(1)[0]);
+        // ready, nobody is called back
+        assertEquals(READY, pages.join(7, second));
+        assertEquals(1, second.calls.size());
+        // a late complete is ignored
+        pages.complete(7, "too late");
+        assertTrue(pages.isReady(7));
+
+        pages.evict(7);
+        assertEquals(ABSENT, pages.state(7));
+    }
+
+    @Test
+    public void test_callbacksInJoinOrder() {
+        PageStateTable pages = new PageStateTable(10);
+        final List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < 5; i++) {
+            final int caller = i;
+            pages.join(3, new Function() {
+                @Override
+                public void call(Object... args) {
+                    order.add(caller);
+                }
+            });
+        }
+        pages.complete(3, null, null);
+        assertEquals("[0, 1, 2, 3, 4]", order.toString());
+    }
+
+    @Test
+    public void test_callbackMayJoinAgain() {
+        final PageStateTable pages = new PageStateTable(10);
+        final Recorder retry = new Recorder();
+        pages.join(1, new Function() {
+            @Override
+            public void call(Object... args) {
+                // i.e. retry after an error, must not be swallowed
+                assertEquals(ABSENT, pages.join(1, retry));
+            }
+        });
+        pages.complete(1, "error");
+        assertTrue(pages.isLoading(1));
+        pages.complete(1, null, null);
+        assertEquals(1, retry.calls.size());
+    }
+
+    @Test
+    public void test_evictedBeforeComplete() {
+        PageStateTable pages = new PageStateTable(10);
+        Recorder recorder = new Recorder();
+        pages.join(2, recorder);
+        // the page cache evicts the page between its put and the complete
+        pages.evict(2);
+        assertTrue(pages.isLoading(2));
+        pages.complete(2, null, null);
+        assertEquals(ABSENT, pages.state(2));
+        assertEquals(1, recorder.calls.size());
+    }
+
+    @Test
+    public void test_completeLoading() {
+        PageStateTable pages = new PageStateTable(100);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        pages.join(3, first);
+        pages.join(3, second);
+        pages.join(70, first);
+        pages.join(5, first);
+        pages.complete(5, null, null);
+
+        // the loads were cancelled, every waiter gets the error
+        assertEquals(2, pages.completeLoading("cancelled"));
+        assertEquals(0, pages.loadingCount());
+        assertEquals(FAILED, pages.state(3));
+        assertEquals(FAILED, pages.state(70));
+        assertTrue(pages.isReady(5));
+        assertEquals(3, first.calls.size());
+        assertEquals("cancelled", first.calls.get(1)[0]);
+        assertEquals("cancelled", second.calls.get(0)[0]);
+        assertArrayEquals(new int[]{3}, pages.missingPages(3, 3));
+
+        // the cancelled load completes anyway, ignored
+        pages.complete(3, null, null);
+        assertEquals(FAILED, pages.state(3));
+        assertEquals(1, second.calls.size());
+        assertEquals(0, pages.completeLoading("cancelled"));
+    }
+
+    @Test
+    public void test_residency() {
+        PageStateTable pages = new PageStateTable(3 * SEGMENT_SIZE);
+        Recorder recorder = new Recorder();
+        for (int pageNum = 0; pageNum < 10; pageNum++) {
+            pages.join(pageNum, recorder);
+            pages.complete(pageNum, null, null);
+        }
+        // loading across a segment boundary
+        for (int pageNum = SEGMENT_SIZE - 2; pageNum < SEGMENT_SIZE + 2; pageNum++) {
+            pages.join(pageNum, recorder);
+        }
+        pages.join(12, recorder);
+        pages.complete(12, "error");
+        pages.evict(5);
+        assertTrue(pages.isEvicted(5));
+        assertFalse(pages.isEvicted(4));
+
+        assertArrayEquals(new int[]{5, 10, 11, 12, 13}, pages.missingPages(3, 13));
+        assertArrayEquals(new int[0], pages.missingPages(SEGMENT_SIZE - 2, SEGMENT_SIZE + 1));
+        assertArrayEquals(new int[]{SEGMENT_SIZE - 3, SEGMENT_SIZE + 2},
+                pages.missingPages(SEGMENT_SIZE - 3, SEGMENT_SIZE + 2));
+        // beyond the capacity is missing too
+        int capacity = pages.capacity();
+        assertArrayEquals(new int[]{capacity - 1, capacity, capacity + 1}, pages.missingPages(capacity - 1, capacity + 1));
+        assertEquals(3 * SEGMENT_SIZE - 13, pages.missingPages(0, capacity - 1).length);
+
+        assertTrue(pages.isReady(0, 4));
+        assertFalse(pages.isReady(0, 5));
+        assertTrue(pages.isLoading(SEGMENT_SIZE - 2, SEGMENT_SIZE + 1));
+        assertFalse(pages.isLoading(0, 4)); // ready, not loading
+        assertFalse(pages.isLoading(SEGMENT_SIZE - 3, SEGMENT_SIZE + 1)); // a page is missing
+
+        // an evicted page is loaded again, a failed one too
+        pages.join(5, recorder);
+        assertFalse(pages.isEvicted(5));
+        pages.complete(5, null, null);
+        pages.join(12, recorder);
+        pages.complete(12, null, null);
+        assertArrayEquals(new int[]{10, 11, 13}, pages.missingPages(3, 13));
+
+        // evicted between the put and the complete
+        pages.join(11, recorder);
+        pages.evict(11);
+        pages.complete(11, null, null);
+        assertTrue(pages.isEvicted(11));
+        assertArrayEquals(new int[]{10, 11, 13}, pages.missingPages(3, 13));
+    }
+
+    @Test
+    public void test_outOfRange() {
+        PageStateTable pages = new PageStateTable(10);
+        assertEquals(ABSENT, pages.state(-1));
+        assertEquals(ABSENT, pages.state(pages.capacity()));
+        pages.evict(pages.capacity());
+        try {
+            pages.join(pages.capacity(), new Recorder());
+            fail("joined a page beyond the capacity");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    /**
+     * Many threads load overlapping page ranges while pages fail and are evicted,
+     * every page is loaded by one thread at a time and every caller is called back exactly once.
+     */
+    @Test
+    public void test_overlappingRangesStress() throws InterruptedException {
+        final int threads = 8;
+        final int rounds = 20000;
+        final int pageCount = 3 * SEGMENT_SIZE; // segments are created concurrently too
+        final PageStateTable pages = new PageStateTable(pageCount);
+        final AtomicIntegerArray loaders = new AtomicIntegerArray(pageCount);
+        final AtomicInteger registered = new AtomicInteger();
+        final AtomicInteger calledBack = new AtomicInteger();
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final Function onComplete = new Function() {
+            @Override
+            public void call(Object... args) {
+                calledBack.incrementAndGet();
+            }
+        };
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < rounds; round++) {
+                            int from = random.nextInt(pageCount - 4);
+                            int to = from + random.nextInt(4);
+                            for (int pageNum = from; pageNum <= to; pageNum++) {
+                                int state = pages.join(pageNum, onComplete);
+                                if (state == READY) {
+                                    if (random.nextInt(8) == 0) pages.evict(pageNum);
+                                    continue;
+                                }
+                                registered.incrementAndGet();
+                                if (state != ABSENT) continue;
+                                // this thread loads the page
+                                if (loaders.incrementAndGet(pageNum) != 1) {
+                                    failure.set("page loaded by two threads at once: " + pageNum);
+                                }
+                                loads.incrementAndGet();
+                                Thread.yield();
+                                loaders.decrementAndGet(pageNum);
+                                pages.complete(pageNum, random.nextInt(10) == 0 ? "error" : null);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        failure.set("interrupted");
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+
+        assertNull(failure.get());
+        assertEquals(registered.get(), calledBack.get());
+        assertEquals(0, pages.loadingCount());
+        assertTrue(loads.get() > 0);
+        // the bitsets agree with the states
+        int[] missing = pages.missingPages(0, pageCount - 1);
+        for (int pageNum = 0; pageNum < pageCount; pageNum++) {
+            assertFalse(pages.isLoading(pageNum));
+            assertEquals(pages.state(pageNum) != READY, Arrays.binarySearch(missing, pageNum) >= 0);
+        }
+    }
+}
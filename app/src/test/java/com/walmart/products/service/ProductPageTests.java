@@ -0,0 +1,88 @@
+package com.walmart.products.service;
+
+import com.walmart.products.http.PageParser;
+import com.walmart.products.http.PageRecord;
+import com.walmart.products.http.ProductRecord;
+import com.walmart.products.util.StringPool;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+import static com.walmart.products.service.WalmartServiceConfig.STRING_POOL_SIZE;
+
+public class ProductPageTests {
+
+    ProductRecord createRecord(String name, String thumbnailImage) {
+        ProductRecord record = new ProductRecord();
+        record.name = name;
+        record.thumbnailImage = thumbnailImage;
+        return record;
+    }
+
+    @Test
+    public void test_from() {
+        // equal values from different records must end up as the same instance
+        String placeholder = "http://placeholder";
+        PageRecord record = new PageRecord("next", new ProductRecord[]{
+                createRecord("a", new String(placeholder)),
+                createRecord("b", new String(placeholder))});
+
+        ProductPage page = ProductPage.from(record, new StringPool(10));
+        assertEquals("next", page.nextPage());
+        assertEquals(2, page.size());
+        assertEquals("a", page.getName(0));
+        assertEquals("b", page.getName(1));
+        assertSame(page.getThumbnailUrl(0), page.getThumbnailUrl(1));
+        // the placeholder is retained once
+        assertEquals(page.byteSize() - 16 - 2 * placeholder.length(), ProductPage.retainedBytes(page));
+        assertNull(page.getDescription(0));
+        assertNull(page.getMediumImageUrl(1));
+
+        // out of range is treated as not loaded
+        assertNull(page.getName(2));
+        assertNull(page.getName(-1));
+    }
+
+    @Test
+    public void test_byteSize() {
+        ProductPage empty = new ProductPage(null, new String[0], new String[0], new String[0], new String[0]);
+        ProductPage page = new ProductPage(null,
+                new String[]{"0123456789"}, new String[1], new String[1], new String[1]);
+        assertTrue(empty.byteSize() > 0);
+        // each column grows by a reference, the name by its chars
+        assertTrue(page.byteSize() >= empty.byteSize() + 4 * 4 + 2 * 10);
+    }
+
+    @Test
+    public void test_internedBytes() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("fixtures/page.json");
+        byte[] json;
+        try {
+            json = IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+        // the same page parsed twice, i.e. loaded again after it was evicted, every value is a new String
+        PageRecord first = PageParser.parsePage(json);
+        PageRecord second = PageParser.parsePage(json);
+
+        // a pool of 0 interns nothing
+        StringPool none = new StringPool(0);
+        ProductPage[] copies = {ProductPage.from(first, none), ProductPage.from(second, none)};
+        StringPool pool = new StringPool(STRING_POOL_SIZE);
+        ProductPage[] interned = {ProductPage.from(first, pool), ProductPage.from(second, pool)};
+
+        // byteSize counts every value in full, the page cache is charged the same
+        assertEquals(copies[0].byteSize(), interned[0].byteSize());
+        // the page loaded again costs little more than its columns
+        int copiesBytes = ProductPage.retainedBytes(copies);
+        int internedBytes = ProductPage.retainedBytes(interned);
+        assertEquals(copies[0].byteSize() + copies[1].byteSize(), copiesBytes);
+        assertTrue("interned: " + internedBytes + ", copies: " + copiesBytes, internedBytes < copiesBytes * 2 / 3);
+    }
+}
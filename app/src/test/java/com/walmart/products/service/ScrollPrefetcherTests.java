@@ -0,0 +1,161 @@
+package com.walmart.products.service;
+
+import com.walmart.products.util.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.gt;
+import static org.mockito.Mockito.*;
+
+import static com.walmart.products.service.WalmartServiceConfig.*;
+
+public class ScrollPrefetcherTests {
+
+    static final long FRAME_NANOS = 16 * 1000000L;
+
+    WalmartService mMockService;
+
+    Function mMockOnPrefetched;
+
+    ScrollPrefetcher prefetcher;
+
+    long nanos = 1;
+
+    // loaded or loading, the rest is missing
+    final Set<Integer> loaded = new HashSet<Integer>();
+
+    @Before
+    public void setup() {
+        mMockService = mock(WalmartService.class);
+        mMockOnPrefetched = mock(Function.class);
+        when(mMockService.getMissingPages(anyInt(), anyInt())).thenAnswer(new Answer<int[]>() {
+            @Override
+            public int[] answer(InvocationOnMock invocation) {
+                List<Integer> missing = new ArrayList<Integer>();
+                int from = (Integer) invocation.getArguments()[0] / PAGE_SIZE;
+                int to = (Integer) invocation.getArguments()[1] / PAGE_SIZE;
+                for (int pageNum = from; pageNum <= to; pageNum++) {
+                    if (!loaded.contains(pageNum)) missing.add(pageNum);
+                }
+                int[] pages = new int[missing.size()];
+                for (int i = 0; i < pages.length; i++) pages[i] = missing.get(i);
+                return pages;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                for (int pageNum : (int[]) invocation.getArguments()[0]) loaded.add(pageNum);
+                return null;
+            }
+        }).when(mMockService).loadPages(any(int[].class), any(Function.class));
+        prefetcher = new ScrollPrefetcher(mMockService, mMockOnPrefetched);
+    }
+
+    /** scroll at a constant velocity (rows per second) for a number of frames, from row first **/
+    int scroll(int first, double velocity, int frames) {
+        double position = first;
+        for (int i = 0; i < frames; i++) {
+            double rows = velocity * FRAME_NANOS / 1e9;
+            position += rows;
+            nanos += FRAME_NANOS;
+            prefetcher.onScrolled((int) position, (int) position + 9, rows, nanos);
+        }
+        return (int) position;
+    }
+
+    @Test
+    public void test_velocity() {
+        prefetcher.setSettling(true);
+        scroll(0, 100, 30);
+        assertEquals(100, prefetcher.velocity(), 1);
+        // landing at v^2/2a
+        assertEquals(500 + 100 * 100 / (2 * PREFETCH_DECELERATION), prefetcher.landing(500), 2);
+
+        // decelerating at 80 rows/s^2, the deceleration is learnt
+        double velocity = 100;
+        int position = 50;
+        for (int i = 0; i < 40; i++) {
+            velocity -= 80 * FRAME_NANOS / 1e9;
+            position = scroll(position, velocity, 1);
+        }
+        assertEquals(80, prefetcher.deceleration(), 10);
+    }
+
+    @Test
+    public void test_prefetch() {
+        loaded.add(0);
+        // dragged, no prediction
+        scroll(0, 300, 10);
+        verify(mMockService, never()).loadPages(any(int[].class), any(Function.class));
+
+        // a fling down from row 50, the pages on the way to its landing are prefetched in one call,
+        // page 2 waits there for the url page 1 brings
+        prefetcher.setSettling(true);
+        int position = scroll(50, 300, 5);
+        ArgumentCaptor<int[]> pages = ArgumentCaptor.forClass(int[].class);
+        ArgumentCaptor<Function> onComplete = ArgumentCaptor.forClass(Function.class);
+        verify(mMockService, times(1)).loadPages(pages.capture(), onComplete.capture());
+        assertArrayEquals(new int[]{1, 2}, pages.getValue());
+        verify(mMockService, atLeastOnce()).setPredictedRange(gt(position), anyInt());
+        // the budget is spent, page 3 waits
+        assertEquals(1, prefetcher.stats().skipped);
+        assertEquals(0, prefetcher.stats().tokens);
+
+        onComplete.getValue().call(null, null);
+        verify(mMockOnPrefetched).call(null, 2);
+
+        // page 1 on screen, its token comes back and page 3 is prefetched
+        position = scroll(PAGE_SIZE + 10, 300, 1);
+        verify(mMockService, times(2)).loadPages(pages.capture(), any(Function.class));
+        assertArrayEquals(new int[]{3}, pages.getValue());
+        assertEquals(1, prefetcher.stats().used);
+
+        // the fling stops on page 1, pages 2 and 3 may still be scrolled to
+        prefetcher.onIdle(position, position + 9);
+        verify(mMockService).setPredictedRange(-1, -1);
+        assertEquals(3, prefetcher.stats().prefetched);
+        assertEquals(2, prefetcher.stats().pending);
+        assertEquals(0, prefetcher.stats().wasted);
+
+        // page 3 is evicted before the user got there, wasted
+        loaded.remove(3);
+        prefetcher.onIdle(position, position + 9);
+        assertEquals(1, prefetcher.stats().wasted);
+        assertEquals(1, prefetcher.stats().pending);
+    }
+
+    @Test
+    public void test_budget() {
+        loaded.add(9);
+        loaded.add(10);
+        prefetcher.setSettling(true);
+        int position = scroll(1000, -300, 5); // up, the nearest pages are picked, loaded in page order
+        ArgumentCaptor<int[]> pages = ArgumentCaptor.forClass(int[].class);
+        verify(mMockService, times(1)).loadPages(pages.capture(), any(Function.class));
+        assertArrayEquals(new int[]{7, 8}, pages.getValue());
+        prefetcher.onIdle(position, position + 9);
+        assertEquals(0, prefetcher.stats().tokens);
+
+        // nothing until a token is refilled
+        prefetcher.setSettling(true);
+        position = scroll(1000, -300, 5);
+        verify(mMockService, times(1)).loadPages(any(int[].class), any(Function.class));
+        prefetcher.onIdle(position, position + 9);
+        nanos += PREFETCH_REFILL_MILLIS * 1000000L;
+        prefetcher.setSettling(true);
+        scroll(1000, -300, 5);
+        verify(mMockService, times(2)).loadPages(pages.capture(), any(Function.class));
+        assertArrayEquals(new int[]{6}, pages.getValue());
+    }
+}
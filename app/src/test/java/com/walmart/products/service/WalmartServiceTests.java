@@ -4,13 +4,13 @@ import android.graphics.Bitmap;
 import android.util.Log;
 import android.util.LruCache;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.loopj.android.http.AsyncHttpClient;
+import com.walmart.products.util.Cancellable;
+import com.walmart.products.util.EventBus;
 import com.walmart.products.util.EventEmitter;
 import com.walmart.products.util.Function;
+import com.walmart.products.util.ServiceFuture;
+import com.walmart.products.util.Tracer;
 
 import junit.framework.Assert;
 
@@ -32,6 +32,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 import static org.mockito.Mockito.*;
@@ -48,19 +50,23 @@ public class WalmartServiceTests {
 
     /** injected into walmartService **/
     @Spy
-    Map<Integer, Boolean> mSpyPagesLoading = new HashMap<Integer, Boolean>();
+    PageStateTable mSpyPageStates = new PageStateTable(MAX_PAGE_NUM);
+    @Spy
+    EventBus<String> mSpyPageUrlEvents = new EventBus<String>(MAX_PAGE_NUM);
     @Mock
     WalmartServiceUtils mMockUtils;
     @Mock
     EventEmitter mMockEmitter;
-
-    /** not injected into walmartService **/
     @Mock
-    JsonNode mMockPageNode;
+    BitmapCache mMockBitmapCache;
     @Mock
-    JsonNode mMockItemNode;
+    ImageScheduler mMockImageScheduler;
     @Mock
-    ArrayNode mMockItemsNode;
+    PageCache mMockPageCache;
+    @Spy
+    Tracer mSpyTracer = new Tracer(16, true);
+
+    /** not injected into walmartService **/
     @Mock
     Bitmap mMockBitmap;
     @Spy
@@ -78,89 +84,104 @@ public class WalmartServiceTests {
     /** test values **/
     final int indexLoaded = 0;
     final int indexNotLoaded = 1;
-    final String mediumKey = (indexLoaded % PAGE_SIZE) + ".medium";
     final String mediumImageUrl = "mediumImageUrl";
+    final String name = "name";
+    final String description = "description";
+    final String thumbnailUrl = "thumbnailUrl";
     final int fromIndex = 0;
     int toIndex = 0;
 
     @Before
     public void setup() {
 
-        mSpyCacheEntry = spy(new CacheEntry(mMockPageNode));
+        mSpyCacheEntry = spy(new CacheEntry(createPage(mediumImageUrl)));
         when(mMockUtils.getPage(indexLoaded)).thenReturn(mSpyCacheEntry);
         when(mMockUtils.getPage(indexNotLoaded)).thenReturn(null);
-        when(mMockUtils.getItemsNode(mMockPageNode)).thenReturn(mMockItemsNode);
-        when(mMockItemsNode.get(indexLoaded % PAGE_SIZE)).thenReturn(mMockItemNode);
+    }
+
+    /** a page with a single product at indexLoaded **/
+    ProductPage createPage(String mediumImageUrl) {
+        return new ProductPage(null,
+                new String[]{name},
+                new String[]{description},
+                new String[]{thumbnailUrl},
+                new String[]{mediumImageUrl});
     }
 
     @Test
     public void test_getProduct() {
 
         // verify product is returned from cache
-        assertEquals(mMockItemNode, walmartService.getProduct(indexLoaded));
-        verify(mMockUtils, times(1)).getPage(indexLoaded);
-        verify(mSpyCacheEntry, times(1)).page();
-        verify(mMockUtils, times(1)).getItemsNode(mMockPageNode);
-
-        // verify null is returned when product not in cache
-        assertEquals(null, walmartService.getProduct(indexNotLoaded));
+        assertTrue(walmartService.hasProduct(indexLoaded));
+        assertEquals(name, walmartService.getName(indexLoaded));
+        assertEquals(description, walmartService.getDescription(indexLoaded));
+        assertEquals(thumbnailUrl, walmartService.getThumbnailUrl(indexLoaded));
+        assertEquals(mediumImageUrl, walmartService.getMediumImageUrl(indexLoaded));
+        verify(mSpyCacheEntry, times(5)).page();
+
+        // verify nothing is returned when product not in cache
+        assertFalse(walmartService.hasProduct(indexNotLoaded));
+        assertEquals(null, walmartService.getName(indexNotLoaded));
+        assertEquals(null, walmartService.getThumbnailUrl(indexNotLoaded));
     }
 
     @Test
     public void test_getThumbnail() {
 
-        // verify thumbnail is returned from cache
+        // verify thumbnail is returned from the bitmap cache by url
         assertEquals(null, walmartService.getThumbnail(indexLoaded));
-        String key = (indexLoaded % PAGE_SIZE) + ".thumb";
-        mSpyCacheEntry.bitmaps().put(key, mMockBitmap);
+        when(mMockBitmapCache.getThumbnail(thumbnailUrl)).thenReturn(mMockBitmap);
         assertEquals(mMockBitmap, walmartService.getThumbnail(indexLoaded));
+
+        // verify the bitmap cache is not asked when the page is not loaded
+        assertEquals(null, walmartService.getThumbnail(indexNotLoaded));
+        verify(mMockBitmapCache, times(2)).getThumbnail(anyString());
     }
 
     @Test
     public void test_getMediumImage_part1() {
 
-        // verify error when no mediumImage field on itemNode
+        // verify error when the product has no mediumImage url
+        when(mMockUtils.getPage(indexLoaded)).thenReturn(new CacheEntry(createPage(null)));
         walmartService.getMediumImage(indexLoaded, mSpyOnComplete);
         verify(mSpyOnComplete).call("getMediumImage failed - mediumImage url is empty");
         reset(mSpyOnComplete);
 
         // verify image is loaded from utils.loadBitmap()
-        final JsonNode mockImageNode = mock(JsonNode.class);
-        when(mMockItemNode.get("mediumImage")).thenReturn(mockImageNode);
-        when(mockImageNode.textValue()).thenReturn(mediumImageUrl);
+        when(mMockUtils.getPage(indexLoaded)).thenReturn(mSpyCacheEntry);
         doAnswer(new Answer() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
                 Object[] args = invocation.getArguments();
-                ((Function) args[3]).call(null, mediumKey, mMockBitmap);
+                ((Function) args[3]).call(null, mediumImageUrl, mMockBitmap);
                 return null;
             }
-        }).when(mMockUtils).loadBitmap(eq(walmartService), eq(mediumImageUrl), eq(mediumKey), any(Function.class));
+        }).when(mMockUtils).loadMediumImage(eq(walmartService), eq(indexLoaded), eq(mediumImageUrl), any(Function.class));
         walmartService.getMediumImage(indexLoaded, mSpyOnComplete);
         verify(mSpyOnComplete).call(null, mMockBitmap);
+        verify(mMockBitmapCache).putMediumImage(mediumImageUrl, mMockBitmap);
         reset(mSpyOnComplete);
+        reset(mMockUtils);
 
-        // verify image is loaded from page cache
-        mSpyCacheEntry.bitmaps().put(mediumKey, mMockBitmap);
+        // verify image is loaded from bitmap cache
+        when(mMockUtils.getPage(indexLoaded)).thenReturn(mSpyCacheEntry);
+        when(mMockBitmapCache.getMediumImage(mediumImageUrl)).thenReturn(mMockBitmap);
         walmartService.getMediumImage(indexLoaded, mSpyOnComplete);
         verify(mSpyOnComplete).call(null, mMockBitmap);
+        verify(mMockUtils, never()).loadMediumImage(
+                any(WalmartService.class), anyInt(), anyString(), any(Function.class));
         reset(mSpyOnComplete);
     }
 
     @Test
     public void test_getMediumImage_part2() {
-        // verify error when there is no itemNode
-        when(mMockItemsNode.get(indexLoaded % PAGE_SIZE)).thenReturn(null);
+        // verify error when the page has no product at the index
+        when(mMockUtils.getPage(indexLoaded)).thenReturn(
+                new CacheEntry(new ProductPage(null, new String[0], new String[0], new String[0], new String[0])));
         walmartService.getMediumImage(indexLoaded, mSpyOnComplete);
         verify(mSpyOnComplete).call("getMediumImage failed - item not found");
         reset(mSpyOnComplete);
 
-        // verify error when there is no itemsNode
-        when(mMockUtils.getItemsNode(mMockPageNode)).thenReturn(null);
-        walmartService.getMediumImage(indexLoaded, mSpyOnComplete);
-        verify(mSpyOnComplete).call("getMediumImage failed - itemsNode is null");
-        reset(mSpyOnComplete);
-
         // verify error when there is no pageNode
         when(mMockUtils.getPage(indexLoaded)).thenReturn(null);
         walmartService.getMediumImage(indexLoaded, mSpyOnComplete);
@@ -177,16 +198,17 @@ public class WalmartServiceTests {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
                 Object[] args = invocation.getArguments();
-                ((Function) args[4]).call(null, null);
+                ((Function) args[3]).call(null, null);
                 return null;
             }
-        }).when(mMockUtils).loadPage(eq(mMockEmitter),
-                eq(walmartService), eq(mSpyPagesLoading), eq(toIndex / PAGE_SIZE), any(Function.class));
+        }).when(mMockUtils).loadPage(eq(walmartService), eq(mSpyPageStates), eq(toIndex / PAGE_SIZE), any(Function.class));
 
         walmartService.loadProducts(fromIndex, toIndex, mSpyOnComplete);
         verify(mSpyOnComplete).call(null, null);
-        verify(mMockUtils, times(1)).loadPage(eq(mMockEmitter),
-                eq(walmartService), eq(mSpyPagesLoading), eq(toIndex / PAGE_SIZE), any(Function.class));
+        verify(mMockUtils, times(1)).loadPage(eq(walmartService), eq(mSpyPageStates), eq(toIndex / PAGE_SIZE), any(Function.class));
+        // the call is the root of a trace, it ends once the call completes
+        assertEquals(1, mSpyTracer.spans().size());
+        assertEquals("loadProducts", mSpyTracer.spans().get(0).name());
         reset(mSpyOnComplete);
         reset(mMockUtils);
 
@@ -195,19 +217,17 @@ public class WalmartServiceTests {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
                 Object[] args = invocation.getArguments();
-                ((Function) args[4]).call("some error");
+                ((Function) args[3]).call("some error");
                 return null;
             }
         }).when(mMockUtils).loadPage(
-                eq(mMockEmitter),
                 eq(walmartService),
-                eq(mSpyPagesLoading),
+                eq(mSpyPageStates),
                 eq(fromIndex / PAGE_SIZE),
                 any(Function.class));
         walmartService.loadProducts(fromIndex, toIndex, mSpyOnComplete);
 
-        verify(mMockUtils, times(1)).loadPage(eq(mMockEmitter),
-                eq(walmartService), eq(mSpyPagesLoading), eq(toIndex / PAGE_SIZE), any(Function.class));
+        verify(mMockUtils, times(1)).loadPage(eq(walmartService), eq(mSpyPageStates), eq(toIndex / PAGE_SIZE), any(Function.class));
         verify(mSpyOnComplete).call("some error");
     }
 
@@ -215,6 +235,7 @@ public class WalmartServiceTests {
     public void test_loadProducts_TwoPages() {
 
         toIndex = (PAGE_SIZE*2)-1; // range is two pages
+        when(mMockUtils.hasPageUrl(anyInt())).thenReturn(true);
 
         // needed to ensure loadPage is being called with correct pageNums
         final List<Integer> pageNums = new ArrayList<Integer>();
@@ -226,7 +247,7 @@ public class WalmartServiceTests {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
                 Object[] args = invocation.getArguments();
-                int pageNum = (Integer) args[3];
+                int pageNum = (Integer) args[2];
 
                 // check page is valid for given inputs - 0 or 1
                 assertTrue(pageNum <= (toIndex / PAGE_SIZE));
@@ -236,21 +257,186 @@ public class WalmartServiceTests {
                 pageNums.remove((Integer) pageNum);
                 assertTrue(size == (pageNums.size()+1)); // assert that an item was removed
 
-                ((Function) args[4]).call(null, null);
+                ((Function) args[3]).call(null, null);
                 return null;
             }
         }).when(mMockUtils).loadPage(
-                eq(mMockEmitter),
                 eq(walmartService),
-                eq(mSpyPagesLoading),
+                eq(mSpyPageStates),
                 anyInt(),
                 any(Function.class));
 
         walmartService.loadProducts(fromIndex, toIndex, mSpyOnComplete);
         verify(mSpyOnComplete).call(null, null);
 
-        verify(mMockUtils, times(2)).loadPage(eq(mMockEmitter),
-                eq(walmartService), eq(mSpyPagesLoading), anyInt(), any(Function.class));
+        verify(mMockUtils, times(2)).loadPage(eq(walmartService), eq(mSpyPageStates), anyInt(), any(Function.class));
         reset(mSpyOnComplete);
     }
+
+    @Test
+    public void test_loadPages_MissingOnly() {
+
+        toIndex = (PAGE_SIZE*4)-1; // range is four pages, 1 is loaded and 2 is loading
+        when(mMockUtils.hasPageUrl(anyInt())).thenReturn(true);
+        Function loader = new Function() {
+            @Override
+            public void call(Object... args) {}
+        };
+        mSpyPageStates.join(1, loader);
+        mSpyPageStates.complete(1, null, null);
+        mSpyPageStates.join(2, loader);
+        assertFalse(walmartService.isLoaded(fromIndex, toIndex));
+        assertFalse(walmartService.isLoading(fromIndex, toIndex));
+        assertTrue(walmartService.isLoaded(PAGE_SIZE, (PAGE_SIZE*2)-1));
+        assertTrue(walmartService.isLoading(PAGE_SIZE, (PAGE_SIZE*3)-1));
+
+        int[] missingPages = walmartService.getMissingPages(fromIndex, toIndex);
+        assertArrayEquals(new int[]{0, 3}, missingPages);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                ((Function) args[3]).call(null, null);
+                return null;
+            }
+        }).when(mMockUtils).loadPage(
+                eq(walmartService),
+                eq(mSpyPageStates),
+                anyInt(),
+                any(Function.class));
+
+        walmartService.loadPages(missingPages, mSpyOnComplete);
+        verify(mSpyOnComplete).call(null, null);
+        // only the missing pages are loaded
+        verify(mMockUtils).loadPage(eq(walmartService), eq(mSpyPageStates), eq(0), any(Function.class));
+        verify(mMockUtils).loadPage(eq(walmartService), eq(mSpyPageStates), eq(3), any(Function.class));
+        verify(mMockUtils, times(2)).loadPage(eq(walmartService), eq(mSpyPageStates), anyInt(), any(Function.class));
+    }
+
+    @Test
+    public void test_loadProducts_Pipelined() {
+
+        toIndex = (PAGE_SIZE*3)-1; // range is three pages, only the url of the first one is known
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                ((Function) args[3]).call(null, null);
+                return null;
+            }
+        }).when(mMockUtils).loadPage(
+                eq(walmartService),
+                eq(mSpyPageStates),
+                anyInt(),
+                any(Function.class));
+
+        walmartService.loadProducts(fromIndex, toIndex, mSpyOnComplete);
+
+        // only the first page starts, the others wait for their url
+        verify(mMockUtils, times(1)).loadPage(eq(walmartService), eq(mSpyPageStates), anyInt(), any(Function.class));
+        assertTrue(mSpyPageUrlEvents.hasListeners(1));
+        assertTrue(mSpyPageUrlEvents.hasListeners(2));
+        verify(mSpyOnComplete, never()).call(any());
+
+        // page 2 url arrives first, there is no ordering between pages once their urls are known
+        mSpyPageUrlEvents.emit(2, "page2Url");
+        verify(mMockUtils).loadPage(eq(walmartService), eq(mSpyPageStates), eq(2), any(Function.class));
+        assertFalse(mSpyPageUrlEvents.hasListeners(2));
+        verify(mSpyOnComplete, never()).call(any());
+
+        mSpyPageUrlEvents.emit(1, "page1Url");
+        verify(mMockUtils).loadPage(eq(walmartService), eq(mSpyPageStates), eq(1), any(Function.class));
+        verify(mSpyOnComplete, times(1)).call(null, null);
+    }
+
+    @Test
+    public void test_loadProducts_PipelinedError() {
+
+        toIndex = (PAGE_SIZE*3)-1; // range is three pages, only the url of the first one is known
+
+        walmartService.loadProducts(fromIndex, toIndex, mSpyOnComplete);
+        verify(mSpyPageUrlEvents).once(eq(1), any(EventBus.Listener.class));
+        verify(mSpyPageUrlEvents).once(eq(2), any(EventBus.Listener.class));
+
+        // page 0 failed, so neither url will ever be known, onComplete is only called once
+        mSpyPageUrlEvents.emit(1, null);
+        mSpyPageUrlEvents.emit(2, null);
+        verify(mSpyOnComplete, times(1)).call("loadPage failed - no url for page after: 0");
+        verify(mMockUtils, times(1)).loadPage(eq(walmartService), eq(mSpyPageStates), anyInt(), any(Function.class));
+    }
+
+    @Test
+    public void test_getMediumImageAsync_cancel() throws Exception {
+
+        // the load of the image is cancelled with the future
+        Cancellable load = mock(Cancellable.class);
+        when(mMockUtils.loadMediumImage(eq(walmartService), eq(indexLoaded), eq(mediumImageUrl), any(Function.class)))
+                .thenReturn(load);
+        ServiceFuture<Bitmap> future = walmartService.getMediumImageAsync(indexLoaded, ServiceFuture.NO_DEADLINE);
+        assertFalse(future.isDone());
+        assertTrue(future.cancel(false));
+        verify(load).cancel();
+        reset(load);
+
+        // and past its deadline
+        future = walmartService.getMediumImageAsync(indexLoaded, 20);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("the image never arrives");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        verify(load, timeout(1000)).cancel(); // after the future failed, on the timer thread
+
+        // a cached image completes the future right away
+        when(mMockBitmapCache.getMediumImage(mediumImageUrl)).thenReturn(mMockBitmap);
+        assertEquals(mMockBitmap, walmartService.getMediumImageAsync(indexLoaded, 20).get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_loadProductsAsync_cancel() {
+
+        toIndex = (PAGE_SIZE*3)-1; // range is three pages, only the url of the first one is known
+
+        ServiceFuture<Void> future = walmartService.loadProductsAsync(fromIndex, toIndex, ServiceFuture.NO_DEADLINE);
+        assertTrue(mSpyPageUrlEvents.hasListeners(1));
+        assertTrue(mSpyPageUrlEvents.hasListeners(2));
+
+        // the pages waiting for their url stop waiting, they are not loaded once it arrives
+        assertTrue(future.cancel(false));
+        assertFalse(mSpyPageUrlEvents.hasListeners(1));
+        assertFalse(mSpyPageUrlEvents.hasListeners(2));
+        mSpyPageUrlEvents.emit(1, "page1Url");
+        verify(mMockUtils, times(1)).loadPage(eq(walmartService), eq(mSpyPageStates), anyInt(), any(Function.class));
+    }
+
+    @Test
+    public void test_loadProductsAsync_spanEndsOnce() {
+
+        toIndex = (PAGE_SIZE*2)-1; // the second page waits for its url
+
+        ServiceFuture<Void> future = walmartService.loadProductsAsync(fromIndex, toIndex, ServiceFuture.NO_DEADLINE);
+        ArgumentCaptor<Function> onPageComplete = ArgumentCaptor.forClass(Function.class);
+        verify(mMockUtils).loadPage(eq(walmartService), eq(mSpyPageStates), eq(0),
+                onPageComplete.capture());
+
+        // the future is cancelled, then the page in flight fails: the loadProducts span is recorded once
+        assertTrue(future.cancel(false));
+        onPageComplete.getValue().call("error");
+        int spans = 0;
+        for (Tracer.Span span : mSpyTracer.spans()) {
+            if (span.name().equals("loadProducts")) spans++;
+        }
+        assertEquals(1, spans);
+    }
+
+    @Test
+    public void test_setVisibleRange() {
+
+        // the images are told the rows, the page cache the pages
+        walmartService.setVisibleRange(PAGE_SIZE - 3, PAGE_SIZE + 5);
+        verify(mMockImageScheduler).setVisibleRange(PAGE_SIZE - 3, PAGE_SIZE + 5);
+        verify(mMockPageCache).setVisibleRange(0, 1);
+    }
 }
@@ -0,0 +1,264 @@
+package com.walmart.products.service;
+
+import android.content.Context;
+
+import com.walmart.products.http.HttpTransport;
+import com.walmart.products.http.ParseExecutor;
+import com.walmart.products.http.PageRecord;
+import com.walmart.products.http.ProductRecord;
+import com.walmart.products.util.Cancellable;
+import com.walmart.products.util.EventBus;
+import com.walmart.products.util.EventEmitter;
+import com.walmart.products.util.Function;
+import com.walmart.products.util.Metrics;
+import com.walmart.products.util.SingleFlight;
+import com.walmart.products.util.StringPool;
+import com.walmart.products.util.Tracer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import static com.walmart.products.service.WalmartServiceConfig.*;
+import static com.walmart.products.service.WalmartServiceUtils.bitmapKey;
+
+public class WalmartServiceUtilsTests {
+
+    final String pageUrl = "/page/0";
+    final String thumbnailUrl = "thumbnailUrl";
+    final BitmapDecoder.Target thumbnail = new BitmapDecoder.Target(100, 100);
+    final BitmapDecoder.Target mediumImage = new BitmapDecoder.Target(450, 450);
+
+    HttpTransport mMockTransport;
+    Context mMockContext;
+    PageStateTable pageStates;
+
+    /** object under test, its dependencies are set like AppModule provides them **/
+    WalmartServiceUtils utils;
+
+    @Before
+    public void setup() {
+        mMockTransport = mock(HttpTransport.class);
+        when(mMockTransport.get(any(Context.class), anyString(), (Map<String, String>) any(),
+                any(HttpTransport.Callback.class))).thenReturn(mock(Cancellable.class));
+        mMockContext = mock(Context.class);
+        pageStates = new PageStateTable(MAX_PAGE_NUM);
+
+        // the disk is empty and its thread is the test thread
+        ExecutorService diskExecutor = mock(ExecutorService.class);
+        Answer<Void> runNow = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        };
+        doAnswer(runNow).when(diskExecutor).execute(any(Runnable.class));
+        DiskCache diskCache = mock(DiskCache.class);
+        when(diskCache.executor()).thenReturn(diskExecutor);
+        when(diskCache.validators(anyString())).thenReturn(DiskCache.Validators.NONE);
+
+        utils = new WalmartServiceUtils();
+        utils.mBaseUrl = "http://localhost";
+        utils.mPageUrls = new HashMap<Integer, String>();
+        utils.mPageUrls.put(0, pageUrl);
+        utils.mPageUrlEvents = new EventBus<String>(MAX_PAGE_NUM);
+        utils.mPageCache = mock(PageCache.class);
+        utils.mStringPool = new StringPool(10);
+        // pages are parsed on the test thread too
+        utils.mParseExecutor = mock(ParseExecutor.class);
+        doAnswer(runNow).when(utils.mParseExecutor).execute(any(Runnable.class));
+        utils.mTransport = mMockTransport;
+        utils.mDiskCache = diskCache;
+        utils.mBitmapDecoder = mock(BitmapDecoder.class);
+        when(utils.mBitmapDecoder.thumbnail()).thenReturn(thumbnail);
+        when(utils.mBitmapDecoder.mediumImage()).thenReturn(mediumImage);
+        utils.mBitmapCache = mock(BitmapCache.class);
+        utils.mBitmapLoads = new SingleFlight<String>();
+        // a single slot each, a slot that is not given back blocks the next request
+        utils.mPageLimiter = ConcurrencyLimiter.fixed(1);
+        utils.mImageLimiter = ConcurrencyLimiter.fixed(1);
+        utils.mImageScheduler = new ImageScheduler(utils.mImageLimiter);
+        utils.mMetrics = new Metrics(true);
+        utils.mTracer = new Tracer(16, false);
+        utils.mThumbnailEvents = new EventEmitter();
+    }
+
+    HttpTransport.Callback verifyRequests(int times) {
+        ArgumentCaptor<HttpTransport.Callback> callback = ArgumentCaptor.forClass(HttpTransport.Callback.class);
+        verify(mMockTransport, times(times)).get(eq(mMockContext), anyString(), (Map<String, String>) any(),
+                callback.capture());
+        return callback.getValue();
+    }
+
+    @Test
+    public void test_cancelPageThenLoadAgain() {
+        Function first = mock(Function.class);
+        utils.loadPage(mMockContext, pageStates, 0, first);
+        HttpTransport.Callback cancelledCallback = verifyRequests(1);
+        assertEquals(1, utils.mPageLimiter.stats().inFlight);
+        assertTrue(pageStates.isLoading(0));
+
+        // the request is called back cancelled, the slot is given back and the page fails
+        utils.cancel(mMockContext);
+        verify(mMockTransport).cancel(mMockContext);
+        assertEquals(0, utils.mPageLimiter.stats().inFlight);
+        assertEquals(PageStateTable.FAILED, pageStates.state(0));
+        verify(first).call(anyString());
+        // a cancelled request says nothing about the network
+        assertEquals(0, utils.mPageLimiter.stats().failures);
+
+        // loads again, the slot is free
+        Function second = mock(Function.class);
+        utils.loadPage(mMockContext, pageStates, 0, second);
+        verifyRequests(2);
+        assertEquals(1, utils.mPageLimiter.stats().inFlight);
+
+        // a response that raced the cancel is dropped
+        cancelledCallback.onResponse(new HttpTransport.Response(500, null, null, null));
+        verify(first, times(1)).call((Object[]) any());
+        verifyZeroInteractions(second);
+        assertTrue(pageStates.isLoading(0));
+    }
+
+    @Test
+    public void test_cancelBitmapThenLoadAgain() {
+        Function first = mock(Function.class);
+        utils.scheduleBitmap(mMockContext, 0, thumbnailUrl, thumbnail, first);
+        verifyRequests(1);
+        assertTrue(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        assertEquals(1, utils.mImageLimiter.stats().inFlight);
+
+        // the single-flight load fails and its slot is given back
+        utils.cancel(mMockContext);
+        assertFalse(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        assertEquals(0, utils.mImageLimiter.stats().inFlight);
+        verify(first).call(anyString());
+
+        // loads again, a new download
+        Function second = mock(Function.class);
+        utils.scheduleBitmap(mMockContext, 0, thumbnailUrl, thumbnail, second);
+        verifyRequests(2);
+        assertTrue(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+
+        // a load its caller left is not called back, not by cancel(Context) either
+        Function third = mock(Function.class);
+        utils.scheduleBitmap(mMockContext, 1, "otherUrl", thumbnail, third).cancel();
+        utils.cancel(mMockContext);
+        verify(second).call(anyString());
+        verifyZeroInteractions(third);
+        assertEquals(0, utils.mImageLimiter.stats().inFlight);
+    }
+
+    @Test
+    public void test_targetsOfTheSameUrlLoadSeparately() {
+        Function thumb = mock(Function.class);
+        Function otherThumb = mock(Function.class);
+        Function medium = mock(Function.class);
+        utils.loadThumbnail(mMockContext, 0, thumbnailUrl, thumb);
+        utils.loadThumbnail(mMockContext, 1, thumbnailUrl, otherThumb);
+        utils.loadMediumImage(mMockContext, 0, thumbnailUrl, medium);
+        // the thumbnails share a load, the medium image is decoded for its own size
+        assertTrue(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        assertTrue(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, mediumImage)));
+        assertEquals(1, utils.mImageScheduler.stats().pending);
+
+        // the thumbnail load fails, the medium image load still waits for its slot
+        verifyRequests(1).onResponse(new HttpTransport.Response(500, null, null, null));
+        verify(thumb).call(anyString());
+        verify(otherThumb).call(anyString());
+        verifyZeroInteractions(medium);
+        assertFalse(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        verifyRequests(2);
+    }
+
+    @Test
+    public void test_evictedPageOnlyFailsItsCallers() {
+        // the only slot is taken, the next loads wait
+        utils.scheduleBitmap(mMockContext, 0, "busyUrl", thumbnail, mock(Function.class));
+        Function first = mock(Function.class);
+        Function other = mock(Function.class);
+        utils.scheduleBitmap(mMockContext, 1, thumbnailUrl, thumbnail, first);
+        utils.scheduleBitmap(mMockContext, PAGE_SIZE + 1, thumbnailUrl, thumbnail, other);
+        assertEquals(1, utils.mImageScheduler.stats().pending);
+
+        // the load was scheduled for page 0, the caller of page 1 still waits for it
+        utils.mImageScheduler.cancelPage(0);
+        verify(first).call(anyString());
+        verifyZeroInteractions(other);
+        assertTrue(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        assertEquals(1, utils.mImageScheduler.stats().pending);
+
+        // its page goes too, nobody is left
+        utils.mImageScheduler.cancelPage(1);
+        verify(other).call(anyString());
+        assertFalse(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        assertEquals(0, utils.mImageScheduler.stats().pending);
+        verifyRequests(1);
+    }
+
+    @Test
+    public void test_loadThumbnailsLooksUpWithoutTouching() {
+        ProductRecord cached = new ProductRecord();
+        cached.thumbnailImage = "cachedUrl";
+        ProductRecord missing = new ProductRecord();
+        missing.thumbnailImage = thumbnailUrl;
+        ProductPage page = ProductPage.from(new PageRecord(null, new ProductRecord[]{cached, missing}),
+                new StringPool(10));
+        when(utils.mBitmapCache.containsThumbnail("cachedUrl")).thenReturn(true);
+
+        utils.loadThumbnails(mMockContext, new WalmartService.CacheEntry(page), 0, System.nanoTime(),
+                mock(Function.class));
+        // only the missing thumbnail is loaded, the cached one is neither a hit nor made recently used
+        assertTrue(utils.mBitmapLoads.isInFlight(bitmapKey(thumbnailUrl, thumbnail)));
+        assertFalse(utils.mBitmapLoads.isInFlight(bitmapKey("cachedUrl", thumbnail)));
+        verify(utils.mBitmapCache, never()).getThumbnail(anyString());
+    }
+
+    /** a page json with no products, linking to nextPage **/
+    HttpTransport.Response page(String nextPage) throws Exception {
+        String json = "{\"nextPage\":" + (nextPage == null ? "null" : "\"" + nextPage + "\"") + ",\"items\":[]}";
+        return new HttpTransport.Response(200, null, json.getBytes("UTF-8"), null);
+    }
+
+    @Test
+    public void test_loadPagesBehindAnUnknownUrl() throws Exception {
+        WalmartService service = new WalmartService();
+        service.mUtils = utils;
+        service.mPageStates = pageStates;
+        service.mPageUrlEvents = utils.mPageUrlEvents;
+        service.mTracer = utils.mTracer;
+        service.mMetrics = utils.mMetrics;
+
+        // page 0 is loading, the urls of pages 1 and 2 are not known yet (i.e. a prefetch during a fling)
+        utils.loadPage(mMockContext, pageStates, 0, mock(Function.class));
+        Function onComplete = mock(Function.class);
+        service.loadPages(new int[]{1, 2}, onComplete);
+        ArgumentCaptor<HttpTransport.Callback> callback = ArgumentCaptor.forClass(HttpTransport.Callback.class);
+        verify(mMockTransport, times(1)).get(any(Context.class), anyString(), (Map<String, String>) any(),
+                callback.capture());
+        // they wait for the page before them instead of failing
+        verifyZeroInteractions(onComplete);
+
+        // each page brings the url of the next one
+        callback.getValue().onResponse(page("/page/1"));
+        verify(mMockTransport, times(1)).get(any(Context.class), eq("http://localhost/page/1"),
+                (Map<String, String>) any(), callback.capture());
+        callback.getValue().onResponse(page("/page/2"));
+        verify(mMockTransport, times(3)).get(any(Context.class), anyString(), (Map<String, String>) any(),
+                callback.capture());
+        verifyZeroInteractions(onComplete);
+        callback.getValue().onResponse(page(null));
+        verify(onComplete).call(null, null);
+        assertTrue(pageStates.isReady(0, 2));
+    }
+}
@@ -0,0 +1,169 @@
+package com.walmart.products.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+import static com.walmart.products.util.EventBus.SEGMENT_SIZE;
+
+public class EventBusTests {
+
+    /** records the key and value of every event **/
+    class Recorder implements EventBus.Listener<String> {
+        final String name;
+        final List<String> events;
+        Recorder(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+        @Override
+        public void onEvent(int key, String value) {
+            events.add(name + ":" + key + "=" + value);
+        }
+    }
+
+    @Test
+    public void test_onAndOnce() {
+        EventBus<String> bus = new EventBus<String>(100);
+        List<String> events = new ArrayList<String>();
+        assertEquals(2 * SEGMENT_SIZE, bus.capacity());
+        assertFalse(bus.hasListeners(7));
+        bus.emit(7, "nobody listens");
+
+        EventBus.Registration<String> on = bus.on(7, new Recorder("on", events));
+        EventBus.Registration<String> once = bus.once(7, new Recorder("once", events));
+        bus.on(8, new Recorder("other", events));
+        assertTrue(bus.hasListeners(7));
+
+        // in the order they were added, once listeners only for the first event
+        bus.emit(7, "a");
+        bus.emit(7, "b");
+        assertEquals("[on:7=a, once:7=a, on:7=b]", events.toString());
+        assertTrue(once.isRemoved());
+        assertFalse(on.isRemoved());
+
+        on.remove();
+        on.remove(); // removing again does nothing
+        assertFalse(bus.hasListeners(7));
+        bus.emit(7, "c");
+        bus.emit(8, null);
+        assertEquals("[on:7=a, once:7=a, on:7=b, other:8=null]", events.toString());
+    }
+
+    @Test
+    public void test_removedOnceIsNotCalled() {
+        EventBus<String> bus = new EventBus<String>(10);
+        List<String> events = new ArrayList<String>();
+        EventBus.Registration<String> first = bus.once(3, new Recorder("first", events));
+        bus.once(3, new Recorder("second", events));
+        first.remove();
+        assertTrue(bus.hasListeners(3));
+        bus.emit(3, "url");
+        assertEquals("[second:3=url]", events.toString());
+        assertFalse(bus.hasListeners(3));
+    }
+
+    @Test
+    public void test_listenerMayListenAgain() {
+        final EventBus<String> bus = new EventBus<String>(10);
+        final List<String> events = new ArrayList<String>();
+        bus.once(1, new EventBus.Listener<String>() {
+            @Override
+            public void onEvent(int key, String value) {
+                // i.e. wait for the next url, must not be dropped with the once listener that fired
+                bus.once(key, new Recorder("again", events));
+            }
+        });
+        bus.emit(1, "a");
+        assertTrue(bus.hasListeners(1));
+        bus.emit(1, "b");
+        assertEquals("[again:1=b]", events.toString());
+    }
+
+    @Test
+    public void test_outOfRange() {
+        EventBus<String> bus = new EventBus<String>(10);
+        assertFalse(bus.hasListeners(-1));
+        assertFalse(bus.hasListeners(bus.capacity()));
+        bus.emit(bus.capacity(), "ignored");
+        try {
+            bus.once(bus.capacity(), new Recorder("beyond", new ArrayList<String>()));
+            fail("listened to a key beyond the capacity");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    /**
+     * Threads add once listeners while other threads emit on the same keys,
+     * every once listener is called at most once and exactly once if an emit followed it.
+     */
+    @Test
+    public void test_onceStress() throws InterruptedException {
+        final int threads = 4;
+        final int rounds = 20000;
+        final int keys = 3 * SEGMENT_SIZE; // segments are created concurrently too
+        final EventBus<String> bus = new EventBus<String>(keys);
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicInteger called = new AtomicInteger();
+        final AtomicInteger twice = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads * 2);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < rounds; round++) {
+                            final AtomicInteger calls = new AtomicInteger();
+                            bus.once((round * 31 + seed) % keys, new EventBus.Listener<String>() {
+                                @Override
+                                public void onEvent(int key, String value) {
+                                    if (calls.incrementAndGet() > 1) twice.incrementAndGet();
+                                    called.incrementAndGet();
+                                }
+                            });
+                            added.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        twice.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < rounds; round++) {
+                            bus.emit((round * 17 + seed) % keys, "url");
+                        }
+                    } catch (InterruptedException e) {
+                        twice.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+
+        // whatever was not called yet is called by a last emit on every key
+        for (int key = 0; key < keys; key++) {
+            bus.emit(key, "url");
+            assertFalse(bus.hasListeners(key));
+        }
+        assertEquals(0, twice.get());
+        assertEquals(added.get(), called.get());
+    }
+}
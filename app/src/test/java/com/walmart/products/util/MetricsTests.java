@@ -0,0 +1,152 @@
+package com.walmart.products.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+import static com.walmart.products.util.Metrics.Histogram.MAX_MICROS;
+import static com.walmart.products.util.Metrics.Histogram.SUB_BUCKETS;
+import static com.walmart.products.util.Metrics.Histogram.bucketHighMicros;
+import static com.walmart.products.util.Metrics.Histogram.bucketIndex;
+
+public class MetricsTests {
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    @Test
+    public void test_buckets() {
+        // every value lands in a bucket whose bounds hold it, within 1/SUB_BUCKETS of the value
+        long[] values = {0, 1, SUB_BUCKETS - 1, SUB_BUCKETS, 31, 32, 33, 1000, 123456, 1L << 31, MAX_MICROS};
+        for (long value : values) {
+            int index = bucketIndex(value);
+            assertTrue(value <= bucketHighMicros(index));
+            assertTrue(index == 0 || value > bucketHighMicros(index - 1));
+            assertTrue(bucketHighMicros(index) - value <= value / SUB_BUCKETS);
+        }
+        // buckets are contiguous
+        for (int index = 1; index <= bucketIndex(MAX_MICROS); index++) {
+            assertEquals(index, bucketIndex(bucketHighMicros(index - 1) + 1));
+        }
+        assertEquals(MAX_MICROS, bucketHighMicros(bucketIndex(MAX_MICROS)));
+    }
+
+    @Test
+    public void test_histogram() {
+        Metrics metrics = new Metrics(true);
+        Metrics.Histogram histogram = metrics.histogram("loadPage");
+        assertSame(histogram, metrics.histogram("loadPage"));
+        assertEquals(0, histogram.stats().count);
+
+        // 1 to 100 millis
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.recordNanos(millis * 1000000L);
+        }
+        Metrics.Histogram.Stats stats = histogram.stats();
+        assertEquals(100, stats.count);
+        assertEquals(50.5, stats.meanMillis, 0.001);
+        assertEquals(50, stats.p50Millis, 50 / 16.0);
+        assertEquals(90, stats.p90Millis, 90 / 16.0);
+        assertEquals(99, stats.p99Millis, 99 / 16.0);
+        assertEquals(100, stats.maxMillis, 0.001);
+
+        // negative (a clock step) and beyond the range are clamped
+        histogram.recordNanos(-5);
+        histogram.recordNanos(Long.MAX_VALUE);
+        stats = histogram.stats();
+        assertEquals(102, stats.count);
+        assertEquals(MAX_MICROS / 1e3, stats.maxMillis, 0.001);
+    }
+
+    @Test
+    public void test_countersAndGauges() {
+        Metrics metrics = new Metrics(true);
+        metrics.counter("loadPage.failed").inc();
+        metrics.counter("loadPage.failed").add(2);
+        final long[] queued = {4};
+        metrics.gauge("httpPool.queued", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                return queued[0];
+            }
+        });
+        Metrics.Stats stats = metrics.stats();
+        assertEquals(3L, (long) stats.counters.get("loadPage.failed"));
+        assertEquals(4L, (long) stats.gauges.get("httpPool.queued"));
+        // gauges are read when the snapshot is taken
+        queued[0] = 0;
+        assertEquals(0L, (long) metrics.stats().gauges.get("httpPool.queued"));
+    }
+
+    @Test
+    public void test_disabled() {
+        Metrics metrics = new Metrics(false);
+        metrics.counter("loadPage.failed").inc();
+        metrics.histogram("loadPage").recordNanos(1000000);
+        metrics.gauge("httpPool.queued", new Metrics.Gauge() {
+            @Override
+            public long value() {
+                throw new AssertionError("a disabled registry reads no gauge");
+            }
+        });
+        Metrics.Stats stats = metrics.stats();
+        assertTrue(stats.counters.isEmpty());
+        assertTrue(stats.gauges.isEmpty());
+        assertTrue(stats.histograms.isEmpty());
+        assertEquals(0, metrics.counter("loadPage.failed").count());
+        assertEquals(0, metrics.histogram("loadPage").stats().count);
+    }
+
+    @Test
+    public void test_concurrentRecords() throws InterruptedException {
+        final int threads = 4;
+        final int records = 50000;
+        final Metrics metrics = new Metrics(true);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; i++) {
+                        metrics.histogram("loadBitmap").recordNanos(i * 1000L);
+                        metrics.counter("loadBitmap.failed").inc();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * records, metrics.histogram("loadBitmap").stats().count);
+        assertEquals(threads * records, metrics.counter("loadBitmap.failed").count());
+    }
+
+    @Test
+    public void test_reporterDump() throws Exception {
+        File file = new File(mTempFolder.getRoot(), "metrics.json");
+        Metrics metrics = new Metrics(true);
+        metrics.histogram("loadPage").recordNanos(20 * 1000000L);
+        metrics.counter("loadPage.joined").inc();
+        MetricsReporter reporter = new MetricsReporter(metrics, file, 60 * 1000);
+        assertTrue(reporter.dump());
+
+        JsonNode json = new ObjectMapper().readTree(file);
+        assertEquals(1, json.get("counters").get("loadPage.joined").asLong());
+        assertEquals(1, json.get("histograms").get("loadPage").get("count").asLong());
+        assertEquals(20, json.get("histograms").get("loadPage").get("p50Millis").asDouble(), 20 / 16.0);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        // a disabled registry writes nothing
+        File disabled = new File(mTempFolder.getRoot(), "disabled.json");
+        assertFalse(new MetricsReporter(new Metrics(false), disabled, 60 * 1000).dump());
+        assertFalse(disabled.exists());
+    }
+}
@@ -0,0 +1,177 @@
+package com.walmart.products.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class ServiceFutureTests {
+
+    /** records the results and errors it is called back with **/
+    class Recorder<T> implements ServiceFuture.Callback<T> {
+        final List<Object> calls = new ArrayList<Object>();
+        final CountDownLatch done = new CountDownLatch(1);
+        @Override
+        public synchronized void onSuccess(T result) {
+            calls.add(result);
+            done.countDown();
+        }
+        @Override
+        public synchronized void onFailure(Throwable error) {
+            calls.add(error);
+            done.countDown();
+        }
+    }
+
+    /** counts its cancels **/
+    class Work implements Cancellable {
+        int cancelled;
+        @Override
+        public synchronized void cancel() {
+            cancelled++;
+        }
+    }
+
+    @Test
+    public void test_setOnce() throws Exception {
+        ServiceFuture<String> future = new ServiceFuture<String>();
+        Recorder<String> before = new Recorder<String>();
+        future.addCallback(before);
+        assertFalse(future.isDone());
+
+        assertTrue(future.set("bitmap"));
+        assertFalse(future.fail("too late"));
+        assertFalse(future.cancel(false));
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertEquals("bitmap", future.get());
+
+        // without a looper, callbacks are made right away on the thread that completes or adds them
+        Recorder<String> after = new Recorder<String>();
+        future.addCallback(after);
+        assertEquals("[bitmap]", before.calls.toString());
+        assertEquals("[bitmap]", after.calls.toString());
+    }
+
+    @Test
+    public void test_failWithMessage() throws Exception {
+        ServiceFuture<Void> future = new ServiceFuture<Void>();
+        Recorder<Void> recorder = new Recorder<Void>();
+        future.addCallback(recorder);
+        future.fail("loadPage failed");
+        assertTrue(recorder.calls.get(0) instanceof ServiceFuture.Failure);
+        assertEquals("loadPage failed", ((Throwable) recorder.calls.get(0)).getMessage());
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("a failed future has no result");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceFuture.Failure);
+        }
+    }
+
+    @Test
+    public void test_functionAdapter() {
+        final List<Object[]> calls = new ArrayList<Object[]>();
+        Function onComplete = new Function() {
+            @Override
+            public void call(Object... args) {
+                calls.add(args);
+            }
+        };
+        // the Function callbacks get what they always got: (null, result), (message) or (throwable)
+        new ServiceFuture<String>().addCallback(ServiceFuture.<String>callback(onComplete)).set("bitmap");
+        new ServiceFuture<String>().addCallback(ServiceFuture.<String>callback(onComplete)).fail("some error");
+        IllegalStateException error = new IllegalStateException();
+        new ServiceFuture<String>().addCallback(ServiceFuture.<String>callback(onComplete)).fail(error);
+        assertEquals(2, calls.get(0).length);
+        assertNull(calls.get(0)[0]);
+        assertEquals("bitmap", calls.get(0)[1]);
+        assertEquals(1, calls.get(1).length);
+        assertEquals("some error", calls.get(1)[0]);
+        assertSame(error, calls.get(2)[0]);
+    }
+
+    @Test
+    public void test_cancel() throws Exception {
+        ServiceFuture<String> future = new ServiceFuture<String>();
+        Recorder<String> recorder = new Recorder<String>();
+        Work work = new Work();
+        future.addCallback(recorder);
+        future.setOnCancel(work);
+
+        assertTrue(future.cancel(true));
+        assertFalse(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertEquals(1, work.cancelled);
+        // no callbacks, not even for a result that arrives anyway
+        assertFalse(future.set("bitmap"));
+        future.addCallback(recorder);
+        assertEquals(0, recorder.calls.size());
+        try {
+            future.get();
+            fail("a cancelled future has no result");
+        } catch (CancellationException expected) {
+        }
+        // work handed over after the cancel is cancelled right away
+        Work late = new Work();
+        future.setOnCancel(late);
+        assertEquals(1, late.cancelled);
+    }
+
+    @Test
+    public void test_deadline() throws Exception {
+        ServiceFuture<String> future = new ServiceFuture<String>();
+        Recorder<String> recorder = new Recorder<String>();
+        Work work = new Work();
+        future.addCallback(recorder);
+        future.setOnCancel(work);
+        future.withDeadline(50);
+
+        // the deadline fails the future on the timer thread and cancels its work
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertTrue(recorder.calls.get(0) instanceof TimeoutException);
+        assertFalse(future.isCancelled());
+        assertEquals(1, work.cancelled);
+        assertFalse(future.set("too late"));
+        Work late = new Work();
+        future.setOnCancel(late);
+        assertEquals(1, late.cancelled);
+    }
+
+    @Test
+    public void test_completedBeforeDeadline() throws Exception {
+        ServiceFuture<String> future = new ServiceFuture<String>().withDeadline(50);
+        Work work = new Work();
+        future.setOnCancel(work);
+        future.set("bitmap");
+        Thread.sleep(150);
+        assertEquals("bitmap", future.get());
+        assertEquals(0, work.cancelled);
+        // no deadline at all
+        assertFalse(new ServiceFuture<String>().withDeadline(ServiceFuture.NO_DEADLINE).isDone());
+    }
+
+    @Test
+    public void test_getWaitsForAnotherThread() throws Exception {
+        final ServiceFuture<String> future = new ServiceFuture<String>();
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail("not complete yet");
+        } catch (TimeoutException expected) {
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                future.set("bitmap");
+            }
+        }).start();
+        assertEquals("bitmap", future.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,101 @@
+package com.walmart.products.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTests {
+
+    /** records the args of every call **/
+    class Recorder implements Function {
+        final List<Object[]> calls = new ArrayList<Object[]>();
+        @Override
+        public void call(Object... args) {
+            calls.add(args);
+        }
+    }
+
+    @Test
+    public void test_joinersShareOneCall() {
+        SingleFlight<String> flight = new SingleFlight<String>();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        Recorder other = new Recorder();
+
+        assertTrue(flight.join("url", first)); // first caller does the work
+        assertFalse(flight.join("url", second)); // joins the call in flight
+        assertTrue(flight.join("other", other));
+        assertTrue(flight.isInFlight("url"));
+        assertEquals(2, flight.size());
+        assertEquals(Arrays.<Function>asList(first, second), flight.callers("url"));
+
+        flight.complete("url", null, "bitmap");
+        assertFalse(flight.isInFlight("url"));
+        assertTrue(flight.callers("url").isEmpty());
+        assertEquals(1, flight.size());
+        assertEquals(1, first.calls.size());
+        assertEquals(1, second.calls.size());
+        assertEquals("bitmap", second.calls.get(0)[1]);
+        assertEquals(0, other.calls.size());
+
+        // the key is free again once complete, and a late complete is ignored
+        flight.complete("url", "too late");
+        assertEquals(1, first.calls.size());
+        assertTrue(flight.join("url", first));
+    }
+
+    @Test
+    public void test_callbackMayJoinAgain() {
+        final SingleFlight<Integer> flight = new SingleFlight<Integer>();
+        final Recorder retry = new Recorder();
+        flight.join(1, new Function() {
+            @Override
+            public void call(Object... args) {
+                // i.e. retry after an error, must not deadlock or be swallowed
+                assertTrue(flight.join(1, retry));
+            }
+        });
+        flight.complete(1, "error");
+        assertTrue(flight.isInFlight(1));
+        flight.complete(1, null, null);
+        assertEquals(1, retry.calls.size());
+    }
+
+    @Test
+    public void test_lastLeaveCancelsTheWork() {
+        SingleFlight<String> flight = new SingleFlight<String>();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        final int[] cancelled = new int[1];
+        Cancellable work = new Cancellable() {
+            @Override
+            public void cancel() {
+                cancelled[0]++;
+            }
+        };
+        assertTrue(flight.join("url", first, work));
+        assertFalse(flight.join("url", second, work)); // the work of a joiner is not kept
+
+        assertFalse(flight.leave("url", first));
+        assertEquals(0, cancelled[0]);
+        assertFalse(flight.leave("url", first)); // already left
+        assertTrue(flight.leave("url", second));
+        assertEquals(1, cancelled[0]);
+        assertFalse(flight.isInFlight("url"));
+
+        // the late complete of the cancelled work calls nobody
+        flight.complete("url", null, "bitmap");
+        assertEquals(0, first.calls.size());
+        assertEquals(0, second.calls.size());
+
+        // completed work is not cancelled
+        assertTrue(flight.join("url", first, work));
+        flight.complete("url", null, "bitmap");
+        assertFalse(flight.leave("url", first));
+        assertEquals(1, cancelled[0]);
+    }
+}
@@ -0,0 +1,32 @@
+package com.walmart.products.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringPoolTests {
+
+    @Test
+    public void test_intern() {
+        StringPool pool = new StringPool(10);
+        String a = pool.intern(new String("a"));
+        assertSame(a, pool.intern(new String("a")));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void test_leastRecentlyUsedDropped() {
+        StringPool pool = new StringPool(3);
+        String a = pool.intern(new String("a"));
+        String b = pool.intern(new String("b"));
+        pool.intern("c");
+        // a is used again, b is now the least recently used
+        assertSame(a, pool.intern(new String("a")));
+        pool.intern("d");
+        assertEquals(3, pool.size());
+        // full, only b left, the values still in use are not all dropped at once
+        assertSame(a, pool.intern(new String("a")));
+        assertNotSame(b, pool.intern(new String("b")));
+    }
+}
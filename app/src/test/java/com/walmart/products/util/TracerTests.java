@@ -0,0 +1,171 @@
+package com.walmart.products.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TracerTests {
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    @Test
+    public void test_parentAndChild() {
+        Tracer tracer = new Tracer(16, true);
+        Tracer.Span root = tracer.start("loadProducts");
+        assertEquals(root.id(), root.traceId());
+        assertEquals(0, root.parentId());
+
+        Tracer.Span previous = root.enter();
+        Tracer.Span page = tracer.start("loadPage").arg("page", 3);
+        tracer.exit(previous);
+        // outside of any span again, a new trace
+        Tracer.Span other = tracer.start("loadBitmap");
+
+        assertEquals(root.traceId(), page.traceId());
+        assertEquals(root.id(), page.parentId());
+        assertNotEquals(root.traceId(), other.traceId());
+
+        Tracer.Span request = page.child("request");
+        request.mark("firstByte", System.nanoTime());
+        request.end();
+        request.end(); // ending it again records nothing
+        page.end();
+        root.end();
+        assertTrue(root.isEnded());
+        assertFalse(other.isEnded());
+
+        // only ended spans are recorded
+        List<Tracer.Span> spans = tracer.spans();
+        assertEquals(4, spans.size());
+        assertEquals("loadProducts", spans.get(0).name());
+        assertEquals("loadPage", spans.get(1).name());
+        assertEquals("request", spans.get(2).name());
+        assertEquals("firstByte", spans.get(3).name());
+        assertEquals(request.id(), spans.get(3).parentId());
+    }
+
+    @Test
+    public void test_wrap() throws InterruptedException {
+        final Tracer tracer = new Tracer(16, true);
+        final Tracer.Span page = tracer.start("loadPage");
+        final Tracer.Span[] parse = new Tracer.Span[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Tracer.Span previous = page.enter();
+            // the span of the caller is carried to the parse thread
+            Runnable runnable = tracer.wrap(new Runnable() {
+                @Override
+                public void run() {
+                    parse[0] = tracer.start("parse");
+                    parse[0].end();
+                    done.countDown();
+                }
+            });
+            tracer.exit(previous);
+            executor.execute(runnable);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(page.traceId(), parse[0].traceId());
+        assertEquals(page.id(), parse[0].parentId());
+
+        // and to a callback, whichever thread calls it
+        final Tracer.Span[] notify = new Tracer.Span[1];
+        Tracer.Span previous = page.enter();
+        Function onComplete = tracer.wrap(new Function() {
+            @Override
+            public void call(Object... args) {
+                notify[0] = tracer.start("notify");
+            }
+        });
+        tracer.exit(previous);
+        assertEquals(0, tracer.start("loadBitmap").parentId());
+        onComplete.call(null, null);
+        assertEquals(page.id(), notify[0].parentId());
+    }
+
+    @Test
+    public void test_ring() {
+        // rounded up to 4
+        Tracer tracer = new Tracer(3, true);
+        for (int i = 0; i < 10; i++) {
+            tracer.start("loadPage").arg("page", i).end();
+        }
+        List<Tracer.Span> spans = tracer.spans();
+        assertEquals(4, spans.size());
+        // the last ones that ended
+        for (int i = 0; i < spans.size(); i++) {
+            assertTrue(spans.get(i).toString().contains("page: " + (6 + i)));
+        }
+    }
+
+    @Test
+    public void test_chromeTrace() throws Exception {
+        Tracer tracer = new Tracer(16, true);
+        Tracer.Span page = tracer.start("loadPage").arg("page", 1);
+        Tracer.Span request = page.child("request");
+        request.mark("firstByte", System.nanoTime());
+        request.end();
+        page.end();
+        File file = new File(mTempFolder.getRoot(), "trace.json");
+        tracer.writeChromeTrace(file);
+
+        JsonNode json = new ObjectMapper().readTree(file);
+        assertEquals("ms", json.get("displayTimeUnit").asText());
+        JsonNode events = json.get("traceEvents");
+        int begins = 0, ends = 0, marks = 0, threads = 0;
+        for (JsonNode event : events) {
+            String phase = event.get("ph").asText();
+            if (phase.equals("M")) {
+                threads++;
+                assertEquals(Thread.currentThread().getName(), event.get("args").get("name").asText());
+                continue;
+            }
+            // every span of a trace is on the async track of the trace
+            assertEquals(page.traceId(), event.get("id").asLong());
+            assertEquals(Thread.currentThread().getId(), event.get("tid").asLong());
+            if (phase.equals("b")) begins++;
+            else if (phase.equals("e")) ends++;
+            else if (phase.equals("n")) marks++;
+            if (phase.equals("b") && event.get("name").asText().equals("loadPage")) {
+                assertEquals(1, event.get("args").get("page").asLong());
+            }
+        }
+        assertEquals(2, begins);
+        assertEquals(2, ends);
+        assertEquals(1, marks);
+        assertEquals(1, threads);
+    }
+
+    @Test
+    public void test_disabled() {
+        Tracer tracer = new Tracer(16, false);
+        Tracer.Span span = tracer.start("loadPage");
+        assertNull(span.enter());
+        span.child("request").end();
+        span.mark("firstByte", System.nanoTime());
+        span.end();
+        assertFalse(span.isEnded());
+        assertTrue(tracer.spans().isEmpty());
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {}
+        };
+        assertSame(runnable, tracer.wrap(runnable));
+    }
+}
@@ -0,0 +1,76 @@
+package com.walmart.products.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files (i.e. of two commits), benchmark by benchmark.
+ *
+ * Usage: CompareResults baseline.json candidate.json
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CompareResults <baseline.json> <candidate.json>");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> candidate = read(new File(args[1]));
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : candidate.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue();
+            StringBuffer sb = new StringBuffer(entry.getKey()).append(": ");
+            if (before == null) {
+                sb.append(score(after)).append(" (new)");
+                System.out.println(sb);
+                continue;
+            }
+            double change = (after.get("score").asDouble() - before.get("score").asDouble())
+                    / before.get("score").asDouble() * 100;
+            double error = Math.abs(before.get("scoreError").asDouble()) + Math.abs(after.get("scoreError").asDouble());
+            // changes within the error of both runs are not reported as a regression
+            boolean significant = Math.abs(after.get("score").asDouble() - before.get("score").asDouble()) > error;
+            sb.append(score(before)).append(" -> ").append(score(after));
+            sb.append(String.format(" (%+.1f%%%s)", change, significant ? "" : ", within error"));
+            // all benchmarks report time per operation, higher is worse
+            if (significant && change > 0) {
+                sb.append(" REGRESSION");
+                regressions++;
+            }
+            System.out.println(sb);
+        }
+        System.out.println(regressions + " regression(s)");
+    }
+
+    /**
+     * @return the primary metric of each benchmark, keyed by benchmark name and params
+     */
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<String, JsonNode>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuffer key = new StringBuffer(result.get("benchmark").asText());
+            JsonNode params = result.get("params");
+            if (params != null) {
+                Iterator<Map.Entry<String, JsonNode>> it = params.fields();
+                while (it.hasNext()) {
+                    Map.Entry<String, JsonNode> param = it.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            results.put(key.toString(), result.get("primaryMetric"));
+        }
+        return results;
+    }
+
+    private static String score(JsonNode metric) {
+        return String.format("%.3f %s", metric.get("score").asDouble(), metric.get("scoreUnit").asText());
+    }
+}
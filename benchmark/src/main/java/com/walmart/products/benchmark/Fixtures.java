@@ -0,0 +1,34 @@
+package com.walmart.products.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Recorded responses the benchmarks run on, see src/main/resources/fixtures.
+ */
+public class Fixtures {
+
+    // a full page (100 items) of /v1/paginated/items
+    public static final String PAGE = "fixtures/page-100.json";
+
+    public static byte[] read(String name) {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) throw new IllegalArgumentException("fixture not found: " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("fixture not readable: " + name, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.walmart.products.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmart.products.benchmark.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Parsing a full page of products, the JsonNode tree vs the streaming PageRecord parser.
+ *
+ * For a gzip page, inflating while parsing vs inflating the whole page first (what a client that decompresses
+ * transparently hands the parser). Run with -Pprof=gc for the bytes allocated per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    byte[] mPage;
+
+    byte[] mGzipPage;
+
+    // the tree pages were parsed into before PageParser
+    ObjectMapper mMapper;
+
+    @Setup
+    public void setup() {
+        mPage = Fixtures.read(Fixtures.PAGE);
+        mGzipPage = gzip(mPage);
+        mMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public JsonNode objectMapper_readTree() throws IOException {
+        return mMapper.readTree(mPage);
+    }
+
+    @Benchmark
+    public PageRecord pageParser_parsePage() throws IOException {
+        return PageParser.parsePage(mPage);
+    }
+
+    @Benchmark
+    public PageRecord pageParser_parseGzip() throws IOException {
+        return PageParser.parsePage(mGzipPage, "gzip");
+    }
+
+    @Benchmark
+    public PageRecord pageParser_inflateThenParse() throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(mGzipPage));
+        ByteArrayOutputStream page = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            page.write(buffer, 0, n);
+        }
+        in.close();
+        return PageParser.parsePage(page.toByteArray());
+    }
+
+    private static byte[] gzip(byte[] data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream out = new GZIPOutputStream(bytes);
+            out.write(data);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.walmart.products.http;
+
+import com.walmart.products.benchmark.Fixtures;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmart.products.service.WalmartServiceConfig.PARSE_QUEUE_SIZE;
+import static com.walmart.products.service.WalmartServiceConfig.PARSE_THREADS;
+
+/**
+ * A burst of 50 page responses delivered at once (i.e. an aggressive prefetch), parsed on a new thread each
+ * like the response handlers of the app used to, vs on the shared ParseExecutor.
+ *
+ * The score is the time until the whole burst is parsed, threadsCreated counts the threads started for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParseBurstBenchmark {
+
+    private static final int BURST = 50;
+
+    @Param({"newThread", "parseExecutor"})
+    String mParser;
+
+    byte[] mPage;
+
+    ParseExecutor mParseExecutor;
+
+    Executor mExecutor;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Threads {
+        public long threadsCreated;
+        @Setup(Level.Iteration)
+        public void reset() {
+            threadsCreated = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        mPage = Fixtures.read(Fixtures.PAGE);
+        mParseExecutor = new ParseExecutor(PARSE_THREADS, PARSE_QUEUE_SIZE);
+        if (mParser.equals("parseExecutor")) {
+            mExecutor = mParseExecutor;
+        } else {
+            mExecutor = new Executor() {
+                @Override
+                public void execute(Runnable parser) {
+                    new Thread(parser).start();
+                }
+            };
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mParseExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public long burst(Threads threads) throws InterruptedException {
+        final CountDownLatch parsed = new CountDownLatch(BURST);
+        final long[] items = new long[1];
+        int threadsBefore = mParseExecutor.stats().threadsCreated;
+        for (int i = 0; i < BURST; i++) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        PageRecord page = PageParser.parsePage(mPage);
+                        synchronized (items) {
+                            items[0] += page.size();
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        parsed.countDown();
+                    }
+                }
+            });
+        }
+        parsed.await();
+        threads.threadsCreated += (mExecutor == mParseExecutor)
+                ? mParseExecutor.stats().threadsCreated - threadsBefore
+                : BURST;
+        return items[0];
+    }
+}
@@ -0,0 +1,382 @@
+package com.walmart.products.http;
+
+import com.loopj.android.http.AsyncHttpClient;
+import com.walmart.products.mockserver.Images;
+import com.walmart.products.service.ConcurrencyLimiter;
+import com.walmart.products.util.Function;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import cz.msebera.android.httpclient.conn.scheme.PlainSocketFactory;
+import cz.msebera.android.httpclient.conn.scheme.Scheme;
+import cz.msebera.android.httpclient.conn.scheme.SchemeRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import okio.Buffer;
+
+import static com.walmart.products.service.WalmartServiceConfig.*;
+
+/**
+ * Loads a page of thumbnails over TLS from a local MockWebServer through each HttpTransport,
+ * the way WalmartServiceUtils does: every image a request, at most --concurrency of them in flight.
+ *
+ *  - loopj: LoopjTransport, HTTP/1.1
+ *  - okhttp-http1: OkHttpTransport against a server that only speaks HTTP/1.1, pooled keep-alive connections
+ *  - okhttp-h2: OkHttpTransport with HTTP/2 negotiated with ALPN, the requests multiplexed on one connection
+ *
+ * Reports the connections the server accepted, the TLS handshakes and their average time (measured on the
+ * client sockets the same way for every transport) and the time until the last thumbnail arrived.
+ * Every round starts with a new transport, so with cold connections.
+ *
+ * ./gradlew :benchmark:transport -Pargs="--latency=100 --images=100"
+ *
+ * options: --images=100, --concurrency=IMAGE_REQUESTS, --latency=<ms per response>, --size=<image px>,
+ * --rounds=5, --transport=<name> (repeatable, default all three), --out=<dir>
+ */
+public class TransportHarness {
+
+    private static final String[] TRANSPORTS = { "loopj", "okhttp-http1", "okhttp-h2" };
+
+    private static final Pattern IMAGE_PATH = Pattern.compile("/images/(\\d+)\\.jpeg");
+
+    /** One page of thumbnails through one transport **/
+    static class Result {
+        final String transport;
+        final int round;
+        final long millis;
+        final int images;
+        final int failures;
+        final int serverConnections;
+        final int handshakes;
+        final double avgHandshakeMillis;
+        final HttpTransport.Stats stats;
+        Result(String transport, int round, long millis, int images, int failures, int serverConnections,
+               int handshakes, double avgHandshakeMillis, HttpTransport.Stats stats) {
+            this.transport = transport;
+            this.round = round;
+            this.millis = millis;
+            this.images = images;
+            this.failures = failures;
+            this.serverConnections = serverConnections;
+            this.handshakes = handshakes;
+            this.avgHandshakeMillis = avgHandshakeMillis;
+            this.stats = stats;
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer(transport).append(" - round: ").append(round);
+            sb.append(", ms: ").append(millis);
+            sb.append(", images: ").append(images);
+            sb.append(", failures: ").append(failures);
+            sb.append(", connections: ").append(serverConnections);
+            sb.append(", handshakes: ").append(handshakes);
+            sb.append(", avgHandshakeMillis: ").append(String.format("%.2f", avgHandshakeMillis));
+            sb.append(", http2Requests: ").append(stats.http2Requests);
+            return sb.toString();
+        }
+        String toJson() {
+            StringBuffer sb = new StringBuffer("{\"transport\":\"").append(transport).append('"');
+            sb.append(",\"round\":").append(round);
+            sb.append(",\"millis\":").append(millis);
+            sb.append(",\"images\":").append(images);
+            sb.append(",\"failures\":").append(failures);
+            sb.append(",\"connections\":").append(serverConnections);
+            sb.append(",\"handshakes\":").append(handshakes);
+            sb.append(",\"avgHandshakeMillis\":").append(avgHandshakeMillis);
+            sb.append(",\"http2Requests\":").append(stats.http2Requests).append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Counts the TLS sockets created and times their handshakes, from the socket being layered over the
+     * connected tcp socket until the handshake completed. Both clients start the handshake right away.
+     */
+    static class TimingSSLSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        final AtomicInteger mHandshakes = new AtomicInteger();
+
+        final AtomicLong mHandshakeNanos = new AtomicLong();
+
+        TimingSSLSocketFactory(SSLSocketFactory delegate) {
+            this.mDelegate = delegate;
+        }
+
+        private Socket timed(Socket socket) {
+            final long createdAt = System.nanoTime();
+            ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                @Override
+                public void handshakeCompleted(HandshakeCompletedEvent event) {
+                    mHandshakeNanos.addAndGet(System.nanoTime() - createdAt);
+                    mHandshakes.incrementAndGet();
+                }
+            });
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return timed(mDelegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return timed(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return timed(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return timed(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return timed(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return timed(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int images = PAGE_SIZE;
+        int concurrency = IMAGE_REQUESTS;
+        long latency = 50;
+        int size = 450;
+        int rounds = 5;
+        List<String> transports = new ArrayList<String>();
+        File out = new File("build/reports/transport");
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String value = (kv.length > 1) ? kv[1] : "";
+            if (kv[0].equals("images")) images = Integer.parseInt(value);
+            else if (kv[0].equals("concurrency")) concurrency = Integer.parseInt(value);
+            else if (kv[0].equals("latency")) latency = Long.parseLong(value);
+            else if (kv[0].equals("size")) size = Integer.parseInt(value);
+            else if (kv[0].equals("rounds")) rounds = Integer.parseInt(value);
+            else if (kv[0].equals("transport")) transports.add(value);
+            else if (kv[0].equals("out")) out = new File(value);
+            else throw new IllegalArgumentException("unknown option: " + arg);
+        }
+        if (transports.isEmpty()) transports.addAll(Arrays.asList(TRANSPORTS));
+
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName(InetAddress.getByName("localhost").getCanonicalHostName())
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(localhost)
+                .build();
+        HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(localhost.certificate())
+                .build();
+
+        MockWebServer h2Server = server(serverCertificates, latency, size,
+                Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        MockWebServer http1Server = server(serverCertificates, latency, size,
+                Collections.singletonList(Protocol.HTTP_1_1));
+        System.out.println("TransportHarness - images: " + images + ", concurrency: " + concurrency
+                + ", latency: " + latency + "ms, size: " + size + "px, rounds: " + rounds);
+        List<Result> results = new ArrayList<Result>();
+        try {
+            for (String name : transports) {
+                MockWebServer server = name.equals("okhttp-http1") ? http1Server : h2Server;
+                List<Long> millis = new ArrayList<Long>();
+                for (int round = 0; round < rounds; round++) {
+                    TimingSSLSocketFactory sslSocketFactory =
+                            new TimingSSLSocketFactory(clientCertificates.sslSocketFactory());
+                    HttpTransport transport = transport(name, sslSocketFactory, clientCertificates);
+                    Result result = loadPage(name, round, transport, server, sslSocketFactory, images, concurrency);
+                    shutdown(transport);
+                    System.out.println(result);
+                    results.add(result);
+                    millis.add(result.millis);
+                }
+                Collections.sort(millis);
+                System.out.println("  " + name + " - median ms: " + millis.get(millis.size() / 2));
+            }
+        } finally {
+            h2Server.shutdown();
+            http1Server.shutdown();
+        }
+        out.mkdirs();
+        FileWriter writer = new FileWriter(new File(out, "transport.json"));
+        try {
+            writer.write("[");
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) writer.write(",\n");
+                writer.write(results.get(i).toJson());
+            }
+            writer.write("]\n");
+        } finally {
+            writer.close();
+        }
+        // the http clients threads are not daemon threads
+        System.exit(0);
+    }
+
+    /**
+     * @return a TLS server of product images, every response delayed by latency
+     */
+    static MockWebServer server(HandshakeCertificates certificates, final long latency, final int size,
+                                List<Protocol> protocols) throws IOException {
+        final Images imageSource = new Images();
+        MockWebServer server = new MockWebServer();
+        server.useHttps(certificates.sslSocketFactory(), false);
+        server.setProtocols(protocols);
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Matcher matcher = IMAGE_PATH.matcher(request.getPath());
+                if (!matcher.matches()) return new MockResponse().setResponseCode(404);
+                try {
+                    byte[] jpeg = imageSource.jpeg(Integer.parseInt(matcher.group(1)), size);
+                    return new MockResponse()
+                            .setHeader("Content-Type", "image/jpeg")
+                            .setBody(new Buffer().write(jpeg))
+                            .setHeadersDelay(latency, TimeUnit.MILLISECONDS);
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * @return a transport configured like AppModule does, over the given TLS socket factory
+     */
+    static HttpTransport transport(String name, TimingSSLSocketFactory sslSocketFactory,
+                                   HandshakeCertificates certificates) {
+        if (name.equals("loopj")) {
+            SchemeRegistry schemes = new SchemeRegistry();
+            schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            schemes.register(new Scheme("https", new cz.msebera.android.httpclient.conn.ssl.SSLSocketFactory(
+                    sslSocketFactory, cz.msebera.android.httpclient.conn.ssl.SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER), 443));
+            AsyncHttpClient httpClient = new AsyncHttpClient(schemes);
+            httpClient.setConnectTimeout(HTTP_TIMEOUT);
+            httpClient.setResponseTimeout(HTTP_TIMEOUT);
+            httpClient.setMaxConnections(MAX_THREADS);
+            return new LoopjTransport(httpClient);
+        }
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_THREADS);
+        dispatcher.setMaxRequestsPerHost(MAX_THREADS);
+        return new OkHttpTransport(new OkHttpClient.Builder()
+                .connectTimeout(HTTP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(HTTP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .sslSocketFactory(sslSocketFactory, certificates.trustManager())
+                .hostnameVerifier(new HostnameVerifier() {
+                    @Override
+                    public boolean verify(String hostname, SSLSession session) {
+                        return true;
+                    }
+                })
+                .build(), TimeUnit.SECONDS.toMillis(CONNECTION_KEEP_ALIVE));
+    }
+
+    static void shutdown(HttpTransport transport) {
+        if (transport instanceof LoopjTransport) {
+            ((LoopjTransport) transport).client().getThreadPool().shutdownNow();
+        } else if (transport instanceof OkHttpTransport) {
+            OkHttpClient client = ((OkHttpTransport) transport).client();
+            client.dispatcher().executorService().shutdownNow();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    static Result loadPage(String name, int round, HttpTransport transport, MockWebServer server,
+                           TimingSSLSocketFactory sslSocketFactory, int images, int concurrency)
+            throws InterruptedException {
+        int requestsBefore = server.getRequestCount();
+        final CountDownLatch loaded = new CountDownLatch(images);
+        final AtomicInteger failures = new AtomicInteger();
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < images; i++) {
+            final String url = server.url("/images/" + (round * images + i) + ".jpeg").toString();
+            final HttpTransport http = transport;
+            limiter.execute(new ConcurrencyLimiter.Request() {
+                @Override
+                protected void start(final Function onDone) {
+                    http.get(null, url, new HttpTransport.Callback() {
+                        @Override
+                        public void onResponse(HttpTransport.Response response) {
+                            if (!response.isSuccessful()) failures.incrementAndGet();
+                            onDone.call();
+                            loaded.countDown();
+                        }
+                    });
+                }
+            });
+        }
+        if (!loaded.await(HTTP_TIMEOUT * 2, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException(name + " - page of thumbnails did not load");
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        // the server numbers the requests of a connection from 0
+        int connections = 0;
+        int requests = server.getRequestCount() - requestsBefore;
+        for (int i = 0; i < requests; i++) {
+            RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+            if (request != null && request.getSequenceNumber() == 0) connections++;
+        }
+        // handshake listeners are notified on their own thread, let the last ones arrive
+        Thread.sleep(100);
+        int handshakes = sslSocketFactory.mHandshakes.get();
+        double avgHandshakeMillis = (handshakes == 0) ? 0 : sslSocketFactory.mHandshakeNanos.get() / 1e6 / handshakes;
+        return new Result(name, round, millis, images, failures.get(), connections,
+                handshakes, avgHandshakeMillis, transport.stats());
+    }
+}
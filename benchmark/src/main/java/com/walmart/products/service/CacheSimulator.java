@@ -0,0 +1,142 @@
+package com.walmart.products.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.walmart.products.service.ReplayHarness.Call;
+import static com.walmart.products.service.WalmartService.CacheEntry;
+import static com.walmart.products.service.WalmartServiceConfig.PAGE_SIZE;
+
+/**
+ * Replays recorded scroll traces through a PageCache with each CachePolicy and reports their hit rates,
+ * no network and no clock: only the order pages are read in matters.
+ *
+ * The pages read are the ones the app reads: the pages on screen when a call is made (the rows bound read them,
+ * see WalmartService.getProduct), then the pages of its range. A page missing when read is loaded and put,
+ * like a page load does. The listener makes a call at least every page scrolled, so no page is on screen
+ * between two calls but theirs; a longer gap is a jump (a tap on the status bar), the pages between are not read.
+ * The screen misses are the reads of a page on screen that missed: rows shown empty while their page loads again,
+ * i.e. the page under the user evicted by a fast scroll up then down.
+ *
+ * The cache holds --pages pages (each page counts one), PAGE_CACHE_BYTES holds ~5.
+ *
+ * ./gradlew :benchmark:cacheSim -Pargs="--pages=3,5,8"
+ *
+ * traces/revisit.trace goes back to the top every few pages, the one where frequency and direction matter:
+ * the other traces never come back to a page after the next one, every policy evicts the same pages there.
+ *
+ * options: --trace=<resource or file> (repeatable, default all four), --pages=<n,...>,
+ * --policy=<name,...> (default lru, tinylfu and viewport)
+ */
+public class CacheSimulator {
+
+    private static final String[] DEFAULT_TRACES = {
+            "traces/steady.trace", "traces/fling.trace", "traces/updown.trace", "traces/revisit.trace" };
+
+    private static final String[] DEFAULT_POLICIES = { PageCache.LRU, PageCache.TINY_LFU, PageCache.VIEWPORT };
+
+    private static final int[] DEFAULT_PAGES = { 3, 5, 8 };
+
+    // the cache only counts pages, the entries are never read
+    private static final CacheEntry ENTRY = new CacheEntry(null);
+
+    /** The reads of one policy over one trace **/
+    static class Result {
+        final String trace;
+        final String policy;
+        final int pages;
+        int hits;
+        int misses;
+        int screenMisses;
+        int evictions;
+        Result(String trace, String policy, int pages) {
+            this.trace = trace;
+            this.policy = policy;
+            this.pages = pages;
+        }
+        double hitRate() {
+            return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+        }
+        @Override
+        public String toString() {
+            return String.format("%-8s %-9s pages: %d, hitRate: %.3f, misses: %d, screenMisses: %d, evictions: %d",
+                    trace, policy, pages, hitRate(), misses, screenMisses, evictions);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> traces = new ArrayList<String>();
+        String[] policies = DEFAULT_POLICIES;
+        int[] pages = DEFAULT_PAGES;
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String value = (kv.length > 1) ? kv[1] : "";
+            if (kv[0].equals("trace")) traces.add(value);
+            else if (kv[0].equals("policy")) policies = value.split(",");
+            else if (kv[0].equals("pages")) pages = parseInts(value.split(","));
+            else throw new IllegalArgumentException("unknown option: " + arg);
+        }
+        if (traces.isEmpty()) traces.addAll(Arrays.asList(DEFAULT_TRACES));
+        for (String trace : traces) {
+            List<Call> calls = ReplayHarness.readTrace(trace);
+            String name = trace.replaceAll(".*/", "").replace(".trace", "");
+            for (int pageCount : pages) {
+                for (String policy : policies) {
+                    System.out.println(simulate(name, calls, policy, pageCount));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param policy - see PageCache.newPolicy
+     * @param pageCount - pages the cache holds
+     */
+    static Result simulate(String trace, List<Call> calls, String policy, int pageCount) {
+        CachePolicy cachePolicy = PageCache.newPolicy(policy);
+        if (cachePolicy == null) throw new IllegalArgumentException("unknown policy: " + policy);
+        final Result result = new Result(trace, policy, pageCount);
+        PageCache cache = new PageCache(pageCount, cachePolicy) {
+            @Override
+            protected int sizeOf(int pageNum, CacheEntry entry) {
+                return 1;
+            }
+            @Override
+            protected void entryEvicted(int pageNum, CacheEntry entry) {
+                result.evictions++;
+            }
+        };
+        for (Call call : calls) {
+            int firstPage = call.firstVisible() / PAGE_SIZE;
+            int lastPage = call.lastVisible() / PAGE_SIZE;
+            cache.setVisibleRange(firstPage, lastPage);
+            for (int pageNum = firstPage; pageNum <= lastPage; pageNum++) {
+                read(cache, pageNum, true, result);
+            }
+            // the call loads its range
+            for (int pageNum = call.fromIndex / PAGE_SIZE; pageNum <= call.toIndex / PAGE_SIZE; pageNum++) {
+                read(cache, pageNum, false, result);
+            }
+        }
+        return result;
+    }
+
+    private static void read(PageCache cache, int pageNum, boolean onScreen, Result result) {
+        if (cache.get(pageNum) != null) {
+            result.hits++;
+            return;
+        }
+        result.misses++;
+        if (onScreen) result.screenMisses++;
+        cache.put(pageNum, ENTRY);
+    }
+
+    private static int[] parseInts(String[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return ints;
+    }
+}
@@ -0,0 +1,570 @@
+package com.walmart.products.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.loopj.android.http.AsyncHttpClient;
+import com.walmart.products.http.HttpTransport;
+import com.walmart.products.http.LoopjTransport;
+import com.walmart.products.http.OkHttpTransport;
+import com.walmart.products.http.ParseExecutor;
+import com.walmart.products.mockserver.MockWalmartServer;
+import com.walmart.products.util.Function;
+import com.walmart.products.util.EventBus;
+import com.walmart.products.util.EventEmitter;
+import com.walmart.products.util.Metrics;
+import com.walmart.products.util.Tracer;
+import com.walmart.products.util.SingleFlight;
+import com.walmart.products.util.StringPool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import static com.walmart.products.service.WalmartService.CacheEntry;
+import static com.walmart.products.service.WalmartServiceConfig.*;
+
+/**
+ * Replays recorded scroll traces through WalmartService.loadProducts against the MockWalmartServer
+ * (or any other server with --baseUrl) and reports the p50, p95 and p99 time-to-data of the calls.
+ *
+ * A trace is the loadProducts calls of a scroll session, one per line: {@code <ms since start> <fromIndex> <toIndex>}.
+ * Calls are replayed at their recorded times (divided by --speed) whether or not the calls before them completed,
+ * every trace starts with a new service with cold caches.
+ *
+ * With --revisit every trace is replayed a second time, a return visit a week later: a new service on the disk
+ * cache of the first session, with its clock moved past the image max age. The pages and images on disk have
+ * expired and are revalidated with their ETag / Last-Modified, the server bytes of each session are reported.
+ * traces/updown.trace scrolls down and back up, for the bytes of a session that sees pages again.
+ *
+ * Next to the report of each session (<out>/<trace>.json) the spans of its page loads are written
+ * to <out>/<trace>.trace.json, open it in chrome://tracing or ui.perfetto.dev to see where a slow call waited.
+ *
+ * Between the calls the list is scrolled by script: still, then a fling decelerating evenly to the row of the next
+ * call (see position), a frame every FRAME_MILLIS. Every frame tells the service the rows on screen and counts
+ * the blank ones, rows without their product or thumbnail yet. The frames drive a ScrollPrefetcher unless
+ * --prefetch=off, run both to see what prefetching saves and costs (server bytes).
+ *
+ * ./gradlew :benchmark:replay -Pargs="--latency=150 --jitter=100 --bandwidth=500000"
+ *
+ * options: --trace=<resource or file> (repeatable, default steady and fling), --speed=1, --baseUrl=<url>,
+ * --firstPageUrl=<url>, --timeout=<seconds>, --transport=okhttp|loopj, --revisit, --prefetch=on|off, --out=<dir>
+ * and the MockWalmartServer options.
+ */
+public class ReplayHarness {
+
+    private static final String[] DEFAULT_TRACES = { "traces/steady.trace", "traces/fling.trace" };
+
+    // how much later the revisit session is, everything on disk has expired by then
+    private static final long REVISIT_AFTER = DISK_IMAGE_MAX_AGE + 24 * 60 * 60 * 1000L;
+
+    // rows loaded around the screen by EndlessRecyclerOnScrollListener (FRONT_BACK_LOAD_SIZE), and rows on a screen
+    static final int FRONT_BACK_ROWS = 25;
+    static final int SCREEN_ROWS = 10;
+
+    // the frames of the scripted scroll, and the longest fling between two calls
+    static final long FRAME_MILLIS = 16;
+    static final long FLING_MILLIS = 1500;
+
+    /** One recorded loadProducts call **/
+    static class Call {
+        final long time;
+        final int fromIndex;
+        final int toIndex;
+        Call(long time, int fromIndex, int toIndex) {
+            this.time = time;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+        // a loadMore call is the page after the end of the list, the user is at the end of the list
+        private boolean isLoadMore() {
+            return fromIndex % PAGE_SIZE == 0 && toIndex == fromIndex + PAGE_SIZE - 1;
+        }
+        /**
+         * @return the first row on screen when the call was made, the trace only has the rows loaded
+         */
+        int firstVisible() {
+            if (isLoadMore()) return Math.max(fromIndex - SCREEN_ROWS, 0);
+            return (fromIndex == 0) ? Math.max(toIndex - FRONT_BACK_ROWS - SCREEN_ROWS + 1, 0) : fromIndex + FRONT_BACK_ROWS;
+        }
+        int lastVisible() {
+            return isLoadMore() ? Math.max(fromIndex - 1, 0) : Math.max(toIndex - FRONT_BACK_ROWS, firstVisible());
+        }
+    }
+
+    /**
+     * @return the first row on screen at a time (trace millis) of the scripted scroll: still until FLING_MILLIS
+     * before a call, then a fling decelerating evenly to the first visible row of the call
+     */
+    static double position(List<Call> calls, long time) {
+        double position = calls.get(0).firstVisible();
+        for (int i = 1; i < calls.size(); i++) {
+            Call call = calls.get(i);
+            long start = Math.max(calls.get(i - 1).time, call.time - FLING_MILLIS);
+            if (time <= start) break;
+            if (time >= call.time) {
+                position = call.firstVisible();
+                continue;
+            }
+            double progress = (double) (time - start) / (call.time - start);
+            return position + (call.firstVisible() - position) * (1 - (1 - progress) * (1 - progress));
+        }
+        return position;
+    }
+
+    /** The scripted scroll of a session, its frames run on the main looper **/
+    static class Scroll {
+        private final WalmartService mService;
+        private final ScrollPrefetcher mPrefetcher; // null with --prefetch=off
+        private double mPosition = -1;
+        private boolean mMoving;
+        private long mRows;
+        private long mBlankRows;
+        Scroll(WalmartService service, ScrollPrefetcher prefetcher) {
+            this.mService = service;
+            this.mPrefetcher = prefetcher;
+        }
+        /**
+         * @param position - see ReplayHarness.position
+         * @param time - trace millis
+         */
+        synchronized void frame(double position, long time) {
+            int first = (int) position;
+            int last = first + SCREEN_ROWS - 1;
+            boolean moving = mPosition >= 0 && position != mPosition;
+            if (moving || mPosition < 0) mService.setVisibleRange(first, last);
+            if (mPrefetcher != null && moving) {
+                // the script only flings, the finger is never on the screen
+                if (!mMoving) mPrefetcher.setSettling(true);
+                mPrefetcher.onScrolled(first, last, position - mPosition, time * 1000000L + 1);
+            } else if (mPrefetcher != null && mMoving) {
+                mPrefetcher.onIdle(first, last);
+            }
+            mMoving = moving;
+            mPosition = position;
+            for (int index = first; index <= last; index++) {
+                mRows++;
+                if (!mService.hasProduct(index) || mService.getThumbnail(index) == null) mBlankRows++;
+            }
+        }
+        synchronized long rows() {
+            return mRows;
+        }
+        synchronized long blankRows() {
+            return mBlankRows;
+        }
+        synchronized ScrollPrefetcher.Stats prefetchStats() {
+            return (mPrefetcher == null) ? null : mPrefetcher.stats();
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("rows: ").append(rows());
+            sb.append(", blankRows: ").append(blankRows());
+            sb.append(String.format(" (%.1f%%)", rows() == 0 ? 0.0 : 100.0 * blankRows() / rows()));
+            ScrollPrefetcher.Stats prefetch = prefetchStats();
+            sb.append(", prefetch: ").append(prefetch == null ? "off" : prefetch.toString());
+            return sb.toString();
+        }
+    }
+
+    /** The time-to-data of the calls of one trace **/
+    static class Result {
+        final String trace;
+        final long[] millis; // of the calls that completed with data, sorted
+        final int errors;
+        final int timeouts;
+        final ConcurrencyLimiter.Stats pageLimiter; // where the limits settled
+        final ConcurrencyLimiter.Stats imageLimiter;
+        final HttpTransport.Stats transport;
+        final Metrics.Stats metrics; // the service side latencies of the session
+        final Scroll scroll;
+        Result(String trace, long[] millis, int errors, int timeouts,
+               ConcurrencyLimiter.Stats pageLimiter, ConcurrencyLimiter.Stats imageLimiter,
+               HttpTransport.Stats transport, Metrics.Stats metrics, Scroll scroll) {
+            this.trace = trace;
+            this.millis = millis;
+            this.errors = errors;
+            this.timeouts = timeouts;
+            this.pageLimiter = pageLimiter;
+            this.imageLimiter = imageLimiter;
+            this.transport = transport;
+            this.metrics = metrics;
+            this.scroll = scroll;
+            Arrays.sort(this.millis);
+        }
+        /**
+         * @return the nearest-rank percentile, -1 if no call completed
+         */
+        long percentile(double p) {
+            if (millis.length == 0) return -1;
+            int rank = (int) Math.ceil(p / 100 * millis.length);
+            return millis[Math.max(0, rank - 1)];
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer(trace).append(" - calls: ").append(millis.length + errors + timeouts);
+            sb.append(", p50: ").append(percentile(50)).append("ms");
+            sb.append(", p95: ").append(percentile(95)).append("ms");
+            sb.append(", p99: ").append(percentile(99)).append("ms");
+            sb.append(", max: ").append(percentile(100)).append("ms");
+            sb.append(", errors: ").append(errors);
+            sb.append(", timeouts: ").append(timeouts);
+            return sb.toString();
+        }
+        /**
+         * @param server - the server counts of the session, null if not replayed against the MockWalmartServer
+         */
+        String toJson(MockWalmartServer.Stats server) {
+            StringBuffer sb = new StringBuffer("{\"trace\":\"").append(trace).append('"');
+            sb.append(",\"calls\":").append(millis.length + errors + timeouts);
+            sb.append(",\"p50\":").append(percentile(50));
+            sb.append(",\"p95\":").append(percentile(95));
+            sb.append(",\"p99\":").append(percentile(99));
+            sb.append(",\"max\":").append(percentile(100));
+            sb.append(",\"errors\":").append(errors);
+            sb.append(",\"timeouts\":").append(timeouts);
+            sb.append(",\"pageLimit\":").append(pageLimiter.limit);
+            sb.append(",\"imageLimit\":").append(imageLimiter.limit);
+            sb.append(",\"connections\":").append(transport.connections);
+            sb.append(",\"rows\":").append(scroll.rows());
+            sb.append(",\"blankRows\":").append(scroll.blankRows());
+            ScrollPrefetcher.Stats prefetch = scroll.prefetchStats();
+            if (prefetch != null) {
+                sb.append(",\"prefetched\":").append(prefetch.prefetched);
+                sb.append(",\"prefetchUsed\":").append(prefetch.used);
+                sb.append(",\"prefetchWasted\":").append(prefetch.wasted);
+                sb.append(",\"prefetchPending\":").append(prefetch.pending);
+            }
+            if (server != null) {
+                sb.append(",\"pages\":").append(server.pages);
+                sb.append(",\"images\":").append(server.images);
+                sb.append(",\"notModified\":").append(server.notModified);
+                sb.append(",\"bytes\":").append(server.bytes);
+            }
+            sb.append(",\"metrics\":").append(metrics.toJson());
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> traces = new ArrayList<String>();
+        List<String> serverArgs = new ArrayList<String>();
+        double speed = 1;
+        String baseUrl = null;
+        String firstPageUrl = MockWalmartServer.FIRST_PAGE_URL;
+        long timeout = 120;
+        String transport = "okhttp";
+        boolean revisit = false;
+        boolean prefetch = true;
+        File out = new File("build/reports/replay");
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String value = (kv.length > 1) ? kv[1] : "";
+            if (kv[0].equals("trace")) traces.add(value);
+            else if (kv[0].equals("speed")) speed = Double.parseDouble(value);
+            else if (kv[0].equals("baseUrl")) baseUrl = value;
+            else if (kv[0].equals("firstPageUrl")) firstPageUrl = value;
+            else if (kv[0].equals("timeout")) timeout = Long.parseLong(value);
+            else if (kv[0].equals("transport")) transport = value;
+            else if (kv[0].equals("revisit")) revisit = value.isEmpty() || Boolean.parseBoolean(value);
+            else if (kv[0].equals("prefetch")) prefetch = !value.equals("off");
+            else if (kv[0].equals("out")) out = new File(value);
+            else serverArgs.add(arg);
+        }
+        if (traces.isEmpty()) traces.addAll(Arrays.asList(DEFAULT_TRACES));
+
+        MockWalmartServer server = null;
+        if (baseUrl == null) {
+            MockWalmartServer.Options options = MockWalmartServer.Options.parse(serverArgs.toArray(new String[0]));
+            options.port = 0;
+            server = new MockWalmartServer(options);
+            server.start();
+            baseUrl = server.baseUrl();
+            System.out.println("MockWalmartServer - " + options);
+        }
+        try {
+            out.mkdirs();
+            for (String trace : traces) {
+                List<Call> calls = readTrace(trace);
+                File diskDir = File.createTempFile("replay", "");
+                diskDir.delete();
+                String name = new File(trace).getName().replace(".trace", "");
+                replayAndReport(name, calls, baseUrl, firstPageUrl, transport, speed, timeout, prefetch, diskDir, 0,
+                        server, new File(out, name + ".json"));
+                if (revisit) {
+                    replayAndReport(name + " (revisit)", calls, baseUrl, firstPageUrl, transport, speed, timeout,
+                            prefetch, diskDir, REVISIT_AFTER, server, new File(out, name + "-revisit.json"));
+                }
+            }
+        } finally {
+            if (server != null) server.stop();
+        }
+        // the http client and the service executors are not daemon threads
+        System.exit(0);
+    }
+
+    private static void replayAndReport(String name, List<Call> calls, String baseUrl, String firstPageUrl,
+                                        String transport, double speed, long timeout, boolean prefetch, File diskDir,
+                                        long clockOffset, MockWalmartServer server, File file)
+            throws IOException, InterruptedException {
+        MockWalmartServer.Stats before = (server == null) ? null : server.stats();
+        // the spans of the session, next to its report
+        File traceFile = new File(file.getPath().replace(".json", ".trace.json"));
+        Result result = replay(name, calls, baseUrl, firstPageUrl, transport, speed, timeout, prefetch, diskDir,
+                clockOffset, traceFile);
+        MockWalmartServer.Stats session = (server == null) ? null : server.stats().since(before);
+        System.out.println(result);
+        if (session != null) System.out.println("  server - " + session);
+        System.out.println("  page limiter - " + result.pageLimiter);
+        System.out.println("  image limiter - " + result.imageLimiter);
+        System.out.println("  " + transport + " - " + result.transport);
+        System.out.println("  scroll - " + result.scroll);
+        System.out.println("  trace - " + traceFile);
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(result.toJson(session));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param prefetch - the scripted scroll drives a ScrollPrefetcher
+     * @param diskDir - the disk cache of the session, an earlier session may have filled it
+     * @param clockOffset - millis added to the clock of the disk cache, to replay a later visit
+     * @param traceFile - the spans of the session are written to it as Chrome trace JSON, see Tracer
+     */
+    static Result replay(String name, List<Call> calls, String baseUrl, String firstPageUrl, String transport,
+                         double speed, long timeoutSeconds, boolean prefetch, File diskDir, long clockOffset,
+                         File traceFile)
+            throws IOException, InterruptedException {
+        final WalmartService service = service(baseUrl, firstPageUrl, transport(transport),
+                diskCache(diskDir, clockOffset));
+        final long[] millis = new long[calls.size()];
+        final boolean[] done = new boolean[calls.size()];
+        final boolean[] failed = new boolean[calls.size()];
+        final CountDownLatch latch = new CountDownLatch(calls.size());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        // loadProducts is called on the main looper, like the scroll listener does
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        for (int i = 0; i < calls.size(); i++) {
+            final int callIndex = i;
+            final Call call = calls.get(i);
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    final long start = System.nanoTime();
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            service.setVisibleRange(call.firstVisible(), call.lastVisible());
+                            service.loadProducts(call.fromIndex, call.toIndex, new Function() {
+                                @Override
+                                public void call(Object... args) {
+                                    synchronized (millis) {
+                                        done[callIndex] = true;
+                                        millis[callIndex] = (System.nanoTime() - start) / 1000000;
+                                        failed[callIndex] = (args[0] != null);
+                                    }
+                                    latch.countDown();
+                                }
+                            });
+                        }
+                    });
+                }
+            }, (long) (call.time / speed), TimeUnit.MILLISECONDS);
+        }
+        // the frames of the scripted scroll, until the last call
+        final Scroll scroll = new Scroll(service, prefetch ? new ScrollPrefetcher(service, null) : null);
+        final long startNanos = System.nanoTime();
+        final long endTime = calls.get(calls.size() - 1).time;
+        final List<Call> script = calls;
+        final double scriptSpeed = speed;
+        final Runnable frame = new Runnable() {
+            @Override
+            public void run() {
+                long time = (long) ((System.nanoTime() - startNanos) / 1e6 * scriptSpeed);
+                if (time <= endTime) scroll.frame(position(script, time), time);
+            }
+        };
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                mainHandler.post(frame);
+            }
+        }, 0, Math.max(1, (long) (FRAME_MILLIS * 1000 / speed)), TimeUnit.MICROSECONDS);
+        latch.await(timeoutSeconds + (long) (calls.get(calls.size() - 1).time / speed / 1000), TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+        // requests still in flight must not load the server during the next trace
+        shutdown(service.mUtils.mTransport);
+        service.mUtils.mParseExecutor.shutdownNow();
+        service.mTracer.writeChromeTrace(traceFile);
+
+        List<Long> completed = new ArrayList<Long>();
+        int errors = 0;
+        int timeouts = 0;
+        synchronized (millis) {
+            for (int i = 0; i < calls.size(); i++) {
+                if (!done[i]) timeouts++;
+                else if (failed[i]) errors++;
+                else completed.add(millis[i]);
+            }
+        }
+        long[] completedMillis = new long[completed.size()];
+        for (int i = 0; i < completedMillis.length; i++) completedMillis[i] = completed.get(i);
+        return new Result(name, completedMillis, errors, timeouts,
+                service.mUtils.mPageLimiter.stats(), service.mUtils.mImageLimiter.stats(),
+                service.mUtils.mTransport.stats(), service.mUtils.mMetrics.stats(), scroll);
+    }
+
+    /**
+     * @return an opened disk cache whose clock is clockOffset millis ahead
+     */
+    static DiskCache diskCache(File diskDir, final long clockOffset) {
+        DiskCache diskCache = new DiskCache(diskDir, DISK_CACHE_BYTES) {
+            @Override
+            protected long now() {
+                return super.now() + clockOffset;
+            }
+        };
+        try {
+            diskCache.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("DiskCache failed to open: " + diskDir, e);
+        }
+        return diskCache;
+    }
+
+    /**
+     * @return a service wired like AppModule does, with cold memory caches
+     */
+    static WalmartService service(String baseUrl, String firstPageUrl, HttpTransport transport, DiskCache diskCache) {
+        ConcurrencyLimiter imageLimiter = new ConcurrencyLimiter(IMAGE_REQUESTS, MIN_IMAGE_REQUESTS, MAX_IMAGE_REQUESTS);
+        final ImageScheduler imageScheduler = new ImageScheduler(imageLimiter);
+        BitmapPool bitmapPool = new BitmapPool(BITMAP_POOL_BYTES);
+        final PageStateTable pageStates = new PageStateTable(MAX_PAGE_NUM);
+
+        WalmartServiceUtils utils = new WalmartServiceUtils();
+        utils.mBaseUrl = baseUrl;
+        utils.mPageUrls = new ConcurrentHashMap<Integer, String>();
+        utils.mPageUrls.put(0, firstPageUrl);
+        utils.mPageUrlEvents = new EventBus<String>(MAX_PAGE_NUM);
+        utils.mPageCache = new PageCache(PAGE_CACHE_BYTES, PageCache.newPolicy(PAGE_CACHE_POLICY)) {
+            @Override
+            protected void entryEvicted(int pageNum, CacheEntry cacheEntry) {
+                pageStates.evict(pageNum);
+                imageScheduler.cancelPage(pageNum);
+            }
+        };
+        utils.mTransport = transport;
+        utils.mStringPool = new StringPool(STRING_POOL_SIZE);
+        utils.mBitmapCache = new BitmapCache(THUMBNAIL_CACHE_BYTES, MEDIUM_IMAGE_CACHE_BYTES, bitmapPool);
+        utils.mDiskCache = diskCache;
+        utils.mImageScheduler = imageScheduler;
+        utils.mBitmapLoads = new SingleFlight<String>();
+        utils.mParseExecutor = new ParseExecutor(PARSE_THREADS, PARSE_QUEUE_SIZE);
+        utils.mPageLimiter = new ConcurrencyLimiter(PAGE_REQUESTS, MIN_PAGE_REQUESTS, MAX_PAGE_REQUESTS);
+        utils.mImageLimiter = imageLimiter;
+        utils.mMetrics = new Metrics(true);
+        utils.mTracer = new Tracer(TRACE_CAPACITY, true);
+        utils.mThumbnailEvents = new EventEmitter();
+        // the 100dp thumbnail and 300dp detail image at xxhdpi
+        utils.mBitmapDecoder = new BitmapDecoder(
+                new BitmapDecoder.Target(300, 300), new BitmapDecoder.Target(900, 900), bitmapPool);
+
+        WalmartService service = new WalmartService();
+        service.mUtils = utils;
+        service.mBitmapCache = utils.mBitmapCache;
+        service.mImageScheduler = imageScheduler;
+        service.mPageCache = utils.mPageCache;
+        service.mPageStates = pageStates;
+        service.mPageUrlEvents = utils.mPageUrlEvents;
+        service.mMetrics = utils.mMetrics;
+        service.mTracer = utils.mTracer;
+        service.mThumbnailEvents = utils.mThumbnailEvents;
+        return service;
+    }
+
+    /**
+     * @param name - okhttp or loopj
+     * @return a new transport configured like AppModule does, nothing is shared between traces
+     */
+    static HttpTransport transport(String name) {
+        if (name.equals("loopj")) {
+            AsyncHttpClient httpClient = new AsyncHttpClient();
+            httpClient.setConnectTimeout(HTTP_TIMEOUT);
+            httpClient.setResponseTimeout(HTTP_TIMEOUT);
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, THREAD_TIMEOUT,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(PAGE_SIZE * MAX_PAGES));
+            threadPool.allowCoreThreadTimeOut(true);
+            httpClient.setThreadPool(threadPool);
+            return new LoopjTransport(httpClient);
+        }
+        if (!name.equals("okhttp")) throw new IllegalArgumentException("unknown transport: " + name);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_THREADS);
+        dispatcher.setMaxRequestsPerHost(MAX_THREADS);
+        return new OkHttpTransport(new OkHttpClient.Builder()
+                .connectTimeout(HTTP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(HTTP_TIMEOUT, TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .build(), TimeUnit.SECONDS.toMillis(CONNECTION_KEEP_ALIVE));
+    }
+
+    /**
+     * Stop the threads of the transport, cancelling would call into clients that are not safe
+     * while requests are being added (loopj cancelAllRequests).
+     */
+    static void shutdown(HttpTransport transport) {
+        if (transport instanceof LoopjTransport) {
+            ((LoopjTransport) transport).client().getThreadPool().shutdownNow();
+        } else if (transport instanceof OkHttpTransport) {
+            OkHttpClient client = ((OkHttpTransport) transport).client();
+            client.dispatcher().executorService().shutdownNow();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * @param trace - a resource (i.e. traces/fling.trace) or a file
+     */
+    static List<Call> readTrace(String trace) throws IOException {
+        InputStream in = ReplayHarness.class.getClassLoader().getResourceAsStream(trace);
+        if (in == null) in = new FileInputStream(trace);
+        List<Call> calls = new ArrayList<Call>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                calls.add(new Call(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2])));
+            }
+        } finally {
+            reader.close();
+        }
+        if (calls.isEmpty()) throw new IllegalArgumentException("empty trace: " + trace);
+        return calls;
+    }
+}
@@ -0,0 +1,114 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmart.products.service.WalmartService.CacheEntry;
+import static com.walmart.products.service.WalmartServiceConfig.PAGE_SIZE;
+
+/**
+ * The page cache and thumbnail cache get/put pattern of a scroll session, per bound row:
+ * get the page (put it on a miss, like a page load) then get the thumbnail (put it on a miss).
+ *
+ * Pages and thumbnails are evicted as the scroll goes past the cache budgets, like on a device,
+ * in the order of each page cache policy (the page of the row bound is the visible range).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ScrollSessionBenchmark {
+
+    private static final int ITEMS = 5000;
+
+    // rows scrolled back after each fling forward
+    private static final int FLING_BACK = 300;
+
+    ProductPage[] mPages;
+
+    // the page cache policies, see PageCache.newPolicy
+    @Param({"lru", "tinylfu", "viewport"})
+    String mPolicy;
+
+    PageCache mPageCache;
+
+    // the page on screen, the cache is told when it changes like the scroll listener does
+    int mVisiblePage;
+
+    BitmapCache mBitmapCache;
+
+    @Setup
+    public void setupPages() throws IOException {
+        mPages = ServiceFixture.pages(ITEMS / PAGE_SIZE);
+    }
+
+    // every invocation starts a session with cold caches
+    @Setup(Level.Invocation)
+    public void setupCaches() {
+        mPageCache = ServiceFixture.pageCache(mPolicy);
+        mVisiblePage = -1;
+        mBitmapCache = ServiceFixture.bitmapCache();
+    }
+
+    private Bitmap bind(int index) {
+        int pageNum = index / PAGE_SIZE;
+        if (pageNum != mVisiblePage) {
+            mVisiblePage = pageNum;
+            mPageCache.setVisibleRange(pageNum, pageNum);
+        }
+        CacheEntry cacheEntry = mPageCache.get(pageNum);
+        if (cacheEntry == null) {
+            cacheEntry = new CacheEntry(mPages[pageNum]);
+            mPageCache.put(pageNum, cacheEntry);
+        }
+        String url = cacheEntry.page().getThumbnailUrl(index % PAGE_SIZE);
+        if (url == null) return null;
+        Bitmap bmp = mBitmapCache.getThumbnail(url);
+        if (bmp == null) {
+            bmp = ServiceFixture.thumbnail();
+            mBitmapCache.putThumbnail(url, bmp);
+        }
+        return bmp;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void scrollForward(Blackhole blackhole) {
+        for (int index = 0; index < ITEMS; index++) {
+            blackhole.consume(bind(index));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS + (ITEMS / 1000) * FLING_BACK)
+    public void scrollForwardAndBack(Blackhole blackhole) {
+        for (int index = 0; index < ITEMS; index++) {
+            blackhole.consume(bind(index));
+            if (index % 1000 == 999) {
+                // the user scrolls back a bit, rows that may have been evicted already
+                for (int back = index; back > index - FLING_BACK; back--) {
+                    blackhole.consume(bind(back));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+
+import com.walmart.products.benchmark.Fixtures;
+import com.walmart.products.http.PageParser;
+import com.walmart.products.http.PageRecord;
+import com.walmart.products.util.EventEmitter;
+import com.walmart.products.util.Function;
+import com.walmart.products.util.StringPool;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.walmart.products.service.WalmartService.CacheEntry;
+import static com.walmart.products.service.WalmartServiceConfig.*;
+
+/**
+ * Builds the service objects the way AppModule provides them, without Dagger and without the network.
+ */
+class ServiceFixture {
+
+    private static final Function NO_CALLBACK = new Function() {
+        @Override
+        public void call(Object... args) {}
+    };
+
+    /**
+     * @return pages of the recorded fixture, each with its own image urls (like consecutive pages would have)
+     */
+    static ProductPage[] pages(int count) throws IOException {
+        PageRecord record = PageParser.parsePage(Fixtures.read(Fixtures.PAGE));
+        StringPool pool = new StringPool(STRING_POOL_SIZE);
+        ProductPage page = ProductPage.from(record, pool);
+        ProductPage[] pages = new ProductPage[count];
+        for (int p = 0; p < count; p++) {
+            String[] names = new String[page.size()];
+            String[] descriptions = new String[page.size()];
+            String[] thumbnailUrls = new String[page.size()];
+            String[] mediumImageUrls = new String[page.size()];
+            for (int i = 0; i < page.size(); i++) {
+                names[i] = page.getName(i);
+                descriptions[i] = page.getDescription(i);
+                thumbnailUrls[i] = page.getThumbnailUrl(i) + "&page=" + p;
+                mediumImageUrls[i] = page.getMediumImageUrl(i) + "&page=" + p;
+            }
+            pages[p] = new ProductPage(page.nextPage(), names, descriptions, thumbnailUrls, mediumImageUrls);
+        }
+        return pages;
+    }
+
+    static PageCache pageCache() {
+        return pageCache(PageCache.LRU);
+    }
+
+    /**
+     * @param policy - see PageCache.newPolicy
+     */
+    static PageCache pageCache(String policy) {
+        return new PageCache(PAGE_CACHE_BYTES, PageCache.newPolicy(policy));
+    }
+
+    static BitmapCache bitmapCache() {
+        return new BitmapCache(THUMBNAIL_CACHE_BYTES, MEDIUM_IMAGE_CACHE_BYTES, new BitmapPool(BITMAP_POOL_BYTES));
+    }
+
+    // a 100dp thumbnail at xhdpi
+    static Bitmap thumbnail() {
+        return Bitmap.createBitmap(200, 200, Bitmap.Config.RGB_565);
+    }
+
+    /**
+     * @return a service with the pages in its page cache (READY) and their thumbnails in its bitmap cache
+     */
+    static WalmartService service(ProductPage[] pages) {
+        WalmartServiceUtils utils = new WalmartServiceUtils();
+        utils.mPageUrls = new ConcurrentHashMap<Integer, String>();
+        utils.mPageCache = pageCache();
+        utils.mBitmapCache = bitmapCache();
+        PageStateTable pageStates = new PageStateTable(MAX_PAGE_NUM);
+        for (int p = 0; p < pages.length; p++) {
+            utils.mPageCache.put(p, new CacheEntry(pages[p]));
+            pageStates.join(p, NO_CALLBACK);
+            pageStates.complete(p, null, null);
+            for (int i = 0; i < pages[p].size(); i++) {
+                String url = pages[p].getThumbnailUrl(i);
+                if (url != null) utils.mBitmapCache.putThumbnail(url, thumbnail());
+            }
+        }
+        WalmartService service = new WalmartService();
+        service.mUtils = utils;
+        service.mBitmapCache = utils.mBitmapCache;
+        service.mPageStates = pageStates;
+        service.mThumbnailEvents = new EventEmitter();
+        return service;
+    }
+}
@@ -0,0 +1,79 @@
+package com.walmart.products.service;
+
+import android.graphics.Bitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmart.products.service.WalmartServiceConfig.PAGE_SIZE;
+
+/**
+ * The service calls made for every bound row and every scroll event.
+ *
+ * getProduct was split into getName, getDescription etc. when pages became columnar,
+ * getName and getDescription are what a row bind calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WalmartServiceBenchmark {
+
+    // pages in the cache, within PAGE_CACHE_BYTES so none is evicted
+    private static final int PAGES = 3;
+
+    WalmartService mService;
+
+    int mIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        mService = ServiceFixture.service(ServiceFixture.pages(PAGES));
+    }
+
+    // walks the loaded products like a scroll does
+    private int nextIndex() {
+        mIndex = (mIndex + 1) % (PAGES * PAGE_SIZE);
+        return mIndex;
+    }
+
+    @Benchmark
+    public String getName() {
+        return mService.getName(nextIndex());
+    }
+
+    @Benchmark
+    public String getDescription() {
+        return mService.getDescription(nextIndex());
+    }
+
+    @Benchmark
+    public Bitmap getThumbnail() {
+        return mService.getThumbnail(nextIndex());
+    }
+
+    @Benchmark
+    public boolean isLoaded() {
+        int index = nextIndex();
+        return mService.isLoaded(index, index + 10);
+    }
+
+    @Benchmark
+    public boolean isLoading() {
+        int index = nextIndex();
+        return mService.isLoading(index, index + 10);
+    }
+}
@@ -0,0 +1,124 @@
+package com.walmart.products.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The EventEmitter as the service uses it, a few listeners per event (i.e. THUMBNAIL_LOADED)
+ * and short lived once listeners (i.e. the url of the next page), against the EventBus that replaced it
+ * for the page urls. Run with -Pprof=gc to compare what they allocate per emit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EventEmitterBenchmark {
+
+    private static final String EVENT = "THUMBNAIL_LOADED";
+
+    // listeners of EVENT
+    @Param({"1", "4"})
+    int mListeners;
+
+    private static final int KEY = 42;
+
+    EventEmitter mEmitter;
+
+    Function mListener;
+
+    EventBus<String> mBus;
+
+    EventBus.Listener<String> mBusListener;
+
+    int mOnceEvent;
+
+    // listeners do this much work, so they are not optimized away
+    int mCalls;
+
+    @Setup
+    public void setup() {
+        mEmitter = new EventEmitter();
+        mListener = new Function() {
+            @Override
+            public void call(Object... args) {
+                mCalls += args.length;
+            }
+        };
+        for (int i = 0; i < mListeners; i++) {
+            mEmitter.on(EVENT, new Function() {
+                @Override
+                public void call(Object... args) {
+                    mCalls += args.length;
+                }
+            });
+        }
+        mBus = new EventBus<String>(1024);
+        mBusListener = new EventBus.Listener<String>() {
+            @Override
+            public void onEvent(int key, String value) {
+                mCalls += key;
+            }
+        };
+        for (int i = 0; i < mListeners; i++) {
+            mBus.on(KEY, new EventBus.Listener<String>() {
+                @Override
+                public void onEvent(int key, String value) {
+                    mCalls += key;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public EventEmitter emit() {
+        return mEmitter.emit(EVENT, null, 42);
+    }
+
+    @Benchmark
+    public EventEmitter onThenOff() {
+        mEmitter.on("OTHER", mListener);
+        return mEmitter.off("OTHER", mListener);
+    }
+
+    @Benchmark
+    public EventEmitter onceThenEmit() {
+        // a new event name each time, like the PAGE_n_URL events of the pages being loaded
+        String event = "PAGE_" + (mOnceEvent++ & 1023) + "_URL";
+        mEmitter.once(event, mListener);
+        return mEmitter.emit(event, null, "url");
+    }
+
+    @Benchmark
+    public int busEmit() {
+        mBus.emit(KEY, "url");
+        return mCalls;
+    }
+
+    @Benchmark
+    public int busOnThenRemove() {
+        mBus.on(KEY + 1, mBusListener).remove();
+        return mCalls;
+    }
+
+    @Benchmark
+    public int busOnceThenEmit() {
+        // a new key each time, like the pages being loaded
+        int key = mOnceEvent++ & 1023;
+        mBus.once(key, mBusListener);
+        mBus.emit(key, "url");
+        return mCalls;
+    }
+}
@@ -0,0 +1,83 @@
+package com.walmart.products.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the service pays per recorded value, with metrics on and off (the metrics property of
+ * application.properties). Values are recorded the way WalmartServiceUtils does: looked up by name,
+ * then recordSince a start time, so the on/off difference is the whole cost of the instrumentation.
+ *
+ * The contended variants record from 4 threads at once into the same instruments,
+ * like the http, decode and parse threads do. Run with -Pprof=gc to check nothing is allocated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private static final String HISTOGRAM = "loadBitmap";
+
+    private static final String COUNTER = "loadBitmap.failed";
+
+    @Param({"true", "false"})
+    boolean mEnabled;
+
+    Metrics mMetrics;
+
+    long mStartTime;
+
+    @Setup
+    public void setup() {
+        mMetrics = new Metrics(mEnabled);
+        // a registry about as full as the service one, so the lookups are not in a map of one
+        for (int i = 0; i < 16; i++) {
+            mMetrics.histogram("histogram" + i).recordNanos(i * 1000000L);
+            mMetrics.counter("counter" + i).inc();
+        }
+        mStartTime = System.nanoTime();
+    }
+
+    @Benchmark
+    public void recordSince() {
+        mMetrics.histogram(HISTOGRAM).recordSince(mStartTime);
+    }
+
+    @Benchmark
+    public void inc() {
+        mMetrics.counter(COUNTER).inc();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordSinceContended() {
+        mMetrics.histogram(HISTOGRAM).recordSince(mStartTime);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void incContended() {
+        mMetrics.counter(COUNTER).inc();
+    }
+
+    // what the MetricsReporter does once a minute
+    @Benchmark
+    public Metrics.Stats stats() {
+        return mMetrics.stats();
+    }
+}
@@ -0,0 +1,21 @@
+package android.app;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * Benchmark shim, the service is created directly and its fields are set by the benchmark instead of Dagger.
+ */
+public abstract class Service extends ContextWrapper {
+
+    public Service() {
+        super(null);
+    }
+
+    public void onCreate() {}
+
+    public void onDestroy() {}
+
+    public abstract IBinder onBind(Intent intent);
+}
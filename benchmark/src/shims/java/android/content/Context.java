@@ -0,0 +1,11 @@
+package android.content;
+
+/**
+ * Benchmark shim, only what the service layer uses.
+ */
+public abstract class Context {
+
+    public Context getApplicationContext() {
+        return this;
+    }
+}
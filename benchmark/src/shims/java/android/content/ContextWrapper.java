@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * Benchmark shim.
+ */
+public class ContextWrapper extends Context {
+
+    public ContextWrapper(Context base) {}
+}
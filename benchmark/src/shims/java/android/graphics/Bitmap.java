@@ -0,0 +1,54 @@
+package android.graphics;
+
+/**
+ * Benchmark shim, a bitmap without pixels that only knows its size.
+ */
+public final class Bitmap {
+
+    public enum Config {
+        ALPHA_8(1), RGB_565(2), ARGB_4444(2), ARGB_8888(4);
+
+        final int bytesPerPixel;
+
+        Config(int bytesPerPixel) {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+    }
+
+    private int mWidth;
+    private int mHeight;
+    private Config mConfig;
+    private final int mAllocationByteCount;
+    private final boolean mMutable;
+    private boolean mRecycled;
+
+    private Bitmap(int width, int height, Config config, boolean mutable) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mAllocationByteCount = width * height * config.bytesPerPixel;
+        mMutable = mutable;
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config) {
+        return new Bitmap(width, height, config, true);
+    }
+
+    public int getWidth() { return mWidth; }
+    public int getHeight() { return mHeight; }
+    public Config getConfig() { return mConfig; }
+    public int getByteCount() { return mWidth * mHeight * mConfig.bytesPerPixel; }
+    public int getAllocationByteCount() { return mAllocationByteCount; }
+    public boolean isMutable() { return mMutable; }
+    public boolean isRecycled() { return mRecycled; }
+    public void recycle() { mRecycled = true; }
+
+    public void reconfigure(int width, int height, Config config) {
+        if (width * height * config.bytesPerPixel > mAllocationByteCount) {
+            throw new IllegalArgumentException("Bitmap not large enough to support new configuration");
+        }
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+    }
+}
@@ -0,0 +1,74 @@
+package android.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Benchmark shim, decodes with ImageIO (subsampled like inSampleSize) so decoding costs CPU like on a device,
+ * and returns a Bitmap of the decoded size. inBitmap is reused when it is large enough, like on API 19+.
+ */
+public class BitmapFactory {
+
+    public static class Options {
+        public boolean inJustDecodeBounds;
+        public int inSampleSize;
+        public Bitmap.Config inPreferredConfig = Bitmap.Config.ARGB_8888;
+        public boolean inMutable;
+        public Bitmap inBitmap;
+        public int outWidth;
+        public int outHeight;
+    }
+
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length) {
+        return decodeByteArray(data, offset, length, null);
+    }
+
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length, Options opts) {
+        if (opts == null) opts = new Options();
+        opts.outWidth = -1;
+        opts.outHeight = -1;
+        try {
+            ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data, offset, length));
+            if (in == null) return null;
+            try {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (!readers.hasNext()) return null;
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in);
+                    int sample = Math.max(1, opts.inSampleSize);
+                    if (opts.inJustDecodeBounds) {
+                        opts.outWidth = reader.getWidth(0);
+                        opts.outHeight = reader.getHeight(0);
+                        return null;
+                    }
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(sample, sample, 0, 0);
+                    BufferedImage image = reader.read(0, param);
+                    opts.outWidth = image.getWidth();
+                    opts.outHeight = image.getHeight();
+                    Bitmap.Config config = (opts.inPreferredConfig == null) ? Bitmap.Config.ARGB_8888 : opts.inPreferredConfig;
+                    if (opts.inBitmap != null) {
+                        // throws IllegalArgumentException if it does not fit, like the framework
+                        opts.inBitmap.reconfigure(opts.outWidth, opts.outHeight, config);
+                        return opts.inBitmap;
+                    }
+                    return Bitmap.createBitmap(opts.outWidth, opts.outHeight, config);
+                } finally {
+                    reader.dispose();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
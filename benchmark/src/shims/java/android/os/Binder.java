@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * Benchmark shim, services are created directly.
+ */
+public class Binder implements IBinder {
+
+    public Binder() {}
+
+    public String getInterfaceDescriptor() { return null; }
+    public boolean pingBinder() { return true; }
+    public boolean isBinderAlive() { return true; }
+    public IInterface queryLocalInterface(String descriptor) { return null; }
+    public void dump(java.io.FileDescriptor fd, String[] args) {}
+    public void dumpAsync(java.io.FileDescriptor fd, String[] args) {}
+    public boolean transact(int code, Parcel data, Parcel reply, int flags) { return false; }
+    public void linkToDeath(DeathRecipient recipient, int flags) {}
+    public boolean unlinkToDeath(DeathRecipient recipient, int flags) { return true; }
+}
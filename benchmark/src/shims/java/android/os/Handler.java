@@ -0,0 +1,37 @@
+package android.os;
+
+/**
+ * Benchmark shim, posts to the Looper it was created for, or runs posted callbacks right away without one.
+ */
+public class Handler {
+
+    private final Looper mLooper;
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper) {
+        mLooper = looper;
+    }
+
+    public void handleMessage(Message msg) {}
+
+    public final boolean post(Runnable r) {
+        if (mLooper == null) {
+            r.run();
+        } else {
+            mLooper.enqueue(r);
+        }
+        return true;
+    }
+
+    public final boolean sendMessage(final Message msg) {
+        return post(new Runnable() {
+            @Override
+            public void run() {
+                handleMessage(msg);
+            }
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package android.os;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Benchmark shim, a main looper thread that runs posted callbacks in order, started on first use.
+ * The benchmark threads have no looper, so callbacks made from them run on the calling thread.
+ */
+public final class Looper {
+
+    private static Looper sMainLooper;
+
+    private final LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<Runnable>();
+
+    private final Thread mThread;
+
+    private Looper() {
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        mQueue.take().run();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "main");
+        mThread.setDaemon(true);
+    }
+
+    public static Looper myLooper() {
+        Looper main = getMainLooper();
+        return (Thread.currentThread() == main.mThread) ? main : null;
+    }
+
+    public static synchronized Looper getMainLooper() {
+        if (sMainLooper == null) {
+            sMainLooper = new Looper();
+            sMainLooper.mThread.start();
+        }
+        return sMainLooper;
+    }
+
+    void enqueue(Runnable r) {
+        mQueue.add(r);
+    }
+}
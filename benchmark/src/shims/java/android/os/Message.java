@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * Benchmark shim, the fields loopj's response handlers use.
+ */
+public final class Message {
+
+    public int what;
+
+    public Object obj;
+
+    Handler target;
+
+    public static Message obtain(Handler h, int what, Object obj) {
+        Message m = new Message();
+        m.target = h;
+        m.what = what;
+        m.obj = obj;
+        return m;
+    }
+}
@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * Benchmark shim, used by loopj's RetryHandler between retries.
+ */
+public final class SystemClock {
+
+    private SystemClock() {}
+
+    public static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+}
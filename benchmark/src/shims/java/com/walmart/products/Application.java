@@ -0,0 +1,30 @@
+package com.walmart.products;
+
+import android.content.Context;
+
+import com.walmart.products.service.WalmartService;
+import com.walmart.products.service.WalmartServiceUtils;
+
+/**
+ * Benchmark shim, there is no Dagger graph in the benchmarks.
+ * The benchmarks create the service objects directly and set their @Inject fields.
+ */
+public class Application {
+
+    public interface ApplicationComponent {
+        void inject(WalmartService walmartService);
+        void inject(WalmartServiceUtils walmartServiceUtils);
+    }
+
+    public static Application get(Context context) {
+        throw new UnsupportedOperationException("no Dagger graph in the benchmarks, set the @Inject fields directly");
+    }
+
+    public static long getStartTime() {
+        return 0;
+    }
+
+    public ApplicationComponent component() {
+        throw new UnsupportedOperationException("no Dagger graph in the benchmarks");
+    }
+}
@@ -0,0 +1,105 @@
+package com.walmart.products.mockserver;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A synthetic catalog of catalogSize products with item ids 1..catalogSize, paged like /v1/paginated/items:
+ * each page holds the pageSize items after its maxId cursor and links the next page with nextPage.
+ *
+ * Items are generated from their id, so every request for a page returns the same products.
+ */
+public class Catalog {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final String[] BRANDS = {
+            "Rose Cottage", "Wrangler", "Hanes", "Faded Glory", "George", "Mainstays", "Ozark Trail",
+            "Hyper Tough", "Equate", "Great Value", "Time and Tru", "Athletic Works" };
+
+    private static final String[] PRODUCTS = {
+            "Jacket Dress", "Relaxed Fit Jean", "Ankle Crew Socks, 6 Pairs", "Fleece Hoodie", "Cotton Tee",
+            "Microfiber Sheet Set", "Ceramic Dinnerware Set", "4-Person Dome Tent", "Cordless Drill Kit",
+            "Cast Iron Skillet, 10 in", "Performance Shorts", "Knit Romper" };
+
+    private static final String[] CATEGORIES = {
+            "Clothing/Girls", "Clothing/Men", "Clothing/Women", "Home/Bedding", "Home/Kitchen & Dining",
+            "Sports & Outdoors/Camping", "Home Improvement/Tools" };
+
+    private final int mCatalogSize;
+
+    private final int mPageSize;
+
+    public Catalog(int catalogSize, int pageSize) {
+        this.mCatalogSize = catalogSize;
+        this.mPageSize = pageSize;
+    }
+
+    /**
+     * @param pathAndQuery - i.e. /v1/paginated/items?format=json&apiKey=mock&maxId=100, used to build the nextPage
+     * @param maxId - the last item id of the previous page, 0 for the first page
+     * @param imageBaseUrl - i.e. http://10.0.2.2:8080, image urls are absolute like the real ones
+     * @return the page json
+     */
+    public byte[] page(String pathAndQuery, int maxId, String imageBaseUrl) throws IOException {
+        int first = maxId + 1;
+        int last = Math.min(maxId + mPageSize, mCatalogSize);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2048 * mPageSize);
+        JsonGenerator json = JSON.createGenerator(out, JsonEncoding.UTF8);
+        json.writeStartObject();
+        json.writeStringField("category", "3944");
+        json.writeStringField("format", "json");
+        if (last < mCatalogSize) {
+            json.writeStringField("nextPage", nextPage(pathAndQuery, last));
+        }
+        json.writeArrayFieldStart("items");
+        for (int itemId = first; itemId <= last; itemId++) {
+            writeItem(json, itemId, imageBaseUrl);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.close();
+        return out.toByteArray();
+    }
+
+    private void writeItem(JsonGenerator json, int itemId, String imageBaseUrl) throws IOException {
+        Random random = new Random(itemId);
+        String brand = BRANDS[random.nextInt(BRANDS.length)];
+        String product = PRODUCTS[random.nextInt(PRODUCTS.length)];
+        String image = imageBaseUrl + "/images/" + itemId + ".jpeg";
+        double price = 2 + random.nextInt(11800) / 100.0;
+        json.writeStartObject();
+        json.writeNumberField("itemId", itemId);
+        json.writeNumberField("parentItemId", itemId);
+        json.writeStringField("name", brand + " " + product);
+        json.writeNumberField("msrp", price);
+        json.writeNumberField("salePrice", price);
+        json.writeStringField("categoryPath", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        json.writeStringField("shortDescription", brand + " " + product.toLowerCase() + ". Item " + itemId + ".");
+        json.writeStringField("longDescription",
+                "&lt;p&gt;" + brand + " " + product.toLowerCase() + ".&lt;/p&gt;&lt;ul&gt;&lt;li&gt;Imported&lt;/li&gt;&lt;/ul&gt;");
+        json.writeStringField("brandName", brand);
+        json.writeStringField("thumbnailImage", image + "?odnHeight=100&odnWidth=100&odnBg=FFFFFF");
+        json.writeStringField("mediumImage", image + "?odnHeight=180&odnWidth=180&odnBg=FFFFFF");
+        json.writeStringField("largeImage", image + "?odnHeight=450&odnWidth=450&odnBg=FFFFFF");
+        json.writeStringField("productUrl", "http://c.affil.walmart.com/t/api02?l=https%3A%2F%2Fwww.walmart.com%2Fip%2F" + itemId);
+        json.writeStringField("customerRating", String.format("%.3f", 2.5 + random.nextInt(2500) / 1000.0));
+        json.writeNumberField("numReviews", random.nextInt(900));
+        json.writeStringField("stock", random.nextInt(10) == 0 ? "Limited Supply" : "Available");
+        json.writeBooleanField("availableOnline", true);
+        json.writeEndObject();
+    }
+
+    /**
+     * The nextPage of the real API is the request with its maxId set to the last item id of the page.
+     */
+    static String nextPage(String pathAndQuery, int maxId) {
+        String withoutMaxId = pathAndQuery.replaceAll("&maxId=\\d+", "");
+        return withoutMaxId + "&maxId=" + maxId;
+    }
+}
@@ -0,0 +1,75 @@
+package com.walmart.products.mockserver;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Synthetic product images, a product shaped gradient on white of the requested size encoded as JPEG.
+ *
+ * Images are generated once per size and color, so serving them costs no more than serving a file.
+ */
+public class Images {
+
+    private static final Color[] COLORS = {
+            new Color(0, 113, 206), new Color(255, 194, 32), new Color(118, 192, 67), new Color(204, 51, 51),
+            new Color(120, 80, 160), new Color(60, 60, 60), new Color(244, 125, 32), new Color(0, 150, 136) };
+
+    private final ConcurrentMap<String, byte[]> mImages = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * @param itemId - picks the color
+     * @param size - width and height
+     */
+    public byte[] jpeg(int itemId, int size) throws IOException {
+        int color = itemId % COLORS.length;
+        String key = color + "/" + size;
+        byte[] jpeg = mImages.get(key);
+        if (jpeg == null) {
+            jpeg = encode(render(COLORS[color], size));
+            mImages.putIfAbsent(key, jpeg);
+        }
+        return jpeg;
+    }
+
+    private static BufferedImage render(Color color, int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, size, size);
+        g.setPaint(new GradientPaint(size / 5f, size / 5f, color, size * 4 / 5f, size * 4 / 5f, color.darker()));
+        g.fillRoundRect(size / 5, size / 6, size * 3 / 5, size * 2 / 3, size / 10, size / 10);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.85f);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        try {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            stream.close();
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,411 @@
+package com.walmart.products.mockserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the Walmart API, so load and latency work can be done offline and repeated.
+ *
+ * Serves /v1/paginated/items pages (with nextPage cursors) of a synthetic Catalog, and the thumbnail and
+ * medium images its items link to. Latency, bandwidth, error rate and catalog size are configurable.
+ *
+ * Responses carry an ETag and Last-Modified, a conditional request for an unchanged response is answered with
+ * a 304 and no body (--validators=false answers every request in full).
+ *
+ * Pages are gzip or deflate compressed for clients that accept it (--compression=false sends them as is).
+ *
+ * Point the app at it with the baseUrl and firstPageUrl properties of application.properties,
+ * i.e. baseUrl=http://10.0.2.2:8080 from the emulator.
+ *
+ * ./gradlew :mockserver:run -Pargs="--port=8080 --latency=200 --bandwidth=250000 --errorRate=0.01"
+ */
+public class MockWalmartServer {
+
+    public static final String PAGES_PATH = "/v1/paginated/items";
+
+    public static final String IMAGES_PATH = "/images/";
+
+    public static final String FIRST_PAGE_URL = PAGES_PATH + "?format=json&apiKey=mock";
+
+    private static final Pattern MAX_ID = Pattern.compile("[?&]maxId=(\\d+)");
+
+    private static final Pattern IMAGE = Pattern.compile(IMAGES_PATH + "(\\d+)\\.jpeg");
+
+    private static final Pattern IMAGE_SIZE = Pattern.compile("[?&]odnWidth=(\\d+)");
+
+    // bytes written between bandwidth sleeps
+    private static final int CHUNK_SIZE = 4096;
+
+    // the catalog never changes, every response has the same Last-Modified
+    public static final String LAST_MODIFIED = "Mon, 02 Oct 2017 00:00:00 GMT";
+
+    /** See --help **/
+    public static class Options {
+        public int port = 8080;
+        public int latency = 0; // milliseconds before the response starts
+        public int jitter = 0; // up to this many milliseconds are added to the latency at random
+        public int bandwidth = 0; // bytes per second of the link all responses share, 0 is unlimited
+        public double errorRate = 0; // fraction of requests answered with a 503
+        public int catalogSize = 5000;
+        public int pageSize = 100;
+        public long seed = 3944; // of the latency jitter and the errors, so a run can be repeated
+        public boolean validators = true; // send ETag and Last-Modified and answer conditional requests with 304
+        public boolean compression = true; // compress pages with the Accept-Encoding of the request
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+                String value = (kv.length > 1) ? kv[1] : "";
+                if (kv[0].equals("profile")) options.profile(value);
+                else if (kv[0].equals("port")) options.port = Integer.parseInt(value);
+                else if (kv[0].equals("latency")) options.latency = Integer.parseInt(value);
+                else if (kv[0].equals("jitter")) options.jitter = Integer.parseInt(value);
+                else if (kv[0].equals("bandwidth")) options.bandwidth = Integer.parseInt(value);
+                else if (kv[0].equals("errorRate")) options.errorRate = Double.parseDouble(value);
+                else if (kv[0].equals("catalogSize")) options.catalogSize = Integer.parseInt(value);
+                else if (kv[0].equals("pageSize")) options.pageSize = Integer.parseInt(value);
+                else if (kv[0].equals("seed")) options.seed = Long.parseLong(value);
+                else if (kv[0].equals("validators")) options.validators = Boolean.parseBoolean(value);
+                else if (kv[0].equals("compression")) options.compression = Boolean.parseBoolean(value);
+                else throw new IllegalArgumentException("unknown option: " + arg + "\n" + usage());
+            }
+            return options;
+        }
+
+        /**
+         * Network presets, options after the profile override it.
+         * @param profile - 3g (a budget phone on a slow network), lte or wifi
+         */
+        public void profile(String profile) {
+            if (profile.equals("3g")) {
+                latency = 300;
+                jitter = 200;
+                bandwidth = 100 * 1000;
+            } else if (profile.equals("lte")) {
+                latency = 80;
+                jitter = 40;
+                bandwidth = 1500 * 1000;
+            } else if (profile.equals("wifi")) {
+                latency = 20;
+                jitter = 10;
+                bandwidth = 0;
+            } else {
+                throw new IllegalArgumentException("unknown profile: " + profile + "\n" + usage());
+            }
+        }
+
+        public static String usage() {
+            return "options: --profile=3g|lte|wifi --port=8080 --latency=<ms> --jitter=<ms> --bandwidth=<bytes/s> "
+                    + "--errorRate=<0..1> --catalogSize=5000 --pageSize=100 --seed=3944 --validators=true "
+                    + "--compression=true";
+        }
+
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("port: ").append(port);
+            sb.append(", latency: ").append(latency).append("ms +").append(jitter).append("ms");
+            sb.append(", bandwidth: ").append(bandwidth == 0 ? "unlimited" : bandwidth + " bytes/s");
+            sb.append(", errorRate: ").append(errorRate);
+            sb.append(", catalogSize: ").append(catalogSize);
+            sb.append(", pageSize: ").append(pageSize);
+            sb.append(", validators: ").append(validators);
+            sb.append(", compression: ").append(compression);
+            return sb.toString();
+        }
+    }
+
+    /** Snapshot of the server counters **/
+    public static class Stats {
+        public final long pages;
+        public final long images;
+        public final long notModified;
+        public final long errors;
+        public final long bytes;
+        Stats(MockWalmartServer server) {
+            this(server.mPages.get(), server.mImageCount.get(), server.mNotModified.get(),
+                    server.mErrors.get(), server.mBytes.get());
+        }
+        private Stats(long pages, long images, long notModified, long errors, long bytes) {
+            this.pages = pages;
+            this.images = images;
+            this.notModified = notModified;
+            this.errors = errors;
+            this.bytes = bytes;
+        }
+        /**
+         * @return the counts since the before snapshot, i.e. of one replayed session
+         */
+        public Stats since(Stats before) {
+            return new Stats(pages - before.pages, images - before.images, notModified - before.notModified,
+                    errors - before.errors, bytes - before.bytes);
+        }
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("pages: ").append(pages);
+            sb.append(", images: ").append(images);
+            sb.append(", notModified: ").append(notModified);
+            sb.append(", errors: ").append(errors);
+            sb.append(", bytes: ").append(bytes);
+            return sb.toString();
+        }
+    }
+
+    private final Options mOptions;
+
+    private final Catalog mCatalog;
+
+    private final Images mImages = new Images();
+
+    private final Random mRandom;
+
+    private final AtomicLong mPages = new AtomicLong();
+
+    private final AtomicLong mImageCount = new AtomicLong();
+
+    private final AtomicLong mNotModified = new AtomicLong();
+
+    private final AtomicLong mErrors = new AtomicLong();
+
+    private final AtomicLong mBytes = new AtomicLong();
+
+    // nanoTime the link is free again, like a phone on a slow network more responses at once do not get more bandwidth
+    private long mLinkFreeAt;
+
+    private HttpServer mServer;
+
+    private ExecutorService mExecutor;
+
+    public MockWalmartServer(Options options) {
+        this.mOptions = options;
+        this.mCatalog = new Catalog(options.catalogSize, options.pageSize);
+        this.mRandom = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        final MockWalmartServer server = new MockWalmartServer(Options.parse(args));
+        server.start();
+        System.out.println("MockWalmartServer listening - " + server.mOptions);
+        System.out.println("baseUrl=" + server.baseUrl() + ", firstPageUrl=" + FIRST_PAGE_URL);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                System.out.println("MockWalmartServer stopped - " + server.stats());
+                server.stop();
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(mOptions.port), 0);
+        // a thread per request, so the latency of one response does not delay the others
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(PAGES_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePage(exchange);
+            }
+        });
+        mServer.createContext(IMAGES_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleImage(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    public void stop() {
+        if (mServer == null) return;
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+        mServer = null;
+    }
+
+    /**
+     * @return i.e. http://localhost:8080, the port is the bound one when started with port 0
+     */
+    public String baseUrl() {
+        return "http://localhost:" + mServer.getAddress().getPort();
+    }
+
+    public Stats stats() {
+        return new Stats(this);
+    }
+
+    private void handlePage(HttpExchange exchange) throws IOException {
+        try {
+            if (!delayOrFail(exchange)) return;
+            URI uri = exchange.getRequestURI();
+            String pathAndQuery = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+            Matcher maxId = MAX_ID.matcher(pathAndQuery);
+            int afterId = maxId.find() ? Integer.parseInt(maxId.group(1)) : 0;
+            if (afterId >= mOptions.catalogSize) {
+                respond(exchange, 404, "application/json", "{\"errors\":[{\"message\":\"no more items\"}]}".getBytes("UTF-8"));
+                return;
+            }
+            byte[] page = mCatalog.page(pathAndQuery, afterId, imageBaseUrl(exchange));
+            if (notModified(exchange, page)) return;
+            mPages.incrementAndGet();
+            respond(exchange, 200, "application/json; charset=utf-8", compress(exchange, page));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        try {
+            if (!delayOrFail(exchange)) return;
+            URI uri = exchange.getRequestURI();
+            Matcher image = IMAGE.matcher(uri.getRawPath());
+            if (!image.matches()) {
+                respond(exchange, 404, "text/plain", "not found".getBytes("UTF-8"));
+                return;
+            }
+            Matcher size = IMAGE_SIZE.matcher("?" + (uri.getRawQuery() == null ? "" : uri.getRawQuery()));
+            int px = size.find() ? Math.min(Integer.parseInt(size.group(1)), 1500) : 450;
+            byte[] jpeg = mImages.jpeg(Integer.parseInt(image.group(1)), px);
+            if (notModified(exchange, jpeg)) return;
+            mImageCount.incrementAndGet();
+            respond(exchange, 200, "image/jpeg", jpeg);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Wait for the configured latency, then fail at the configured error rate.
+     * @return false if the request was answered with an error
+     */
+    private boolean delayOrFail(HttpExchange exchange) throws IOException {
+        int delay;
+        boolean fail;
+        synchronized (mRandom) {
+            delay = mOptions.latency + (mOptions.jitter > 0 ? mRandom.nextInt(mOptions.jitter + 1) : 0);
+            fail = mRandom.nextDouble() < mOptions.errorRate;
+        }
+        sleep(delay);
+        if (fail) {
+            mErrors.incrementAndGet();
+            respond(exchange, 503, "application/json", "{\"errors\":[{\"message\":\"mock error\"}]}".getBytes("UTF-8"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Set the validators of the body, and answer with a 304 if the request already has it.
+     * @return true if a 304 was sent
+     */
+    private boolean notModified(HttpExchange exchange, byte[] body) throws IOException {
+        if (!mOptions.validators) return false;
+        String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        // If-None-Match wins when both are sent, the Last-Modified of every response is the same date
+        boolean matches = (ifNoneMatch != null)
+                ? ifNoneMatch.equals(etag) || ifNoneMatch.equals("*")
+                : LAST_MODIFIED.equals(ifModifiedSince);
+        if (!matches) return false;
+        mNotModified.incrementAndGet();
+        // without a body the exchange is done once the headers are sent, a request stream not read to its end
+        // then closes the connection
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(304, -1);
+        return true;
+    }
+
+    /**
+     * @return the body compressed with the first of gzip and deflate the request accepts, else the body as is
+     */
+    private byte[] compress(HttpExchange exchange, byte[] body) throws IOException {
+        if (!mOptions.compression) return body;
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding == null) return body;
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.trim().toLowerCase().split("\\s*;\\s*");
+            if (params.length > 1 && params[1].matches("q=0(\\.0*)?")) continue; // refused
+            gzip |= params[0].equals("gzip");
+            deflate |= params[0].equals("deflate");
+        }
+        if (!gzip && !deflate) return body;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        // deflate is the zlib format, not raw deflate
+        OutputStream out = gzip ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed);
+        out.write(body);
+        out.close();
+        exchange.getResponseHeaders().set("Content-Encoding", gzip ? "gzip" : "deflate");
+        return compressed.toByteArray();
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        if (mOptions.bandwidth <= 0) {
+            out.write(body);
+        } else {
+            for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, body.length - offset);
+                sleepUntil(reserveLink(length));
+                out.write(body, offset, length);
+                out.flush();
+            }
+        }
+        mBytes.addAndGet(body.length);
+        out.close();
+    }
+
+    /**
+     * Absolute image urls, on the host and port the client reached this server with.
+     */
+    private String imageBaseUrl(HttpExchange exchange) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null) host = "localhost:" + mServer.getAddress().getPort();
+        return "http://" + host;
+    }
+
+    /**
+     * @return the nanoTime the chunk has been sent over the shared link
+     */
+    private synchronized long reserveLink(int bytes) {
+        mLinkFreeAt = Math.max(mLinkFreeAt, System.nanoTime()) + TimeUnit.SECONDS.toNanos(bytes) / mOptions.bandwidth;
+        return mLinkFreeAt;
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        sleep(TimeUnit.NANOSECONDS.toMillis(nanoTime - System.nanoTime()));
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.walmart.products.mockserver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class MockWalmartServerTests {
+
+    MockWalmartServer mServer;
+
+    MockWalmartServer start(String... args) throws IOException {
+        MockWalmartServer.Options options = MockWalmartServer.Options.parse(args);
+        options.port = 0; // any free port
+        mServer = new MockWalmartServer(options);
+        mServer.start();
+        return mServer;
+    }
+
+    @After
+    public void tearDown() {
+        if (mServer != null) mServer.stop();
+    }
+
+    HttpURLConnection get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    byte[] read(HttpURLConnection connection) throws IOException {
+        return read(connection.getInputStream());
+    }
+
+    byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void test_pagesFollowNextPage() throws IOException {
+        start("--catalogSize=250", "--pageSize=100");
+        String pageUrl = MockWalmartServer.FIRST_PAGE_URL;
+        int items = 0;
+        int pages = 0;
+        int lastItemId = 0;
+        while (pageUrl != null) {
+            JsonNode page = new ObjectMapper().readTree(read(get(mServer.baseUrl() + pageUrl)));
+            for (JsonNode item : page.get("items")) {
+                assertEquals(++lastItemId, item.get("itemId").asInt());
+                assertTrue(item.get("thumbnailImage").asText().startsWith(mServer.baseUrl() + "/images/"));
+                items++;
+            }
+            pages++;
+            pageUrl = page.has("nextPage") ? page.get("nextPage").asText() : null;
+        }
+        assertEquals(250, items);
+        assertEquals(3, pages);
+        assertEquals(3, mServer.stats().pages);
+    }
+
+    @Test
+    public void test_images() throws IOException {
+        start();
+        HttpURLConnection connection = get(mServer.baseUrl() + "/images/42.jpeg?odnHeight=100&odnWidth=100");
+        byte[] jpeg = read(connection);
+        assertEquals("image/jpeg", connection.getContentType());
+        // JPEG SOI marker
+        assertEquals((byte) 0xFF, jpeg[0]);
+        assertEquals((byte) 0xD8, jpeg[1]);
+        assertEquals(1, mServer.stats().images);
+    }
+
+    @Test
+    public void test_errorRate() throws IOException {
+        start("--errorRate=1");
+        HttpURLConnection connection = get(mServer.baseUrl() + MockWalmartServer.FIRST_PAGE_URL);
+        assertEquals(503, connection.getResponseCode());
+        assertEquals(1, mServer.stats().errors);
+    }
+
+    @Test
+    public void test_latency() throws IOException {
+        start("--latency=200");
+        long start = System.nanoTime();
+        read(get(mServer.baseUrl() + MockWalmartServer.FIRST_PAGE_URL));
+        assertTrue((System.nanoTime() - start) / 1000000 >= 200);
+    }
+
+    @Test
+    public void test_nextPage() {
+        assertEquals("/v1/paginated/items?format=json&apiKey=mock&maxId=200",
+                Catalog.nextPage("/v1/paginated/items?format=json&apiKey=mock&maxId=100", 200));
+    }
+
+    @Test
+    public void test_conditionalRequests() throws IOException {
+        start();
+        String url = mServer.baseUrl() + "/images/7.jpeg?odnHeight=100&odnWidth=100";
+        HttpURLConnection connection = get(url);
+        byte[] jpeg = read(connection);
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+        assertEquals(MockWalmartServer.LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+
+        connection = get(url);
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, connection.getResponseCode());
+        connection = get(url);
+        connection.setRequestProperty("If-Modified-Since", MockWalmartServer.LAST_MODIFIED);
+        assertEquals(304, connection.getResponseCode());
+        connection = get(url);
+        connection.setRequestProperty("If-None-Match", "\"stale\"");
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(jpeg, read(connection));
+
+        MockWalmartServer.Stats stats = mServer.stats();
+        assertEquals(2, stats.notModified);
+        assertEquals(2, stats.images);
+        assertEquals(2 * jpeg.length, stats.bytes);
+    }
+
+    @Test
+    public void test_compressedPages() throws IOException {
+        start();
+        HttpURLConnection connection = get(mServer.baseUrl() + MockWalmartServer.FIRST_PAGE_URL);
+        byte[] page = read(connection);
+        assertNull(connection.getHeaderField("Content-Encoding"));
+
+        connection = get(mServer.baseUrl() + MockWalmartServer.FIRST_PAGE_URL);
+        connection.setRequestProperty("Accept-Encoding", "br;q=1.0, gzip;q=0.8, deflate");
+        byte[] gzip = read(connection);
+        assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        assertTrue(gzip.length < page.length);
+        assertArrayEquals(page, read(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+
+        connection = get(mServer.baseUrl() + MockWalmartServer.FIRST_PAGE_URL);
+        connection.setRequestProperty("Accept-Encoding", "gzip;q=0, deflate");
+        byte[] zlib = read(connection);
+        assertEquals("deflate", connection.getHeaderField("Content-Encoding"));
+        assertArrayEquals(page, read(new InflaterInputStream(new ByteArrayInputStream(zlib))));
+
+        // the bytes on the wire are counted
+        assertEquals(page.length + gzip.length + zlib.length, mServer.stats().bytes);
+    }
+}